@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.jtalks.jcommune.service.bb2htmlprocessors.BBCodeListPreprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BBForeignLinksPostprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BbCodeReviewProcessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BbUserPreprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.TextPostProcessor;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
+import org.kefirsf.bb.TextProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole BB-codes to HTML conversion the way it's done when a post is shown: all pre-processors, KefirBB
+ * itself and all post-processors configured in the same order as in applicationContext-service.xml. Compare with
+ * {@link org.jtalks.jcommune.service.bb2htmlprocessors.BbToHtmlProcessorsBenchmark} to see which part of the
+ * conversion takes the time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BbCodeServiceBenchmark {
+    @Param
+    public PostCorpus post;
+    /** Both modes are measured to see how much is saved by not copying the text in each pre-processor */
+    @Param({"false", "true"})
+    public boolean fusedPreprocessing;
+
+    private BBCodeService bbCodeService;
+    private String content;
+
+    /**
+     * Request is bound in the thread which runs the benchmark because request context is thread local.
+     */
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.bindRequest(post);
+        BbCodeReviewProcessor codeReviewProcessor = new BbCodeReviewProcessor();
+        bbCodeService = new BBCodeService();
+        bbCodeService.setFusedPreprocessing(fusedPreprocessing);
+        bbCodeService.setPreprocessors(Arrays.<TextProcessor>asList(
+                new BBCodeListPreprocessor(),
+                codeReviewProcessor,
+                new BbUserPreprocessor(BenchmarkEnvironment.userService())));
+        bbCodeService.setPostprocessors(Arrays.<TextPostProcessor>asList(codeReviewProcessor));
+        bbCodeService.setRequestDependentPostprocessors(Arrays.<TextPostProcessor>asList(
+                new BBForeignLinksPostprocessor()));
+        content = post.getContent();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkEnvironment.unbindRequest();
+    }
+
+    @Benchmark
+    public String convertBbToHtml() {
+        return bbCodeService.convertBbToHtml(content);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.jtalks.jcommune.model.dao.UserDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.service.MailQueueService;
+import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces everything the processors need from the running application: the current HTTP request and the users
+ * stored in the database. Stubs are hand-written instead of mocks because mocking frameworks record each invocation
+ * and would be measured along with the processors.
+ */
+public final class BenchmarkEnvironment {
+    /** Users that exist in the forum, others mentioned in the posts are not found */
+    public static final String[] EXISTING_USERS = {"admin", "moderator", "user with spaces", "Пользователь"};
+    public static final String SERVER_NAME = "jtalks.org";
+    public static final String CONTEXT_PATH = "/forum";
+
+    private static final Map<String, JCUser> USERS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < EXISTING_USERS.length; i++) {
+            JCUser user = new JCUser(EXISTING_USERS[i], "user" + i + "@jtalks.org", "password");
+            user.setId(i + 1);
+            USERS.put(user.getUsername(), user);
+        }
+    }
+
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Binds a request to the current thread the same way dispatcher servlet does, so processors taking data from the
+     * request work as if the post is shown to the user.
+     *
+     * @param post post to be processed in the request
+     */
+    public static void bindRequest(PostCorpus post) {
+        MockHttpServletRequest request = bindRequest();
+        if (post.isCodeReview()) {
+            request.setAttribute("isCodeReviewPost", "true");
+        }
+    }
+
+    /**
+     * Binds a request to the current thread the same way dispatcher servlet does, e.g. for services that build links
+     * to the forum from the request.
+     *
+     * @return bound request
+     */
+    public static MockHttpServletRequest bindRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName(SERVER_NAME);
+        request.setContextPath(CONTEXT_PATH);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return request;
+    }
+
+    /**
+     * Removes the request bound by {@link #bindRequest(PostCorpus)} from the current thread.
+     */
+    public static void unbindRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * @return DAO which finds only {@link #EXISTING_USERS}, other methods are not supported
+     */
+    public static UserDao userDao() {
+        return stub(UserDao.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getByUsername")) {
+                    return USERS.get(args[0]);
+                }
+                if (method.getName().equals("getByUsernames")) {
+                    List<JCUser> users = new ArrayList<>();
+                    for (Object username : (Collection<?>) args[0]) {
+                        if (USERS.containsKey(username)) {
+                            users.add(USERS.get(username));
+                        }
+                    }
+                    return users;
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not used by benchmarks");
+            }
+        });
+    }
+
+    /**
+     * @return service which processes mentioned users with {@link #userDao()}, other methods are not supported
+     */
+    public static UserService userService() {
+        final UserDao userDao = userDao();
+        return stub(UserService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("processUserBbCodesInPost")) {
+                    return MentionedUsers.parse((String) args[0]).getTextWithProcessedUserTags(userDao);
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not used by benchmarks");
+            }
+        });
+    }
+
+    /**
+     * @return queue which only converts the mails the same way they are converted to be stored, but doesn't store
+     *         them, other methods are not supported
+     */
+    public static MailQueueService mailQueueService() {
+        return stub(MailQueueService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                if (method.getName().equals("enqueue")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    ((MimeMessage) args[0]).writeTo(bytes);
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not used by benchmarks");
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(),
+                new Class<?>[]{type}, handler));
+    }
+}
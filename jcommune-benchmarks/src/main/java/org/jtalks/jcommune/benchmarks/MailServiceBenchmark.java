@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.tools.generic.EscapeTool;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.JCommuneProperty;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.jtalks.jcommune.plugin.api.web.dto.TopicDto;
+import org.jtalks.jcommune.service.dto.EntityToDtoConverter;
+import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost of one notification mail: merging the templates, building MIME message and converting it to
+ * be stored in the mail queue. Mails about a moved topic are sent to many subscribers and are merged once for all of
+ * them, while a mail about mentioning is merged for each recipient, so the difference between the two shows what
+ * fan-out notifications save per recipient.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MailServiceBenchmark {
+    private static final int SUBSCRIBERS = 100;
+
+    private MailService mailService;
+    private JCUser[] subscribers;
+    private Topic topic;
+    private int nextSubscriber;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.bindRequest();
+        JCommuneProperty.SENDING_NOTIFICATIONS_ENABLED.setDefaultValue("true");
+        mailService = new MailService(new JavaMailSenderImpl(), "forum@jtalks.org", velocityEngine(),
+                messageSource(), JCommuneProperty.SENDING_NOTIFICATIONS_ENABLED, new EscapeTool(),
+                new TopicUrlConverter(), BenchmarkEnvironment.mailQueueService());
+        mailService.init();
+        subscribers = new JCUser[SUBSCRIBERS];
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            subscribers[i] = new JCUser("subscriber " + i, "subscriber" + i + "@jtalks.org", "password");
+        }
+        Branch branch = new Branch("Performance", "Everything about performance");
+        branch.setId(1);
+        topic = new Topic(subscribers[0], "How to send mails to all the subscribers fast");
+        topic.setId(1);
+        branch.addTopic(topic);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkEnvironment.unbindRequest();
+    }
+
+    @Benchmark
+    public void topicMovedMailToOneOfSubscribers() {
+        mailService.sendTopicMovedMail(nextSubscriber(), topic, "admin");
+    }
+
+    @Benchmark
+    public void userMentionedMail() {
+        mailService.sendUserMentionedNotification(nextSubscriber(), topic.getId());
+    }
+
+    private JCUser nextSubscriber() {
+        nextSubscriber = (nextSubscriber + 1) % SUBSCRIBERS;
+        return subscribers[nextSubscriber];
+    }
+
+    /**
+     * @return engine configured the same way it's configured in the application context
+     */
+    private VelocityEngine velocityEngine() {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty("resource.loader", "class");
+        engine.setProperty("runtime.log.logsystem.class", "org.apache.velocity.runtime.log.NullLogSystem");
+        engine.setProperty("class.resource.loader.class",
+                "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+        engine.setProperty("class.resource.loader.cache", "true");
+        engine.setProperty("class.resource.loader.modificationCheckInterval", "0");
+        engine.init();
+        return engine;
+    }
+
+    private ReloadableResourceBundleMessageSource messageSource() {
+        ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
+        messageSource.setBasename("classpath:/org/jtalks/jcommune/service/bundle/TemplatesMessages");
+        messageSource.setDefaultEncoding("UTF-8");
+        return messageSource;
+    }
+
+    /**
+     * Builds urls of usual topics without asking plugins, plugins are not loaded in benchmarks.
+     */
+    private static class TopicUrlConverter extends EntityToDtoConverter {
+        private TopicUrlConverter() {
+            super(null);
+        }
+
+        @Override
+        public TopicDto convertTopicToDto(Topic topic) {
+            TopicDto dto = new TopicDto(topic);
+            dto.setTopicUrl(PREFIX + topic.getId());
+            return dto;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.jtalks.jcommune.model.dao.UserDao;
+import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures processing of mentioned users which is done for each post on each page view by
+ * {@link org.jtalks.jcommune.service.bb2htmlprocessors.BbUserPreprocessor}. Users are found in memory, so the results
+ * don't include the time of database queries, only the number of lookups changes it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MentionedUsersBenchmark {
+    @Param
+    public PostCorpus post;
+
+    private UserDao userDao;
+    private String content;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.bindRequest(post);
+        userDao = BenchmarkEnvironment.userDao();
+        content = post.getContent();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkEnvironment.unbindRequest();
+    }
+
+    @Benchmark
+    public Set<String> extractAllMentionedUsers() {
+        return MentionedUsers.parse(content).extractAllMentionedUsers(content);
+    }
+
+    @Benchmark
+    public String getTextWithProcessedUserTags() {
+        return MentionedUsers.parse(content).getTextWithProcessedUserTags(userDao);
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.jtalks.jcommune.model.entity.Post;
+
+/**
+ * Kinds of posts the benchmarks are run over. Contents are generated rather than taken from a real forum, but they
+ * contain the same BB-codes real posts do: quotes, lists with not closed items, links to our and foreign sites, images
+ * and mentioned users, both existing (see {@link BenchmarkEnvironment#EXISTING_USERS}) and not.
+ */
+public enum PostCorpus {
+    /** Typical reply: a quote of the previous post and a couple of sentences */
+    SHORT_REPLY {
+        @Override
+        String createContent() {
+            return "[quote=\"admin\"]Does anybody know how to configure it?[/quote]\n"
+                    + "Thanks [user]admin[/user], it works now! I followed "
+                    + "[url=http://jtalks.org/topics/1]this topic[/url] and "
+                    + "[url=http://docs.oracle.com/javase/7/docs/api/]javadocs[/url].";
+        }
+    },
+    /** The longest post user can create, consists of paragraphs with all kinds of BB-codes */
+    MAX_LENGTH_POST {
+        @Override
+        String createContent() {
+            StringBuilder content = new StringBuilder(Post.MAX_LENGTH);
+            int paragraph = 0;
+            String next = paragraph(paragraph);
+            while (content.length() + next.length() <= Post.MAX_LENGTH) {
+                content.append(next);
+                next = paragraph(++paragraph);
+            }
+            return content.toString();
+        }
+
+        private String paragraph(int number) {
+            return "[b]Part " + number + "[/b]. As [user]" + mentionedUser(number) + "[/user] said, "
+                    + "[i]everything should be measured[/i]. Details are [url=http://jtalks.org/topics/" + number
+                    + "]here[/url] and [url=http://example.com/articles/" + number + "?page=2]there[/url].\n"
+                    + "[list][*][color=#FF0000]first[/color] point[*]second point [img]http://example.com/images/"
+                    + number + ".png[/img][*][u]third[/u] point[/list]\n";
+        }
+    },
+    /** Quotes of quotes with lists with not closed items inside, the worst case for pre-processors */
+    NESTED_QUOTES_AND_LISTS {
+        @Override
+        String createContent() {
+            StringBuilder content = new StringBuilder();
+            for (int level = 0; level < QUOTES_DEPTH; level++) {
+                content.append("[quote=\"").append(mentionedUser(level)).append("\"]Level ").append(level)
+                        .append(" [user]").append(mentionedUser(level)).append("[/user]\n[list=1][*]item ")
+                        .append(level).append("[*]nested:");
+            }
+            for (int level = QUOTES_DEPTH - 1; level >= 0; level--) {
+                content.append("[list][*]last item of [url=http://example.com/").append(level)
+                        .append("]level ").append(level).append("[/url][/list][/list][/quote]\n");
+            }
+            return content.toString();
+        }
+    },
+    /** Code review, all its content is wrapped with [code=java] and the code itself contains [/code] */
+    CODE_REVIEW {
+        @Override
+        String createContent() {
+            StringBuilder content = new StringBuilder("[code=java]public class Converter {\n");
+            for (int method = 0; method < CODE_REVIEW_METHODS; method++) {
+                content.append("    /** Converts [code] into <pre> */\n")
+                        .append("    public String convert").append(method).append("(String text) {\n")
+                        .append("        if (text.contains(\"[/code]\") && text.length() > ").append(method)
+                        .append(") {\n")
+                        .append("            return text.replace(\"[/code]\", \"</pre>\");\n")
+                        .append("        }\n")
+                        .append("        return \"<a href='http://example.com/\" + text + \"'>\" + text;\n")
+                        .append("    }\n");
+            }
+            return content.append("}[/code]").toString();
+        }
+
+        @Override
+        public boolean isCodeReview() {
+            return true;
+        }
+    };
+
+    private static final int QUOTES_DEPTH = 20;
+    private static final int CODE_REVIEW_METHODS = 60;
+
+    private String content;
+
+    /**
+     * @return BB-encoded content of the post, the same instance is returned on each call
+     */
+    public synchronized String getContent() {
+        if (content == null) {
+            content = createContent();
+        }
+        return content;
+    }
+
+    /**
+     * @return whether the post is the first post of code review topic, such posts are processed differently
+     */
+    public boolean isCodeReview() {
+        return false;
+    }
+
+    abstract String createContent();
+
+    private static String mentionedUser(int number) {
+        return number % 3 == 0
+                ? "not existing user " + number
+                : BenchmarkEnvironment.EXISTING_USERS[number % BenchmarkEnvironment.EXISTING_USERS.length];
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a forum of the given number of posts straight into the database, bypassing the search index, so that
+ * indexing can be measured separately. Half of the topics are written in English and half in Russian. Words are taken
+ * from small vocabularies with a skewed distribution, the way real texts have a few very frequent words and a long
+ * tail of rare ones, and Russian words are written in different forms, so that stemming is exercised. Contents are
+ * the same for the same number of posts.
+ */
+public class SyntheticForum {
+    /** Number of posts in each topic */
+    public static final int POSTS_PER_TOPIC = 20;
+    private static final int BRANCH_COUNT = 10;
+    private static final int USER_COUNT = 100;
+    private static final int ROWS_PER_TRANSACTION = 1000;
+    private static final long SEED = 42;
+
+    /**
+     * Language of the topic titles and post contents.
+     */
+    public enum Language {
+        ENGLISH(new String[]{""}, "search", "index", "forum", "topic", "post", "java", "spring", "hibernate",
+                "query", "performance", "memory", "thread", "server", "database", "cache", "lucene", "analyzer",
+                "request", "response", "user", "branch", "page", "error", "exception", "configuration", "deploy",
+                "release", "version", "update", "plugin", "mail", "notification", "permission", "group", "moderator",
+                "benchmark", "latency", "throughput", "garbage", "collector", "heap", "stack", "transaction", "lock",
+                "connection", "pool", "session", "mapping", "entity", "document", "field", "token", "filter"),
+        RUSSIAN(new String[]{"", "а", "у", "ом", "е", "ы", "ов"}, "поиск", "индекс", "форум", "ответ", "вопрос",
+                "сервер", "запрос", "пользовател", "раздел", "сообщени", "ошибк", "настройк", "верси", "обновлени",
+                "плагин", "письм", "уведомлени", "прав", "групп", "модератор", "тест", "замер", "задержк", "памят",
+                "поток", "транзакци", "блокировк", "соединени", "сесси", "документ", "пол", "фильтр", "кэш",
+                "конфигураци", "проект", "код", "класс", "метод", "библиотек", "производительност");
+
+        private final String[] endings;
+        private final String[] stems;
+
+        Language(String[] endings, String... stems) {
+            this.endings = endings;
+            this.stems = stems;
+        }
+
+        /**
+         * @param random source of randomness
+         * @return a word of the language, frequent words are returned much more often than rare ones
+         */
+        public String word(Random random) {
+            double skewed = Math.pow(random.nextDouble(), 3);
+            return stems[(int) (skewed * stems.length)] + endings[random.nextInt(endings.length)];
+        }
+
+        private String words(Random random, int count) {
+            StringBuilder words = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    words.append(' ');
+                }
+                words.append(word(random));
+            }
+            return words.toString();
+        }
+    }
+
+    private final SessionFactory sessionFactory;
+    private final int postCount;
+    private final Random random = new Random(SEED);
+    private final List<Long> branchIds = new ArrayList<>();
+
+    /**
+     * @param sessionFactory to write the forum to the database
+     * @param postCount      number of posts to be generated, rounded up to the whole topics
+     */
+    public SyntheticForum(SessionFactory sessionFactory, int postCount) {
+        this.sessionFactory = sessionFactory;
+        this.postCount = postCount;
+    }
+
+    /**
+     * Writes the forum to the database. Entities are inserted with a stateless session, so neither the search index
+     * nor the second level cache sees them.
+     */
+    public void generate() {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            List<JCUser> users = new ArrayList<>(USER_COUNT);
+            for (int i = 0; i < USER_COUNT; i++) {
+                JCUser user = new JCUser("user" + i, "user" + i + "@jtalks.org", "password");
+                session.insert(user);
+                users.add(user);
+            }
+            List<Branch> branches = new ArrayList<>(BRANCH_COUNT);
+            for (int i = 0; i < BRANCH_COUNT; i++) {
+                Branch branch = new Branch("branch " + i, "description " + i);
+                session.insert(branch);
+                branches.add(branch);
+                branchIds.add(branch.getId());
+            }
+            transaction.commit();
+            transaction = session.beginTransaction();
+            int rowsInTransaction = 0;
+            for (int generatedPosts = 0; generatedPosts < postCount; generatedPosts += POSTS_PER_TOPIC) {
+                Language language = random.nextBoolean() ? Language.ENGLISH : Language.RUSSIAN;
+                Topic topic = new Topic(users.get(random.nextInt(USER_COUNT)),
+                        language.words(random, 3 + random.nextInt(4)), "Discussion");
+                topic.setBranch(branches.get(random.nextInt(BRANCH_COUNT)));
+                session.insert(topic);
+                for (int i = 0; i < POSTS_PER_TOPIC; i++) {
+                    Post post = new Post(users.get(random.nextInt(USER_COUNT)), postContent(language));
+                    topic.addPost(post);
+                    session.insert(post);
+                }
+                rowsInTransaction += POSTS_PER_TOPIC + 1;
+                if (rowsInTransaction >= ROWS_PER_TRANSACTION) {
+                    transaction.commit();
+                    transaction = session.beginTransaction();
+                    rowsInTransaction = 0;
+                }
+            }
+            transaction.commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * @return ids of the generated branches, all of them are allowed to the user searching the forum
+     */
+    public List<Long> getBranchIds() {
+        return Collections.unmodifiableList(branchIds);
+    }
+
+    /**
+     * Content of a post: a few sentences, some of them with BB-codes, which are not indexed.
+     */
+    private String postContent(Language language) {
+        int sentences = 2 + random.nextInt(6);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            String sentence = language.words(random, 5 + random.nextInt(10));
+            switch (random.nextInt(8)) {
+                case 0:
+                    content.append("[b]").append(sentence).append("[/b]");
+                    break;
+                case 1:
+                    content.append("[quote=\"user").append(random.nextInt(USER_COUNT)).append("\"]")
+                            .append(sentence).append("[/quote]");
+                    break;
+                default:
+                    content.append(sentence);
+            }
+            content.append(". ");
+        }
+        return content.toString();
+    }
+}
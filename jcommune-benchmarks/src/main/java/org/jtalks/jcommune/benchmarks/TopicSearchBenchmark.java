@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.benchmarks;
+
+import org.hibernate.SessionFactory;
+import org.jtalks.jcommune.model.dao.search.hibernate.TopicHibernateSearchDao;
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how search scales with the size of the forum: a synthetic forum of {@link #postCount} posts is generated
+ * into embedded HSQLDB, indexed to the file system the same way the index is rebuilt in production and searched in
+ * English and in Russian, whose fields are analyzed with Snowball stemmers. Query latency percentiles are reported
+ * by the sample time mode, indexing throughput and index size are printed once the index is built.
+ * <p/>
+ * The benchmark has its own {@link #DATASOURCE_PROPERTIES} which also switch off the cache of search results,
+ * otherwise the cache would be measured instead of the index. The forum is generated for each number of posts, which
+ * takes hours for 10M posts, so smaller forums can be chosen with <code>-p postCount=10000,100000</code>. Database
+ * and index are written to {@link #BENCHMARK_DIR} and removed after each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TopicSearchBenchmark {
+    /** Used by the DAO context instead of datasource.properties of the application */
+    private static final String DATASOURCE_PROPERTIES =
+            "classpath:/org/jtalks/jcommune/benchmarks/search-benchmark.properties";
+    /** Has to be the same as in {@link #DATASOURCE_PROPERTIES} */
+    private static final File BENCHMARK_DIR = new File("target/search-benchmark");
+    private static final File INDEX_DIR = new File(BENCHMARK_DIR, "index");
+    /** The same as the default batch of the index rebuilding */
+    private static final int INDEXING_BATCH_SIZE = 100;
+    private static final int REINDEXED_TOPICS = 10;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int postCount;
+
+    private ClassPathXmlApplicationContext context;
+    private TransactionTemplate transactionTemplate;
+    private TopicHibernateSearchDao searchDao;
+    private List<Long> allowedBranchIds;
+    private long firstTopicId;
+    private long lastTopicId;
+    private final Random random = new Random();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        deleteRecursively(BENCHMARK_DIR);
+        System.setProperty("JCOMMUNE_DATASOURCE_PROPERTIES", DATASOURCE_PROPERTIES);
+        context = new ClassPathXmlApplicationContext(
+                "classpath:/org/jtalks/jcommune/model/entity/applicationContext-dao.xml");
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        searchDao = context.getBean(TopicHibernateSearchDao.class);
+        SyntheticForum forum = new SyntheticForum(context.getBean(SessionFactory.class), postCount);
+        forum.generate();
+        allowedBranchIds = new ArrayList<>(forum.getBranchIds());
+        buildIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        deleteRecursively(BENCHMARK_DIR);
+    }
+
+    @Benchmark
+    public Page<Topic> searchTopicsInEnglish() {
+        return searchTopics(SyntheticForum.Language.ENGLISH);
+    }
+
+    @Benchmark
+    public Page<Topic> searchTopicsInRussian() {
+        return searchTopics(SyntheticForum.Language.RUSSIAN);
+    }
+
+    @Benchmark
+    public Page<FoundPost> searchPostsInEnglish() {
+        return searchPosts(SyntheticForum.Language.ENGLISH);
+    }
+
+    @Benchmark
+    public Page<FoundPost> searchPostsInRussian() {
+        return searchPosts(SyntheticForum.Language.RUSSIAN);
+    }
+
+    /**
+     * Updates documents of a few random topics and their posts, the way they are updated when topics are moved,
+     * shows the price of an index commit for the index of the given size.
+     */
+    @Benchmark
+    public void reindexTopics() {
+        List<Long> topicIds = new ArrayList<>(REINDEXED_TOPICS);
+        for (int i = 0; i < REINDEXED_TOPICS; i++) {
+            topicIds.add(firstTopicId + (long) (random.nextDouble() * (lastTopicId - firstTopicId + 1)));
+        }
+        indexTopics(topicIds);
+    }
+
+    private Page<Topic> searchTopics(final SyntheticForum.Language language) {
+        return transactionTemplate.execute(new TransactionCallback<Page<Topic>>() {
+            @Override
+            public Page<Topic> doInTransaction(TransactionStatus status) {
+                return searchDao.searchByTitleAndContent(phrase(language), new PageRequest("1", PAGE_SIZE),
+                        allowedBranchIds);
+            }
+        });
+    }
+
+    private Page<FoundPost> searchPosts(final SyntheticForum.Language language) {
+        return transactionTemplate.execute(new TransactionCallback<Page<FoundPost>>() {
+            @Override
+            public Page<FoundPost> doInTransaction(TransactionStatus status) {
+                return searchDao.searchPostsByContent(phrase(language), new PageRequest("1", PAGE_SIZE),
+                        allowedBranchIds);
+            }
+        });
+    }
+
+    /**
+     * @return one or two words, users rarely search for more
+     */
+    private String phrase(SyntheticForum.Language language) {
+        String phrase = language.word(random);
+        return random.nextBoolean() ? phrase : phrase + " " + language.word(random);
+    }
+
+    /**
+     * Indexes all the topics batch by batch the same way the index is rebuilt and prints how fast it was and how
+     * large the index is.
+     */
+    private void buildIndex() {
+        long start = System.nanoTime();
+        long lastIndexedTopicId = 0;
+        List<Long> topicIds = getTopicIdsToIndex(lastIndexedTopicId);
+        firstTopicId = topicIds.get(0);
+        while (!topicIds.isEmpty()) {
+            indexTopics(topicIds);
+            lastIndexedTopicId = topicIds.get(topicIds.size() - 1);
+            topicIds = getTopicIdsToIndex(lastIndexedTopicId);
+        }
+        lastTopicId = lastIndexedTopicId;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%n# %d posts indexed in %.1f s, %.0f posts/s, index size is %.1f MB%n",
+                postCount, seconds, postCount / seconds, sizeOf(INDEX_DIR) / (1024.0 * 1024.0));
+    }
+
+    private List<Long> getTopicIdsToIndex(final long lastIndexedTopicId) {
+        return transactionTemplate.execute(new TransactionCallback<List<Long>>() {
+            @Override
+            public List<Long> doInTransaction(TransactionStatus status) {
+                return searchDao.getTopicIdsToIndex(lastIndexedTopicId, INDEXING_BATCH_SIZE);
+            }
+        });
+    }
+
+    private void indexTopics(final List<Long> topicIds) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                searchDao.indexTopics(topicIds);
+            }
+        });
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
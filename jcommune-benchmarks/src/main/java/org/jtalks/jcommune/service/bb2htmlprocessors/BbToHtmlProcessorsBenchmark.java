@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+import org.jtalks.jcommune.benchmarks.BenchmarkEnvironment;
+import org.jtalks.jcommune.benchmarks.PostCorpus;
+import org.kefirsf.bb.BBProcessorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each pre- and post-processor of BB-codes to HTML conversion separately. The benchmark is in the same
+ * package as processors because {@link ListItemsProcessor} is package private. Post-processors are given HTML
+ * converted by KefirBB beforehand, as they get it in real conversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BbToHtmlProcessorsBenchmark {
+    @Param
+    public PostCorpus post;
+
+    private final BBCodeListPreprocessor listPreprocessor = new BBCodeListPreprocessor();
+    private final BbCodeReviewProcessor codeReviewProcessor = new BbCodeReviewProcessor();
+    private final BBForeignLinksPostprocessor foreignLinksPostprocessor = new BBForeignLinksPostprocessor();
+    private String content;
+    private String html;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.bindRequest(post);
+        content = post.getContent();
+        html = BBProcessorFactory.getInstance().create().process(content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkEnvironment.unbindRequest();
+    }
+
+    @Benchmark
+    public String listPreprocessor() {
+        return listPreprocessor.process(content);
+    }
+
+    @Benchmark
+    public StringBuilder listItemsProcessor() {
+        return new ListItemsProcessor(content).getTextWithClosedTags();
+    }
+
+    /**
+     * Code review processor is both pre- and post-processor and the post-processing depends on what was found during
+     * pre-processing, so they are measured together. For posts which are not code reviews it shows the price of the
+     * checks only.
+     */
+    @Benchmark
+    public String codeReviewProcessor() {
+        return codeReviewProcessor.postProcess(codeReviewProcessor.process(content));
+    }
+
+    @Benchmark
+    public String foreignLinksPostprocessor() {
+        return foreignLinksPostprocessor.postProcess(html);
+    }
+}
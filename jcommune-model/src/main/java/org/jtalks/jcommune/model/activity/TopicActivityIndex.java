@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.activity;
+
+import org.jtalks.jcommune.model.dto.TopicActivity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Topics of each branch ordered by the time they got their last posts, newest first. User has unread posts in the
+ * branch if one of the topics which got posts after the user marked the branch as read has a post the user didn't
+ * read, so checking the branch takes only the topics read since the mark and stops at the first unread one.<br/>
+ * The index is filled by {@link #load(Collection)} on the first use and is kept up to date by
+ * {@link TopicActivityListener}. Listener sees changes made by this application instance only, so changes made by
+ * other instances sharing the database are applied by {@link #merge(Collection)} and, for removed topics, by
+ * {@link #startReload()} and {@link #finishReload(Collection)}. Topics are read without locks, changes are serialized.
+ */
+public class TopicActivityIndex {
+    /** Newer posts first, topics with posts created at the same time are ordered by ids */
+    private static final Comparator<TopicActivity> NEWEST_FIRST = new Comparator<TopicActivity>() {
+        @Override
+        public int compare(TopicActivity first, TopicActivity second) {
+            if (first.getLastPostTime() != second.getLastPostTime()) {
+                return first.getLastPostTime() > second.getLastPostTime() ? -1 : 1;
+            }
+            if (first.getTopicId() != second.getTopicId()) {
+                return first.getTopicId() < second.getTopicId() ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private final ConcurrentMap<Long, TopicActivity> topics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, NavigableSet<TopicActivity>> branches = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    /** Ids of the topics changed while the index is being reloaded, null if it's not being reloaded */
+    private Set<Long> changedDuringReload;
+
+    /**
+     * @return whether the index was filled with the topics stored in the database
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Fills the index with the topics stored in the database. Topics which were changed while they were read from the
+     * database are already in the index with the newer data, so they are kept as they are.
+     *
+     * @param activities last posts of all the topics
+     */
+    public synchronized void load(Collection<TopicActivity> activities) {
+        for (TopicActivity activity : activities) {
+            if (!topics.containsKey(activity.getTopicId())) {
+                put(activity);
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * @param branchId id of the branch
+     * @param time     time in milliseconds
+     * @return topics of the branch which got posts at the given time or later, newest first, the view reflects
+     *         changes made while it's iterated
+     */
+    public Iterable<TopicActivity> getTopicsWithPostsSince(long branchId, long time) {
+        NavigableSet<TopicActivity> branchTopics = branches.get(branchId);
+        if (branchTopics == null) {
+            return Collections.emptySet();
+        }
+        return branchTopics.headSet(new TopicActivity(Long.MAX_VALUE, branchId, time), false);
+    }
+
+    /**
+     * Moves the topic up in its branch if the post is the latest one in the topic.
+     *
+     * @param topicId  id of the topic the post was added to
+     * @param branchId id of the branch of the topic
+     * @param postTime creation time of the post in milliseconds
+     */
+    public synchronized void postAdded(long topicId, long branchId, long postTime) {
+        changed(topicId);
+        TopicActivity previous = topics.get(topicId);
+        if (previous == null || previous.getBranchId() != branchId || previous.getLastPostTime() < postTime) {
+            put(new TopicActivity(topicId, branchId, postTime));
+        }
+    }
+
+    /**
+     * Replaces the topic with the new data, e.g. when its last post was removed.
+     *
+     * @param activity new last post of the topic
+     */
+    public synchronized void update(TopicActivity activity) {
+        changed(activity.getTopicId());
+        put(activity);
+    }
+
+    /**
+     * Moves the topic to another branch, its last post stays the same. Topics not known to the index are ignored,
+     * they get to the index with their posts.
+     *
+     * @param topicId  id of the topic
+     * @param branchId id of the new branch of the topic
+     */
+    public synchronized void moveTopic(long topicId, long branchId) {
+        changed(topicId);
+        TopicActivity previous = topics.get(topicId);
+        if (previous != null && previous.getBranchId() != branchId) {
+            put(new TopicActivity(topicId, branchId, previous.getLastPostTime()));
+        }
+    }
+
+    /**
+     * @param topicId id of the removed topic
+     */
+    public synchronized void removeTopic(long topicId) {
+        changed(topicId);
+        remove(topicId);
+    }
+
+    /**
+     * Applies the topics changed in the database, e.g. by other application instances. A topic is moved up only if
+     * it got a newer post, or to another branch.
+     *
+     * @param activities last posts of the changed topics
+     */
+    public synchronized void merge(Collection<TopicActivity> activities) {
+        for (TopicActivity activity : activities) {
+            postAdded(activity.getTopicId(), activity.getBranchId(), activity.getLastPostTime());
+        }
+    }
+
+    /**
+     * Starts tracking the topics changed by this application instance, so that {@link #finishReload(Collection)}
+     * doesn't replace them with the data read from the database before the changes.
+     */
+    public synchronized void startReload() {
+        changedDuringReload = new HashSet<>();
+    }
+
+    /**
+     * Replaces the content of the index with the topics stored in the database, except for the ones changed since
+     * {@link #startReload()}. Topics removed from the database, e.g. by other application instances, are removed from
+     * the index.
+     *
+     * @param activities last posts of all the topics read after {@link #startReload()}
+     */
+    public synchronized void finishReload(Collection<TopicActivity> activities) {
+        Set<Long> changed = changedDuringReload == null ? Collections.<Long>emptySet() : changedDuringReload;
+        changedDuringReload = null;
+        Set<Long> storedTopicIds = new HashSet<>();
+        for (TopicActivity activity : activities) {
+            storedTopicIds.add(activity.getTopicId());
+            TopicActivity previous = topics.get(activity.getTopicId());
+            //unchanged topics are not re-added, so that they don't disappear from the branches being read
+            boolean stale = previous == null || previous.getBranchId() != activity.getBranchId()
+                    || previous.getLastPostTime() != activity.getLastPostTime();
+            if (stale && !changed.contains(activity.getTopicId())) {
+                put(activity);
+            }
+        }
+        for (Long topicId : new HashSet<>(topics.keySet())) {
+            if (!storedTopicIds.contains(topicId) && !changed.contains(topicId)) {
+                remove(topicId);
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * @return number of topics in the index
+     */
+    public int size() {
+        return topics.size();
+    }
+
+    private void changed(long topicId) {
+        if (changedDuringReload != null) {
+            changedDuringReload.add(topicId);
+        }
+    }
+
+    private void remove(long topicId) {
+        TopicActivity previous = topics.remove(topicId);
+        if (previous != null) {
+            branches.get(previous.getBranchId()).remove(previous);
+        }
+    }
+
+    private void put(TopicActivity activity) {
+        remove(activity.getTopicId());
+        NavigableSet<TopicActivity> branchTopics = branches.get(activity.getBranchId());
+        if (branchTopics == null) {
+            branchTopics = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+            branches.put(activity.getBranchId(), branchTopics);
+        }
+        branchTopics.add(activity);
+        topics.put(activity.getTopicId(), activity);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.activity;
+
+import org.hibernate.Hibernate;
+import org.hibernate.event.PostDeleteEvent;
+import org.hibernate.event.PostDeleteEventListener;
+import org.hibernate.event.PostInsertEvent;
+import org.hibernate.event.PostInsertEventListener;
+import org.hibernate.event.PostUpdateEvent;
+import org.hibernate.event.PostUpdateEventListener;
+import org.jtalks.jcommune.model.dto.TopicActivity;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+
+/**
+ * Listens to the committed changes of topics and posts and applies them to {@link TopicActivityIndex}. Should be
+ * registered for post-commit events of the session factory, so that the index never has posts which were rolled
+ * back.
+ */
+public class TopicActivityListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+    private final transient TopicActivityIndex activityIndex;
+
+    /**
+     * @param activityIndex index to be kept up to date
+     */
+    public TopicActivityListener(TopicActivityIndex activityIndex) {
+        this.activityIndex = activityIndex;
+    }
+
+    /**
+     * Moves the topic of the new post up in its branch.
+     */
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Post) {
+            Post post = (Post) event.getEntity();
+            Topic topic = post.getTopic();
+            if (topic != null && topic.getBranch() != null) {
+                activityIndex.postAdded(topic.getId(), topic.getBranch().getId(), post.getCreationDate().getMillis());
+            }
+        }
+    }
+
+    /**
+     * Takes the last post of the topic if its posts are loaded, e.g. because one of them was removed, otherwise only
+     * the branch of the topic may change.
+     */
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Topic)) {
+            return;
+        }
+        Topic topic = (Topic) event.getEntity();
+        if (topic.getBranch() == null) {
+            activityIndex.removeTopic(topic.getId());
+        } else if (Hibernate.isInitialized(topic.getPosts()) && !topic.getPosts().isEmpty()) {
+            activityIndex.update(new TopicActivity(topic.getId(), topic.getBranch().getId(),
+                    topic.getLastPost().getCreationDate().getMillis()));
+        } else {
+            activityIndex.moveTopic(topic.getId(), topic.getBranch().getId());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Topic) {
+            activityIndex.removeTopic(((Topic) event.getEntity()).getId());
+        }
+    }
+}
@@ -19,6 +19,9 @@ import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.BranchReadedMarker;
 import org.jtalks.jcommune.model.entity.JCUser;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * DAO for {@link BranchReadedMarker}
  *
@@ -47,4 +50,14 @@ public interface BranchReadedMarkerDao extends Crud<BranchReadedMarker> {
      *          or null if marker not exist
      */
     BranchReadedMarker getMarkerFor(JCUser user, Branch branch);
+
+    /**
+     * Gets markers for specified user on several branches at once, e.g. on all the branches of a page of topics
+     *
+     * @param user user to find marks
+     * @param branches intrested branches
+     *
+     * @return markers for specified user on those of the branches which were marked as read
+     */
+    List<BranchReadedMarker> getMarkersFor(JCUser user, Collection<Branch> branches);
 }
@@ -14,12 +14,16 @@
  */
 package org.jtalks.jcommune.model.dao;
 
+import com.google.common.collect.Table;
+import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.Crud;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.LastReadPost;
 import org.jtalks.jcommune.model.entity.Topic;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface allows to make basic CRUD operations with the
@@ -57,6 +61,28 @@ public interface LastReadPostDao extends Crud<LastReadPost> {
      */
     List<LastReadPost> getLastReadPosts(JCUser forWhom, List<Topic> sourceTopics);
 
+    /**
+     * Gets creation dates of the last read posts of user in all the topics of the branches at once, so that topics
+     * themselves are not loaded. Only posts created at or after the given time are taken, earlier ones can't make a
+     * topic with posts since that time read.
+     *
+     * @param forWhom   user to find the last read posts of
+     * @param branchIds ids of the branches to find the last read posts in
+     * @param since     time the last read posts are created at or after
+     * @return creation dates of the last read posts by ids of the topics, topics user didn't read are absent
+     */
+    Map<Long, DateTime> getLastReadPostDatesInBranches(JCUser forWhom, Collection<Long> branchIds, DateTime since);
+
+    /**
+     * Saves last read posts of several users at once with two JDBC batches: one for records which exist and one for
+     * records to be created. Existing records are only moved forward, a date earlier than the stored one is ignored.
+     * Dates of the topics which are already removed are ignored as well. Only the updated records are evicted from the
+     * second level cache. The number of dates should be limited by the caller, they are written in one transaction.
+     *
+     * @param dates creation dates of the last read posts by ids of users (rows) and topics (columns)
+     */
+    void saveLastReadPostDates(Table<Long, Long, DateTime> dates);
+
     /**
      * Delete all last read post records for given user.
      * 
@@ -64,4 +90,15 @@ public interface LastReadPostDao extends Crud<LastReadPost> {
      *        an information about last read post
      */
     void deleteLastReadPostsFor(JCUser user);
+
+    /**
+     * Deletes records of the user made before the user marked the whole forum as read, they
+     * don't tell anything since the mark. Only a limited number of records is deleted at once,
+     * so that heavy readers don't lock the table for long.
+     *
+     * @param userId   id of the user to delete records of
+     * @param maxCount maximum number of records to delete
+     * @return number of deleted records, less than maxCount means there are no such records left
+     */
+    int deleteStaleLastReadPosts(long userId, int maxCount);
 }
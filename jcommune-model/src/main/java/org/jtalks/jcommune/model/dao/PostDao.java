@@ -22,6 +22,7 @@ import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.springframework.data.domain.Page;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -87,4 +88,20 @@ public interface PostDao extends Crud<Post> {
      */
     void changeRating(Long postId, int changes);
 
+    /**
+     * Gets ids of the posts whose content may mention the user: contains one of the given names followed by a closing
+     * user tag. All the posts mentioning the user are returned, though some of the returned posts may not mention it.
+     *
+     * @param namesInTags the ways the name of the user may be written in user tags of posts
+     * @return ids of the posts
+     */
+    List<Long> getIdsOfPostsMentioning(Collection<String> namesInTags);
+
+    /**
+     * Marks HTML stored in the posts as outdated, so it's rendered again the next time the posts are shown.
+     *
+     * @param postIds ids of the posts
+     */
+    void dropRenderedContent(Collection<Long> postIds);
+
 }
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao;
+
+import org.jtalks.common.model.dao.Crud;
+import org.jtalks.jcommune.model.entity.QueuedMail;
+
+import java.util.List;
+
+/**
+ * DAO for the outbound mail queue.
+ *
+ * @see org.jtalks.jcommune.model.dao.hibernate.QueuedMailHibernateDao
+ */
+public interface QueuedMailDao extends Crud<QueuedMail> {
+
+    /**
+     * Gets the oldest mails whose time to be sent has come. Mails are locked till the end of the transaction, so they
+     * are not sent twice if several instances of the forum share the database.
+     *
+     * @param count maximum number of mails to get
+     * @return mails to be sent
+     */
+    List<QueuedMail> getMailsToSend(int count);
+
+    /**
+     * @return number of mails in the queue, including mails waiting for the next attempt
+     */
+    long getQueueSize();
+}
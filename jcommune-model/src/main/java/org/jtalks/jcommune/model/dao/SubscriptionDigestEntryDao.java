@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.Crud;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.SubscriptionDigestEntry;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * DAO for subscription updates waiting to be sent in digests.
+ *
+ * @see org.jtalks.jcommune.model.dao.hibernate.SubscriptionDigestEntryHibernateDao
+ */
+public interface SubscriptionDigestEntryDao extends Crud<SubscriptionDigestEntry> {
+
+    /**
+     * Counts more updates in the entry of the user about the entity, if there is such an entry.
+     *
+     * @param user      user the digest is sent to
+     * @param entityKey identifies the updated topic or branch
+     * @param count     number of updates to add
+     * @return number of updated entries, {@code 0} if the user has no entry about the entity yet
+     */
+    int addUpdates(JCUser user, String entityKey, int count);
+
+    /**
+     * @param user user the digest is sent to
+     * @return number of entries waiting to be sent to the user
+     */
+    long getEntriesCount(JCUser user);
+
+    /**
+     * Gets users whose oldest entry was created before the given time, the users waiting longest go first.
+     *
+     * @param createdBefore only users having entries created before this time are returned
+     * @param count         maximum number of users to get
+     * @return ids of users to send digests to
+     */
+    List<Long> getUsersToSendDigests(DateTime createdBefore, int count);
+
+    /**
+     * Gets all the entries of the users in the order they were created. Entries are locked till the end of the
+     * transaction, so a digest is not sent twice if several instances of the forum share the database.
+     *
+     * @param userIds ids of users the digests are sent to
+     * @return entries of the users
+     */
+    List<SubscriptionDigestEntry> getEntriesToSend(Collection<Long> userIds);
+}
@@ -18,6 +18,7 @@ import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.Crud;
 import org.jtalks.common.model.entity.Branch;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicActivity;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.SubscriptionAwareEntity;
 import org.jtalks.jcommune.model.entity.Topic;
@@ -110,4 +111,20 @@ public interface TopicDao extends Crud<Topic> {
      * @return
      */
     List<Long> getAllowedBranchesIds(JCUser user);
+
+    /**
+     * Gets creation times of the last posts of all the topics, e.g. to find unread topics without querying them.
+     *
+     * @return last posts of all the topics which belong to branches
+     */
+    List<TopicActivity> getTopicActivities();
+
+    /**
+     * Gets creation times of the last posts of the topics modified since the given time, e.g. to apply posts added by
+     * other application instances.
+     *
+     * @param time time the topics were modified at or after
+     * @return last posts of the modified topics which belong to branches
+     */
+    List<TopicActivity> getTopicActivitiesModifiedSince(DateTime time);
 }
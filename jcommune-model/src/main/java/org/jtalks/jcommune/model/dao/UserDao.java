@@ -14,6 +14,7 @@
  */
 package org.jtalks.jcommune.model.dao;
 
+import org.joda.time.DateTime;
 import org.jtalks.common.model.entity.User;
 import org.jtalks.jcommune.model.entity.JCUser;
 
@@ -97,4 +98,13 @@ public interface UserDao extends org.jtalks.common.model.dao.UserDao<JCUser> {
      * @return the list of found user names
      */
     List<String> getUsernames(String pattern, int count);
+
+    /**
+     * Gets users who marked the whole forum as read after the given time, their records of
+     * last read posts made before the mark are not needed anymore.
+     *
+     * @param time time to find the later marks
+     * @return ids of the users
+     */
+    List<Long> getIdsOfUsersMarkedForumAsReadAfter(DateTime time);
 }
@@ -14,15 +14,31 @@
  */
 package org.jtalks.jcommune.model.dao.hibernate;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import org.hibernate.Cache;
 import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.jcommune.model.dao.LastReadPostDao;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.LastReadPost;
 import org.jtalks.jcommune.model.entity.Topic;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * The implementation of {@link LastReadPostDao} based on Hibernate ORM.
@@ -34,6 +50,10 @@ import java.util.List;
  */
 public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
         implements LastReadPostDao {
+    private static final String UPDATE_DATE_SQL = "UPDATE LAST_READ_POSTS SET LAST_READ_POST_DATE = ?"
+            + " WHERE USER_ID = ? AND TOPIC_ID = ? AND LAST_READ_POST_DATE < ?";
+    private static final String INSERT_SQL = "INSERT INTO LAST_READ_POSTS"
+            + "(UUID, USER_ID, TOPIC_ID, LAST_READ_POST_DATE) VALUES(?, ?, ?, ?)";
 
     /**
      * @param sessionFactory The SessionFactory.
@@ -79,6 +99,98 @@ public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
         return Collections.emptyList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, DateTime> getLastReadPostDatesInBranches(JCUser forWho, Collection<Long> branchIds,
+                                                              DateTime since) {
+        Map<Long, DateTime> dates = new HashMap<>();
+        if (!branchIds.isEmpty()) {
+            List<Object[]> rows = session().getNamedQuery("getLastReadPostDatesInBranchesForUser")
+                    .setParameterList("branchIds", branchIds)
+                    .setParameter("user", forWho)
+                    .setParameter("since", since)
+                    .list();
+            for (Object[] row : rows) {
+                dates.put((Long) row[0], (DateTime) row[1]);
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveLastReadPostDates(final Table<Long, Long, DateTime> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        // statements below go around the session, so they have to see topics and records saved in it
+        session().flush();
+        final Table<Long, Long, Long> existingRecords = HashBasedTable.create();
+        final Set<Long> existingTopics = new HashSet<>();
+        for (Object[] row : getLastReadPostsOfUsersInTopics(dates.rowKeySet(), dates.columnKeySet())) {
+            Long topicId = ((Number) row[0]).longValue();
+            existingTopics.add(topicId);
+            if (row[1] != null) {
+                existingRecords.put(((Number) row[1]).longValue(), topicId, ((Number) row[2]).longValue());
+            }
+        }
+        final List<Long> updatedRecords = new ArrayList<>();
+        session().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement update = connection.prepareStatement(UPDATE_DATE_SQL);
+                     PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+                    for (Table.Cell<Long, Long, DateTime> cell : dates.cellSet()) {
+                        Timestamp date = new Timestamp(cell.getValue().getMillis());
+                        Long recordId = existingRecords.get(cell.getRowKey(), cell.getColumnKey());
+                        if (recordId != null) {
+                            updatedRecords.add(recordId);
+                            update.setTimestamp(1, date);
+                            update.setLong(2, cell.getRowKey());
+                            update.setLong(3, cell.getColumnKey());
+                            update.setTimestamp(4, date);
+                            update.addBatch();
+                        } else if (existingTopics.contains(cell.getColumnKey())) {
+                            insert.setString(1, UUID.randomUUID().toString());
+                            insert.setLong(2, cell.getRowKey());
+                            insert.setLong(3, cell.getColumnKey());
+                            insert.setTimestamp(4, date);
+                            insert.addBatch();
+                        }
+                    }
+                    update.executeBatch();
+                    insert.executeBatch();
+                }
+            }
+        });
+        // inserted records can't be cached yet, so only the updated ones are evicted
+        Cache cache = session().getSessionFactory().getCache();
+        for (Long recordId : updatedRecords) {
+            cache.evictEntity(LastReadPost.class, recordId);
+        }
+    }
+
+    /**
+     * Finds which of the given topics still exist and which of them already have records of the given users.
+     *
+     * @param userIds  ids of the users to find records of
+     * @param topicIds ids of the topics to find records in
+     * @return existing topic id, id of the user who has a record in it and id of the record, ids of the user and
+     *         the record are {@code null} for topics without records of the given users
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> getLastReadPostsOfUsersInTopics(Set<Long> userIds, Set<Long> topicIds) {
+        return (List<Object[]>) session().getNamedQuery("getLastReadPostsOfUsersInTopics")
+                .setParameterList("users", userIds)
+                .setParameterList("topics", topicIds)
+                .list();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -88,4 +200,26 @@ public class LastReadPostHibernateDao extends GenericDao<LastReadPost>
                 .setParameter("user", user)
                 .executeUpdate();
     }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Records are checked again while they are deleted, so those moved forward in between are kept.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int deleteStaleLastReadPosts(long userId, int maxCount) {
+        List<Long> ids = session().getNamedQuery("getStaleLastReadPostsOfUser")
+                .setParameter("userId", userId)
+                .setMaxResults(maxCount)
+                .list();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        session().getNamedQuery("deleteStaleLastReadPosts")
+                .setParameterList("ids", ids)
+                .setParameter("userId", userId)
+                .executeUpdate();
+        return ids.size();
+    }
 }
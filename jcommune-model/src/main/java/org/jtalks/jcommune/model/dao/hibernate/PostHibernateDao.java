@@ -14,8 +14,12 @@
  */
 package org.jtalks.jcommune.model.dao.hibernate;
 
+import com.google.common.collect.Iterables;
 import org.hibernate.Query;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.jcommune.model.dao.PostDao;
 import org.jtalks.jcommune.model.dto.PageRequest;
@@ -26,6 +30,7 @@ import org.jtalks.jcommune.model.entity.Topic;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -39,6 +44,8 @@ import java.util.List;
  */
 public class PostHibernateDao extends GenericDao<Post> implements PostDao {
     private static final String TOPIC_PARAMETER_NAME = "topic";
+    /** Keeps IN lists of bulk updates within limits of the databases */
+    private static final int POSTS_PER_UPDATE = 1000;
 
     /**
      * @param sessionFactory The SessionFactory.
@@ -128,4 +135,33 @@ public class PostHibernateDao extends GenericDao<Post> implements PostDao {
                 .setParameter("postId", postId)
                 .executeUpdate();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Long> getIdsOfPostsMentioning(Collection<String> namesInTags) {
+        Disjunction mentions = Restrictions.disjunction();
+        for (String name : namesInTags) {
+            // wildcards in the name only widen the search, and user tags may contain other BB codes around the name
+            mentions.add(Restrictions.like("postContent", "%" + name + "%[/user]%"));
+        }
+        return (List<Long>) session().createCriteria(Post.class)
+                .add(mentions)
+                .setProjection(Projections.id())
+                .list();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dropRenderedContent(Collection<Long> postIds) {
+        for (List<Long> ids : Iterables.partition(postIds, POSTS_PER_UPDATE)) {
+            session().getNamedQuery("dropRenderedContent")
+                    .setParameterList("postIds", ids)
+                    .executeUpdate();
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.LockMode;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.hibernate.GenericDao;
+import org.jtalks.jcommune.model.dao.QueuedMailDao;
+import org.jtalks.jcommune.model.entity.QueuedMail;
+
+import java.util.List;
+
+/**
+ * Hibernate implementation of the outbound mail queue.
+ */
+public class QueuedMailHibernateDao extends GenericDao<QueuedMail> implements QueuedMailDao {
+
+    /**
+     * @param sessionFactory The SessionFactory.
+     */
+    public QueuedMailHibernateDao(SessionFactory sessionFactory) {
+        super(sessionFactory, QueuedMail.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<QueuedMail> getMailsToSend(int count) {
+        return session().getNamedQuery("getMailsToSend")
+                .setParameter("now", new DateTime())
+                .setLockMode("m", LockMode.PESSIMISTIC_WRITE)
+                .setMaxResults(count)
+                .list();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getQueueSize() {
+        return ((Number) session().getNamedQuery("getMailQueueSize").uniqueResult()).longValue();
+    }
+}
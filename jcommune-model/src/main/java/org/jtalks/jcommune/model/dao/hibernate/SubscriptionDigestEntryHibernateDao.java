@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.LockMode;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.common.model.dao.hibernate.GenericDao;
+import org.jtalks.jcommune.model.dao.SubscriptionDigestEntryDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.SubscriptionDigestEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hibernate implementation of the storage of subscription updates waiting to be sent in digests.
+ */
+public class SubscriptionDigestEntryHibernateDao extends GenericDao<SubscriptionDigestEntry>
+        implements SubscriptionDigestEntryDao {
+
+    /**
+     * @param sessionFactory The SessionFactory.
+     */
+    public SubscriptionDigestEntryHibernateDao(SessionFactory sessionFactory) {
+        super(sessionFactory, SubscriptionDigestEntry.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int addUpdates(JCUser user, String entityKey, int count) {
+        return session().getNamedQuery("addDigestEntryUpdates")
+                .setInteger("count", count)
+                .setParameter("user", user)
+                .setParameter("entityKey", entityKey)
+                .executeUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEntriesCount(JCUser user) {
+        return ((Number) session().getNamedQuery("getDigestEntriesCountOfUser")
+                .setParameter("user", user)
+                .uniqueResult()).longValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Long> getUsersToSendDigests(DateTime createdBefore, int count) {
+        List<Object[]> rows = session().getNamedQuery("getUsersWithDigestsToSend")
+                .setTimestamp("createdBefore", createdBefore.toDate())
+                .setMaxResults(count)
+                .list();
+        List<Long> userIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            userIds.add((Long) row[0]);
+        }
+        return userIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<SubscriptionDigestEntry> getEntriesToSend(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return session().getNamedQuery("getDigestEntriesOfUsers")
+                .setParameterList("userIds", userIds)
+                .setLockMode("e", LockMode.PESSIMISTIC_WRITE)
+                .list();
+    }
+}
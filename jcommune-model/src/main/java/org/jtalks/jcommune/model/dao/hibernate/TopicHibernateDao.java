@@ -27,6 +27,7 @@ import org.jtalks.common.model.entity.Branch;
 import org.jtalks.common.model.entity.Group;
 import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicActivity;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.SubscriptionAwareEntity;
 import org.jtalks.jcommune.model.entity.Topic;
@@ -297,4 +298,32 @@ public class TopicHibernateDao extends GenericDao<Topic> implements TopicDao {
         }
         return result;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<TopicActivity> getTopicActivities() {
+        return toTopicActivities(session().getNamedQuery("getTopicActivities").list());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<TopicActivity> getTopicActivitiesModifiedSince(DateTime time) {
+        return toTopicActivities(session().getNamedQuery("getTopicActivitiesModifiedSince")
+                .setParameter("since", time)
+                .list());
+    }
+
+    private List<TopicActivity> toTopicActivities(List<Object[]> rows) {
+        List<TopicActivity> activities = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            activities.add(new TopicActivity((Long) row[0], (Long) row[1], ((DateTime) row[2]).getMillis()));
+        }
+        return activities;
+    }
 }
@@ -16,6 +16,7 @@ package org.jtalks.jcommune.model.dao.hibernate;
 
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Restrictions;
+import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.hibernate.GenericDao;
 import org.jtalks.common.model.entity.User;
 import org.jtalks.jcommune.model.dao.UserDao;
@@ -129,4 +130,15 @@ public class UserHibernateDao extends GenericDao<JCUser>
                 .setMaxResults(count)
                 .list();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Long> getIdsOfUsersMarkedForumAsReadAfter(DateTime time) {
+        return session().getNamedQuery("getIdsOfUsersMarkedForumAsReadAfter")
+                .setParameter("time", time)
+                .list();
+    }
 }
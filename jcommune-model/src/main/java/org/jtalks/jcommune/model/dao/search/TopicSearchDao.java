@@ -14,7 +14,12 @@
  */
 package org.jtalks.jcommune.model.dao.search;
 
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.springframework.data.domain.Page;
 
@@ -31,7 +36,8 @@ public interface TopicSearchDao {
 
     /**
      * Performs the full-text search by the topic title and
-     * his content(the list of posts).
+     * his content(the list of posts). If the page is after the last one, the last page
+     * is returned and the page request is adjusted accordingly.
      * 
      * @param searchText the search text
      * @param pageRequest contains information for pagination: page number, page size
@@ -42,9 +48,93 @@ public interface TopicSearchDao {
     Page<Topic> searchByTitleAndContent(String searchText, PageRequest pageRequest, List<Long> allowedBranchesIds);
 
     /**
-     * Indexes the data from the database.
-     * This functionality is required either when data exists in the database,
-     * but the index doesn't contain this data or the index is re-created.
+     * Performs the full-text search by the topic title and the content of its posts like
+     * {@link #searchByTitleAndContent(String, PageRequest, List)} does, but leaves only the topics passing the filter
+     * and counts the found topics per branch, per author and per period they were updated during, so that user can
+     * narrow the results down instead of searching again.
+     *
+     * @param searchText         the search text
+     * @param filter             restrictions to narrow the found topics down with
+     * @param pageRequest        contains information for pagination: page number, page size
+     * @param allowedBranchesIds list of allowed branches id
+     * @return one page of the found topics along with the facets of all the found topics
+     */
+    FoundTopics searchByTitleAndContent(String searchText, TopicSearchFilter filter, PageRequest pageRequest,
+                                        List<Long> allowedBranchesIds);
+
+    /**
+     * Performs the full-text search by the post content. Found posts are taken from the index only, neither they nor
+     * their topics are loaded from the database. If the page is after the last one, the last page is returned and the
+     * page request is adjusted accordingly.
+     *
+     * @param searchText         the search text
+     * @param pageRequest        contains information for pagination: page number, page size
+     * @param allowedBranchesIds list of allowed branches id
+     * @return page of the found posts with the found words highlighted in their content
+     */
+    Page<FoundPost> searchPostsByContent(String searchText, PageRequest pageRequest, List<Long> allowedBranchesIds);
+
+    /**
+     * Suggests topics whose titles contain words starting with the words of the text being typed, e.g. "hiber sea"
+     * suggests "Hibernate Search". Topics with shorter titles and rarer matching words go first. Suggestions are
+     * taken from the index only and are cheap enough to be requested on each key press.
+     *
+     * @param text               text typed by user, the last word is usually not finished
+     * @param count              maximum number of suggestions
+     * @param allowedBranchesIds list of allowed branches id
+     * @return suggested topics, empty list if the text contains no words
+     */
+    List<TopicSuggestion> suggestTopics(String text, int count, List<Long> allowedBranchesIds);
+
+    /**
+     * Gets topics to be indexed next while the index is rebuilt. Topics are taken in the order of their ids, so that
+     * rebuilding can be continued after the last indexed topic.
+     *
+     * @param lastIndexedTopicId id of the last indexed topic, 0 to start from the first topic
+     * @param count              maximum number of ids to return
+     * @return ids of the topics following the last indexed one, empty list if all the topics are indexed
+     */
+    List<Long> getTopicIdsToIndex(long lastIndexedTopicId, int count);
+
+    /**
+     * Counts topics left to be indexed while the index is rebuilt.
+     *
+     * @param lastIndexedTopicId id of the last indexed topic, 0 to count all the topics
+     * @return number of topics following the last indexed one
+     */
+    long countTopicsToIndex(long lastIndexedTopicId);
+
+    /**
+     * Removes documents of the topics of the id range which don't exist anymore along with documents of their posts,
+     * and documents of the removed posts of the remaining topics of the range, so that they don't stay in the index
+     * after it's rebuilt. Documents of other topics are kept, so search keeps working while the index is rebuilt.
+     *
+     * @param afterTopicId id the range starts after
+     * @param lastTopicId  last id of the range, {@link Long#MAX_VALUE} for all the topics after the first one
+     */
+    void removeStaleDocuments(long afterTopicId, long lastTopicId);
+
+    /**
+     * Updates index documents of the given topics and their posts with the data from the database. Documents of other
+     * topics stay in the index, so search keeps working while the index is rebuilt batch by batch.
+     *
+     * @param topicIds ids of the topics to be indexed
+     */
+    void indexTopics(List<Long> topicIds);
+
+    /**
+     * Updates index documents of the topic posts when the transaction is committed. Posts are indexed by themselves
+     * along with the branch of their topic, so they have to be indexed again when the topic is moved to another
+     * branch.
+     *
+     * @param topic topic whose posts are to be indexed
+     */
+    void indexPosts(Topic topic);
+
+    /**
+     * Shows how far the index lags behind the database when the changes are written to the index in background.
+     *
+     * @return state of the queue of changes waiting to be written to the index
      */
-    void rebuildIndex();
+    IndexingQueueState getIndexingQueueState();
 }
@@ -14,20 +14,70 @@
  */
 package org.jtalks.jcommune.model.dao.search.hibernate;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
 import org.apache.commons.lang.StringUtils;
-import org.hibernate.Criteria;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.hibernate.CacheMode;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.search.FullTextQuery;
 import org.hibernate.search.FullTextSession;
+import org.hibernate.search.SearchException;
+import org.hibernate.search.SearchFactory;
 import org.hibernate.search.query.dsl.QueryBuilder;
+import org.hibernate.search.reader.ReaderProvider;
+import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.dao.search.TopicSearchDao;
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.SearchFacet;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.model.entity.Topic;
+import org.jtalks.jcommune.model.search.AllowedBranchesFilter;
+import org.jtalks.jcommune.model.search.AllowedBranchesFilterFactory;
+import org.jtalks.jcommune.model.search.BatchingBackendQueueProcessorFactory;
+import org.jtalks.jcommune.model.search.ContentHighlighter;
+import org.jtalks.jcommune.model.search.DateTimeBridge;
+import org.jtalks.jcommune.model.search.ScoredIdsQuery;
 import org.jtalks.jcommune.model.search.SearchRequestFilter;
+import org.jtalks.jcommune.model.search.TopicFacetsCollector;
+import org.jtalks.jcommune.model.search.TopicIdsCollector;
+import org.jtalks.jcommune.model.search.TopicSearchCache;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 
@@ -38,18 +88,31 @@ import org.springframework.data.domain.PageImpl;
  */
 public class TopicHibernateSearchDao extends AbstractHibernateSearchDao
         implements TopicSearchDao {
+    /** Words are split the same way the standard tokenizer splits titles, except for rare cases like "c++" */
+    private static final Pattern SUGGESTION_WORD_DELIMITER = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_SUGGESTION_WORDS = 5;
+    /** Only the most frequent branches and authors of the found topics are shown to narrow the results down */
+    private static final int MAX_FACET_VALUES = 10;
+    /** Only these fields are read from the documents of suggested topics */
+    private static final FieldSelector SUGGESTION_FIELDS =
+            new MapFieldSelector(Topic.TOPIC_ID_FIELD, Topic.TOPIC_TITLE_SUGGESTION_FIELD);
     /**
      * List of filters.
      */
     private List<SearchRequestFilter> filters = Collections.emptyList();
+    private TopicSearchCache searchCache;
 
     /**
      * @param sessionFactory the Hibernate SessionFactory
      * @param filters        the list of filters to correct the dirty search requests
+     * @param searchCache    cache of the found topics and their numbers, so that popular queries and paging through
+     *                       the results don't search the index each time
      */
-    public TopicHibernateSearchDao(SessionFactory sessionFactory, List<SearchRequestFilter> filters) {
+    public TopicHibernateSearchDao(SessionFactory sessionFactory, List<SearchRequestFilter> filters,
+                                   TopicSearchCache searchCache) {
         super(sessionFactory);
         this.filters = filters;
+        this.searchCache = searchCache;
     }
 
     /**
@@ -61,6 +124,15 @@ public class TopicHibernateSearchDao extends AbstractHibernateSearchDao
         this.filters = filters;
     }
 
+    /**
+     * Injects the cache of search results. It needed for testing.
+     *
+     * @param searchCache cache of the found topics and their numbers
+     */
+    void setSearchCache(TopicSearchCache searchCache) {
+        this.searchCache = searchCache;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -68,91 +140,321 @@ public class TopicHibernateSearchDao extends AbstractHibernateSearchDao
     public Page<Topic> searchByTitleAndContent(String searchText,
                                                PageRequest pageRequest,
                                                List<Long> allowedBranchesIds) {
-
-        Page<Topic> searchResults = doSearch(searchText, pageRequest, allowedBranchesIds);
-
-        if (isSearchedAboveLastPage(searchResults)) {
-            pageRequest.adjustPageNumber(Long.valueOf(searchResults.getTotalElements()).intValue());
-            searchResults = doSearch(searchText, pageRequest, allowedBranchesIds);
-        }
-
-        return searchResults;
+        return searchByTitleAndContent(searchText, TopicSearchFilter.NONE, pageRequest, allowedBranchesIds);
     }
 
     /**
-     * Perform actual search
-     *
-     * @param searchText         the search text
-     * @param pageRequest        contains information for pagination: page number, page
-     *                           size
-     * @param allowedBranchesIds list of allowed branches
-     * @return object that contains search results for one page(note, that one
-     *         page may contain all search results) and information for pagination
+     * {@inheritDoc}
      */
+    @Override
     @SuppressWarnings("unchecked")
-    private Page<Topic> doSearch(String searchText, PageRequest pageRequest, List<Long> allowedBranchesIds) {
+    public FoundTopics searchByTitleAndContent(String searchText,
+                                               TopicSearchFilter filter,
+                                               PageRequest pageRequest,
+                                               List<Long> allowedBranchesIds) {
         List<Topic> topics = Collections.emptyList();
         int resultSize = 0;
+        TopicSearchFacets facets = TopicSearchFacets.EMPTY;
         //TODO The latest versions of the library filtering is not needed.
         String filteredSearchText = applyFilters(searchText, filters).trim();
         if (!StringUtils.isEmpty(filteredSearchText)) {
+            FullTextSession fullTextSession = getFullTextSession();
+            //query is built only when the index is searched, because building it searches the posts already
+            Query luceneQuery = null;
+            facets = searchCache.getFacets(filteredSearchText, filter, allowedBranchesIds);
+            if (facets == null) {
+                luceneQuery = createSearchQuery(fullTextSession, filteredSearchText, filter, allowedBranchesIds);
+                //only counts the hits along with their facets without loading any documents or entities
+                facets = countFacets(fullTextSession.getSearchFactory(), luceneQuery, allowedBranchesIds);
+                searchCache.putFacets(filteredSearchText, filter, allowedBranchesIds, facets);
+            }
+            int topicCount = facets.getTopicCount();
+            //page is clamped before the search, so it's never repeated for the pages after the last one
+            pageRequest.adjustPageNumber(topicCount);
+            TopicSearchCache.CachedResults cachedResults = topicCount == 0 ? null
+                    : searchCache.getResults(filteredSearchText, filter, allowedBranchesIds, pageRequest);
+            if (cachedResults != null) {
+                topics = getTopics(cachedResults.getTopicIds());
+                resultSize = cachedResults.getTopicCount();
+            } else if (topicCount > 0) {
+                if (luceneQuery == null) {
+                    luceneQuery = createSearchQuery(fullTextSession, filteredSearchText, filter, allowedBranchesIds);
+                }
+                FullTextQuery query = fullTextSession.createFullTextQuery(luceneQuery, Topic.class);
+                query.enableFullTextFilter(Topic.ALLOWED_BRANCHES_FILTER)
+                        .setParameter(AllowedBranchesFilterFactory.BRANCH_IDS_PARAMETER, allowedBranchesIds);
+                query.setFirstResult(pageRequest.getOffset());
+                query.setMaxResults(pageRequest.getPageSize());
+                topics = query.list();
+                resultSize = query.getResultSize();
+                searchCache.putResults(filteredSearchText, filter, allowedBranchesIds, pageRequest, getIds(topics),
+                        resultSize);
+            }
+        }
+        return new FoundTopics(topics, pageRequest, resultSize, facets);
+    }
 
-            FullTextQuery query = createSearchQuery(getFullTextSession(), filteredSearchText, pageRequest);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Page<FoundPost> searchPostsByContent(String searchText,
+                                                PageRequest pageRequest,
+                                                List<Long> allowedBranchesIds) {
+        List<FoundPost> posts = new ArrayList<>();
+        int resultSize = 0;
+        String filteredSearchText = applyFilters(searchText, filters).trim();
+        if (!StringUtils.isEmpty(filteredSearchText)) {
+            SearchFactory searchFactory = getFullTextSession().getSearchFactory();
+            Query query = searchFactory.buildQueryBuilder().forEntity(Post.class).get().
+                    keyword().
+                    onField(Post.POST_CONTENT_FIELD_DEF).
+                    andField(Post.POST_CONTENT_FIELD_RU).
+                    matching(filteredSearchText).
+                    createQuery();
+            Filter allowedBranches = new AllowedBranchesFilter(Post.POST_BRANCH_ID_FIELD, allowedBranchesIds);
+            //search and highlighting must use the same reader, otherwise ids of the found documents may be wrong
+            ReaderProvider readerProvider = searchFactory.getReaderProvider();
+            IndexReader reader = readerProvider.openReader(searchFactory.getDirectoryProviders(Post.class));
+            try {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                resultSize = searcher.search(query, allowedBranches, 1).totalHits;
+                pageRequest.adjustPageNumber(resultSize);
+                if (resultSize > 0) {
+                    ScoreDoc[] hits = searcher.search(query, allowedBranches,
+                            pageRequest.getOffset() + pageRequest.getPageSize()).scoreDocs;
+                    ContentHighlighter highlighter = new ContentHighlighter(query);
+                    for (int i = pageRequest.getOffset(); i < hits.length; i++) {
+                        posts.add(createFoundPost(reader, hits[i].doc, highlighter));
+                    }
+                }
+            } catch (IOException e) {
+                throw new SearchException("Unable to search posts by " + filteredSearchText, e);
+            } finally {
+                readerProvider.closeReader(reader);
+            }
+        }
+        return new PageImpl<>(posts, pageRequest, resultSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<TopicSuggestion> suggestTopics(String text, int count, List<Long> allowedBranchesIds) {
+        BooleanQuery query = new BooleanQuery();
+        for (String word : SUGGESTION_WORD_DELIMITER.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty() && query.clauses().size() < MAX_SUGGESTION_WORDS) {
+                String prefix = StringUtils.left(word, Topic.TITLE_SUGGESTION_MAX_PREFIX_LENGTH);
+                query.add(new TermQuery(new Term(Topic.TOPIC_TITLE_SUGGESTION_FIELD, prefix)),
+                        BooleanClause.Occur.MUST);
+            }
+        }
+        if (query.clauses().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<TopicSuggestion> suggestions = new ArrayList<>(count);
+        SearchFactory searchFactory = getFullTextSession().getSearchFactory();
+        ReaderProvider readerProvider = searchFactory.getReaderProvider();
+        IndexReader reader = readerProvider.openReader(searchFactory.getDirectoryProviders(Topic.class));
+        try {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            Filter allowedBranches = new AllowedBranchesFilter(Topic.TOPIC_BRANCH_ID_FIELD, allowedBranchesIds);
+            for (ScoreDoc hit : searcher.search(query, allowedBranches, count).scoreDocs) {
+                Document document = reader.document(hit.doc, SUGGESTION_FIELDS);
+                suggestions.add(new TopicSuggestion(Long.parseLong(document.get(Topic.TOPIC_ID_FIELD)),
+                        document.get(Topic.TOPIC_TITLE_SUGGESTION_FIELD)));
+            }
+        } catch (IOException e) {
+            throw new SearchException("Unable to suggest topics for " + text, e);
+        } finally {
+            readerProvider.closeReader(reader);
+        }
+        return suggestions;
+    }
 
-            Criteria criteria = getFullTextSession().createCriteria(Topic.class).add(
-                    Restrictions.in("branch.id", allowedBranchesIds)
-            );
-            query.setCriteriaQuery(criteria);
+    private FoundPost createFoundPost(IndexReader reader, int docId, ContentHighlighter highlighter)
+            throws IOException {
+        Document document = reader.document(docId);
+        List<String> fragments = highlighter.getFragments(reader, docId,
+                Post.POST_CONTENT_FIELD_DEF, Post.POST_CONTENT_FIELD_DEF, Post.POST_CONTENT_FIELD_RU);
+        return new FoundPost(Long.parseLong(document.get(Post.POST_ID_FIELD)),
+                Long.parseLong(document.get(Post.POST_TOPIC_ID_FIELD)), fragments);
+    }
 
-            topics = query.list();
-            resultSize = query.getResultSize();
+    /**
+     * Gets topics found by the previous search, they are usually taken from the second level cache.
+     *
+     * @param topicIds ids of the found topics
+     * @return found topics in the same order, except for the ones removed after they were found
+     */
+    private List<Topic> getTopics(List<Long> topicIds) {
+        List<Topic> topics = new ArrayList<>(topicIds.size());
+        for (Long topicId : topicIds) {
+            Topic topic = (Topic) getFullTextSession().get(Topic.class, topicId);
+            if (topic != null) {
+                topics.add(topic);
+            }
         }
+        return topics;
+    }
 
-        return new PageImpl<Topic>(topics, pageRequest, resultSize);
+    private List<Long> getIds(List<Topic> topics) {
+        List<Long> ids = new ArrayList<>(topics.size());
+        for (Topic topic : topics) {
+            ids.add(topic.getId());
+        }
+        return ids;
     }
 
     /**
-     * Checks if this search was by made with too big page number specified
+     * Counts the found topics per branch, per author and per period in the same pass the topics themselves are
+     * counted in.
      *
-     * @param searchResults search results
-     * @return true if page number is too big
+     * @param searchFactory      the Hibernate Search factory
+     * @param query              the search query
+     * @param allowedBranchesIds ids of the branches topics are searched in
+     * @return facets of the found topics, the most frequent branches and authors only
+     */
+    private TopicSearchFacets countFacets(SearchFactory searchFactory, Query query, List<Long> allowedBranchesIds) {
+        TopicFacetsCollector collector = new TopicFacetsCollector(Topic.TOPIC_BRANCH_ID_FIELD,
+                Topic.TOPIC_STARTER_ID_FIELD, Topic.TOPIC_MODIFICATION_DATE_FIELD, new DateTime());
+        ReaderProvider readerProvider = searchFactory.getReaderProvider();
+        IndexReader reader = readerProvider.openReader(searchFactory.getDirectoryProviders(Topic.class));
+        try {
+            new IndexSearcher(reader).search(query,
+                    new AllowedBranchesFilter(Topic.TOPIC_BRANCH_ID_FIELD, allowedBranchesIds), collector);
+        } catch (IOException e) {
+            throw new SearchException("Unable to count facets of the found topics", e);
+        } finally {
+            readerProvider.closeReader(reader);
+        }
+        //names are usually taken from the second level cache, entities removed after they were indexed are skipped
+        FullTextSession session = getFullTextSession();
+        Map<Long, Integer> branchCounts = collector.getBranchCounts();
+        List<SearchFacet> branches = new ArrayList<>();
+        for (Long branchId : getMostFrequent(branchCounts)) {
+            Branch branch = (Branch) session.get(Branch.class, branchId);
+            if (branch != null) {
+                branches.add(new SearchFacet(branchId, branch.getName(), branchCounts.get(branchId)));
+            }
+        }
+        Map<Long, Integer> authorCounts = collector.getAuthorCounts();
+        List<SearchFacet> authors = new ArrayList<>();
+        for (Long authorId : getMostFrequent(authorCounts)) {
+            JCUser author = (JCUser) session.get(JCUser.class, authorId);
+            if (author != null) {
+                authors.add(new SearchFacet(authorId, author.getUsername(), authorCounts.get(authorId)));
+            }
+        }
+        return new TopicSearchFacets(collector.getTotalHits(), branches, authors, collector.getPeriodCounts());
+    }
+
+    /**
+     * @param counts numbers of the found topics by ids of the entities they are counted by
+     * @return ids of the entities with the most topics, the ones with more topics first
      */
-    private boolean isSearchedAboveLastPage(Page<Topic> searchResults) {
-        return !searchResults.hasContent() && searchResults.getNumber() > searchResults.getTotalPages();
+    private List<Long> getMostFrequent(final Map<Long, Integer> counts) {
+        List<Long> ids = new ArrayList<>(counts.keySet());
+        Collections.sort(ids, new Comparator<Long>() {
+            @Override
+            public int compare(Long first, Long second) {
+                return counts.get(second).compareTo(counts.get(first));
+            }
+        });
+        return ids.subList(0, Math.min(ids.size(), MAX_FACET_VALUES));
     }
 
     /**
-     * Builds a search query.
+     * Builds a search query. Posts are indexed as separate documents, so topics found by the content of their posts
+     * are joined to the ones found by the title by their ids, each scored as the best matching post of the topic.
+     * Restrictions of the filter don't affect the scores of the found topics.
      *
-     * @param fullTextSession the Hibernate Search session
-     * @param searchText      the search text
-     * @param pageRequest     contains information for pagination: page number, page size
-     * @return the search query
+     * @param fullTextSession    the Hibernate Search session
+     * @param searchText         the search text
+     * @param filter             restrictions to narrow the found topics down with
+     * @param allowedBranchesIds ids of the branches topics are searched in
+     * @return the search query, branches are to be filtered separately
      */
-    private FullTextQuery createSearchQuery(
+    private Query createSearchQuery(
             FullTextSession fullTextSession,
             String searchText,
-            PageRequest pageRequest) {
+            TopicSearchFilter filter,
+            List<Long> allowedBranchesIds) {
         QueryBuilder queryBuilder = fullTextSession.
                 getSearchFactory().
                 buildQueryBuilder().
                 forEntity(Topic.class).
                 get();
-        org.apache.lucene.search.Query luceneQuery = queryBuilder.
+        BooleanQuery luceneQuery = new BooleanQuery();
+        luceneQuery.add(queryBuilder.
                 keyword().
                 onField(Topic.TOPIC_TITLE_FIELD_DEF).
                 andField(Topic.TOPIC_TITLE_FIELD_RU).
-                andField(Topic.TOPIC_POSTS_PREFIX + Post.POST_CONTENT_FIELD_DEF).
-                andField(Topic.TOPIC_POSTS_PREFIX + Post.POST_CONTENT_FIELD_RU).
                 matching(searchText).
-                createQuery();
-
-        FullTextQuery query = fullTextSession.createFullTextQuery(luceneQuery);
+                createQuery(), BooleanClause.Occur.SHOULD);
+        Map<Long, Float> topicScoresOfFoundPosts = searchTopicScoresByPostContent(fullTextSession.getSearchFactory(),
+                searchText, allowedBranchesIds);
+        if (!topicScoresOfFoundPosts.isEmpty()) {
+            luceneQuery.add(new ScoredIdsQuery(Topic.TOPIC_ID_FIELD, topicScoresOfFoundPosts),
+                    BooleanClause.Occur.SHOULD);
+        }
+        if (filter.isEmpty()) {
+            return luceneQuery;
+        }
+        return new FilteredQuery(luceneQuery, new QueryWrapperFilter(createRestrictions(filter)));
+    }
 
-        query.setFirstResult(pageRequest.getOffset());
-        query.setMaxResults(pageRequest.getPageSize());
+    private Query createRestrictions(TopicSearchFilter filter) {
+        BooleanQuery restrictions = new BooleanQuery();
+        if (filter.getBranchId() != null) {
+            restrictions.add(new TermQuery(new Term(Topic.TOPIC_BRANCH_ID_FIELD, filter.getBranchId().toString())),
+                    BooleanClause.Occur.MUST);
+        }
+        if (filter.getAuthorId() != null) {
+            restrictions.add(new TermQuery(new Term(Topic.TOPIC_STARTER_ID_FIELD, filter.getAuthorId().toString())),
+                    BooleanClause.Occur.MUST);
+        }
+        if (filter.getPeriod() != null) {
+            DateTime periodStart = filter.getPeriod().getStart(new DateTime());
+            restrictions.add(new TermRangeQuery(Topic.TOPIC_MODIFICATION_DATE_FIELD,
+                    DateTimeBridge.toIndexedString(periodStart.getMillis()), null, true, false),
+                    BooleanClause.Occur.MUST);
+        }
+        return restrictions;
+    }
 
-        return query;
+    /**
+     * Searches posts by their content and collects ids of their topics along with the score of the best matching post
+     * of each topic. Neither posts nor their stored fields are loaded, so this is cheap even if most of the posts of
+     * a large topic match.
+     *
+     * @param searchFactory      the Hibernate Search factory
+     * @param searchText         the search text
+     * @param allowedBranchesIds ids of the branches posts are searched in
+     * @return scores of the best found posts by ids of their topics
+     */
+    private Map<Long, Float> searchTopicScoresByPostContent(SearchFactory searchFactory,
+                                                            String searchText,
+                                                            List<Long> allowedBranchesIds) {
+        Query query = searchFactory.buildQueryBuilder().forEntity(Post.class).get().
+                keyword().
+                onField(Post.POST_CONTENT_FIELD_DEF).
+                andField(Post.POST_CONTENT_FIELD_RU).
+                matching(searchText).
+                createQuery();
+        TopicIdsCollector collector = new TopicIdsCollector(Post.POST_TOPIC_ID_FIELD);
+        ReaderProvider readerProvider = searchFactory.getReaderProvider();
+        IndexReader reader = readerProvider.openReader(searchFactory.getDirectoryProviders(Post.class));
+        try {
+            new IndexSearcher(reader).search(query,
+                    new AllowedBranchesFilter(Post.POST_BRANCH_ID_FIELD, allowedBranchesIds), collector);
+        } catch (IOException e) {
+            throw new SearchException("Unable to search topics by content of their posts " + searchText, e);
+        } finally {
+            readerProvider.closeReader(reader);
+        }
+        return collector.getTopicScores();
     }
 
     /**
@@ -173,7 +475,184 @@ public class TopicHibernateSearchDao extends AbstractHibernateSearchDao
      * {@inheritDoc}
      */
     @Override
-    public void rebuildIndex() {
-        getFullTextSession().createIndexer(Topic.class).start();
+    @SuppressWarnings("unchecked")
+    public List<Long> getTopicIdsToIndex(long lastIndexedTopicId, int count) {
+        return getFullTextSession().createCriteria(Topic.class)
+                .add(Restrictions.gt("id", lastIndexedTopicId))
+                .setProjection(Projections.id())
+                .addOrder(Order.asc("id"))
+                .setMaxResults(count)
+                .list();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long countTopicsToIndex(long lastIndexedTopicId) {
+        return ((Number) getFullTextSession().createCriteria(Topic.class)
+                .add(Restrictions.gt("id", lastIndexedTopicId))
+                .setProjection(Projections.rowCount())
+                .uniqueResult()).longValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void removeStaleDocuments(long afterTopicId, long lastTopicId) {
+        FullTextSession session = getFullTextSession();
+        SearchFactory searchFactory = session.getSearchFactory();
+        if (lastTopicId == Long.MAX_VALUE) {
+            lastTopicId = Math.max(getMaxIndexedTopicId(searchFactory, Topic.class, Topic.TOPIC_ID_FIELD),
+                    getMaxIndexedTopicId(searchFactory, Post.class, Post.POST_TOPIC_ID_FIELD));
+        }
+        if (lastTopicId <= afterTopicId) {
+            return;
+        }
+        //index is read before the database, so that documents of entities created meanwhile are never removed
+        Set<Long> indexedTopicIds = getIndexedIds(searchFactory, Topic.class, Topic.TOPIC_ID_FIELD,
+                Topic.TOPIC_ID_FIELD, afterTopicId, lastTopicId);
+        Set<Long> indexedPostIds = getIndexedIds(searchFactory, Post.class, Post.POST_TOPIC_ID_FIELD,
+                Post.POST_ID_FIELD, afterTopicId, lastTopicId);
+        indexedTopicIds.removeAll(session.createCriteria(Topic.class)
+                .add(Restrictions.gt("id", afterTopicId))
+                .add(Restrictions.le("id", lastTopicId))
+                .setProjection(Projections.id())
+                .list());
+        indexedPostIds.removeAll(session.createCriteria(Post.class)
+                .add(Restrictions.gt("topic.id", afterTopicId))
+                .add(Restrictions.le("topic.id", lastTopicId))
+                .setProjection(Projections.id())
+                .list());
+        if (indexedTopicIds.isEmpty() && indexedPostIds.isEmpty()) {
+            return;
+        }
+        for (Long topicId : indexedTopicIds) {
+            session.purge(Topic.class, topicId);
+        }
+        for (Long postId : indexedPostIds) {
+            session.purge(Post.class, postId);
+        }
+        session.flushToIndexes();
+        //branches of the removed documents are unknown
+        searchCache.invalidateAll();
+    }
+
+    /**
+     * Finds ids of the indexed entities by ids of their topics, one term lookup per topic id of the range.
+     *
+     * @param searchFactory the Hibernate Search factory
+     * @param entityClass   class of the indexed entities
+     * @param topicIdField  name of the field the topic id of the entity is indexed to
+     * @param idField       name of the stored field the entity id is indexed to
+     * @param afterTopicId  id the range of topic ids starts after
+     * @param lastTopicId   last id of the range of topic ids
+     * @return ids of the indexed entities of the topics of the range
+     */
+    private Set<Long> getIndexedIds(SearchFactory searchFactory, Class<?> entityClass, String topicIdField,
+                                    String idField, long afterTopicId, long lastTopicId) {
+        Set<Long> ids = new HashSet<>();
+        FieldSelector idSelector = new MapFieldSelector(idField);
+        ReaderProvider readerProvider = searchFactory.getReaderProvider();
+        IndexReader reader = readerProvider.openReader(searchFactory.getDirectoryProviders(entityClass));
+        try {
+            TermDocs termDocs = reader.termDocs();
+            try {
+                for (long topicId = afterTopicId + 1; topicId <= lastTopicId; topicId++) {
+                    termDocs.seek(new Term(topicIdField, String.valueOf(topicId)));
+                    while (termDocs.next()) {
+                        ids.add(Long.valueOf(reader.document(termDocs.doc(), idSelector).get(idField)));
+                    }
+                }
+            } finally {
+                termDocs.close();
+            }
+        } catch (IOException e) {
+            throw new SearchException("Unable to read indexed documents of topics after " + afterTopicId, e);
+        } finally {
+            readerProvider.closeReader(reader);
+        }
+        return ids;
+    }
+
+    /**
+     * @param searchFactory the Hibernate Search factory
+     * @param entityClass   class of the indexed entities
+     * @param topicIdField  name of the field the topic id of the entity is indexed to
+     * @return the greatest topic id of the indexed entities, 0 if there are no such entities
+     */
+    private long getMaxIndexedTopicId(SearchFactory searchFactory, Class<?> entityClass, String topicIdField) {
+        long maxTopicId = 0;
+        ReaderProvider readerProvider = searchFactory.getReaderProvider();
+        IndexReader reader = readerProvider.openReader(searchFactory.getDirectoryProviders(entityClass));
+        try {
+            TermEnum terms = reader.terms(new Term(topicIdField, ""));
+            try {
+                do {
+                    Term term = terms.term();
+                    if (term == null || !topicIdField.equals(term.field())) {
+                        break;
+                    }
+                    maxTopicId = Math.max(maxTopicId, Long.parseLong(term.text()));
+                } while (terms.next());
+            } finally {
+                terms.close();
+            }
+        } catch (IOException e) {
+            throw new SearchException("Unable to find the last indexed topic", e);
+        } finally {
+            readerProvider.closeReader(reader);
+        }
+        return maxTopicId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void indexTopics(List<Long> topicIds) {
+        if (topicIds.isEmpty()) {
+            return;
+        }
+        FullTextSession session = getFullTextSession();
+        //topics are read once, there is no sense to put them and their posts into the second level cache
+        session.setCacheMode(CacheMode.IGNORE);
+        List<Topic> topics = session.createCriteria(Topic.class).add(Restrictions.in("id", topicIds)).list();
+        Set<Long> branchIds = new HashSet<>();
+        for (Topic topic : topics) {
+            session.index(topic);
+            for (Post post : topic.getPosts()) {
+                session.index(post);
+            }
+            branchIds.add(topic.getBranch().getId());
+        }
+        session.flushToIndexes();
+        session.clear();
+        //documents are written without committing changes of the entities, so the commit listener doesn't see them
+        for (Long branchId : branchIds) {
+            searchCache.invalidateBranch(branchId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void indexPosts(Topic topic) {
+        FullTextSession session = getFullTextSession();
+        for (Post post : topic.getPosts()) {
+            session.index(post);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexingQueueState getIndexingQueueState() {
+        return BatchingBackendQueueProcessorFactory.getState();
     }
 }
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Post found by the full-text search. Contains only what is needed to show the post in the search results and to link
+ * to it, so that posts and their topics are not loaded from the database.
+ */
+public class FoundPost {
+    private final long postId;
+    private final long topicId;
+    private final List<String> fragments;
+
+    /**
+     * @param postId    id of the found post
+     * @param topicId   id of the topic of the post
+     * @param fragments pieces of the post content with the found words highlighted
+     */
+    public FoundPost(long postId, long topicId, List<String> fragments) {
+        this.postId = postId;
+        this.topicId = topicId;
+        this.fragments = Collections.unmodifiableList(fragments);
+    }
+
+    /**
+     * @return id of the found post
+     */
+    public long getPostId() {
+        return postId;
+    }
+
+    /**
+     * @return id of the topic of the post
+     */
+    public long getTopicId() {
+        return topicId;
+    }
+
+    /**
+     * @return pieces of the post content (already HTML-escaped) with the found words wrapped into {@code <b>} tags,
+     *         the beginning of the post if words can't be highlighted
+     */
+    public List<String> getFragments() {
+        return fragments;
+    }
+}
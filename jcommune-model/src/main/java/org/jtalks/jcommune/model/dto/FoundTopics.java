@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+import org.jtalks.jcommune.model.entity.Topic;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * Page of the topics found by the full-text search along with the facets of all the found topics.
+ */
+public class FoundTopics extends PageImpl<Topic> {
+    private final TopicSearchFacets facets;
+
+    /**
+     * @param topics   topics found for the page
+     * @param pageable the page
+     * @param total    number of topics found for all the pages
+     * @param facets   facets of all the found topics
+     */
+    public FoundTopics(List<Topic> topics, Pageable pageable, long total, TopicSearchFacets facets) {
+        super(topics, pageable, total);
+        this.facets = facets;
+    }
+
+    /**
+     * @param topics found topics, all on one page
+     * @param facets facets of the found topics
+     */
+    public FoundTopics(List<Topic> topics, TopicSearchFacets facets) {
+        super(topics);
+        this.facets = facets;
+    }
+
+    /**
+     * @return facets of all the found topics
+     */
+    public TopicSearchFacets getFacets() {
+        return facets;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+/**
+ * Snapshot of the queue of changes waiting to be written to the search index, shows how far the index is behind the
+ * database.
+ *
+ * @see org.jtalks.jcommune.model.search.IndexWorkQueue
+ */
+public class IndexingQueueState {
+    private final boolean asynchronous;
+    private final int queuedWorkSetCount;
+    private final int capacity;
+    private final long lagMillis;
+    private final long appliedBatchCount;
+    private final long appliedWorkSetCount;
+    private final long failedBatchCount;
+
+    /**
+     * @param asynchronous        whether changes are written to the index in background
+     * @param queuedWorkSetCount  number of committed transactions whose changes are waiting to be written
+     * @param capacity            maximum number of waiting transactions, next ones wait for the room in the queue
+     * @param lagMillis           age of the oldest change not written to the index yet, 0 if there are no such
+     *                            changes
+     * @param appliedBatchCount   number of index commits since the forum start
+     * @param appliedWorkSetCount number of transactions whose changes were written since the forum start
+     * @param failedBatchCount    number of index commits failed since the forum start
+     */
+    public IndexingQueueState(boolean asynchronous, int queuedWorkSetCount, int capacity, long lagMillis,
+                              long appliedBatchCount, long appliedWorkSetCount, long failedBatchCount) {
+        this.asynchronous = asynchronous;
+        this.queuedWorkSetCount = queuedWorkSetCount;
+        this.capacity = capacity;
+        this.lagMillis = lagMillis;
+        this.appliedBatchCount = appliedBatchCount;
+        this.appliedWorkSetCount = appliedWorkSetCount;
+        this.failedBatchCount = failedBatchCount;
+    }
+
+    /**
+     * @return state of the index which is written synchronously in the transactions changing the data, so it never
+     *         lags behind
+     */
+    public static IndexingQueueState synchronous() {
+        return new IndexingQueueState(false, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * @return whether changes are written to the index in background
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * @return number of committed transactions whose changes are waiting to be written to the index
+     */
+    public int getQueuedWorkSetCount() {
+        return queuedWorkSetCount;
+    }
+
+    /**
+     * @return maximum number of waiting transactions, when the queue is full next transactions wait for the room
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return age of the oldest change not written to the index yet in milliseconds, 0 if the index is up to date
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return number of index commits since the forum start
+     */
+    public long getAppliedBatchCount() {
+        return appliedBatchCount;
+    }
+
+    /**
+     * @return number of transactions whose changes were written to the index since the forum start
+     */
+    public long getAppliedWorkSetCount() {
+        return appliedWorkSetCount;
+    }
+
+    /**
+     * @return number of index commits failed since the forum start, their changes appear in the search only after
+     *         the index is rebuilt
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount;
+    }
+}
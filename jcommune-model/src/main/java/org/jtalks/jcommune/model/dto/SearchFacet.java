@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+/**
+ * One value of a search facet, e.g. a branch or an author, along with the number of found topics having this value.
+ */
+public class SearchFacet {
+    private final long id;
+    private final String name;
+    private final int count;
+
+    /**
+     * @param id    id of the entity the found topics are counted by
+     * @param name  name of the entity to be shown to user
+     * @param count number of found topics of the entity
+     */
+    public SearchFacet(long id, String name, int count) {
+        this.id = id;
+        this.name = name;
+        this.count = count;
+    }
+
+    /**
+     * @return id of the entity the found topics are counted by, e.g. to be used in {@link TopicSearchFilter}
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return name of the entity to be shown to user
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of found topics of the entity
+     */
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+/**
+ * When the topic got its last post. Together with what user has read it tells whether the topic has unread posts.
+ */
+public class TopicActivity {
+    private final long topicId;
+    private final long branchId;
+    private final long lastPostTime;
+
+    /**
+     * @param topicId      id of the topic
+     * @param branchId     id of the branch the topic belongs to
+     * @param lastPostTime creation time of the last post of the topic in milliseconds
+     */
+    public TopicActivity(long topicId, long branchId, long lastPostTime) {
+        this.topicId = topicId;
+        this.branchId = branchId;
+        this.lastPostTime = lastPostTime;
+    }
+
+    /**
+     * @return id of the topic
+     */
+    public long getTopicId() {
+        return topicId;
+    }
+
+    /**
+     * @return id of the branch the topic belongs to
+     */
+    public long getBranchId() {
+        return branchId;
+    }
+
+    /**
+     * @return creation time of the last post of the topic in milliseconds
+     */
+    public long getLastPostTime() {
+        return lastPostTime;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numbers of the found topics per branch, per author and per period they were updated during, so that user can narrow
+ * the results down with {@link TopicSearchFilter} instead of searching again with other words. Counted while the
+ * topics are found, thus cost nothing but the counting itself.
+ */
+public class TopicSearchFacets {
+    /** Facets of the search which found nothing */
+    public static final TopicSearchFacets EMPTY = new TopicSearchFacets(0, Collections.<SearchFacet>emptyList(),
+            Collections.<SearchFacet>emptyList(), new EnumMap<TopicSearchFilter.Period, Integer>(
+                    TopicSearchFilter.Period.class));
+
+    private final int topicCount;
+    private final List<SearchFacet> branches;
+    private final List<SearchFacet> authors;
+    private final Map<TopicSearchFilter.Period, Integer> periods;
+
+    /**
+     * @param topicCount number of all the found topics
+     * @param branches   branches of the found topics, the ones with more topics first
+     * @param authors    starters of the found topics, the ones with more topics first
+     * @param periods    numbers of the found topics updated during each period, periods without topics are omitted
+     */
+    public TopicSearchFacets(int topicCount, List<SearchFacet> branches, List<SearchFacet> authors,
+                             Map<TopicSearchFilter.Period, Integer> periods) {
+        this.topicCount = topicCount;
+        this.branches = Collections.unmodifiableList(branches);
+        this.authors = Collections.unmodifiableList(authors);
+        this.periods = Collections.unmodifiableMap(periods);
+    }
+
+    /**
+     * @return number of all the found topics
+     */
+    public int getTopicCount() {
+        return topicCount;
+    }
+
+    /**
+     * @return branches of the found topics, the ones with more topics first
+     */
+    public List<SearchFacet> getBranches() {
+        return branches;
+    }
+
+    /**
+     * @return starters of the found topics, the ones with more topics first
+     */
+    public List<SearchFacet> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * @return numbers of the found topics updated during each period in the order of periods, periods without topics
+     *         are omitted
+     */
+    public Map<TopicSearchFilter.Period, Integer> getPeriods() {
+        return periods;
+    }
+}
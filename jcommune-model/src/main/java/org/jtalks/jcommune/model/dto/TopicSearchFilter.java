@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+import org.joda.time.DateTime;
+
+/**
+ * Narrows the found topics down to a branch, an author and to the topics updated recently. Each restriction is
+ * optional, filter without restrictions leaves all the found topics.
+ */
+public class TopicSearchFilter {
+    /** Filter without restrictions */
+    public static final TopicSearchFilter NONE = new TopicSearchFilter(null, null, null);
+
+    private final Long branchId;
+    private final Long authorId;
+    private final Period period;
+
+    /**
+     * How recently topics were updated. Periods contain each other, e.g. topics updated during the last day are also
+     * updated during the last week.
+     */
+    public enum Period {
+        DAY(1),
+        WEEK(7),
+        MONTH(30),
+        YEAR(365);
+
+        private final int days;
+
+        private Period(int days) {
+            this.days = days;
+        }
+
+        /**
+         * @param now current time
+         * @return the earliest time topics updated during the period could be updated
+         */
+        public DateTime getStart(DateTime now) {
+            return now.minusDays(days);
+        }
+    }
+
+    /**
+     * @param branchId id of the branch to search topics in, null to search in all the allowed branches
+     * @param authorId id of the user who started the topics, null for topics of any user
+     * @param period   period the topics were updated during, null for topics updated any time
+     */
+    public TopicSearchFilter(Long branchId, Long authorId, Period period) {
+        this.branchId = branchId;
+        this.authorId = authorId;
+        this.period = period;
+    }
+
+    /**
+     * @return id of the branch to search topics in, null to search in all the allowed branches
+     */
+    public Long getBranchId() {
+        return branchId;
+    }
+
+    /**
+     * @return id of the user who started the topics, null for topics of any user
+     */
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    /**
+     * @return period the topics were updated during, null for topics updated any time
+     */
+    public Period getPeriod() {
+        return period;
+    }
+
+    /**
+     * @return whether the filter leaves all the found topics
+     */
+    public boolean isEmpty() {
+        return branchId == null && authorId == null && period == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TopicSearchFilter)) {
+            return false;
+        }
+        TopicSearchFilter other = (TopicSearchFilter) o;
+        return equal(branchId, other.branchId) && equal(authorId, other.authorId) && period == other.period;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = branchId != null ? branchId.hashCode() : 0;
+        result = 31 * result + (authorId != null ? authorId.hashCode() : 0);
+        return 31 * result + (period != null ? period.hashCode() : 0);
+    }
+
+    private static boolean equal(Long first, Long second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dto;
+
+/**
+ * Topic suggested to user while a search text is being typed. Taken from the search index only, so that suggestions
+ * don't query the database.
+ */
+public class TopicSuggestion {
+    private final long topicId;
+    private final String title;
+
+    /**
+     * @param topicId id of the suggested topic
+     * @param title   title of the topic as it was indexed
+     */
+    public TopicSuggestion(long topicId, String title) {
+        this.topicId = topicId;
+        this.title = title;
+    }
+
+    /**
+     * @return id of the suggested topic
+     */
+    public long getTopicId() {
+        return topicId;
+    }
+
+    /**
+     * @return title of the topic, not escaped
+     */
+    public String getTitle() {
+        return title;
+    }
+}
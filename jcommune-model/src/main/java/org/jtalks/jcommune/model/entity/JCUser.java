@@ -43,6 +43,7 @@ public class JCUser extends User {
     private boolean autosubscribe;
     private boolean mentioningNotificationsEnabled;
     private boolean sendPmNotification;
+    private boolean subscriptionDigestEnabled;
 
     public static final int MAX_SIGNATURE_SIZE = 255;
     public static final int MAX_LOCATION_SIZE = 30;
@@ -287,6 +288,25 @@ public class JCUser extends User {
         this.sendPmNotification = sendPmNotification;
     }
 
+    /**
+     * Determines whether updates of subscribed topics and branches are collected and sent to user periodically as one
+     * mail instead of a mail per update.
+     *
+     * @return true if user receives digests of updates, false if a mail is sent on each update
+     */
+    public boolean isSubscriptionDigestEnabled() {
+        return subscriptionDigestEnabled;
+    }
+
+    /**
+     * Set whether updates of subscribed topics and branches are collected and sent to user periodically as one mail.
+     *
+     * @param subscriptionDigestEnabled true if user receives digests of updates
+     */
+    public void setSubscriptionDigestEnabled(boolean subscriptionDigestEnabled) {
+        this.subscriptionDigestEnabled = subscriptionDigestEnabled;
+    }
+
     /**
      * @return last modification time of avatar
      */
@@ -365,6 +385,7 @@ public class JCUser extends User {
         copy.setAutosubscribe(user.isAutosubscribe());
         copy.setMentioningNotificationsEnabled(user.isMentioningNotificationsEnabled());
         copy.setSendPmNotification(user.isSendPmNotification());
+        copy.setSubscriptionDigestEnabled(user.isSubscriptionDigestEnabled());
         for (UserContact contact : user.getContacts()) {
             copy.getContacts().add(copyUserContact(contact, copy));
         }
@@ -18,6 +18,8 @@ import org.hibernate.search.annotations.*;
 import org.joda.time.DateTime;
 import org.jtalks.common.model.entity.Entity;
 import org.jtalks.jcommune.model.search.BbCodeFilterBridge;
+import org.jtalks.jcommune.model.search.EntityIdBridge;
+import org.jtalks.jcommune.model.search.TopicBranchIdBridge;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -36,13 +38,16 @@ import java.util.Set;
  * @author Kirill Afonin
  * @author Anuar Nurmakanov
  */
-
+@Indexed
+@ClassBridge(name = Post.POST_ID_FIELD, index = Index.UN_TOKENIZED, store = Store.YES, impl = EntityIdBridge.class)
 public class Post extends Entity implements SubscriptionAwareEntity {
     public static final String URL_SUFFIX = "/posts/";
     private DateTime creationDate;
     private DateTime modificationDate;
     private JCUser userCreated;
     private String postContent;
+    private String renderedContent;
+    private String renderedContentVersion;
     private Topic topic;
     private int rating;
 
@@ -60,6 +65,18 @@ public class Post extends Entity implements SubscriptionAwareEntity {
      * Name of the field in the index for default language(English).
      */
     public static final String POST_CONTENT_FIELD_DEF = "postContent";
+    /**
+     * Name of the field in the index with the id of the post.
+     */
+    public static final String POST_ID_FIELD = "postId";
+    /**
+     * Name of the field in the index with the id of the post topic.
+     */
+    public static final String POST_TOPIC_ID_FIELD = "postTopicId";
+    /**
+     * Name of the field in the index with the id of the branch of the post topic.
+     */
+    public static final String POST_BRANCH_ID_FIELD = "postBranchId";
 
     /**
      * For Hibernate use only
@@ -153,13 +170,18 @@ public class Post extends Entity implements SubscriptionAwareEntity {
     }
 
     /**
+     * Text of the post without BB-codes is stored in the index along with the positions of the words, so that the
+     * found words can be highlighted without loading the post.
+     *
      * @return the postContent
      */
     @Fields({
         @Field(name = POST_CONTENT_FIELD_RU,
-            analyzer = @Analyzer(definition = "russianJtalksAnalyzer")),
+            analyzer = @Analyzer(definition = "russianJtalksAnalyzer"),
+            termVector = TermVector.WITH_POSITION_OFFSETS),
         @Field(name = POST_CONTENT_FIELD_DEF,
-            analyzer = @Analyzer(definition = "defaultJtalksAnalyzer"))
+            analyzer = @Analyzer(definition = "defaultJtalksAnalyzer"),
+            store = Store.YES, termVector = TermVector.WITH_POSITION_OFFSETS)
     })
     @FieldBridge(impl = BbCodeFilterBridge.class)
     public String getPostContent() {
@@ -167,16 +189,58 @@ public class Post extends Entity implements SubscriptionAwareEntity {
     }
 
     /**
+     * Sets new content of the post. HTML rendered for the previous content is dropped as it doesn't correspond to the
+     * post anymore.
+     *
      * @param postContent the postContent to set
      */
     public void setPostContent(String postContent) {
         this.postContent = postContent;
+        this.renderedContent = null;
+        this.renderedContentVersion = null;
+    }
+
+    /**
+     * Gets content of the post already converted from BB-codes to HTML when the post was saved.
+     *
+     * @return post content as HTML or {@code null} if it wasn't rendered yet
+     * @see #getRenderedContentVersion()
+     */
+    public String getRenderedContent() {
+        return renderedContent;
+    }
+
+    /**
+     * Gets the version of BB-code converter configuration the content was rendered with. If it doesn't match the
+     * current version, {@link #getRenderedContent()} is outdated and shouldn't be shown.
+     *
+     * @return version of the converter configuration or {@code null} if content wasn't rendered yet
+     */
+    public String getRenderedContentVersion() {
+        return renderedContentVersion;
+    }
+
+    /**
+     * Sets content of the post converted from BB-codes to HTML so that it's not converted every time the post is
+     * shown.
+     *
+     * @param renderedContent        post content as HTML
+     * @param renderedContentVersion version of BB-code converter configuration the content was rendered with
+     */
+    public void setRenderedContent(String renderedContent, String renderedContentVersion) {
+        this.renderedContent = renderedContent;
+        this.renderedContentVersion = renderedContentVersion;
     }
 
     /**
      * @return the topic
      */
-    @ContainedIn
+    @Fields({
+        @Field(name = POST_TOPIC_ID_FIELD, index = Index.UN_TOKENIZED, store = Store.YES,
+            bridge = @FieldBridge(impl = EntityIdBridge.class)),
+        @Field(name = POST_BRANCH_ID_FIELD, index = Index.UN_TOKENIZED,
+            bridge = @FieldBridge(impl = TopicBranchIdBridge.class))
+    })
     public Topic getTopic() {
         return topic;
     }
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.entity;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.entity.Entity;
+
+/**
+ * Mail waiting in the outbound queue to be sent. Mails are rendered and put to the queue while the user request is
+ * processed, but are sent to the mail server in background, so the request doesn't wait for the server. If the server
+ * fails to accept the mail, it stays in the queue and is sent again later.
+ */
+public class QueuedMail extends Entity {
+    private String recipient;
+    private String message;
+    private DateTime creationDate;
+    private int attempts;
+    private DateTime nextAttemptDate;
+
+    /**
+     * Needed for hibernate usage
+     */
+    public QueuedMail() {
+    }
+
+    /**
+     * Creates mail which should be sent as soon as possible.
+     *
+     * @param recipient address of the recipient, is used only for logging
+     * @param message   whole message in RFC 822 format, including headers
+     */
+    public QueuedMail(String recipient, String message) {
+        this.recipient = recipient;
+        this.message = message;
+        this.creationDate = new DateTime();
+        this.nextAttemptDate = creationDate;
+    }
+
+    /**
+     * @return address of the recipient
+     */
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * @param recipient address of the recipient
+     */
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    /**
+     * @return whole message in RFC 822 format, including headers
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @param message whole message in RFC 822 format, including headers
+     */
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * @return when the mail was put to the queue
+     */
+    public DateTime getCreationDate() {
+        return creationDate;
+    }
+
+    /**
+     * @param creationDate when the mail was put to the queue
+     */
+    public void setCreationDate(DateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    /**
+     * @return how many times the mail server failed to accept the mail
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts how many times the mail server failed to accept the mail
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the mail shouldn't be sent before this time
+     */
+    public DateTime getNextAttemptDate() {
+        return nextAttemptDate;
+    }
+
+    /**
+     * @param nextAttemptDate the mail shouldn't be sent before this time
+     */
+    public void setNextAttemptDate(DateTime nextAttemptDate) {
+        this.nextAttemptDate = nextAttemptDate;
+    }
+
+    /**
+     * Remembers the failed attempt to send the mail and postpones the next one.
+     *
+     * @param nextAttemptDate the mail shouldn't be sent before this time
+     */
+    public void attemptFailed(DateTime nextAttemptDate) {
+        this.attempts++;
+        this.nextAttemptDate = nextAttemptDate;
+    }
+}
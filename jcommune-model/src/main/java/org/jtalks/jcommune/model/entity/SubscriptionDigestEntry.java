@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.entity;
+
+import org.joda.time.DateTime;
+import org.jtalks.common.model.entity.Entity;
+
+/**
+ * Update of a subscribed topic or branch waiting to be sent to the user as a part of a digest. Updates are stored in
+ * the database, so they survive restarts and any instance of the forum sharing the database can send them. Repeated
+ * updates of the same topic or branch are counted in one entry which keeps the link to the first of them.
+ */
+public class SubscriptionDigestEntry extends Entity {
+    private JCUser user;
+    private String entityKey;
+    private String title;
+    private String link;
+    private String linkLabel;
+    private int updatesCount;
+    private DateTime creationDate;
+
+    /**
+     * Needed for hibernate usage
+     */
+    protected SubscriptionDigestEntry() {
+    }
+
+    /**
+     * Creates an entry about the first updates of the entity since the last digest.
+     *
+     * @param user         user the digest is sent to
+     * @param entityKey    identifies the updated topic or branch, the same for all the updates of the entity
+     * @param title        title of the updated topic or branch
+     * @param link         link to the first update
+     * @param linkLabel    link to be shown to the user, without port
+     * @param updatesCount how many times the entity was updated
+     */
+    public SubscriptionDigestEntry(JCUser user, String entityKey, String title, String link, String linkLabel,
+                                   int updatesCount) {
+        this.user = user;
+        this.entityKey = entityKey;
+        this.title = title;
+        this.link = link;
+        this.linkLabel = linkLabel;
+        this.updatesCount = updatesCount;
+        this.creationDate = new DateTime();
+    }
+
+    /**
+     * @return user the digest is sent to
+     */
+    public JCUser getUser() {
+        return user;
+    }
+
+    /**
+     * @param user user the digest is sent to
+     */
+    protected void setUser(JCUser user) {
+        this.user = user;
+    }
+
+    /**
+     * @return identifier of the updated topic or branch, the same for all the updates of the entity
+     */
+    public String getEntityKey() {
+        return entityKey;
+    }
+
+    /**
+     * @param entityKey identifier of the updated topic or branch
+     */
+    protected void setEntityKey(String entityKey) {
+        this.entityKey = entityKey;
+    }
+
+    /**
+     * @return title of the updated topic or branch
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @param title title of the updated topic or branch
+     */
+    protected void setTitle(String title) {
+        this.title = title;
+    }
+
+    /**
+     * @return link to the first update of the entity since the last digest
+     */
+    public String getLink() {
+        return link;
+    }
+
+    /**
+     * @param link link to the first update of the entity since the last digest
+     */
+    protected void setLink(String link) {
+        this.link = link;
+    }
+
+    /**
+     * @return link to be shown to the user, without port
+     */
+    public String getLinkLabel() {
+        return linkLabel;
+    }
+
+    /**
+     * @param linkLabel link to be shown to the user, without port
+     */
+    protected void setLinkLabel(String linkLabel) {
+        this.linkLabel = linkLabel;
+    }
+
+    /**
+     * @return how many times the entity was updated since the last digest
+     */
+    public int getUpdatesCount() {
+        return updatesCount;
+    }
+
+    /**
+     * @param updatesCount how many times the entity was updated since the last digest
+     */
+    protected void setUpdatesCount(int updatesCount) {
+        this.updatesCount = updatesCount;
+    }
+
+    /**
+     * @return when the first update of the entity since the last digest was made
+     */
+    public DateTime getCreationDate() {
+        return creationDate;
+    }
+
+    /**
+     * @param creationDate when the first update of the entity since the last digest was made
+     */
+    public void setCreationDate(DateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+}
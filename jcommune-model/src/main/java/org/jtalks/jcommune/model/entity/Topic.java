@@ -18,6 +18,9 @@ import org.apache.solr.analysis.*;
 import org.hibernate.search.annotations.*;
 import org.joda.time.DateTime;
 import org.jtalks.common.model.entity.Entity;
+import org.jtalks.jcommune.model.search.AllowedBranchesFilterFactory;
+import org.jtalks.jcommune.model.search.DateTimeBridge;
+import org.jtalks.jcommune.model.search.EntityIdBridge;
 import org.jtalks.jcommune.model.validation.annotations.NotBlankSized;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -109,9 +112,27 @@ import java.util.Set;
                         */
                         @TokenFilterDef(factory = SnowballPorterFilterFactory.class)
                 }
+        ),
+        /*
+        * Describes the analyzer for suggestions of titles while user is typing. Each word is indexed with all its
+        * beginnings, so that a word being typed is found by a single term.
+        */
+        @AnalyzerDef(name = Topic.TITLE_SUGGESTION_ANALYZER,
+                tokenizer = @TokenizerDef(factory = StandardTokenizerFactory.class),
+                filters = {
+                        @TokenFilterDef(factory = LowerCaseFilterFactory.class),
+                        @TokenFilterDef(factory = EdgeNGramFilterFactory.class,
+                                params = {
+                                        @Parameter(name = "minGramSize", value = "1"),
+                                        @Parameter(name = "maxGramSize",
+                                                value = "" + Topic.TITLE_SUGGESTION_MAX_PREFIX_LENGTH)
+                                })
+                }
         )
 })
+@FullTextFilterDef(name = Topic.ALLOWED_BRANCHES_FILTER, impl = AllowedBranchesFilterFactory.class)
 @Indexed
+@ClassBridge(name = Topic.TOPIC_ID_FIELD, index = Index.UN_TOKENIZED, store = Store.YES, impl = EntityIdBridge.class)
 public class Topic extends Entity implements SubscriptionAwareEntity {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Topic.class);
@@ -119,6 +140,8 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
 
     private DateTime creationDate;
     private DateTime modificationDate;
+    /** Kept along with the posts, so that topics with recent posts are found without querying the posts */
+    private DateTime lastPostDate;
     private JCUser topicStarter;
     @NotBlankSized(min = MIN_NAME_SIZE, max = MAX_NAME_SIZE, message = "{length.constraint}")
     private String title;
@@ -149,9 +172,40 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
      */
     public static final String TOPIC_TITLE_FIELD_DEF = "topicTitle";
     /**
-     * Name of the prefix for collection of posts.
+     * Name of the field in the index for id of the topic, topics are found by their posts with it.
+     */
+    public static final String TOPIC_ID_FIELD = "topicId";
+    /**
+     * Name of the field in the index with beginnings of the title words, used to suggest titles while user is typing.
+     * The title itself is stored in the field.
+     */
+    public static final String TOPIC_TITLE_SUGGESTION_FIELD = "topicTitleSuggestion";
+    /**
+     * Name of the analyzer of {@link #TOPIC_TITLE_SUGGESTION_FIELD}.
+     */
+    public static final String TITLE_SUGGESTION_ANALYZER = "titleSuggestionAnalyzer";
+    /**
+     * Maximum length of the word beginnings in {@link #TOPIC_TITLE_SUGGESTION_FIELD}, longer words are found by their
+     * beginnings of this length.
+     */
+    public static final int TITLE_SUGGESTION_MAX_PREFIX_LENGTH = 20;
+    /**
+     * Name of the field in the index for id of the topic branch.
+     */
+    public static final String TOPIC_BRANCH_ID_FIELD = "topicBranchId";
+    /**
+     * Name of the field in the index for id of the topic starter, used to count and filter found topics by authors.
+     */
+    public static final String TOPIC_STARTER_ID_FIELD = "topicStarterId";
+    /**
+     * Name of the field in the index for the date of the last topic change, used to count and filter found topics by
+     * how recently they were updated.
+     */
+    public static final String TOPIC_MODIFICATION_DATE_FIELD = "topicModificationDate";
+    /**
+     * Name of the filter leaving only topics of the branches user is allowed to see.
      */
-    public static final String TOPIC_POSTS_PREFIX = "topicPosts.";
+    public static final String ALLOWED_BRANCHES_FILTER = "allowedBranches";
 
 
     /**
@@ -192,6 +246,10 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
         post.setTopic(this);
         updateModificationDate();
         this.posts.add(post);
+        DateTime postDate = post.getCreationDate();
+        if (postDate != null && (lastPostDate == null || postDate.isAfter(lastPostDate))) {
+            lastPostDate = postDate;
+        }
     }
 
     /**
@@ -201,6 +259,12 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
      */
     public void removePost(Post postToRemove) {
         posts.remove(postToRemove);
+        lastPostDate = null;
+        for (Post post : posts) {
+            if (lastPostDate == null || post.getCreationDate().isAfter(lastPostDate)) {
+                lastPostDate = post.getCreationDate();
+            }
+        }
     }
 
     /**
@@ -237,6 +301,8 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
      *
      * @return the userCreated
      */
+    @Field(name = TOPIC_STARTER_ID_FIELD, index = Index.UN_TOKENIZED)
+    @FieldBridge(impl = EntityIdBridge.class)
     public JCUser getTopicStarter() {
         return topicStarter;
     }
@@ -259,7 +325,9 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
             @Field(name = TOPIC_TITLE_FIELD_RU,
                     analyzer = @Analyzer(definition = "russianJtalksAnalyzer")),
             @Field(name = TOPIC_TITLE_FIELD_DEF,
-                    analyzer = @Analyzer(definition = "defaultJtalksAnalyzer"))
+                    analyzer = @Analyzer(definition = "defaultJtalksAnalyzer")),
+            @Field(name = TOPIC_TITLE_SUGGESTION_FIELD, store = Store.YES,
+                    analyzer = @Analyzer(definition = TITLE_SUGGESTION_ANALYZER))
     })
     public String getTitle() {
         return title;
@@ -284,7 +352,6 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
     /**
      * @return the list of posts in the topic, always not null and not empty
      */
-    @IndexedEmbedded(prefix = TOPIC_POSTS_PREFIX)
     public List<Post> getPosts() {
         return posts;
     }
@@ -299,6 +366,8 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
     /**
      * @return branch that contains the topic
      */
+    @Field(name = TOPIC_BRANCH_ID_FIELD, index = Index.UN_TOKENIZED)
+    @FieldBridge(impl = EntityIdBridge.class)
     public Branch getBranch() {
         return branch;
     }
@@ -354,6 +423,8 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
     /**
      * @return date and time when theme was changed last time
      */
+    @Field(name = TOPIC_MODIFICATION_DATE_FIELD, index = Index.UN_TOKENIZED)
+    @FieldBridge(impl = DateTimeBridge.class)
     public DateTime getModificationDate() {
         return modificationDate;
     }
@@ -390,6 +461,20 @@ public class Topic extends Entity implements SubscriptionAwareEntity {
         modificationDate = newTopicModificationDate;
     }
 
+    /**
+     * @return creation date of the latest post of the topic, null if the topic has no posts
+     */
+    public DateTime getLastPostDate() {
+        return lastPostDate;
+    }
+
+    /**
+     * @param lastPostDate creation date of the latest post of the topic
+     */
+    protected void setLastPostDate(DateTime lastPostDate) {
+        this.lastPostDate = lastPostDate;
+    }
+
     /**
      * Get the date of the last modification of posts in the current topic.
      */
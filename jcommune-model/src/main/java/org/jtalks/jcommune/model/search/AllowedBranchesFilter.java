@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import java.util.Collection;
+
+/**
+ * Leaves in search results only documents from the branches user is allowed to see. Branch ids are taken from the
+ * index, so that filtering doesn't need the database.
+ *
+ * @see AllowedBranchesFilterFactory
+ */
+public class AllowedBranchesFilter extends IdsFilter {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param branchIdField      name of the field branch id is indexed to with {@link EntityIdBridge}
+     * @param allowedBranchesIds ids of the branches documents are left from
+     */
+    public AllowedBranchesFilter(String branchIdField, Collection<Long> allowedBranchesIds) {
+        super(branchIdField, allowedBranchesIds);
+    }
+}
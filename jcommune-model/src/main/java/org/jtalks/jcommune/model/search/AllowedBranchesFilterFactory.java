@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.search.Filter;
+import org.hibernate.search.annotations.Factory;
+import org.hibernate.search.annotations.Key;
+import org.hibernate.search.filter.FilterKey;
+import org.hibernate.search.filter.StandardFilterKey;
+import org.jtalks.jcommune.model.entity.Topic;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Creates {@link AllowedBranchesFilter} for topics. Hibernate Search caches both filters and the documents they
+ * allow by the key, and users of the same groups see the same branches, so a filter is built once per a set of
+ * groups until the index is changed.
+ */
+public class AllowedBranchesFilterFactory {
+    /**
+     * Name of the parameter the ids of allowed branches are passed with.
+     */
+    public static final String BRANCH_IDS_PARAMETER = "allowedBranchesIds";
+
+    private Collection<Long> allowedBranchesIds;
+
+    /**
+     * @param allowedBranchesIds ids of the branches topics are searched in
+     */
+    public void setAllowedBranchesIds(Collection<Long> allowedBranchesIds) {
+        this.allowedBranchesIds = allowedBranchesIds;
+    }
+
+    /**
+     * @return key which is the same for the same branches regardless of their order
+     */
+    @Key
+    public FilterKey getKey() {
+        StandardFilterKey key = new StandardFilterKey();
+        key.addParameter(new TreeSet<>(allowedBranchesIds));
+        return key;
+    }
+
+    /**
+     * @return filter leaving only topics of the allowed branches
+     */
+    @Factory
+    public Filter getFilter() {
+        return new AllowedBranchesFilter(Topic.TOPIC_BRANCH_ID_FIELD, allowedBranchesIds);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.hibernate.search.SearchException;
+import org.hibernate.search.backend.LuceneWork;
+import org.hibernate.search.backend.impl.lucene.LuceneBackendQueueProcessorFactory;
+import org.hibernate.search.spi.WorkerBuildContext;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hibernate Search back end which writes changes to the Lucene index in background instead of the transactions
+ * changing the data, so that saving of topics and posts doesn't wait for the index I/O. Changes are queued to
+ * {@link IndexWorkQueue} and written by the standard Lucene back end in batches, one commit per batch.
+ * <p/>
+ * Configured with <code>hibernate.search.worker.backend</code>, the queue capacity and the maximum batch size are set
+ * with {@link #QUEUE_SIZE_PROPERTY} and {@link #BATCH_SIZE_PROPERTY}. The execution should stay synchronous, so that
+ * changes are queued in the order they are committed.
+ */
+public class BatchingBackendQueueProcessorFactory extends LuceneBackendQueueProcessorFactory {
+    /** Maximum number of transactions whose changes are waiting to be written */
+    public static final String QUEUE_SIZE_PROPERTY = "hibernate.search.worker.batch.queue_size";
+    /** Maximum number of transactions whose changes are written with one commit */
+    public static final String BATCH_SIZE_PROPERTY = "hibernate.search.worker.batch.max_size";
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Back end of the running session factory, the one the state is shown for */
+    private static volatile BatchingBackendQueueProcessorFactory current;
+    private static final List<AppliedWorksListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private IndexWorkQueue workQueue;
+
+    /**
+     * Listens to the changes written to the index.
+     */
+    public interface AppliedWorksListener {
+        /**
+         * Called by the writer thread after the changes are committed and became visible to the search.
+         *
+         * @param works written changes
+         */
+        void worksApplied(List<LuceneWork> works);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize(Properties props, WorkerBuildContext context) {
+        super.initialize(props, context);
+        workQueue = new IndexWorkQueue(getIntProperty(props, QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE),
+                getIntProperty(props, BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE), new IndexWorkQueue.WorkApplier() {
+            @Override
+            public void apply(List<LuceneWork> works) {
+                BatchingBackendQueueProcessorFactory.super.getProcessor(works).run();
+                for (AppliedWorksListener listener : LISTENERS) {
+                    listener.worksApplied(works);
+                }
+            }
+        });
+        workQueue.start();
+        current = this;
+    }
+
+    /**
+     * @param queue changes of a committed transaction
+     * @return processor which only queues the changes
+     */
+    @Override
+    public Runnable getProcessor(final List<LuceneWork> queue) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                workQueue.enqueue(queue);
+            }
+        };
+    }
+
+    /**
+     * Writes the queued changes and closes the index.
+     */
+    @Override
+    public void close() {
+        try {
+            workQueue.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (current == this) {
+                current = null;
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * @return state of the queue of the running session factory, synchronous state if the index is written by
+     *         another back end
+     */
+    public static IndexingQueueState getState() {
+        BatchingBackendQueueProcessorFactory factory = current;
+        return factory == null ? IndexingQueueState.synchronous() : factory.workQueue.getState();
+    }
+
+    /**
+     * Registers a listener of the written changes, listeners are kept for all the session factories created later.
+     *
+     * @param listener listener to be notified after each written batch
+     */
+    public static void addListener(AppliedWorksListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    private static int getIntProperty(Properties props, String name, int defaultValue) {
+        String value = props.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new SearchException("Value of " + name + " must be a number: " + value, e);
+        }
+    }
+}
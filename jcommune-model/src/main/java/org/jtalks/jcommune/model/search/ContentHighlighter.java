@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.highlight.Encoder;
+import org.apache.lucene.search.highlight.Formatter;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.highlight.SimpleSpanFragmenter;
+import org.apache.lucene.search.highlight.TokenSources;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds fragments of the found text with the words matching the query highlighted. Words are taken from the term
+ * vectors stored in the index along with their offsets in the text, so the text is neither analyzed again nor loaded
+ * from the database, only its stored copy is read from the index.
+ */
+public class ContentHighlighter {
+    private static final int FRAGMENT_SIZE = 150;
+    private static final int MAX_FRAGMENTS = 3;
+    private static final Formatter FORMATTER = new SimpleHTMLFormatter("<b>", "</b>");
+    private static final Encoder ENCODER = new SimpleHTMLEncoder();
+
+    private final Query query;
+
+    /**
+     * @param query query the text was found with
+     */
+    public ContentHighlighter(Query query) {
+        this.query = query;
+    }
+
+    /**
+     * Gets fragments of the text. The same text can be indexed in several fields with different analyzers (e.g. for
+     * different languages), the fields are tried in turn until the words found by the query are highlighted in one
+     * of them.
+     *
+     * @param reader      reader of the index the document was found in
+     * @param docId       id of the found document in the reader
+     * @param storedField field with the stored text
+     * @param fields      fields with term vectors (with positions and offsets) of the text
+     * @return HTML-escaped fragments with the found words wrapped into {@code <b>} tags or the beginning of the text
+     *         if the words can't be highlighted, empty list if the text is not stored
+     * @throws IOException if the index can't be read
+     */
+    public List<String> getFragments(IndexReader reader, int docId, String storedField, String... fields)
+            throws IOException {
+        String text = reader.document(docId).get(storedField);
+        if (StringUtils.isEmpty(text)) {
+            return Collections.emptyList();
+        }
+        for (String field : fields) {
+            QueryScorer scorer = new QueryScorer(query, field);
+            Highlighter highlighter = new Highlighter(FORMATTER, ENCODER, scorer);
+            highlighter.setTextFragmenter(new SimpleSpanFragmenter(scorer, FRAGMENT_SIZE));
+            TokenStream tokens = TokenSources.getTokenStream(reader, docId, field);
+            try {
+                String[] fragments = highlighter.getBestFragments(tokens, text, MAX_FRAGMENTS);
+                if (fragments.length > 0) {
+                    return Arrays.asList(fragments);
+                }
+            } catch (InvalidTokenOffsetsException e) {
+                //offsets are stored for a different text, e.g. the field was indexed by another version of the bridge
+                break;
+            }
+        }
+        return Collections.singletonList(ENCODER.encodeText(StringUtils.abbreviate(text, FRAGMENT_SIZE)));
+    }
+}
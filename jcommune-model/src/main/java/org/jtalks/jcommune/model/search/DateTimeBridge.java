@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.document.DateTools;
+import org.hibernate.search.bridge.StringBridge;
+import org.joda.time.DateTime;
+
+import java.text.ParseException;
+
+/**
+ * Indexes a date with minute resolution into a string which sorts the same way the dates do, so that documents can be
+ * filtered by a range of dates and the dates can be taken from the field cache without loading the documents.
+ *
+ * @see #toDateTime(String)
+ */
+public class DateTimeBridge implements StringBridge {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String objectToString(Object object) {
+        return object == null ? null : toIndexedString(((DateTime) object).getMillis());
+    }
+
+    /**
+     * @param millis date in milliseconds since epoch
+     * @return the date the way it's indexed, e.g. to be a bound of a range filter
+     */
+    public static String toIndexedString(long millis) {
+        return DateTools.timeToString(millis, DateTools.Resolution.MINUTE);
+    }
+
+    /**
+     * @param indexedDate date the way it's indexed
+     * @return parsed date
+     */
+    public static DateTime toDateTime(String indexedDate) {
+        try {
+            return new DateTime(DateTools.stringToTime(indexedDate));
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Not an indexed date: " + indexedDate, e);
+        }
+    }
+}
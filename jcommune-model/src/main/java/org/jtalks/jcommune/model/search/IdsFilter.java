@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Leaves in search results only documents with one of the given entity ids in the field, e.g. documents of the
+ * given entities themselves or of the entities associated with them. Ids are taken from the index, so that filtering
+ * doesn't need the database.
+ */
+public class IdsFilter extends Filter {
+    private static final long serialVersionUID = 1L;
+    private final String idField;
+    private final Collection<Long> ids;
+
+    /**
+     * @param idField name of the field the id is indexed to with {@link EntityIdBridge}
+     * @param ids     ids documents are left with
+     */
+    public IdsFilter(String idField, Collection<Long> ids) {
+        this.idField = idField;
+        this.ids = ids;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        OpenBitSet matchingDocs = new OpenBitSet(reader.maxDoc());
+        TermDocs termDocs = reader.termDocs();
+        try {
+            for (Long id : ids) {
+                termDocs.seek(new Term(idField, String.valueOf(id)));
+                while (termDocs.next()) {
+                    matchingDocs.set(termDocs.doc());
+                }
+            }
+        } finally {
+            termDocs.close();
+        }
+        return matchingDocs;
+    }
+}
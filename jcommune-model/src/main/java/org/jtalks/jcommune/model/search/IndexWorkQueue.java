@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.hibernate.search.backend.AddLuceneWork;
+import org.hibernate.search.backend.DeleteLuceneWork;
+import org.hibernate.search.backend.LuceneWork;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of the changes to be written to the search index in background. Each element is the list of changes
+ * of one committed transaction (a work set). The writer thread takes all the work sets queued while the previous
+ * batch was being written, up to the maximum batch size, and writes them at once, so that many small transactions
+ * cost a single index commit. Work sets are written in the order they are queued.
+ * <p/>
+ * When the queue is full, transactions wait for the room in it, so that the index doesn't lag behind the database
+ * further than the queue capacity. A batch failed to be written is retried a few times before its changes are given
+ * up on, additions are preceded by deletions of the same documents when retried, so that documents written by the
+ * failed attempt are not duplicated. If the writer thread is not running, changes are written right away in the
+ * calling thread.
+ */
+public class IndexWorkQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexWorkQueue.class);
+    /** Marks the end of the queue, work sets queued before it are still written */
+    private static final QueuedWorkSet STOP = new QueuedWorkSet(Collections.<LuceneWork>emptyList(), 0);
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+    /** How often threads waiting for the room in the full queue check if the writer thread is still alive */
+    private static final long WRITER_CHECK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Writes the changes to the index.
+     */
+    public interface WorkApplier {
+        /**
+         * @param works changes of one or more transactions in the order they were committed
+         */
+        void apply(List<LuceneWork> works);
+    }
+
+    private final BlockingQueue<QueuedWorkSet> queue;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final WorkApplier applier;
+    private final long retryDelayMillis;
+    private final Object directWriteLock = new Object();
+    private volatile Thread writer;
+    private volatile boolean stopped;
+    private volatile long applyingSince;
+    private volatile long appliedBatchCount;
+    private volatile long appliedWorkSetCount;
+    private volatile long failedBatchCount;
+
+    /**
+     * @param capacity     maximum number of work sets waiting to be written
+     * @param maxBatchSize maximum number of work sets written with one commit
+     * @param applier      to write the changes to the index
+     */
+    public IndexWorkQueue(int capacity, int maxBatchSize, WorkApplier applier) {
+        this(capacity, maxBatchSize, applier, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * It needed for testing.
+     *
+     * @param capacity         maximum number of work sets waiting to be written
+     * @param maxBatchSize     maximum number of work sets written with one commit
+     * @param applier          to write the changes to the index
+     * @param retryDelayMillis delay before the first retry of a failed batch, it grows with each next attempt
+     */
+    IndexWorkQueue(int capacity, int maxBatchSize, WorkApplier applier, long retryDelayMillis) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.applier = applier;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public synchronized void start() {
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                applyQueuedWorks();
+            }
+        }, "search-index-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes all the queued work sets and stops the writer thread. Work sets queued after that are written right
+     * away in the calling thread.
+     *
+     * @throws InterruptedException if waiting thread is interrupted
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (writer != null && !stopped) {
+            stopped = true;
+            boolean stopQueued = false;
+            while (!stopQueued && writer.isAlive()) {
+                stopQueued = queue.offer(STOP, WRITER_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            writer.join();
+            //work sets queued while the writer was stopping
+            writeAtOnce(null);
+        }
+    }
+
+    /**
+     * Queues changes of a committed transaction, waits if the queue is full. Changes are written at once only if the
+     * writer thread is stopped or not running anymore, so that they are never written before the queued ones. An
+     * interrupted thread keeps waiting for the room in the queue, its interrupted status is restored afterwards.
+     *
+     * @param works changes to be written to the index
+     */
+    public void enqueue(List<LuceneWork> works) {
+        if (works.isEmpty()) {
+            return;
+        }
+        QueuedWorkSet workSet = new QueuedWorkSet(works, System.currentTimeMillis());
+        boolean interrupted = false;
+        try {
+            while (!stopped && isWriterAlive()) {
+                try {
+                    if (queue.offer(workSet, WRITER_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (!isWriterAlive()) {
+                            //the writer has stopped meanwhile, so nothing else takes the work set from the queue
+                            writeAtOnce(null);
+                        }
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!stopped) {
+            LOGGER.warn("Search index writer is not running, changes are written at once");
+        }
+        writeAtOnce(workSet);
+    }
+
+    /**
+     * @return number of queued work sets, the queue capacity, the index lag and counters of the written batches
+     */
+    public IndexingQueueState getState() {
+        int queuedWorkSetCount = queue.size();
+        long oldestWorkSetTime = applyingSince;
+        if (oldestWorkSetTime == 0) {
+            QueuedWorkSet oldest = queue.peek();
+            oldestWorkSetTime = oldest == null ? 0 : oldest.enqueuedAt;
+        }
+        long lagMillis = oldestWorkSetTime == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldestWorkSetTime);
+        return new IndexingQueueState(true, queuedWorkSetCount, capacity, lagMillis,
+                appliedBatchCount, appliedWorkSetCount, failedBatchCount);
+    }
+
+    private boolean isWriterAlive() {
+        Thread currentWriter = writer;
+        return currentWriter != null && currentWriter.isAlive();
+    }
+
+    /**
+     * Writes the given work set along with the ones left in the queue in the calling thread.
+     *
+     * @param workSet changes to be written after the queued ones, may be null
+     */
+    private void writeAtOnce(QueuedWorkSet workSet) {
+        synchronized (directWriteLock) {
+            List<QueuedWorkSet> workSets = new ArrayList<>();
+            queue.drainTo(workSets);
+            workSets.remove(STOP);
+            if (workSet != null) {
+                workSets.add(workSet);
+            }
+            for (QueuedWorkSet queuedWorkSet : workSets) {
+                applyBatch(Collections.singletonList(queuedWorkSet));
+            }
+        }
+    }
+
+    private void applyQueuedWorks() {
+        List<QueuedWorkSet> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                LOGGER.warn("Search index writer is interrupted, it keeps writing queued changes until it's stopped");
+                continue;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            boolean stopReached = batch.remove(STOP);
+            applyBatch(batch);
+            batch.clear();
+            if (stopReached) {
+                return;
+            }
+        }
+    }
+
+    private void applyBatch(List<QueuedWorkSet> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        applyingSince = batch.get(0).enqueuedAt;
+        List<LuceneWork> works = new ArrayList<>();
+        for (QueuedWorkSet workSet : batch) {
+            works.addAll(workSet.works);
+        }
+        try {
+            for (int attempt = 1; ; attempt++) {
+                if (attempt == 2) {
+                    //part of the changes may have been written before the failure
+                    works = deleteBeforeAdding(works);
+                }
+                try {
+                    applier.apply(works);
+                    appliedWorkSetCount += batch.size();
+                    appliedBatchCount++;
+                    return;
+                } catch (Throwable e) {
+                    //errors are caught as well, otherwise the writer thread dies and nothing empties the queue
+                    if (attempt == MAX_ATTEMPTS) {
+                        failedBatchCount++;
+                        LOGGER.error("Unable to write " + batch.size() + " queued changes to the search index after "
+                                + MAX_ATTEMPTS + " attempts, the index is to be rebuilt", e);
+                        return;
+                    }
+                    LOGGER.warn("Unable to write " + batch.size() + " queued changes to the search index, retrying", e);
+                    pause(attempt * retryDelayMillis);
+                }
+            }
+        } finally {
+            applyingSince = 0;
+        }
+    }
+
+    /**
+     * Makes the changes safe to be written again: each added document is deleted first, so that it's not duplicated
+     * if it was already written by the failed attempt. Deletions are safe to be repeated as they are.
+     *
+     * @param works changes of the failed batch
+     * @return the same changes with a deletion before each addition
+     */
+    private static List<LuceneWork> deleteBeforeAdding(List<LuceneWork> works) {
+        List<LuceneWork> idempotentWorks = new ArrayList<>(works.size() * 2);
+        for (LuceneWork work : works) {
+            if (work instanceof AddLuceneWork) {
+                idempotentWorks.add(new DeleteLuceneWork(work.getId(), work.getIdInString(), work.getEntityClass()));
+            }
+            idempotentWorks.add(work);
+        }
+        return idempotentWorks;
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Waiting before the next attempt to write changes to the search index is interrupted");
+        }
+    }
+
+    /**
+     * Changes of one transaction along with the time they were queued at.
+     */
+    private static final class QueuedWorkSet {
+        private final List<LuceneWork> works;
+        private final long enqueuedAt;
+
+        private QueuedWorkSet(List<LuceneWork> works, long enqueuedAt) {
+            this.works = works;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.function.CustomScoreProvider;
+import org.apache.lucene.search.function.CustomScoreQuery;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Finds documents with one of the given entity ids in the field and scores each of them with the score given for its
+ * id, e.g. topics found by the content of their posts are scored as their best matching posts. All the ids are
+ * matched with one filter, scores are looked up by the ids taken from the field cache of each index segment.
+ */
+public class ScoredIdsQuery extends CustomScoreQuery {
+    private static final long serialVersionUID = 1L;
+    private final String idField;
+    private final Map<Long, Float> scores;
+
+    /**
+     * @param idField name of the un-tokenized field the id is indexed to with {@link EntityIdBridge}
+     * @param scores  scores of the documents by the ids
+     */
+    public ScoredIdsQuery(String idField, Map<Long, Float> scores) {
+        super(new ConstantScoreQuery(new IdsFilter(idField, scores.keySet())));
+        this.idField = idField;
+        this.scores = scores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CustomScoreProvider getCustomScoreProvider(IndexReader reader) throws IOException {
+        final String[] segmentIds = FieldCache.DEFAULT.getStrings(reader, idField);
+        return new CustomScoreProvider(reader) {
+            @Override
+            public float customScore(int doc, float subQueryScore, float valSrcScore) {
+                String id = segmentIds[doc];
+                Float score = id == null ? null : scores.get(Long.valueOf(id));
+                return score == null ? 0 : subQueryScore * score;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString(String field) {
+        return "scoredIds(" + idField + ": " + scores.size() + " ids)";
+    }
+}
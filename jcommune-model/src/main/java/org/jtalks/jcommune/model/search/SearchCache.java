@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import com.google.common.base.Predicate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small in-memory cache of search data which is valid only for a short time, e.g. while user pages through search
+ * results. The least recently used entries are evicted when the cache is full. It's local to the node like the index
+ * itself, so it's not put into the clustered caches.
+ *
+ * @param <K> type of keys, they have to implement equals and hashCode
+ * @param <V> type of cached values
+ */
+public class SearchCache<K, V> {
+    private final long timeToLiveMillis;
+    private final Map<K, Entry<V>> entries;
+    private long evictionCount;
+
+    /**
+     * @param maxSize          maximum number of entries kept in the cache
+     * @param timeToLiveMillis time in milliseconds an entry stays valid after it's put into the cache
+     */
+    public SearchCache(final int maxSize, long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.entries = new LinkedHashMap<K, Entry<V>>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > maxSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param key key of the value
+     * @return cached value or null if there is no value for the key or it's expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expirationTime <= currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @param key   key of the value
+     * @param value value to be cached, replaces the previous value of the key
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, currentTimeMillis() + timeToLiveMillis));
+    }
+
+    /**
+     * Removes entries which became outdated before they expired, e.g. because the data they were taken from was
+     * changed.
+     *
+     * @param keys predicate matching the keys of the entries to be removed
+     * @return number of removed entries
+     */
+    public synchronized int removeAll(Predicate<? super K> keys) {
+        int removed = 0;
+        for (Iterator<K> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (keys.apply(iterator.next())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all the entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of entries in the cache including the expired ones which weren't requested since they expired
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return how many entries were evicted because the cache was full
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets current time, expiration of entries is checked against it. Can be overridden in tests.
+     *
+     * @return current time in milliseconds
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expirationTime;
+
+        private Entry(V value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
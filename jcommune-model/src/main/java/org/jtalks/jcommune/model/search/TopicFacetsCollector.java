@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the found topics along with the numbers of them per branch, per author and per period they were updated
+ * during. Neither scores nor stored fields are read: values are taken from the field cache of each index segment,
+ * each hit only increments the counters of the ordinals of its values, the values themselves are parsed once per
+ * segment.
+ */
+public class TopicFacetsCollector extends Collector {
+    private final String branchIdField;
+    private final String authorIdField;
+    private final String dateField;
+    private final DateTime now;
+    private final Map<Long, Integer> branchCounts = new HashMap<>();
+    private final Map<Long, Integer> authorCounts = new HashMap<>();
+    private final Map<TopicSearchFilter.Period, Integer> periodCounts = new EnumMap<>(TopicSearchFilter.Period.class);
+    private int totalHits;
+    private SegmentCounts segmentBranches;
+    private SegmentCounts segmentAuthors;
+    private SegmentCounts segmentDates;
+
+    /**
+     * @param branchIdField name of the un-tokenized field the branch id is indexed to with {@link EntityIdBridge}
+     * @param authorIdField name of the un-tokenized field the author id is indexed to with {@link EntityIdBridge}
+     * @param dateField     name of the un-tokenized field the date is indexed to with {@link DateTimeBridge}
+     * @param now           time the periods are counted back from
+     */
+    public TopicFacetsCollector(String branchIdField, String authorIdField, String dateField, DateTime now) {
+        this.branchIdField = branchIdField;
+        this.authorIdField = authorIdField;
+        this.dateField = dateField;
+        this.now = now;
+    }
+
+    /**
+     * @return number of the collected topics
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return numbers of the collected topics by ids of their branches
+     */
+    public Map<Long, Integer> getBranchCounts() {
+        flushSegment();
+        return branchCounts;
+    }
+
+    /**
+     * @return numbers of the collected topics by ids of their starters
+     */
+    public Map<Long, Integer> getAuthorCounts() {
+        flushSegment();
+        return authorCounts;
+    }
+
+    /**
+     * @return numbers of the collected topics updated during each period, periods without topics are omitted
+     */
+    public Map<TopicSearchFilter.Period, Integer> getPeriodCounts() {
+        flushSegment();
+        return periodCounts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void collect(int doc) {
+        totalHits++;
+        segmentBranches.collect(doc);
+        segmentAuthors.collect(doc);
+        segmentDates.collect(doc);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        flushSegment();
+        segmentBranches = new SegmentCounts(FieldCache.DEFAULT.getStringIndex(reader, branchIdField));
+        segmentAuthors = new SegmentCounts(FieldCache.DEFAULT.getStringIndex(reader, authorIdField));
+        segmentDates = new SegmentCounts(FieldCache.DEFAULT.getStringIndex(reader, dateField));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * Adds the counts of the last segment to the totals.
+     */
+    private void flushSegment() {
+        if (segmentBranches == null) {
+            return;
+        }
+        for (int ord = 1; ord < segmentBranches.counts.length; ord++) {
+            add(branchCounts, Long.valueOf(segmentBranches.values.lookup[ord]), segmentBranches.counts[ord]);
+        }
+        for (int ord = 1; ord < segmentAuthors.counts.length; ord++) {
+            add(authorCounts, Long.valueOf(segmentAuthors.values.lookup[ord]), segmentAuthors.counts[ord]);
+        }
+        for (int ord = 1; ord < segmentDates.counts.length; ord++) {
+            if (segmentDates.counts[ord] > 0) {
+                DateTime date = DateTimeBridge.toDateTime(segmentDates.values.lookup[ord]);
+                for (TopicSearchFilter.Period period : TopicSearchFilter.Period.values()) {
+                    if (!date.isBefore(period.getStart(now))) {
+                        add(periodCounts, period, segmentDates.counts[ord]);
+                    }
+                }
+            }
+        }
+        segmentBranches = null;
+        segmentAuthors = null;
+        segmentDates = null;
+    }
+
+    private static <K> void add(Map<K, Integer> counts, K key, int count) {
+        if (count > 0) {
+            Integer previous = counts.get(key);
+            counts.put(key, previous == null ? count : previous + count);
+        }
+    }
+
+    /**
+     * Numbers of the collected documents of one segment by ordinals of the field values, ordinal 0 stands for the
+     * documents without the field.
+     */
+    private static final class SegmentCounts {
+        private final FieldCache.StringIndex values;
+        private final int[] counts;
+
+        private SegmentCounts(FieldCache.StringIndex values) {
+            this.values = values;
+            this.counts = new int[values.lookup.length];
+        }
+
+        private void collect(int doc) {
+            counts[values.order[doc]]++;
+        }
+    }
+}
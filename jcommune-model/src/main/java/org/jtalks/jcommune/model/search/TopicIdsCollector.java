@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects ids of the topics of all the found posts along with the score of the best matching post of each topic, so
+ * that topics can be found by the content of their posts without indexing the posts into topic documents. Stored
+ * fields are not read, topic ids are taken from the field cache of each index segment.
+ */
+public class TopicIdsCollector extends Collector {
+    private final String topicIdField;
+    private final Map<Long, Float> topicScores = new HashMap<>();
+    private String[] segmentTopicIds;
+    private Scorer scorer;
+
+    /**
+     * @param topicIdField name of the un-tokenized field the topic id is indexed to with {@link EntityIdBridge}
+     */
+    public TopicIdsCollector(String topicIdField) {
+        this.topicIdField = topicIdField;
+    }
+
+    /**
+     * @return scores of the best collected posts of each topic by the topic ids
+     */
+    public Map<Long, Float> getTopicScores() {
+        return topicScores;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void collect(int doc) throws IOException {
+        String topicId = segmentTopicIds[doc];
+        if (topicId != null) {
+            Long id = Long.valueOf(topicId);
+            float score = scorer.score();
+            Float bestScore = topicScores.get(id);
+            if (bestScore == null || bestScore < score) {
+                topicScores.put(id, score);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        segmentTopicIds = FieldCache.DEFAULT.getStrings(reader, topicIdField);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-living cache of topic search results, so that popular queries and paging through the results don't search
+ * the index each time. Results are cached for the search text already cleaned by {@link SearchRequestFilter}s, the
+ * {@link TopicSearchFilter} and the set of branches the user is allowed to see, because users of the same groups get
+ * the same results. Pages keep
+ * only ids of the found topics, the topics themselves are taken from the second level cache. When topics or posts of
+ * a branch are changed, all the results that could contain topics of this branch are removed.<br/>
+ * Also keeps the facets (and the number) of found topics separately from pages, so that the requested page can be
+ * adjusted to the last one without counting the topics again.
+ */
+public class TopicSearchCache implements TopicSearchCacheStatisticsMXBean {
+    private final SearchCache<Key, TopicSearchFacets> facets;
+    private final SearchCache<Key, CachedResults> pages;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxSize           maximum number of pages (and separately of facets) kept in the cache
+     * @param timeToLiveSeconds time in seconds the results stay in the cache if the branches are not changed
+     */
+    public TopicSearchCache(int maxSize, int timeToLiveSeconds) {
+        long timeToLiveMillis = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+        this.facets = new SearchCache<>(maxSize, timeToLiveMillis);
+        this.pages = new SearchCache<>(maxSize, timeToLiveMillis);
+    }
+
+    /**
+     * @param searchText         search text cleaned by the filters
+     * @param filter             restrictions the found topics were narrowed down with
+     * @param allowedBranchesIds ids of the branches topics were searched in
+     * @return facets of the found topics or null if they are not cached
+     */
+    public TopicSearchFacets getFacets(String searchText, TopicSearchFilter filter,
+                                       Collection<Long> allowedBranchesIds) {
+        return facets.get(new Key(searchText, filter, allowedBranchesIds, 0, 0));
+    }
+
+    /**
+     * @param searchText         search text cleaned by the filters
+     * @param filter             restrictions the found topics were narrowed down with
+     * @param allowedBranchesIds ids of the branches topics were searched in
+     * @param topicFacets        facets of the found topics
+     */
+    public void putFacets(String searchText, TopicSearchFilter filter, Collection<Long> allowedBranchesIds,
+                          TopicSearchFacets topicFacets) {
+        facets.put(new Key(searchText, filter, allowedBranchesIds, 0, 0), topicFacets);
+    }
+
+    /**
+     * @param searchText         search text cleaned by the filters
+     * @param filter             restrictions the found topics are narrowed down with
+     * @param allowedBranchesIds ids of the branches topics are searched in
+     * @param pageRequest        page of the results, should be already adjusted to the number of found topics
+     * @return found topics or null if they are not cached
+     */
+    public CachedResults getResults(String searchText, TopicSearchFilter filter, Collection<Long> allowedBranchesIds,
+                                    PageRequest pageRequest) {
+        CachedResults results = pages.get(pageKey(searchText, filter, allowedBranchesIds, pageRequest));
+        if (results == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return results;
+    }
+
+    /**
+     * @param searchText         search text cleaned by the filters
+     * @param filter             restrictions the found topics were narrowed down with
+     * @param allowedBranchesIds ids of the branches topics were searched in
+     * @param pageRequest        page of the results
+     * @param topicIds           ids of the topics found for the page in the order they should be shown
+     * @param topicCount         number of topics found for all the pages
+     */
+    public void putResults(String searchText, TopicSearchFilter filter, Collection<Long> allowedBranchesIds,
+                           PageRequest pageRequest, List<Long> topicIds, int topicCount) {
+        pages.put(pageKey(searchText, filter, allowedBranchesIds, pageRequest),
+                new CachedResults(topicIds, topicCount));
+    }
+
+    /**
+     * Removes all the cached results which could contain topics of the branch, because the topics could be found by
+     * other texts or not found anymore after they are changed.
+     *
+     * @param branchId id of the branch whose topics or posts were added, changed or removed
+     */
+    public void invalidateBranch(final long branchId) {
+        Predicate<Key> containingBranch = new Predicate<Key>() {
+            @Override
+            public boolean apply(Key key) {
+                return key.allowedBranchesIds.contains(branchId);
+            }
+        };
+        facets.removeAll(containingBranch);
+        invalidations.addAndGet(pages.removeAll(containingBranch));
+    }
+
+    /**
+     * Removes all the cached results, e.g. when the whole index is removed to be rebuilt.
+     */
+    public void invalidateAll() {
+        facets.removeAll(Predicates.<Key>alwaysTrue());
+        invalidations.addAndGet(pages.removeAll(Predicates.<Key>alwaysTrue()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEvictionCount() {
+        return pages.getEvictionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return pages.size();
+    }
+
+    private Key pageKey(String searchText, TopicSearchFilter filter, Collection<Long> allowedBranchesIds,
+                        PageRequest pageRequest) {
+        return new Key(searchText, filter, allowedBranchesIds, pageRequest.getPageNumber(),
+                pageRequest.getPageSize());
+    }
+
+    /**
+     * Page of topics found by a search text.
+     */
+    public static final class CachedResults {
+        private final List<Long> topicIds;
+        private final int topicCount;
+
+        private CachedResults(List<Long> topicIds, int topicCount) {
+            this.topicIds = Collections.unmodifiableList(topicIds);
+            this.topicCount = topicCount;
+        }
+
+        /**
+         * @return ids of the topics found for the page in the order they should be shown
+         */
+        public List<Long> getTopicIds() {
+            return topicIds;
+        }
+
+        /**
+         * @return number of topics found for all the pages
+         */
+        public int getTopicCount() {
+            return topicCount;
+        }
+    }
+
+    /**
+     * Search text with the filter, the branches it was searched in and the page. Order of the branches doesn't
+     * matter, the branches themselves are compared rather than only their hash, so that users never get topics of
+     * branches they are not allowed to see because of a hash collision.
+     */
+    private static final class Key {
+        private final String searchText;
+        private final TopicSearchFilter filter;
+        private final Set<Long> allowedBranchesIds;
+        private final int pageNumber;
+        private final int pageSize;
+        private final int hash;
+
+        private Key(String searchText, TopicSearchFilter filter, Collection<Long> allowedBranchesIds,
+                    int pageNumber, int pageSize) {
+            this.searchText = searchText;
+            this.filter = filter;
+            this.allowedBranchesIds = new TreeSet<>(allowedBranchesIds);
+            this.pageNumber = pageNumber;
+            this.pageSize = pageSize;
+            this.hash = 31 * (31 * (31 * (31 * searchText.hashCode() + filter.hashCode())
+                    + this.allowedBranchesIds.hashCode()) + pageNumber) + pageSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && pageNumber == other.pageNumber && pageSize == other.pageSize
+                    && searchText.equals(other.searchText) && filter.equals(other.filter)
+                    && allowedBranchesIds.equals(other.allowedBranchesIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
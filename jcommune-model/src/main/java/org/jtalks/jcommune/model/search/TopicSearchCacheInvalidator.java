@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.hibernate.event.PostDeleteEvent;
+import org.hibernate.event.PostDeleteEventListener;
+import org.hibernate.event.PostInsertEvent;
+import org.hibernate.event.PostInsertEventListener;
+import org.hibernate.event.PostUpdateEvent;
+import org.hibernate.event.PostUpdateEventListener;
+import org.hibernate.search.backend.AddLuceneWork;
+import org.hibernate.search.backend.LuceneWork;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Listens to the committed changes of topics and posts, which are written to the search index, and removes cached
+ * search results of their branches from {@link TopicSearchCache}. Should be registered for post-commit events of the
+ * session factory, so that the results are removed only when the changes are visible to the search.
+ * <p/>
+ * If the index is written in background, results may be cached again before the changes reach the index, so they
+ * are also removed when the changes are written, see
+ * {@link BatchingBackendQueueProcessorFactory#addListener(BatchingBackendQueueProcessorFactory.AppliedWorksListener)}.
+ */
+public class TopicSearchCacheInvalidator implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, BatchingBackendQueueProcessorFactory.AppliedWorksListener {
+    private static final String TOPIC_BRANCH_PROPERTY = "branch";
+
+    private final transient TopicSearchCache searchCache;
+
+    /**
+     * @param searchCache cache of the search results to be invalidated
+     */
+    public TopicSearchCacheInvalidator(TopicSearchCache searchCache) {
+        this.searchCache = searchCache;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        invalidateBranchOf(event.getEntity());
+    }
+
+    /**
+     * Invalidates both the current and the previous branch of the topic, because moved topic should be neither
+     * found in the old branch nor missed in the new one.
+     */
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        invalidateBranchOf(event.getEntity());
+        if (event.getEntity() instanceof Topic && event.getOldState() != null) {
+            int branchIndex = Arrays.asList(event.getPersister().getPropertyNames()).indexOf(TOPIC_BRANCH_PROPERTY);
+            if (branchIndex >= 0 && event.getOldState()[branchIndex] instanceof Branch) {
+                searchCache.invalidateBranch(((Branch) event.getOldState()[branchIndex]).getId());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        invalidateBranchOf(event.getEntity());
+    }
+
+    /**
+     * Invalidates branches of the written topic and post documents, branch ids are taken from the documents.
+     */
+    @Override
+    public void worksApplied(List<LuceneWork> works) {
+        Set<String> branchIds = new HashSet<>();
+        for (LuceneWork work : works) {
+            if (!(work instanceof AddLuceneWork)) {
+                continue;
+            }
+            String branchId = null;
+            if (Topic.class.equals(work.getEntityClass())) {
+                branchId = work.getDocument().get(Topic.TOPIC_BRANCH_ID_FIELD);
+            } else if (Post.class.equals(work.getEntityClass())) {
+                branchId = work.getDocument().get(Post.POST_BRANCH_ID_FIELD);
+            }
+            if (branchId != null) {
+                branchIds.add(branchId);
+            }
+        }
+        for (String branchId : branchIds) {
+            searchCache.invalidateBranch(Long.parseLong(branchId));
+        }
+    }
+
+    private void invalidateBranchOf(Object entity) {
+        Topic topic = null;
+        if (entity instanceof Topic) {
+            topic = (Topic) entity;
+        } else if (entity instanceof Post) {
+            topic = ((Post) entity).getTopic();
+        }
+        if (topic != null && topic.getBranch() != null) {
+            searchCache.invalidateBranch(topic.getBranch().getId());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+/**
+ * Exposes the counters of the topic search results cache via JMX so that we can see whether repeated searches are
+ * served from the cache and whether its size and time to live fit the forum.
+ *
+ * @see TopicSearchCache
+ */
+public interface TopicSearchCacheStatisticsMXBean {
+    /**
+     * @return how many times a page of search results was taken from the cache instead of searching the index
+     */
+    long getHitCount();
+
+    /**
+     * @return how many times there was no page in the cache (or it expired) so the index had to be searched
+     */
+    long getMissCount();
+
+    /**
+     * @return share of the searches served from the cache, from 0 to 1, 0 if nothing was searched yet
+     */
+    double getHitRatio();
+
+    /**
+     * @return how many pages were evicted by the cache itself because it was full
+     */
+    long getEvictionCount();
+
+    /**
+     * @return how many pages were explicitly removed because topics of their branches were changed
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return the number of pages of search results currently cached
+     */
+    int getSize();
+}
@@ -0,0 +1,3 @@
+-- Post content converted from BB-codes to HTML at write time along with the version of converter configuration
+alter table POST add(RENDERED_CONTENT longtext default null);
+alter table POST add(RENDERED_CONTENT_VERSION varchar(32) default null);
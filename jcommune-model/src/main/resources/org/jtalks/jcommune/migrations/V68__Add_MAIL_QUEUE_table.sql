@@ -0,0 +1,13 @@
+-- Outbound mails rendered while processing user requests and waiting to be sent in background
+create table MAIL_QUEUE (
+  ID bigint(20) not null auto_increment,
+  UUID varchar(255) not null,
+  RECIPIENT varchar(255) not null,
+  MESSAGE longtext not null,
+  CREATION_DATE datetime not null,
+  ATTEMPTS int(11) not null default 0,
+  NEXT_ATTEMPT_DATE datetime not null,
+  primary key(ID),
+  unique key (UUID),
+  key IDX_MAIL_QUEUE_NEXT_ATTEMPT (NEXT_ATTEMPT_DATE)
+)engine=InnoDb default charset='utf8' collate='utf8_bin';
@@ -0,0 +1 @@
+ALTER TABLE JC_USER_DETAILS ADD(SUBSCRIPTION_DIGEST_ENABLED TINYINT(1) NOT NULL DEFAULT 0);
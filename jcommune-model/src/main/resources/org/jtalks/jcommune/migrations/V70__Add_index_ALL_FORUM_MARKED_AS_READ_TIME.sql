@@ -0,0 +1,2 @@
+-- Users who recently marked the whole forum as read are looked up to purge their stale last read posts
+create index ALL_FORUM_MARKED_AS_READ_TIME_INDEX ON JC_USER_DETAILS (ALL_FORUM_MARKED_AS_READ_TIME)
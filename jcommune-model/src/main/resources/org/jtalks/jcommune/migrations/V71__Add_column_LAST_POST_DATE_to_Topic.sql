@@ -0,0 +1,8 @@
+-- Creation date of the latest post of the topic, so that topics with recent posts are found without reading posts
+ALTER TABLE TOPIC ADD(LAST_POST_DATE DATETIME DEFAULT NULL);
+
+UPDATE TOPIC
+SET LAST_POST_DATE = (SELECT MAX(P.POST_DATE) FROM POST P WHERE P.TOPIC_ID = TOPIC.TOPIC_ID);
+
+-- topics modified by other application instances are looked up by the time they were modified at
+CREATE INDEX TOPIC_MODIFICATION_DATE_INDEX ON TOPIC (MODIFICATION_DATE);
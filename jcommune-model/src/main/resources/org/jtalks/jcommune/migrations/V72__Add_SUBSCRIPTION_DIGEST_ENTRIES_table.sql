@@ -0,0 +1,16 @@
+-- Subscription updates waiting to be sent to users in digests
+create table SUBSCRIPTION_DIGEST_ENTRIES (
+  ID bigint(20) not null auto_increment,
+  UUID varchar(255) not null,
+  USER_ID bigint(20) not null,
+  ENTITY_KEY varchar(255) not null,
+  TITLE varchar(255) not null,
+  LINK varchar(1024) not null,
+  LINK_LABEL varchar(1024) not null,
+  UPDATES_COUNT int(11) not null default 1,
+  CREATION_DATE datetime not null,
+  primary key(ID),
+  unique key (UUID),
+  key IDX_DIGEST_ENTRIES_USER_ENTITY (USER_ID, ENTITY_KEY),
+  constraint FK_DIGEST_ENTRY_USER foreign key (USER_ID) references USERS(ID) on delete cascade
+)engine=InnoDb default charset='utf8' collate='utf8_bin';
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.activity;
+
+import org.jtalks.jcommune.model.dto.TopicActivity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TopicActivityIndexTest {
+    private TopicActivityIndex index;
+
+    @BeforeMethod
+    public void setUp() {
+        index = new TopicActivityIndex();
+    }
+
+    @Test
+    public void topicsWithPostsSinceGivenTimeShouldBeReturnedNewestFirst() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L), new TopicActivity(2L, 1L, 300L),
+                new TopicActivity(3L, 1L, 200L), new TopicActivity(4L, 2L, 400L)));
+
+        assertTrue(index.isLoaded());
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, 200L)), Arrays.asList(2L, 3L));
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, Long.MIN_VALUE)), Arrays.asList(2L, 3L, 1L));
+        assertFalse(index.getTopicsWithPostsSince(3L, Long.MIN_VALUE).iterator().hasNext());
+    }
+
+    @Test
+    public void topicsWithPostsAtTheSameTimeShouldBeKept() {
+        index.load(Arrays.asList(new TopicActivity(2L, 1L, 100L), new TopicActivity(1L, 1L, 100L)));
+
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, 100L)), Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    public void topicShouldBeMovedUpOnlyByNewerPost() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L), new TopicActivity(2L, 1L, 200L)));
+
+        index.postAdded(1L, 1L, 300L);
+        index.postAdded(2L, 1L, 150L);
+
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, 200L)), Arrays.asList(1L, 2L));
+        assertEquals(index.size(), 2);
+    }
+
+    @Test
+    public void topicsChangedWhileLoadingShouldNotBeOverwritten() {
+        index.postAdded(1L, 1L, 300L);
+
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L)));
+
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, 300L)), Arrays.asList(1L));
+    }
+
+    @Test
+    public void movedTopicShouldKeepItsLastPost() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L)));
+
+        index.moveTopic(1L, 2L);
+        index.moveTopic(3L, 2L);
+
+        assertFalse(index.getTopicsWithPostsSince(1L, Long.MIN_VALUE).iterator().hasNext());
+        assertEquals(topicIds(index.getTopicsWithPostsSince(2L, 100L)), Arrays.asList(1L));
+        assertEquals(index.size(), 1);
+    }
+
+    @Test
+    public void updatedTopicMayMoveDown() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 300L)));
+
+        index.update(new TopicActivity(1L, 1L, 100L));
+
+        assertFalse(index.getTopicsWithPostsSince(1L, 200L).iterator().hasNext());
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, 100L)), Arrays.asList(1L));
+    }
+
+    @Test
+    public void removedTopicShouldNotBeReturned() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L)));
+
+        index.removeTopic(1L);
+        index.removeTopic(2L);
+
+        assertFalse(index.getTopicsWithPostsSince(1L, Long.MIN_VALUE).iterator().hasNext());
+        assertEquals(index.size(), 0);
+    }
+
+    @Test
+    public void mergedTopicsShouldBeMovedUpOrToAnotherBranch() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L), new TopicActivity(2L, 1L, 200L)));
+
+        index.merge(Arrays.asList(new TopicActivity(1L, 2L, 100L), new TopicActivity(2L, 1L, 150L),
+                new TopicActivity(3L, 1L, 300L)));
+
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, Long.MIN_VALUE)), Arrays.asList(3L, 2L));
+        assertEquals(topicIds(index.getTopicsWithPostsSince(2L, Long.MIN_VALUE)), Arrays.asList(1L));
+    }
+
+    @Test
+    public void reloadShouldReplaceTopicsExceptForOnesChangedWhileReloading() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L), new TopicActivity(2L, 1L, 200L),
+                new TopicActivity(3L, 1L, 300L)));
+
+        index.startReload();
+        index.postAdded(3L, 1L, 400L);
+        index.postAdded(4L, 1L, 500L);
+        index.finishReload(Arrays.asList(new TopicActivity(1L, 1L, 50L), new TopicActivity(3L, 1L, 300L)));
+
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, Long.MIN_VALUE)), Arrays.asList(4L, 3L, 1L));
+        assertEquals(topicIds(index.getTopicsWithPostsSince(1L, 400L)), Arrays.asList(4L, 3L));
+        assertEquals(index.size(), 3);
+        assertTrue(index.isLoaded());
+    }
+
+    private List<Long> topicIds(Iterable<TopicActivity> activities) {
+        List<Long> topicIds = new ArrayList<>();
+        for (TopicActivity activity : activities) {
+            topicIds.add(activity.getTopicId());
+        }
+        return topicIds;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.activity;
+
+import org.hibernate.event.PostDeleteEvent;
+import org.hibernate.event.PostInsertEvent;
+import org.hibernate.event.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.jtalks.jcommune.model.dto.TopicActivity;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class TopicActivityListenerTest {
+    @Mock
+    private EntityPersister persister;
+    private TopicActivityIndex index;
+    private TopicActivityListener listener;
+    private Topic topic;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        index = new TopicActivityIndex();
+        listener = new TopicActivityListener(index);
+        JCUser user = new JCUser("username", "email@example.com", "password");
+        topic = new Topic(user, "title");
+        topic.setId(1L);
+        branch(1L).addTopic(topic);
+    }
+
+    @Test
+    public void topicOfAddedPostShouldBeMovedUp() {
+        Post post = new Post(topic.getTopicStarter(), "content");
+        topic.addPost(post);
+
+        listener.onPostInsert(new PostInsertEvent(post, 1L, null, persister, null));
+
+        assertEquals(index.getTopicsWithPostsSince(1L, post.getCreationDate().getMillis()).iterator().next()
+                .getTopicId(), 1L);
+    }
+
+    @Test
+    public void lastPostOfUpdatedTopicShouldBeTaken() {
+        Post first = new Post(topic.getTopicStarter(), "first");
+        topic.addPost(first);
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, first.getCreationDate().getMillis() + 1000)));
+
+        listener.onPostUpdate(updateEvent(topic));
+
+        assertFalse(index.getTopicsWithPostsSince(1L, first.getCreationDate().getMillis() + 1).iterator().hasNext());
+        assertEquals(index.size(), 1);
+    }
+
+    @Test
+    public void topicWithoutPostsShouldBeMovedToItsNewBranch() {
+        index.load(Arrays.asList(new TopicActivity(1L, 2L, 100L)));
+
+        listener.onPostUpdate(updateEvent(topic));
+
+        assertFalse(index.getTopicsWithPostsSince(2L, Long.MIN_VALUE).iterator().hasNext());
+        assertEquals(index.getTopicsWithPostsSince(1L, 100L).iterator().next().getTopicId(), 1L);
+    }
+
+    @Test
+    public void deletedTopicShouldBeRemoved() {
+        index.load(Arrays.asList(new TopicActivity(1L, 1L, 100L)));
+
+        listener.onPostDelete(new PostDeleteEvent(topic, 1L, null, persister, null));
+
+        assertEquals(index.size(), 0);
+    }
+
+    @Test
+    public void changesOfOtherEntitiesShouldBeIgnored() {
+        listener.onPostInsert(new PostInsertEvent(topic.getBranch(), 1L, null, persister, null));
+        listener.onPostUpdate(updateEvent(topic.getBranch()));
+        listener.onPostDelete(new PostDeleteEvent(topic.getBranch(), 1L, null, persister, null));
+
+        assertEquals(index.size(), 0);
+    }
+
+    private PostUpdateEvent updateEvent(Object entity) {
+        PostUpdateEvent event = mock(PostUpdateEvent.class);
+        when(event.getEntity()).thenReturn(entity);
+        return event;
+    }
+
+    private Branch branch(long id) {
+        Branch branch = new Branch("branch", "description");
+        branch.setId(id);
+        return branch;
+    }
+}
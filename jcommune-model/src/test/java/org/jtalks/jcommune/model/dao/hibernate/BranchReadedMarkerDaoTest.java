@@ -30,8 +30,14 @@ import org.springframework.transaction.annotation.Transactional;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
 
 /**
@@ -97,4 +103,30 @@ public class BranchReadedMarkerDaoTest extends AbstractTransactionalTestNGSpring
         assertNull(result);
     }
 
+    @Test
+    public void markersOfSeveralBranchesShouldBeFoundAtOnce() {
+        Branch otherBranch = ObjectsFactory.getDefaultBranch();
+        Branch notMarkedBranch = ObjectsFactory.getDefaultBranch();
+        JCUser otherUser = ObjectsFactory.getUser("other", "other@mail.com");
+        session.save(user);
+        session.save(otherUser);
+        session.save(branch);
+        session.save(otherBranch);
+        session.save(notMarkedBranch);
+        BranchReadedMarker marker = new BranchReadedMarker(user, branch);
+        BranchReadedMarker otherMarker = new BranchReadedMarker(user, otherBranch);
+        session.save(marker);
+        session.save(otherMarker);
+        session.save(new BranchReadedMarker(otherUser, notMarkedBranch));
+
+        List<BranchReadedMarker> result = dao.getMarkersFor(user, Arrays.asList(branch, otherBranch, notMarkedBranch));
+
+        assertEquals(result.size(), 2);
+        assertTrue(result.containsAll(Arrays.asList(marker, otherMarker)));
+    }
+
+    @Test
+    public void markersShouldNotBeSearchedForNoBranches() {
+        assertTrue(dao.getMarkersFor(user, Collections.<Branch>emptyList()).isEmpty());
+    }
 }
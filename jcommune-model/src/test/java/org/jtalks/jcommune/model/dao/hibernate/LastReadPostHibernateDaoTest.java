@@ -14,6 +14,8 @@
  */
 package org.jtalks.jcommune.model.dao.hibernate;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -207,6 +209,99 @@ public class LastReadPostHibernateDaoTest extends AbstractTransactionalTestNGSpr
 
     }
 
+    @Test
+    public void lastReadPostDatesShouldBeReturnedForTopicsOfBranchesReadSinceGivenTime() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(2);
+        Topic topicOfOtherBranch = PersistedObjectsFactory.getDefaultTopic();
+        DateTime since = new DateTime(2013, 2, 1, 0, 0);
+        session.save(new LastReadPost(user, topics.get(0), since.plusDays(1)));
+        session.save(new LastReadPost(user, topics.get(1), since.minusDays(1)));
+        session.save(new LastReadPost(user, topicOfOtherBranch, since.plusDays(1)));
+        session.flush();
+
+        Map<Long, DateTime> dates = lastReadPostDao.getLastReadPostDatesInBranches(user,
+                Arrays.asList(topics.get(0).getBranch().getId()), since);
+
+        assertEquals(dates.size(), 1);
+        assertEquals(dates.get(topics.get(0).getId()).getMillis(), since.plusDays(1).getMillis());
+    }
+
+    @Test
+    public void lastReadPostDatesShouldBeEmptyForEmptyListOfBranches() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+
+        assertTrue(lastReadPostDao.getLastReadPostDatesInBranches(user, Collections.<Long>emptyList(),
+                new DateTime(0)).isEmpty());
+    }
+
+    @Test
+    public void lastReadPostsMadeBeforeForumWasMarkedAsReadShouldBeDeletedInBatches() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(3);
+        DateTime markTime = new DateTime(2013, 2, 1, 0, 0);
+        user.setAllForumMarkedAsReadTime(markTime);
+        session.save(new LastReadPost(user, topics.get(0), markTime.minusDays(1)));
+        session.save(new LastReadPost(user, topics.get(1), markTime.minusDays(2)));
+        session.save(new LastReadPost(user, topics.get(2), markTime.plusDays(1)));
+        session.flush();
+
+        assertEquals(lastReadPostDao.deleteStaleLastReadPosts(user.getId(), 1), 1);
+        assertEquals(lastReadPostDao.deleteStaleLastReadPosts(user.getId(), 2), 1);
+        session.clear();
+
+        List<LastReadPost> lastReadPosts = lastReadPostDao.getLastReadPosts(user, topics);
+        assertEquals(lastReadPosts.size(), 1);
+        assertEquals(lastReadPosts.get(0).getTopic().getId(), topics.get(2).getId());
+    }
+
+    @Test
+    public void lastReadPostDatesShouldBeInsertedAndUpdatedAtOnce() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicListWithPosts(2);
+        LastReadPost existing = new LastReadPost(user, topics.get(0), new DateTime(2013, 1, 1, 0, 0));
+        session.save(existing);
+        DateTime newDate = new DateTime(2013, 2, 1, 0, 0);
+        Table<Long, Long, DateTime> dates = HashBasedTable.create();
+        dates.put(user.getId(), topics.get(0).getId(), newDate);
+        dates.put(user.getId(), topics.get(1).getId(), newDate);
+
+        lastReadPostDao.saveLastReadPostDates(dates);
+        session.clear();
+
+        List<LastReadPost> lastReadPosts = lastReadPostDao.getLastReadPosts(user, topics);
+        assertEquals(lastReadPosts.size(), 2);
+        for (LastReadPost lastReadPost : lastReadPosts) {
+            assertEquals(lastReadPost.getPostCreationDate().getMillis(), newDate.getMillis());
+        }
+    }
+
+    @Test
+    public void lastReadPostDateShouldNotBeMovedBack() {
+        LastReadPost existing = PersistedObjectsFactory.getDefaultLastReadPost();
+        existing.setPostCreationDate(new DateTime(2013, 2, 1, 0, 0));
+        session.save(existing);
+        Table<Long, Long, DateTime> dates = HashBasedTable.create();
+        dates.put(existing.getUser().getId(), existing.getTopic().getId(), new DateTime(2013, 1, 1, 0, 0));
+
+        lastReadPostDao.saveLastReadPostDates(dates);
+        session.clear();
+
+        LastReadPost actual = lastReadPostDao.getLastReadPost(existing.getUser(), existing.getTopic());
+        assertEquals(actual.getPostCreationDate().getMillis(), new DateTime(2013, 2, 1, 0, 0).getMillis());
+    }
+
+    @Test
+    public void lastReadPostDatesOfRemovedTopicsShouldBeIgnored() {
+        JCUser user = PersistedObjectsFactory.getDefaultUser();
+        Table<Long, Long, DateTime> dates = HashBasedTable.create();
+        dates.put(user.getId(), 100500L, new DateTime());
+
+        lastReadPostDao.saveLastReadPostDates(dates);
+
+        assertEquals(session.createQuery("from LastReadPost").list().size(), 0);
+    }
+
     /**
      * Method marks topics as read to user
      *
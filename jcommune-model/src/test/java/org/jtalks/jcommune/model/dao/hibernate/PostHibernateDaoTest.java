@@ -33,6 +33,7 @@ import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.testng.Assert.*;
@@ -404,6 +405,34 @@ public class PostHibernateDaoTest extends AbstractTransactionalTestNGSpringConte
         assertNotNull(commentFromDb);
     }
 
+    @Test
+    public void postsMentioningUserShouldBeFoundByAnyOfItsNames() {
+        Post mentioning = postWithContent("hi [user]name[/user]");
+        Post mentioningEncoded = postWithContent("hi [user notified=true][b]%D0%B8[/b][/user]");
+        postWithContent("name is not mentioned here");
+        postWithContent("hi [user]other[/user]");
+
+        List<Long> postIds = dao.getIdsOfPostsMentioning(Arrays.asList("name", "%D0%B8"));
+
+        assertEquals(new HashSet<>(postIds),
+                new HashSet<>(Arrays.asList(mentioning.getId(), mentioningEncoded.getId())));
+    }
+
+    @Test
+    public void droppedRenderedContentShouldBeOutdated() {
+        Post dropped = postWithContent("[b]dropped[/b]");
+        dropped.setRenderedContent("<b>dropped</b>", "version");
+        Post kept = postWithContent("[b]kept[/b]");
+        kept.setRenderedContent("<b>kept</b>", "version");
+        flushAndClearSession();
+
+        dao.dropRenderedContent(Arrays.asList(dropped.getId()));
+        flushAndClearSession();
+
+        assertNull(((Post) session.get(Post.class, dropped.getId())).getRenderedContentVersion());
+        assertEquals(((Post) session.get(Post.class, kept.getId())).getRenderedContentVersion(), "version");
+    }
+
     @Test
     public void testChangeRating() {
         Post post = PersistedObjectsFactory.getDefaultPost();
@@ -487,4 +516,11 @@ public class PostHibernateDaoTest extends AbstractTransactionalTestNGSpringConte
         session.flush();
         session.clear();
     }
+
+    private Post postWithContent(String content) {
+        Post post = PersistedObjectsFactory.getDefaultPost();
+        post.setPostContent(content);
+        session.save(post);
+        return post;
+    }
 }
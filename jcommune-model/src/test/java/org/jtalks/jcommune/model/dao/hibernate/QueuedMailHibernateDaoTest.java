@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.QueuedMailDao;
+import org.jtalks.jcommune.model.entity.QueuedMail;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.test.context.transaction.TransactionConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
+
+@ContextConfiguration(locations = {"classpath:/org/jtalks/jcommune/model/entity/applicationContext-dao.xml"})
+@TransactionConfiguration(transactionManager = "transactionManager", defaultRollback = true)
+@Transactional
+public class QueuedMailHibernateDaoTest extends AbstractTransactionalTestNGSpringContextTests {
+
+    @Autowired
+    private QueuedMailDao dao;
+    @Autowired
+    private SessionFactory sessionFactory;
+    private Session session;
+
+    @BeforeMethod
+    public void init() {
+        session = sessionFactory.getCurrentSession();
+    }
+
+    @Test
+    public void testSaveAndGet() {
+        QueuedMail mail = new QueuedMail("to@jtalks.org", "Subject: subject\r\n\r\nbody");
+        dao.saveOrUpdate(mail);
+        session.flush();
+        session.evict(mail);
+
+        QueuedMail result = dao.get(mail.getId());
+
+        assertReflectionEquals(mail, result);
+    }
+
+    @Test
+    public void getMailsToSendShouldReturnOldestMailsFirst() {
+        QueuedMail first = persistedMail();
+        QueuedMail second = persistedMail();
+        persistedMail();
+
+        List<QueuedMail> mails = dao.getMailsToSend(2);
+
+        assertEquals(mails.size(), 2);
+        assertEquals(mails.get(0).getId(), first.getId());
+        assertEquals(mails.get(1).getId(), second.getId());
+    }
+
+    @Test
+    public void getMailsToSendShouldNotReturnPostponedMails() {
+        QueuedMail postponed = new QueuedMail("to@jtalks.org", "message");
+        postponed.attemptFailed(new DateTime().plusHours(1));
+        session.save(postponed);
+
+        assertEquals(dao.getMailsToSend(10).size(), 0);
+        assertEquals(dao.getQueueSize(), 1);
+    }
+
+    @Test
+    public void getQueueSizeShouldCountAllMails() {
+        persistedMail();
+        persistedMail();
+
+        assertEquals(dao.getQueueSize(), 2);
+    }
+
+    private QueuedMail persistedMail() {
+        QueuedMail mail = new QueuedMail("to@jtalks.org", "message");
+        mail.setNextAttemptDate(new DateTime().minusMinutes(1));
+        session.save(mail);
+        return mail;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.SubscriptionDigestEntryDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.ObjectsFactory;
+import org.jtalks.jcommune.model.entity.SubscriptionDigestEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.test.context.transaction.TransactionConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.unitils.reflectionassert.ReflectionAssert.assertReflectionEquals;
+
+@ContextConfiguration(locations = {"classpath:/org/jtalks/jcommune/model/entity/applicationContext-dao.xml"})
+@TransactionConfiguration(transactionManager = "transactionManager", defaultRollback = true)
+@Transactional
+public class SubscriptionDigestEntryHibernateDaoTest extends AbstractTransactionalTestNGSpringContextTests {
+
+    @Autowired
+    private SubscriptionDigestEntryDao dao;
+    @Autowired
+    private SessionFactory sessionFactory;
+    private Session session;
+    private JCUser user1;
+    private JCUser user2;
+
+    @BeforeMethod
+    public void init() {
+        session = sessionFactory.getCurrentSession();
+        user1 = ObjectsFactory.getUser("user1", "user1@mail.com");
+        user2 = ObjectsFactory.getUser("user2", "user2@mail.com");
+        session.save(user1);
+        session.save(user2);
+    }
+
+    @Test
+    public void testSaveAndGet() {
+        SubscriptionDigestEntry entry = new SubscriptionDigestEntry(user1, "topic1", "title",
+                "http://jtalks.org/posts/1", "jtalks.org/posts/1", 2);
+        dao.saveOrUpdate(entry);
+        session.flush();
+        session.evict(entry);
+
+        SubscriptionDigestEntry result = dao.get(entry.getId());
+
+        assertReflectionEquals(entry, result);
+    }
+
+    @Test
+    public void addUpdatesShouldCountUpdatesInEntryOfTheUserAboutTheEntity() {
+        SubscriptionDigestEntry entry = persistedEntry(user1, "topic1", new DateTime());
+        SubscriptionDigestEntry anotherEntity = persistedEntry(user1, "topic2", new DateTime());
+        SubscriptionDigestEntry anotherUser = persistedEntry(user2, "topic1", new DateTime());
+
+        assertEquals(dao.addUpdates(user1, "topic1", 2), 1);
+        assertEquals(dao.addUpdates(user1, "topic3", 2), 0);
+
+        session.refresh(entry);
+        session.refresh(anotherEntity);
+        session.refresh(anotherUser);
+        assertEquals(entry.getUpdatesCount(), 3);
+        assertEquals(anotherEntity.getUpdatesCount(), 1);
+        assertEquals(anotherUser.getUpdatesCount(), 1);
+    }
+
+    @Test
+    public void getEntriesCountShouldCountEntriesOfTheUser() {
+        persistedEntry(user1, "topic1", new DateTime());
+        persistedEntry(user1, "topic2", new DateTime());
+        persistedEntry(user2, "topic1", new DateTime());
+
+        assertEquals(dao.getEntriesCount(user1), 2);
+    }
+
+    @Test
+    public void getUsersToSendDigestsShouldReturnUsersWaitingLongestFirst() {
+        DateTime now = new DateTime();
+        persistedEntry(user1, "topic1", now.minusHours(1));
+        persistedEntry(user2, "topic1", now.minusHours(2));
+        persistedEntry(user2, "topic2", now);
+
+        assertEquals(dao.getUsersToSendDigests(now.minusMinutes(30), 10), Arrays.asList(user2.getId(), user1.getId()));
+        assertEquals(dao.getUsersToSendDigests(now.minusMinutes(30), 1), Arrays.asList(user2.getId()));
+        assertEquals(dao.getUsersToSendDigests(now.minusMinutes(90), 10), Arrays.asList(user2.getId()));
+    }
+
+    @Test
+    public void getEntriesToSendShouldReturnAllEntriesOfTheUsers() {
+        DateTime now = new DateTime();
+        SubscriptionDigestEntry first = persistedEntry(user1, "topic1", now.minusHours(1));
+        SubscriptionDigestEntry second = persistedEntry(user1, "topic2", now);
+        persistedEntry(user2, "topic1", now.minusHours(2));
+
+        List<SubscriptionDigestEntry> entries = dao.getEntriesToSend(Arrays.asList(user1.getId()));
+
+        assertEquals(entries, Arrays.asList(first, second));
+        assertTrue(dao.getEntriesToSend(Collections.<Long>emptyList()).isEmpty());
+    }
+
+    private SubscriptionDigestEntry persistedEntry(JCUser user, String entityKey, DateTime creationDate) {
+        SubscriptionDigestEntry entry = new SubscriptionDigestEntry(user, entityKey, "title",
+                "http://jtalks.org/posts/1", "jtalks.org/posts/1", 1);
+        entry.setCreationDate(creationDate);
+        session.save(entry);
+        return entry;
+    }
+}
@@ -20,6 +20,7 @@ import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
 import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicActivity;
 import org.jtalks.jcommune.model.entity.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -602,6 +603,36 @@ public class TopicHibernateDaoTest extends AbstractTransactionalTestNGSpringCont
         assertEquals("newValue", result.getAttributes().get("name"));
     }
 
+    @Test
+    public void topicActivitiesShouldContainCreationDatesOfLastPosts() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        Post lastPost = new Post(topic.getTopicStarter(), "content");
+        DateTime lastPostDate = new DateTime().plusDays(1).withMillisOfSecond(0);
+        ReflectionTestUtils.setField(lastPost, "creationDate", lastPostDate);
+        topic.addPost(lastPost);
+        flushAndClearSession();
+
+        List<TopicActivity> activities = dao.getTopicActivities();
+
+        assertEquals(activities.size(), 1);
+        assertEquals(activities.get(0).getTopicId(), topic.getId());
+        assertEquals(activities.get(0).getBranchId(), topic.getBranch().getId());
+        assertEquals(activities.get(0).getLastPostTime(), lastPostDate.getMillis());
+    }
+
+    @Test
+    public void topicActivitiesModifiedSinceShouldContainRecentlyModifiedTopicsOnly() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicList(2);
+        ReflectionTestUtils.setField(topics.get(0), "modificationDate", new DateTime().minusDays(1));
+        Topic recentTopic = topics.get(1);
+        flushAndClearSession();
+
+        List<TopicActivity> activities = dao.getTopicActivitiesModifiedSince(new DateTime().minusHours(1));
+
+        assertEquals(activities.size(), 1);
+        assertEquals(activities.get(0).getTopicId(), recentTopic.getId());
+    }
+
     private void flushAndClearSession() {
         session.flush();
         session.clear();
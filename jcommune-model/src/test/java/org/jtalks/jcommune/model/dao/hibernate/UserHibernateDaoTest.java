@@ -16,6 +16,7 @@ package org.jtalks.jcommune.model.dao.hibernate;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.joda.time.DateTime;
 import org.jtalks.common.model.dao.GroupDao;
 import org.jtalks.common.model.entity.Group;
 import org.jtalks.common.model.entity.User;
@@ -366,6 +367,20 @@ public class UserHibernateDaoTest extends AbstractTransactionalTestNGSpringConte
         assertEquals(dao.getUsernames(usernamePattern, resultCount).size(), 1);
     }
 
+    @Test
+    public void usersMarkedForumAsReadAfterGivenTimeShouldBeFound() {
+        DateTime time = new DateTime(2013, 1, 1, 0, 0);
+        JCUser markedAfter = new JCUser("markedAfter", "markedAfter@mail.com", "password");
+        markedAfter.setAllForumMarkedAsReadTime(time.plusDays(1));
+        session.save(markedAfter);
+        JCUser markedBefore = new JCUser("markedBefore", "markedBefore@mail.com", "password");
+        markedBefore.setAllForumMarkedAsReadTime(time.minusDays(1));
+        session.save(markedBefore);
+        givenJCUserWithUsernameStoredInDb("notMarked");
+
+        assertEquals(dao.getIdsOfUsersMarkedForumAsReadAfter(time), asList(markedAfter.getId()));
+    }
+
     private JCUser givenJCUserWithUsernameStoredInDb(String username) {
         JCUser expected = new JCUser(username, username + "@mail.com", username + "pass");
         session.save(expected);
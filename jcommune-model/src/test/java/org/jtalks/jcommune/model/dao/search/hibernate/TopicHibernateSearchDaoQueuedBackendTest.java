@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.dao.search.hibernate;
+
+import org.hibernate.SessionFactory;
+import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.jtalks.jcommune.model.search.BatchingBackendQueueProcessorFactory;
+import org.jtalks.jcommune.model.search.TopicSearchCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Searches the index written in background by {@link BatchingBackendQueueProcessorFactory}, the back end used in
+ * production. Transactions are committed here, since changes are queued only after the commit.
+ */
+@ContextConfiguration(locations = {"classpath:/org/jtalks/jcommune/model/search/applicationContext-queuedIndex.xml"})
+public class TopicHibernateSearchDaoQueuedBackendTest extends AbstractTestNGSpringContextTests {
+    private static final String FIRST_TITLE = "queuedfirsttitle";
+    private static final String SECOND_TITLE = "queuedsecondtitle";
+    private static final long INDEX_WAIT_MILLIS = 10000;
+    @Autowired
+    private SessionFactory sessionFactory;
+    @Autowired
+    private TopicHibernateSearchDao topicSearchDao;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeMethod
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    public void committedChangesShouldBeWrittenToIndexInOrder() throws Exception {
+        assertTrue(BatchingBackendQueueProcessorFactory.getState().isAsynchronous());
+        final Topic topic = transactionTemplate.execute(new TransactionCallback<Topic>() {
+            @Override
+            public Topic doInTransaction(TransactionStatus status) {
+                PersistedObjectsFactory.setSession(sessionFactory.getCurrentSession());
+                Topic topic = PersistedObjectsFactory.getDefaultTopic();
+                topic.setTitle(FIRST_TITLE);
+                return topic;
+            }
+        });
+        long branchId = topic.getBranch().getId();
+
+        assertEquals(awaitFoundTopicIds(FIRST_TITLE, branchId), Collections.singletonList(topic.getId()));
+
+        transactionTemplate.execute(new TransactionCallback<Void>() {
+            @Override
+            public Void doInTransaction(TransactionStatus status) {
+                Topic persistentTopic = (Topic) sessionFactory.getCurrentSession().get(Topic.class, topic.getId());
+                persistentTopic.setTitle(SECOND_TITLE);
+                return null;
+            }
+        });
+
+        assertEquals(awaitFoundTopicIds(SECOND_TITLE, branchId), Collections.singletonList(topic.getId()));
+        assertTrue(searchTopicIds(FIRST_TITLE, branchId).isEmpty(), "Old document of the topic should be deleted");
+    }
+
+    private List<Long> awaitFoundTopicIds(String text, long branchId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + INDEX_WAIT_MILLIS;
+        List<Long> topicIds = searchTopicIds(text, branchId);
+        while (topicIds.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            topicIds = searchTopicIds(text, branchId);
+        }
+        return topicIds;
+    }
+
+    private List<Long> searchTopicIds(final String text, final long branchId) {
+        return transactionTemplate.execute(new TransactionCallback<List<Long>>() {
+            @Override
+            public List<Long> doInTransaction(TransactionStatus status) {
+                //each attempt reads the index, not the results cached by the previous one
+                topicSearchDao.setSearchCache(new TopicSearchCache(10, 60));
+                List<Long> topicIds = new ArrayList<>();
+                for (Topic topic : topicSearchDao.searchByTitleAndContent(text, new PageRequest("1", 50),
+                        Collections.singletonList(branchId))) {
+                    topicIds.add(topic.getId());
+                }
+                return topicIds;
+            }
+        });
+    }
+}
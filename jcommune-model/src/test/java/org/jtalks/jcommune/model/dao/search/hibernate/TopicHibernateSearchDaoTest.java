@@ -15,14 +15,27 @@
 package org.jtalks.jcommune.model.dao.search.hibernate;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.search.FullTextSession;
 import org.hibernate.search.Search;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.ObjectsFactory;
 import org.jtalks.jcommune.model.entity.PersistedObjectsFactory;
+import org.jtalks.jcommune.model.entity.Post;
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.model.search.SearchRequestFilter;
+import org.jtalks.jcommune.model.search.TopicSearchCache;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -31,6 +44,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
 import org.springframework.test.context.transaction.TransactionConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -38,7 +52,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.testng.Assert.assertEquals;
@@ -63,6 +79,7 @@ public class TopicHibernateSearchDaoTest extends AbstractTransactionalTestNGSpri
     private SearchRequestFilter stopWordsFilter;
 
     private FullTextSession fullTextSession;
+    private TopicSearchCache searchCache;
 
     @BeforeMethod
     public void init() {
@@ -72,6 +89,8 @@ public class TopicHibernateSearchDaoTest extends AbstractTransactionalTestNGSpri
         MockitoAnnotations.initMocks(this);
         List<SearchRequestFilter> filters = Arrays.asList(invalidCharactersFilter, stopWordsFilter);
         topicSearchDao.setFilters(filters);
+        searchCache = new TopicSearchCache(10, 60);
+        topicSearchDao.setSearchCache(searchCache);
     }
 
     private void configureMocks(String searchText, String result) {
@@ -89,6 +108,7 @@ public class TopicHibernateSearchDaoTest extends AbstractTransactionalTestNGSpri
     @AfterMethod
     public void clearIndexes() {
         fullTextSession.purgeAll(Topic.class);
+        fullTextSession.purgeAll(Post.class);
         fullTextSession.flushToIndexes();
     }
 
@@ -189,6 +209,76 @@ public class TopicHibernateSearchDaoTest extends AbstractTransactionalTestNGSpri
         }
     }
 
+    @Test
+    public void pageNumberShouldBeAdjustedByHitCountOfPreviousSearch() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicList(3);
+        for (Topic topic : topics) {
+            topic.setTitle(TOPIC_CONTENT);
+        }
+        saveAndFlushIndexes(topics);
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        List<Long> allowedBranchesIds = Arrays.asList(topics.get(0).getBranch().getId());
+        topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT, new PageRequest("1", 2), allowedBranchesIds);
+
+        List<Topic> newTopics = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Topic topic = new Topic(topics.get(0).getTopicStarter(), TOPIC_CONTENT, "Discussion");
+            topic.addPost(new Post(topic.getTopicStarter(), "post content"));
+            topics.get(0).getBranch().addTopic(topic);
+            newTopics.add(topic);
+        }
+        saveAndFlushIndexes(newTopics);
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, new PageRequest("1000", 2), allowedBranchesIds);
+
+        assertEquals(searchResultPage.getNumber(), 2, "Page should be adjusted by the cached count of topics.");
+        assertEquals(searchResultPage.getContent().size(), 2);
+        assertEquals(searchResultPage.getTotalElements(), 5, "Total count should be taken from the search itself.");
+    }
+
+    @Test
+    public void hitCountShouldBeCachedPerAllowedBranches() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        allowedTopic.setTitle(TOPIC_CONTENT);
+        Topic otherTopic = createTopicInNewBranch(allowedTopic.getTopicStarter(), TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(allowedTopic, otherTopic.getBranch()));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, new PageRequest("1", 1), Arrays.asList(allowedTopic.getBranch().getId()));
+
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT,
+                new PageRequest("2", 1), Arrays.asList(otherTopic.getBranch().getId(), allowedTopic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getNumber(), 2);
+        assertEquals(searchResultPage.getTotalElements(), 2);
+    }
+
+    @Test
+    public void repeatedSearchShouldReturnCachedResultsUntilBranchIsInvalidated() {
+        Topic cachedTopic = PersistedObjectsFactory.getDefaultTopic();
+        cachedTopic.setTitle(TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(cachedTopic));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        List<Long> allowedBranchesIds = Arrays.asList(cachedTopic.getBranch().getId());
+        topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT, new PageRequest("1", PAGE_SIZE), allowedBranchesIds);
+
+        Topic newTopic = new Topic(cachedTopic.getTopicStarter(), TOPIC_CONTENT, "Discussion");
+        newTopic.addPost(new Post(newTopic.getTopicStarter(), "post content"));
+        cachedTopic.getBranch().addTopic(newTopic);
+        saveAndFlushIndexes(Arrays.asList(newTopic));
+        Page<Topic> cachedPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, new PageRequest("1", PAGE_SIZE), allowedBranchesIds);
+        searchCache.invalidateBranch(cachedTopic.getBranch().getId());
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, new PageRequest("1", PAGE_SIZE), allowedBranchesIds);
+
+        assertEquals(cachedPage.getContent(), Arrays.asList(cachedTopic));
+        assertEquals(cachedPage.getTotalElements(), 1);
+        assertEquals(searchResultPage.getTotalElements(), 2);
+        assertEquals(searchCache.getHitCount(), 1);
+        assertEquals(searchCache.getMissCount(), 2);
+    }
+
     @Test(dataProvider = "parameterFullPhraseSearch")
     public void testPostContentSearch(String content) {
         Topic expectedTopic = PersistedObjectsFactory.getDefaultTopic();
@@ -207,6 +297,113 @@ public class TopicHibernateSearchDaoTest extends AbstractTransactionalTestNGSpri
         }
     }
 
+    @Test
+    public void topicShouldBeFoundOnceByContentOfSeveralReplies() {
+        Topic expectedTopic = PersistedObjectsFactory.getDefaultTopic();
+        expectedTopic.addPost(new Post(expectedTopic.getTopicStarter(), "first reply " + TOPIC_CONTENT));
+        expectedTopic.addPost(new Post(expectedTopic.getTopicStarter(), "second reply " + TOPIC_CONTENT));
+        saveAndFlushIndexes(expectedTopic.getPosts());
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, Arrays.asList(expectedTopic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getContent(), Arrays.asList(expectedTopic));
+        assertEquals(searchResultPage.getTotalElements(), 1);
+    }
+
+    @Test
+    public void topicWithBetterMatchingPostShouldBeFoundFirst() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicList(2);
+        Post worseMatchingPost = topics.get(0).getFirstPost();
+        worseMatchingPost.setPostContent(TOPIC_CONTENT + " among many other words of a long and wordy reply");
+        Post betterMatchingPost = topics.get(1).getFirstPost();
+        betterMatchingPost.setPostContent(TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(worseMatchingPost, betterMatchingPost));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, Arrays.asList(topics.get(0).getBranch().getId()));
+
+        assertEquals(searchResultPage.getContent(), Arrays.asList(topics.get(1), topics.get(0)));
+    }
+
+    @Test
+    public void addedReplyShouldBeIndexedWithoutItsTopic() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        topic.setTitle(TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(topic));
+        fullTextSession.purgeAll(Topic.class);
+        fullTextSession.flushToIndexes();
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        List<Long> allowedBranches = Arrays.asList(topic.getBranch().getId());
+
+        Post reply = new Post(topic.getTopicStarter(), "reply " + TOPIC_CONTENT);
+        topic.addPost(reply);
+        saveAndFlushIndexes(Arrays.asList(reply));
+
+        Assert.assertFalse(topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, allowedBranches).hasContent(),
+                "Topic should not be indexed again when a reply is added.");
+        Page<FoundPost> foundPosts = topicSearchDao.searchPostsByContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, allowedBranches);
+        assertEquals(foundPosts.getContent().get(0).getPostId(), reply.getId());
+    }
+
+    @Test
+    public void staleDocumentsShouldBeRemovedAndOthersKept() {
+        List<Topic> topics = PersistedObjectsFactory.createAndSaveTopicList(2);
+        for (Topic topic : topics) {
+            topic.setTitle(TOPIC_CONTENT);
+            topic.getFirstPost().setPostContent(TOPIC_CONTENT);
+        }
+        saveAndFlushIndexes(topics);
+        Topic keptTopic = topics.get(0);
+        Topic removedTopic = topics.get(1);
+        Post removedReply = new Post(keptTopic.getTopicStarter(), TOPIC_CONTENT);
+        keptTopic.addPost(removedReply);
+        saveAndFlushIndexes(Arrays.asList(removedReply));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        List<Long> allowedBranches = Arrays.asList(keptTopic.getBranch().getId());
+        //bulk deletes aren't seen by Hibernate Search, so documents of the deleted entities stay in the index
+        fullTextSession.flush();
+        fullTextSession.createQuery("delete Post where id = :id").setLong("id", removedReply.getId()).executeUpdate();
+        fullTextSession.createQuery("delete Post where topic.id = :id").setLong("id", removedTopic.getId())
+                .executeUpdate();
+        fullTextSession.createQuery("delete Topic where id = :id").setLong("id", removedTopic.getId())
+                .executeUpdate();
+        fullTextSession.clear();
+
+        topicSearchDao.removeStaleDocuments(0, Long.MAX_VALUE);
+
+        List<Topic> foundTopics = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, allowedBranches).getContent();
+        assertEquals(foundTopics.size(), 1);
+        assertEquals(foundTopics.get(0).getId(), keptTopic.getId());
+        List<FoundPost> foundPosts = topicSearchDao.searchPostsByContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, allowedBranches).getContent();
+        assertEquals(foundPosts.size(), 1);
+        assertEquals(foundPosts.get(0).getPostId(), keptTopic.getFirstPost().getId());
+    }
+
+    @Test
+    public void documentsOutsideOfRangeShouldNotBeRemoved() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        topic.setTitle(TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(topic));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        fullTextSession.flush();
+        fullTextSession.createQuery("delete Post where topic.id = :id").setLong("id", topic.getId()).executeUpdate();
+        fullTextSession.createQuery("delete Topic where id = :id").setLong("id", topic.getId()).executeUpdate();
+        fullTextSession.clear();
+
+        topicSearchDao.removeStaleDocuments(topic.getId(), Long.MAX_VALUE);
+
+        assertEquals(fullTextSession.createFullTextQuery(
+                new TermQuery(new Term(Topic.TOPIC_ID_FIELD, String.valueOf(topic.getId()))), Topic.class)
+                .getResultSize(), 1);
+    }
+
     @DataProvider(name = "parameterFullPhraseSearch")
     public Object[][] parameterFullPhraseSearch() {
         return new Object[][]{
@@ -260,6 +457,304 @@ public class TopicHibernateSearchDaoTest extends AbstractTransactionalTestNGSpri
         Assert.assertTrue(!searchResultPage.hasContent(), "Search result must be empty.");
     }
 
+    /*===== Filtering by branches =====*/
+
+    @Test
+    public void topicsOfNotAllowedBranchesShouldNotBeFoundAndCounted() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        allowedTopic.setTitle(TOPIC_CONTENT);
+        Topic forbiddenTopic = createTopicInNewBranch(allowedTopic.getTopicStarter(), TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(allowedTopic, forbiddenTopic.getBranch()));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, Arrays.asList(allowedTopic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getContent(), Arrays.asList(allowedTopic));
+        assertEquals(searchResultPage.getTotalElements(), 1);
+    }
+
+    @Test
+    public void topicMovedToAllowedBranchShouldBeFound() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic movedTopic = createTopicInNewBranch(allowedTopic.getTopicStarter(), TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(allowedTopic, movedTopic.getBranch()));
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        movedTopic.setBranch(allowedTopic.getBranch());
+        fullTextSession.flush();
+        fullTextSession.flushToIndexes();
+        Page<Topic> searchResultPage = topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, Arrays.asList(allowedTopic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getContent(), Arrays.asList(movedTopic));
+    }
+
+    /*===== Search of posts =====*/
+
+    @Test
+    public void foundPostShouldContainHighlightedFragmentAndIds() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        Post post = topic.getLastPost();
+        post.setPostContent("Some [b]text[/b] to be found by the <search> and shown to the user");
+        saveAndFlushIndexes(Arrays.asList(topic));
+        configureMocks("search", "search");
+
+        Page<FoundPost> searchResultPage = topicSearchDao.searchPostsByContent(
+                "search", DEFAULT_PAGE_REQUEST, Arrays.asList(topic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getTotalElements(), 1);
+        FoundPost foundPost = searchResultPage.getContent().get(0);
+        assertEquals(foundPost.getPostId(), post.getId());
+        assertEquals(foundPost.getTopicId(), topic.getId());
+        assertEquals(foundPost.getFragments().size(), 1);
+        String fragment = foundPost.getFragments().get(0);
+        Assert.assertTrue(fragment.contains("by the &lt;<b>search</b>&gt; and"), fragment);
+        Assert.assertFalse(fragment.contains("[b]"), "BB-codes should not be shown: " + fragment);
+    }
+
+    @Test
+    public void postsOfNotAllowedBranchesShouldNotBeFound() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic forbiddenTopic = createTopicInNewBranch(allowedTopic.getTopicStarter(), "title");
+        saveAndFlushIndexes(Arrays.asList(allowedTopic, forbiddenTopic.getBranch()));
+        configureMocks("content", "content");
+
+        Page<FoundPost> searchResultPage = topicSearchDao.searchPostsByContent(
+                "content", DEFAULT_PAGE_REQUEST, Arrays.asList(allowedTopic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getTotalElements(), 1);
+        assertEquals(searchResultPage.getContent().get(0).getPostId(), allowedTopic.getLastPost().getId());
+    }
+
+    @Test
+    public void lastPageOfPostsShouldBeReturnedForTooBigPageNumber() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        topic.addPost(new Post(topic.getTopicStarter(), "second post content"));
+        topic.addPost(new Post(topic.getTopicStarter(), "third post content"));
+        saveAndFlushIndexes(topic.getPosts());
+        configureMocks("content", "content");
+
+        PageRequest pageRequest = new PageRequest("1000", 2);
+        Page<FoundPost> searchResultPage = topicSearchDao.searchPostsByContent(
+                "content", pageRequest, Arrays.asList(topic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getNumber(), 2);
+        assertEquals(searchResultPage.getContent().size(), 1);
+        assertEquals(searchResultPage.getTotalElements(), 3);
+    }
+
+    @Test
+    public void postsOfMovedTopicShouldBeFoundAfterIndexing() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic movedTopic = createTopicInNewBranch(allowedTopic.getTopicStarter(), TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(allowedTopic, movedTopic.getBranch()));
+        configureMocks("content", "content");
+
+        movedTopic.setBranch(allowedTopic.getBranch());
+        topicSearchDao.indexPosts(movedTopic);
+        fullTextSession.flush();
+        fullTextSession.flushToIndexes();
+        Page<FoundPost> searchResultPage = topicSearchDao.searchPostsByContent(
+                "content", DEFAULT_PAGE_REQUEST, Arrays.asList(allowedTopic.getBranch().getId()));
+
+        assertEquals(searchResultPage.getTotalElements(), 2);
+    }
+
+    private Topic createTopicInNewBranch(JCUser author, String title) {
+        Branch branch = ObjectsFactory.getDefaultBranch();
+        Topic topic = new Topic(author, title, "Discussion");
+        topic.addPost(new Post(author, "post content"));
+        branch.addTopic(topic);
+        return topic;
+    }
+
+    /*===== Facets and filters =====*/
+
+    @Test
+    public void foundTopicsShouldBeCountedPerBranchAuthorAndPeriod() {
+        Topic recentTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic oldTopic = createOldTopicOfOtherAuthorInNewBranch(recentTopic);
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        TopicSearchFacets facets = topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT, TopicSearchFilter.NONE,
+                DEFAULT_PAGE_REQUEST, Arrays.asList(recentTopic.getBranch().getId(), oldTopic.getBranch().getId()))
+                .getFacets();
+
+        assertEquals(facets.getTopicCount(), 2);
+        assertEquals(facets.getBranches().size(), 2);
+        assertEquals(facets.getBranches().get(0).getCount(), 1);
+        assertEquals(facets.getAuthors().size(), 2);
+        assertEquals(facets.getPeriods().get(TopicSearchFilter.Period.DAY), Integer.valueOf(1));
+        assertEquals(facets.getPeriods().get(TopicSearchFilter.Period.WEEK), Integer.valueOf(1));
+        assertEquals(facets.getPeriods().get(TopicSearchFilter.Period.MONTH), Integer.valueOf(2));
+        assertEquals(facets.getPeriods().get(TopicSearchFilter.Period.YEAR), Integer.valueOf(2));
+    }
+
+    @Test
+    public void facetsShouldBeNamedAndNarrowedDownByFilter() {
+        Topic recentTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic oldTopic = createOldTopicOfOtherAuthorInNewBranch(recentTopic);
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        TopicSearchFacets facets = topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT,
+                new TopicSearchFilter(oldTopic.getBranch().getId(), null, null), DEFAULT_PAGE_REQUEST,
+                Arrays.asList(recentTopic.getBranch().getId(), oldTopic.getBranch().getId())).getFacets();
+
+        assertEquals(facets.getBranches().size(), 1);
+        assertEquals(facets.getBranches().get(0).getId(), oldTopic.getBranch().getId());
+        assertEquals(facets.getBranches().get(0).getName(), oldTopic.getBranch().getName());
+        assertEquals(facets.getAuthors().get(0).getName(), oldTopic.getTopicStarter().getUsername());
+    }
+
+    @Test
+    public void foundTopicsShouldBeNarrowedDownByFilter() {
+        Topic recentTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic oldTopic = createOldTopicOfOtherAuthorInNewBranch(recentTopic);
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        List<Long> allowedBranchesIds = Arrays.asList(recentTopic.getBranch().getId(), oldTopic.getBranch().getId());
+
+        assertFoundTopic(new TopicSearchFilter(oldTopic.getBranch().getId(), null, null), allowedBranchesIds,
+                oldTopic);
+        assertFoundTopic(new TopicSearchFilter(null, recentTopic.getTopicStarter().getId(), null),
+                allowedBranchesIds, recentTopic);
+        assertFoundTopic(new TopicSearchFilter(null, null, TopicSearchFilter.Period.WEEK), allowedBranchesIds,
+                recentTopic);
+        FoundTopics foundTopics = topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT,
+                new TopicSearchFilter(oldTopic.getBranch().getId(), null, TopicSearchFilter.Period.DAY),
+                DEFAULT_PAGE_REQUEST, allowedBranchesIds);
+        assertEquals(foundTopics.getTotalElements(), 0);
+        assertEquals(foundTopics.getFacets().getTopicCount(), 0);
+    }
+
+    @Test
+    public void filterShouldNotShowTopicsOfNotAllowedBranches() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        Topic forbiddenTopic = createOldTopicOfOtherAuthorInNewBranch(allowedTopic);
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+
+        FoundTopics foundTopics = topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT,
+                new TopicSearchFilter(forbiddenTopic.getBranch().getId(), null, null), DEFAULT_PAGE_REQUEST,
+                Arrays.asList(allowedTopic.getBranch().getId()));
+
+        assertEquals(foundTopics.getTotalElements(), 0);
+        assertEquals(foundTopics.getFacets().getBranches().size(), 0);
+    }
+
+    private void assertFoundTopic(TopicSearchFilter filter, List<Long> allowedBranchesIds, Topic expectedTopic) {
+        FoundTopics foundTopics = topicSearchDao.searchByTitleAndContent(TOPIC_CONTENT, filter,
+                new PageRequest("1", PAGE_SIZE), allowedBranchesIds);
+        assertEquals(foundTopics.getTotalElements(), 1);
+        assertEquals(foundTopics.getContent().get(0).getId(), expectedTopic.getId());
+        assertEquals(foundTopics.getFacets().getTopicCount(), 1);
+    }
+
+    /**
+     * Creates a topic updated 10 days ago by another user in another branch, both topics are titled the same.
+     */
+    private Topic createOldTopicOfOtherAuthorInNewBranch(Topic recentTopic) {
+        recentTopic.setTitle(TOPIC_CONTENT);
+        JCUser otherAuthor = ObjectsFactory.getRandomUser();
+        Topic oldTopic = createTopicInNewBranch(otherAuthor, TOPIC_CONTENT);
+        ReflectionTestUtils.setField(oldTopic, "modificationDate", new DateTime().minusDays(10));
+        saveAndFlushIndexes(Arrays.asList(otherAuthor));
+        saveAndFlushIndexes(Arrays.asList(recentTopic, oldTopic.getBranch()));
+        return oldTopic;
+    }
+
+    /*===== Suggestions of topics =====*/
+
+    @Test
+    public void topicsShouldBeSuggestedByBeginningsOfTitleWords() {
+        Topic topic = PersistedObjectsFactory.getDefaultTopic();
+        topic.setTitle("Hibernate Search configuration");
+        saveAndFlushIndexes(Arrays.asList(topic));
+
+        List<TopicSuggestion> suggestions = topicSearchDao.suggestTopics(
+                "SEARCH hiber", 10, Arrays.asList(topic.getBranch().getId()));
+
+        assertEquals(suggestions.size(), 1);
+        assertEquals(suggestions.get(0).getTopicId(), topic.getId());
+        assertEquals(suggestions.get(0).getTitle(), "Hibernate Search configuration");
+        assertEquals(topicSearchDao.suggestTopics(
+                "hiber sql", 10, Arrays.asList(topic.getBranch().getId())).size(), 0);
+    }
+
+    @Test
+    public void topicsOfNotAllowedBranchesShouldNotBeSuggested() {
+        Topic allowedTopic = PersistedObjectsFactory.getDefaultTopic();
+        allowedTopic.setTitle("allowed title");
+        Topic forbiddenTopic = createTopicInNewBranch(allowedTopic.getTopicStarter(), "forbidden title");
+        saveAndFlushIndexes(Arrays.asList(allowedTopic, forbiddenTopic.getBranch()));
+
+        List<TopicSuggestion> suggestions = topicSearchDao.suggestTopics(
+                "tit", 10, Arrays.asList(allowedTopic.getBranch().getId()));
+
+        assertEquals(suggestions.size(), 1);
+        assertEquals(suggestions.get(0).getTopicId(), allowedTopic.getId());
+    }
+
+    @Test
+    public void shorterTitlesShouldBeSuggestedFirst() {
+        Topic longTitleTopic = PersistedObjectsFactory.getDefaultTopic();
+        longTitleTopic.setTitle("Search in the forum works slowly when many users are online");
+        Topic shortTitleTopic = new Topic(longTitleTopic.getTopicStarter(), "Search syntax", "Discussion");
+        shortTitleTopic.addPost(new Post(longTitleTopic.getTopicStarter(), "content"));
+        longTitleTopic.getBranch().addTopic(shortTitleTopic);
+        saveAndFlushIndexes(Arrays.asList(longTitleTopic, shortTitleTopic));
+
+        List<TopicSuggestion> suggestions = topicSearchDao.suggestTopics(
+                "sear", 1, Arrays.asList(longTitleTopic.getBranch().getId()));
+
+        assertEquals(suggestions.size(), 1);
+        assertEquals(suggestions.get(0).getTopicId(), shortTitleTopic.getId());
+    }
+
+    @Test
+    public void textWithoutWordsShouldNotBeSearched() {
+        assertEquals(topicSearchDao.suggestTopics(" ,.- ", 10, Arrays.asList(1L)).size(), 0);
+    }
+
+    /*===== Rebuilding of the index =====*/
+
+    @Test
+    public void topicIdsToIndexShouldFollowLastIndexedTopicInOrder() {
+        List<Long> ids = saveTopicsAndGetIds(5);
+
+        List<Long> idsToIndex = topicSearchDao.getTopicIdsToIndex(ids.get(1), 2);
+
+        assertEquals(idsToIndex, Arrays.asList(ids.get(2), ids.get(3)));
+        assertEquals(topicSearchDao.countTopicsToIndex(ids.get(1)), 3);
+        assertEquals(topicSearchDao.getTopicIdsToIndex(ids.get(4), 2).size(), 0);
+    }
+
+    @Test
+    public void indexedTopicsShouldBeFound() {
+        Topic expectedTopic = PersistedObjectsFactory.getDefaultTopic();
+        expectedTopic.setTitle(TOPIC_CONTENT);
+        saveAndFlushIndexes(Arrays.asList(expectedTopic));
+        fullTextSession.purgeAll(Topic.class);
+        fullTextSession.flushToIndexes();
+        configureMocks(TOPIC_CONTENT, TOPIC_CONTENT);
+        List<Long> allowedBranches = Arrays.asList(expectedTopic.getBranch().getId());
+
+        Assert.assertFalse(topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, allowedBranches).hasContent());
+        topicSearchDao.indexTopics(Arrays.asList(expectedTopic.getId()));
+
+        Assert.assertTrue(topicSearchDao.searchByTitleAndContent(
+                TOPIC_CONTENT, DEFAULT_PAGE_REQUEST, allowedBranches).hasContent());
+    }
+
+    private List<Long> saveTopicsAndGetIds(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (Topic topic : PersistedObjectsFactory.createAndSaveTopicList(count)) {
+            ids.add(topic.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
     private <E> void saveAndFlushIndexes(List<E> entityList) {
         for (E entity : entityList) {
             fullTextSession.save(entity);
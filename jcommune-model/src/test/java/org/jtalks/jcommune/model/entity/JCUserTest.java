@@ -105,6 +105,7 @@ public class JCUserTest {
         user.setAutosubscribe(true);
         user.setMentioningNotificationsEnabled(true);
         user.setSendPmNotification(true);
+        user.setSubscriptionDigestEnabled(true);
         UserContact contact = new UserContact("contact1", new UserContactType());
         contact.setOwner(user);
         user.setContacts(Sets.newHashSet(contact));
@@ -43,6 +43,16 @@ public class PostTest {
         assertEquals(0, post.getPostIndexInTopic());
     }
 
+    @Test
+    public void changingContentShouldDropRenderedContent() {
+        post.setRenderedContent("<b>content</b>", "version");
+
+        post.setPostContent("new content");
+
+        assertNull(post.getRenderedContent());
+        assertNull(post.getRenderedContentVersion());
+    }
+
     @Test
     public void testUpdatePostModificationDate() throws InterruptedException {
         post.updateModificationDate();
@@ -74,6 +74,22 @@ public class TopicTest {
         assertTrue(topic.getModificationDate().isAfter(prevDate));
     }
 
+    @Test
+    public void lastPostDateShouldBeKeptAlongWithPosts() {
+        Topic topic = new Topic(new JCUser(), "title");
+        Post first = new Post(new JCUser(), "first");
+        Post last = new Post(new JCUser(), "last");
+        last.setCreationDate(first.getCreationDate().plusMinutes(1));
+
+        topic.addPost(last);
+        topic.addPost(first);
+        assertEquals(topic.getLastPostDate(), last.getCreationDate());
+        topic.removePost(last);
+        assertEquals(topic.getLastPostDate(), first.getCreationDate());
+        topic.removePost(first);
+        assertNull(topic.getLastPostDate());
+    }
+
 
     public void updatePostShouldUpdateModificationDate() throws InterruptedException {
         Topic topic = createTopic();
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class AllowedBranchesFilterTest {
+    private static final String FIELD = "branchId";
+    private IndexReader reader;
+
+    @BeforeMethod
+    public void createIndex() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(Version.LUCENE_31, new KeywordAnalyzer()));
+        for (String branchId : Arrays.asList("1", "2", "1", "3", "11")) {
+            Document document = new Document();
+            document.add(new Field(FIELD, branchId, Field.Store.NO, Field.Index.NOT_ANALYZED));
+            writer.addDocument(document);
+        }
+        writer.close();
+        reader = IndexReader.open(directory);
+    }
+
+    @AfterMethod
+    public void closeIndex() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void onlyDocumentsOfAllowedBranchesShouldBeLeft() throws IOException {
+        AllowedBranchesFilter filter = new AllowedBranchesFilter(FIELD, Arrays.asList(1L, 3L));
+
+        assertEquals(filteredDocs(filter), Arrays.asList(0, 2, 3));
+    }
+
+    @Test
+    public void nothingShouldBeLeftIfNoBranchesAllowed() throws IOException {
+        AllowedBranchesFilter filter = new AllowedBranchesFilter(FIELD, Collections.<Long>emptyList());
+
+        assertEquals(filteredDocs(filter), Collections.emptyList());
+    }
+
+    @Test
+    public void keysShouldNotDependOnOrderOfBranches() {
+        assertEquals(factory(1L, 2L).getKey(), factory(2L, 1L).getKey());
+        assertFalse(factory(1L, 2L).getKey().equals(factory(1L, 3L).getKey()));
+    }
+
+    private List<Integer> filteredDocs(AllowedBranchesFilter filter) throws IOException {
+        List<Integer> docs = new ArrayList<>();
+        DocIdSetIterator iterator = filter.getDocIdSet(reader).iterator();
+        for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    private AllowedBranchesFilterFactory factory(Long... branchIds) {
+        AllowedBranchesFilterFactory factory = new AllowedBranchesFilterFactory();
+        factory.setAllowedBranchesIds(Arrays.asList(branchIds));
+        return factory;
+    }
+}
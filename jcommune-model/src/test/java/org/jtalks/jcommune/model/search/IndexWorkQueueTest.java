@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.document.Document;
+import org.hibernate.search.backend.AddLuceneWork;
+import org.hibernate.search.backend.DeleteLuceneWork;
+import org.hibernate.search.backend.LuceneWork;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class IndexWorkQueueTest {
+    /** Works are compared by reference, so the same instances are used for the same id */
+    private static final LuceneWork[] WORKS = new LuceneWork[5];
+
+    static {
+        for (int i = 0; i < WORKS.length; i++) {
+            WORKS[i] = new DeleteLuceneWork((long) i, String.valueOf(i), Topic.class);
+        }
+    }
+
+    private List<List<LuceneWork>> appliedBatches;
+    private CountDownLatch firstBatchStarted;
+    private CountDownLatch firstBatchReleased;
+    private AtomicInteger failingAttempts;
+    private boolean failWithError;
+
+    @BeforeMethod
+    public void setUp() {
+        appliedBatches = new CopyOnWriteArrayList<>();
+        firstBatchStarted = new CountDownLatch(1);
+        firstBatchReleased = new CountDownLatch(1);
+        failingAttempts = new AtomicInteger();
+        failWithError = false;
+    }
+
+    @Test
+    public void workSetsQueuedWhileBatchIsWrittenShouldBeWrittenWithOneCommit() throws Exception {
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.enqueue(works(1));
+        awaitFirstBatch();
+        queue.enqueue(works(2));
+        queue.enqueue(works(3));
+
+        IndexingQueueState state = queue.getState();
+        assertEquals(state.getQueuedWorkSetCount(), 2);
+        assertEquals(state.getCapacity(), 10);
+        assertTrue(state.isAsynchronous());
+        firstBatchReleased.countDown();
+        queue.stop();
+
+        assertEquals(appliedBatches, Arrays.asList(works(1), concat(works(2), works(3))));
+        state = queue.getState();
+        assertEquals(state.getAppliedBatchCount(), 2);
+        assertEquals(state.getAppliedWorkSetCount(), 3);
+        assertEquals(state.getQueuedWorkSetCount(), 0);
+        assertEquals(state.getLagMillis(), 0);
+    }
+
+    @Test
+    public void batchShouldNotExceedMaxSize() throws Exception {
+        IndexWorkQueue queue = startQueue(10, 2);
+        queue.enqueue(works(1));
+        awaitFirstBatch();
+        queue.enqueue(works(2));
+        queue.enqueue(works(3));
+        queue.enqueue(works(4));
+        firstBatchReleased.countDown();
+        queue.stop();
+
+        assertEquals(appliedBatches, Arrays.asList(works(1), concat(works(2), works(3)), works(4)));
+    }
+
+    @Test
+    public void failedBatchShouldBeRetried() throws Exception {
+        failingAttempts.set(1);
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.enqueue(works(1));
+        awaitFirstBatch();
+        queue.enqueue(works(2));
+        firstBatchReleased.countDown();
+        queue.stop();
+
+        assertEquals(appliedBatches, Arrays.asList(works(1), works(2)));
+        assertEquals(queue.getState().getFailedBatchCount(), 0);
+        assertEquals(queue.getState().getAppliedBatchCount(), 2);
+    }
+
+    @Test
+    public void retriedAdditionsShouldBePrecededByDeletions() throws Exception {
+        failingAttempts.set(1);
+        firstBatchReleased.countDown();
+        LuceneWork addition = new AddLuceneWork(1L, "1", Topic.class, new Document());
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.enqueue(Arrays.asList(WORKS[2], addition));
+        queue.stop();
+
+        List<LuceneWork> applied = appliedBatches.get(0);
+        assertEquals(applied.size(), 3);
+        assertSame(applied.get(0), WORKS[2]);
+        assertTrue(applied.get(1) instanceof DeleteLuceneWork);
+        assertEquals(applied.get(1).getIdInString(), "1");
+        assertEquals(applied.get(1).getEntityClass(), Topic.class);
+        assertSame(applied.get(2), addition);
+    }
+
+    @Test
+    public void batchFailedInAllAttemptsShouldBeCountedAndNextOnesWritten() throws Exception {
+        failingAttempts.set(3);
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.enqueue(works(1));
+        awaitFirstBatch();
+        queue.enqueue(works(2));
+        firstBatchReleased.countDown();
+        queue.stop();
+
+        assertEquals(appliedBatches, Arrays.asList(works(2)));
+        assertEquals(queue.getState().getFailedBatchCount(), 1);
+        assertEquals(queue.getState().getAppliedBatchCount(), 1);
+    }
+
+    @Test
+    public void writerShouldKeepWritingAfterError() throws Exception {
+        failingAttempts.set(3);
+        failWithError = true;
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.enqueue(works(1));
+        awaitFirstBatch();
+        queue.enqueue(works(2));
+        firstBatchReleased.countDown();
+        queue.stop();
+
+        assertEquals(appliedBatches, Arrays.asList(works(2)));
+        assertEquals(queue.getState().getFailedBatchCount(), 1);
+    }
+
+    @Test
+    public void interruptedThreadShouldQueueWorkSetWhileWriterIsRunning() throws Exception {
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.enqueue(works(1));
+        awaitFirstBatch();
+
+        Thread.currentThread().interrupt();
+        queue.enqueue(works(2));
+
+        assertTrue(Thread.interrupted(), "Interrupted status should be restored");
+        assertEquals(queue.getState().getQueuedWorkSetCount(), 1);
+        firstBatchReleased.countDown();
+        queue.stop();
+        assertEquals(appliedBatches, Arrays.asList(works(1), works(2)));
+    }
+
+    @Test
+    public void workSetsShouldBeWrittenAtOnceWhenWriterIsNotRunning() throws Exception {
+        firstBatchReleased.countDown();
+        IndexWorkQueue queue = createQueue(10, 10);
+
+        queue.enqueue(works(1));
+
+        assertEquals(appliedBatches, Arrays.asList(works(1)));
+        assertEquals(queue.getState().getQueuedWorkSetCount(), 0);
+    }
+
+    @Test
+    public void workSetsQueuedAfterStopShouldBeWrittenAtOnce() throws Exception {
+        firstBatchReleased.countDown();
+        IndexWorkQueue queue = startQueue(10, 10);
+        queue.stop();
+
+        queue.enqueue(works(1));
+
+        assertEquals(appliedBatches, Arrays.asList(works(1)));
+    }
+
+    private IndexWorkQueue startQueue(int capacity, int maxBatchSize) {
+        IndexWorkQueue queue = createQueue(capacity, maxBatchSize);
+        queue.start();
+        return queue;
+    }
+
+    private IndexWorkQueue createQueue(int capacity, int maxBatchSize) {
+        return new IndexWorkQueue(capacity, maxBatchSize, new IndexWorkQueue.WorkApplier() {
+            @Override
+            public void apply(List<LuceneWork> works) {
+                firstBatchStarted.countDown();
+                try {
+                    firstBatchReleased.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (failingAttempts.getAndDecrement() > 0) {
+                    if (failWithError) {
+                        throw new OutOfMemoryError("Not enough memory to write to the index");
+                    }
+                    throw new IllegalStateException("Index is not available");
+                }
+                appliedBatches.add(works);
+            }
+        }, 1);
+    }
+
+    private void awaitFirstBatch() throws InterruptedException {
+        assertTrue(firstBatchStarted.await(10, TimeUnit.SECONDS), "First batch should be taken by the writer");
+    }
+
+    private List<LuceneWork> works(int id) {
+        return Collections.singletonList(WORKS[id]);
+    }
+
+    private List<LuceneWork> concat(List<LuceneWork> first, List<LuceneWork> second) {
+        return Arrays.asList(first.get(0), second.get(0));
+    }
+}
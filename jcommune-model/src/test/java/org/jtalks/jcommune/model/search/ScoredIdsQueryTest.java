@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+
+public class ScoredIdsQueryTest {
+    private static final String FIELD = "topicId";
+    private IndexReader reader;
+
+    @BeforeMethod
+    public void createIndex() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(Version.LUCENE_31, new KeywordAnalyzer()));
+        for (int topicId = 1; topicId <= 2000; topicId++) {
+            Document document = new Document();
+            document.add(new Field(FIELD, String.valueOf(topicId), Field.Store.NO, Field.Index.NOT_ANALYZED));
+            writer.addDocument(document);
+        }
+        writer.close();
+        reader = IndexReader.open(directory);
+    }
+
+    @AfterMethod
+    public void closeIndex() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void documentsShouldBeFoundByIdsAndOrderedByTheirScores() throws IOException {
+        Map<Long, Float> scores = new HashMap<>();
+        scores.put(5L, 1f);
+        scores.put(7L, 3f);
+        scores.put(9L, 2f);
+
+        assertEquals(foundIds(scores, 10), Arrays.asList("7", "9", "5"));
+    }
+
+    @Test
+    public void allGivenIdsShouldBeFoundRegardlessOfTheirNumber() throws IOException {
+        Map<Long, Float> scores = new HashMap<>();
+        for (long topicId = 1; topicId <= 1500; topicId++) {
+            scores.put(topicId, (float) topicId);
+        }
+
+        IndexSearcher searcher = new IndexSearcher(reader);
+        assertEquals(searcher.search(new ScoredIdsQuery(FIELD, scores), 1).totalHits, 1500);
+        assertEquals(foundIds(scores, 1), Arrays.asList("1500"));
+    }
+
+    private List<String> foundIds(Map<Long, Float> scores, int count) throws IOException {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        List<String> ids = new ArrayList<>();
+        String[] fieldIds = FieldCache.DEFAULT.getStrings(reader, FIELD);
+        for (ScoreDoc hit : searcher.search(new ScoredIdsQuery(FIELD, scores), count).scoreDocs) {
+            ids.add(fieldIds[hit.doc]);
+        }
+        return ids;
+    }
+}
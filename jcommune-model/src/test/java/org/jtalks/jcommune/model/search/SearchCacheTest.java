@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import com.google.common.base.Predicate;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class SearchCacheTest {
+    private long now;
+    private SearchCache<String, Integer> cache;
+
+    @BeforeMethod
+    public void setUp() {
+        now = 1000;
+        cache = new SearchCache<String, Integer>(2, 100) {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void cachedValueShouldBeReturnedUntilItExpires() {
+        cache.put("phrase", 10);
+
+        now += 99;
+        assertEquals(cache.get("phrase"), Integer.valueOf(10));
+        now += 1;
+        assertNull(cache.get("phrase"));
+    }
+
+    @Test
+    public void leastRecentlyUsedValueShouldBeEvictedWhenCacheIsFull() {
+        cache.put("first", 1);
+        cache.put("second", 2);
+        cache.get("first");
+
+        cache.put("third", 3);
+
+        assertEquals(cache.get("first"), Integer.valueOf(1));
+        assertNull(cache.get("second"));
+        assertEquals(cache.get("third"), Integer.valueOf(3));
+        assertEquals(cache.getEvictionCount(), 1);
+    }
+
+    @Test
+    public void onlyMatchingValuesShouldBeRemoved() {
+        cache.put("first", 1);
+        cache.put("second", 2);
+
+        int removed = cache.removeAll(new Predicate<String>() {
+            @Override
+            public boolean apply(String key) {
+                return key.startsWith("f");
+            }
+        });
+
+        assertEquals(removed, 1);
+        assertNull(cache.get("first"));
+        assertEquals(cache.get("second"), Integer.valueOf(2));
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void clearedCacheShouldNotReturnValues() {
+        cache.put("phrase", 10);
+
+        cache.clear();
+
+        assertNull(cache.get("phrase"));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.hibernate.event.PostDeleteEvent;
+import org.hibernate.event.PostInsertEvent;
+import org.hibernate.event.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.search.backend.AddLuceneWork;
+import org.hibernate.search.backend.DeleteLuceneWork;
+import org.hibernate.search.backend.LuceneWork;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TopicSearchCacheInvalidatorTest {
+    @Mock
+    private TopicSearchCache searchCache;
+    @Mock
+    private EntityPersister persister;
+    private TopicSearchCacheInvalidator invalidator;
+    private Topic topic;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        invalidator = new TopicSearchCacheInvalidator(searchCache);
+        JCUser user = new JCUser("username", "email@example.com", "password");
+        topic = new Topic(user, "title");
+        branch(1L).addTopic(topic);
+    }
+
+    @Test
+    public void branchOfAddedPostShouldBeInvalidated() {
+        Post post = new Post(topic.getTopicStarter(), "content");
+        topic.addPost(post);
+
+        invalidator.onPostInsert(new PostInsertEvent(post, 1L, null, persister, null));
+
+        verify(searchCache).invalidateBranch(1L);
+    }
+
+    @Test
+    public void branchOfDeletedTopicShouldBeInvalidated() {
+        invalidator.onPostDelete(new PostDeleteEvent(topic, 1L, null, persister, null));
+
+        verify(searchCache).invalidateBranch(1L);
+    }
+
+    @Test
+    public void bothBranchesOfMovedTopicShouldBeInvalidated() {
+        when(persister.getPropertyNames()).thenReturn(new String[]{"title", "branch"});
+        PostUpdateEvent event = mock(PostUpdateEvent.class);
+        when(event.getEntity()).thenReturn(topic);
+        when(event.getOldState()).thenReturn(new Object[]{"title", branch(2L)});
+        when(event.getPersister()).thenReturn(persister);
+
+        invalidator.onPostUpdate(event);
+
+        verify(searchCache).invalidateBranch(1L);
+        verify(searchCache).invalidateBranch(2L);
+    }
+
+    @Test
+    public void changesOfOtherEntitiesShouldBeIgnored() {
+        invalidator.onPostInsert(new PostInsertEvent(topic.getBranch(), 1L, null, persister, null));
+
+        verifyZeroInteractions(searchCache);
+    }
+
+    @Test
+    public void branchesOfWrittenDocumentsShouldBeInvalidated() {
+        invalidator.worksApplied(Arrays.<LuceneWork>asList(
+                new AddLuceneWork(1L, "1", Topic.class, document(Topic.TOPIC_BRANCH_ID_FIELD, "1")),
+                new AddLuceneWork(2L, "2", Post.class, document(Post.POST_BRANCH_ID_FIELD, "2")),
+                new AddLuceneWork(3L, "3", Post.class, document(Post.POST_BRANCH_ID_FIELD, "2")),
+                new DeleteLuceneWork(4L, "4", Topic.class)));
+
+        verify(searchCache).invalidateBranch(1L);
+        verify(searchCache).invalidateBranch(2L);
+        verifyNoMoreInteractions(searchCache);
+    }
+
+    private Document document(String branchIdField, String branchId) {
+        Document document = new Document();
+        document.add(new Field(branchIdField, branchId, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        return document;
+    }
+
+    private Branch branch(long id) {
+        Branch branch = new Branch("branch" + id, "description");
+        branch.setId(id);
+        return branch;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.model.search;
+
+import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.SearchFacet;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.jtalks.jcommune.model.dto.TopicSearchFilter.NONE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TopicSearchCacheTest {
+    private static final String SEARCH_TEXT = "text";
+    private TopicSearchCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new TopicSearchCache(10, 60);
+    }
+
+    @Test
+    public void resultsShouldBeFoundRegardlessOfOrderOfBranches() {
+        List<Long> topicIds = Arrays.asList(5L, 3L);
+        cache.putResults(SEARCH_TEXT, NONE, Arrays.asList(1L, 2L), new PageRequest("2", 2), topicIds, 4);
+
+        TopicSearchCache.CachedResults results = cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(2L, 1L),
+                new PageRequest("2", 2));
+
+        assertEquals(results.getTopicIds(), topicIds);
+        assertEquals(results.getTopicCount(), 4);
+    }
+
+    @Test
+    public void resultsShouldNotBeFoundForOtherBranchesOrPage() {
+        cache.putResults(SEARCH_TEXT, NONE, Arrays.asList(1L, 2L), new PageRequest("1", 2), Arrays.asList(5L), 1);
+
+        assertNull(cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2)));
+        assertNull(cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L, 2L), new PageRequest("2", 2)));
+        assertNull(cache.getResults("other", NONE, Arrays.asList(1L, 2L), new PageRequest("1", 2)));
+    }
+
+    @Test
+    public void resultsShouldNotBeFoundForOtherFilter() {
+        cache.putResults(SEARCH_TEXT, new TopicSearchFilter(1L, null, null), Arrays.asList(1L),
+                new PageRequest("1", 2), Arrays.asList(5L), 1);
+
+        assertNull(cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2)));
+        assertNull(cache.getResults(SEARCH_TEXT, new TopicSearchFilter(1L, null, TopicSearchFilter.Period.DAY),
+                Arrays.asList(1L), new PageRequest("1", 2)));
+        assertEquals(cache.getResults(SEARCH_TEXT, new TopicSearchFilter(1L, null, null), Arrays.asList(1L),
+                new PageRequest("1", 2)).getTopicIds(), Arrays.asList(5L));
+    }
+
+    @Test
+    public void hitRatioShouldBeCountedForResults() {
+        assertEquals(cache.getHitRatio(), 0.0);
+        cache.putResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2), Arrays.asList(5L), 1);
+
+        cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2));
+        cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("2", 2));
+        cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2));
+        cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2));
+
+        assertEquals(cache.getHitCount(), 3);
+        assertEquals(cache.getMissCount(), 1);
+        assertEquals(cache.getHitRatio(), 0.75);
+    }
+
+    @Test
+    public void invalidationShouldRemoveOnlyResultsAndFacetsContainingBranch() {
+        cache.putResults(SEARCH_TEXT, NONE, Arrays.asList(1L, 2L), new PageRequest("1", 2), Arrays.asList(5L), 1);
+        cache.putResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2), Arrays.asList(6L), 1);
+        TopicSearchFacets facets = new TopicSearchFacets(1, Collections.<SearchFacet>emptyList(),
+                Collections.<SearchFacet>emptyList(), Collections.<TopicSearchFilter.Period, Integer>emptyMap());
+        cache.putFacets(SEARCH_TEXT, NONE, Arrays.asList(2L), facets);
+        cache.putFacets(SEARCH_TEXT, NONE, Arrays.asList(1L), facets);
+
+        cache.invalidateBranch(2L);
+
+        assertNull(cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L, 2L), new PageRequest("1", 2)));
+        assertEquals(cache.getResults(SEARCH_TEXT, NONE, Arrays.asList(1L), new PageRequest("1", 2)).getTopicIds(),
+                Arrays.asList(6L));
+        assertNull(cache.getFacets(SEARCH_TEXT, NONE, Arrays.asList(2L)));
+        assertEquals(cache.getFacets(SEARCH_TEXT, NONE, Arrays.asList(1L)), facets);
+        assertEquals(cache.getInvalidationCount(), 1);
+        assertEquals(cache.getSize(), 1);
+    }
+}
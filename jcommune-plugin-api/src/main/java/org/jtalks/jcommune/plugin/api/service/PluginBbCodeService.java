@@ -14,6 +14,11 @@
  */
 package org.jtalks.jcommune.plugin.api.service;
 
+import org.jtalks.jcommune.model.entity.Post;
+import org.springframework.data.domain.Page;
+
+import java.util.Map;
+
 /**
  * @author Mikhail Stryzhonok
  */
@@ -39,4 +44,23 @@ public interface PluginBbCodeService {
      * @return the same text with HTML markup to be shown
      */
     String convertBbToHtml(String bbEncodedText);
+
+    /**
+     * Converts content of the post into HTML the same way as {@link #convertBbToHtml(String)} does, but uses HTML
+     * already rendered when the post was saved if it's up to date.
+     *
+     * @param post post to convert the content of
+     * @return content of the post with HTML markup to be shown
+     */
+    String convertPostToHtml(Post post);
+
+    /**
+     * Converts content of all the posts of the page into HTML the same way as {@link #convertPostToHtml(Post)} does,
+     * but posts are converted in parallel. Should be called before the page is rendered, then
+     * {@link #convertPostToHtml(Post)} used in the page doesn't need to convert the posts again.
+     *
+     * @param posts page of posts to convert the content of
+     * @return post ids mapped to the content of the posts with HTML markup to be shown, in the order of the page
+     */
+    Map<Long, String> convertPostsToHtml(Page<Post> posts);
 }
@@ -14,7 +14,11 @@
  */
 package org.jtalks.jcommune.plugin.api.service.nontransactional;
 
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.plugin.api.service.PluginBbCodeService;
+import org.springframework.data.domain.Page;
+
+import java.util.Map;
 
 /**
  * Service for processing bb-codes in plugins.
@@ -60,6 +64,22 @@ public class BbToHtmlConverter implements PluginBbCodeService {
         return bbCodeService.convertBbToHtml(post);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String convertPostToHtml(Post post) {
+        return bbCodeService.convertPostToHtml(post);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Long, String> convertPostsToHtml(Page<Post> posts) {
+        return bbCodeService.convertPostsToHtml(posts);
+    }
+
     /**
      * Sets bb-code service. Should be used once, during initialization
      *
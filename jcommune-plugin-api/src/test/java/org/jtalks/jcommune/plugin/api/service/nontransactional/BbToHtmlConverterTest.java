@@ -14,11 +14,18 @@
  */
 package org.jtalks.jcommune.plugin.api.service.nontransactional;
 
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.plugin.api.service.PluginBbCodeService;
 import org.mockito.Mock;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.AssertJUnit.assertEquals;
@@ -59,4 +66,27 @@ public class BbToHtmlConverterTest {
 
         assertEquals(result, out);
     }
+
+    @Test
+    public void testConvertPostToHtml() {
+        Post post = new Post(new JCUser("name", "mail", "pass"), "[b]text[/b]");
+        String out = "<span style=\"font-weight:bold;\" data-original-title=\"\">text</span>";
+        when(bbCodeService.convertPostToHtml(post)).thenReturn(out);
+
+        String result = BbToHtmlConverter.getInstance().convertPostToHtml(post);
+
+        assertEquals(result, out);
+    }
+
+    @Test
+    public void testConvertPostsToHtml() {
+        Post post = new Post(new JCUser("name", "mail", "pass"), "[b]text[/b]");
+        Page<Post> posts = new PageImpl<>(Collections.singletonList(post));
+        Map<Long, String> out = Collections.singletonMap(post.getId(), "<b>text</b>");
+        when(bbCodeService.convertPostsToHtml(posts)).thenReturn(out);
+
+        Map<Long, String> result = BbToHtmlConverter.getInstance().convertPostsToHtml(posts);
+
+        assertEquals(result, out);
+    }
 }
@@ -41,6 +41,7 @@ import org.jtalks.jcommune.plugin.questionsandanswers.QuestionsAndAnswersPlugin;
 import org.jtalks.jcommune.plugin.questionsandanswers.dto.CommentDto;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -192,11 +193,13 @@ public class QuestionsAndAnswersController implements ApplicationContextAware, P
         Topic topic = getTypeAwarePluginTopicService().get(id, QuestionsAndAnswersPlugin.TOPIC_TYPE);
         getTypeAwarePluginTopicService().checkViewTopicPermission(topic.getBranch().getId());
         Map<String, Object> data = getDefaultModel(request);
+        Page<Post> postPage = new PageImpl<>(getSortedPosts(topic.getPosts()));
+        getBbCodeService().convertPostsToHtml(postPage);
         data.put(QUESTION, topic);
-        data.put(POST_PAGE, new PageImpl<>(getSortedPosts(topic.getPosts())));
+        data.put(POST_PAGE, postPage);
         data.put(BREADCRUMB_LIST, breadcrumbBuilder.getForumBreadcrumb(topic));
         data.put(SUBSCRIBED, false);
-        data.put(CONVERTER, BbToHtmlConverter.getInstance());
+        data.put(CONVERTER, getBbCodeService());
         data.put(VIEW_LIST, getLocationService().getUsersViewing(topic));
         data.put(POST_DTO, new PostDto());
         data.put(LIMIT_OF_POSTS_ATTRIBUTE, LIMIT_OF_POSTS_VALUE);
@@ -722,6 +725,15 @@ public class QuestionsAndAnswersController implements ApplicationContextAware, P
         return TransactionalPluginCommentService.getInstance();
     }
 
+    /**
+     * Needed for mocking
+     *
+     * @return service for converting bb-codes to HTML
+     */
+    PluginBbCodeService getBbCodeService() {
+        return BbToHtmlConverter.getInstance();
+    }
+
 
     /**
      * Sets specified {@link BreadcrumbBuilder}
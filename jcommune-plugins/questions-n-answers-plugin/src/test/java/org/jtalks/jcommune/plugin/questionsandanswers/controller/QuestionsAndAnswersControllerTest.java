@@ -29,6 +29,7 @@ import org.jtalks.jcommune.plugin.questionsandanswers.dto.CommentDto;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Page;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.ui.ExtendedModelMap;
@@ -80,6 +81,8 @@ public class QuestionsAndAnswersControllerTest {
     private LocaleResolver localeResolver;
     @Mock
     private PluginCommentService commentService;
+    @Mock
+    private PluginBbCodeService bbCodeService;
 
     @Spy
     private QuestionsAndAnswersController controller = new QuestionsAndAnswersController();
@@ -98,6 +101,7 @@ public class QuestionsAndAnswersControllerTest {
         when(controller.getLocationService()).thenReturn(locationService);
         when(controller.getLocaleResolver()).thenReturn(localeResolver);
         when(controller.getCommentService()).thenReturn(commentService);
+        when(controller.getBbCodeService()).thenReturn(bbCodeService);
         when(localeResolver.resolveLocale(any(HttpServletRequest.class))).thenReturn(Locale.ENGLISH);
         when(userReader.getCurrentUser()).thenReturn(new JCUser("name", "example@mail.ru", "pwd"));
         controller.setApplicationContext(context);
@@ -185,6 +189,7 @@ public class QuestionsAndAnswersControllerTest {
         assertEquals(result, QuestionsAndAnswersController.PLUGIN_VIEW_NAME);
         assertEquals(model.asMap().get(QuestionsAndAnswersController.CONTENT), content);
         verify(topicService).get(1L, QuestionsAndAnswersPlugin.TOPIC_TYPE);
+        verify(bbCodeService).convertPostsToHtml(any(Page.class));
     }
 
     @Test(expectedExceptions = NotFoundException.class)
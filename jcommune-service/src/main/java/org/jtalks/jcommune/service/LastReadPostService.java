@@ -59,10 +59,38 @@ public interface LastReadPostService {
     void markAllTopicsAsRead(Branch branch);
     
     /**
-     * Mark all forum as read for current user.
+     * Mark all forum as read for current user. Only the time of the mark is saved,
+     * last read posts made before it are deleted later by
+     * {@link #purgeStaleLastReadPosts()}.
      */
     void markAllForumAsReadForCurrentUser();
     
+    /**
+     * Writes last read posts kept in memory since the previous call to the database in batches,
+     * should be called by timer. The number of posts written at once is limited, the rest are
+     * written by the next calls.
+     */
+    void writeBufferedLastReadPosts();
+
+    /**
+     * Deletes a limited number of last read posts made before their users marked the whole forum as read,
+     * should be called by timer.
+     */
+    void purgeStaleLastReadPosts();
+
+    /**
+     * Applies topics which got posts or were moved since the previous call to the index of topics used by
+     * {@link #fillUnreadPostsInBranches(List)}, including the ones changed by other application instances sharing
+     * the database, should be called by timer.
+     */
+    void syncTopicActivityIndex();
+
+    /**
+     * Reloads the index of topics used by {@link #fillUnreadPostsInBranches(List)} from the database, so that topics
+     * removed by other application instances sharing the database are removed from it, should be called by timer.
+     */
+    void reloadTopicActivityIndex();
+
     /**
      * Fills topics with last read post information based
      * on the current user set. No data will be set
@@ -73,4 +101,12 @@ public interface LastReadPostService {
      */
     List<Topic> fillLastReadPostForTopics(List<Topic> topics);
 
+    /**
+     * Sets whether branches have posts the current user didn't read yet.
+     * Nothing is set for anonymous users.
+     *
+     * @param branches branches to check, e.g. all the branches of the main page
+     */
+    void fillUnreadPostsInBranches(List<Branch> branches);
+
 }
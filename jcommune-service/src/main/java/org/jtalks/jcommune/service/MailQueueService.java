@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service;
+
+import org.jtalks.jcommune.model.entity.QueuedMail;
+import org.jtalks.jcommune.service.exceptions.MailingFailedException;
+
+import javax.mail.internet.MimeMessage;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbound queue of {@link QueuedMail}s. Mails are put to the queue while the request is processed and are sent to
+ * the mail server in background, several mails over one connection.
+ *
+ * @see org.jtalks.jcommune.service.nontransactional.MailQueueSender
+ */
+public interface MailQueueService extends EntityService<QueuedMail> {
+
+    /**
+     * Puts the mail to the queue, it will be sent in background. If the caller is inside a transaction, the mail is
+     * queued only when the transaction is committed.
+     *
+     * @param message mail ready to be sent
+     * @throws MailingFailedException if the mail can't be converted to be stored in the queue
+     */
+    void enqueue(MimeMessage message) throws MailingFailedException;
+
+    /**
+     * Takes the mails whose time to be sent has come. The mails stay in the queue, but they are not taken again for
+     * some time, so they are not sent twice if several instances of the forum share the database. If the mails are
+     * not reported with {@link #sendingFinished(Collection, Collection)} in this time, e.g. because the forum was
+     * stopped, they are sent again.
+     *
+     * @param count maximum number of mails to take
+     * @return mails to be sent, oldest first
+     */
+    List<QueuedMail> takeMailsToSend(int count);
+
+    /**
+     * Removes sent mails from the queue, failed ones are sent again later with growing delay and are removed after
+     * several failed attempts.
+     *
+     * @param sentMails   mails taken with {@link #takeMailsToSend(int)} and accepted by the mail server
+     * @param failedMails mails taken with {@link #takeMailsToSend(int)} and not accepted by the mail server
+     */
+    void sendingFinished(Collection<QueuedMail> sentMails, Collection<QueuedMail> failedMails);
+}
@@ -124,4 +124,11 @@ public interface PostService extends EntityService<Post> {
      * @return post with vote
      */
     Post vote(Post post, PostVote vote);
+
+    /**
+     * This method will be called automatically every few seconds to store HTML of the posts that were rendered on the
+     * fly during page views because they had no HTML rendered with the current BB-code converter configuration, e.g.
+     * after the configuration was changed.
+     */
+    void storeRenderedContentByTimer();
 }
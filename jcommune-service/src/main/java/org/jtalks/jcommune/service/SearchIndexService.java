@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service;
+
+import java.util.List;
+
+/**
+ * Gives access to the search index batch by batch, so that the index can be rebuilt gradually without loading the
+ * whole forum at once. Each method is executed in its own transaction.
+ *
+ * @see org.jtalks.jcommune.service.nontransactional.SearchIndexRebuilder
+ */
+public interface SearchIndexService {
+
+    /**
+     * @param lastIndexedTopicId id of the last indexed topic, 0 to start from the first topic
+     * @param count              maximum number of ids to return
+     * @return ids of the topics following the last indexed one in the order of ids, empty list if there are no such
+     *         topics
+     */
+    List<Long> getTopicIdsToIndex(long lastIndexedTopicId, int count);
+
+    /**
+     * @param lastIndexedTopicId id of the last indexed topic, 0 to count all the topics
+     * @return number of topics following the last indexed one
+     */
+    long countTopicsToIndex(long lastIndexedTopicId);
+
+    /**
+     * Removes documents of the removed topics and posts of the id range from the index.
+     *
+     * @param afterTopicId id the range starts after
+     * @param lastTopicId  last id of the range, {@link Long#MAX_VALUE} for all the topics after the first one
+     */
+    void removeStaleDocuments(long afterTopicId, long lastTopicId);
+
+    /**
+     * Updates index documents of the given topics with the data from the database.
+     *
+     * @param topicIds ids of the topics to be indexed
+     */
+    void indexTopics(List<Long> topicIds);
+}
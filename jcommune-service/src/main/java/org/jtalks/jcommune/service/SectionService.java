@@ -36,7 +36,8 @@ public interface SectionService extends EntityService<Section> {
     
     /**
      * Prepares sections for the main forum page.Fills the necessary information
-     * for the branches of each section.
+     * for the branches of each section, including whether they have
+     * posts the current user didn't read.
      * Calling this method avoids the use of counters, which reduce the response
      * time of the main page.
      * 
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service;
+
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
+
+/**
+ * Collects updates of subscribed entities for users who prefer to get them as a digest and periodically sends each
+ * user one mail about all the updates collected for him or her.
+ *
+ * @see JCUser#isSubscriptionDigestEnabled()
+ */
+public interface SubscriptionDigestService {
+
+    /**
+     * Remembers the update to be sent with the next digest. Several updates of the same entity are mentioned in the
+     * digest once.
+     *
+     * @param subscriber user subscribed to the updated entity
+     * @param update     update of the entity
+     */
+    void addUpdate(JCUser subscriber, SubscriptionUpdate update);
+
+    /**
+     * Sends the digests to users whose oldest collected update is older than the digest interval and forgets the
+     * sent updates. Only a limited number of digests is sent per call, so it should be called more often than the
+     * interval.
+     */
+    void sendDigests();
+}
@@ -14,11 +14,19 @@
  */
 package org.jtalks.jcommune.service;
 
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress;
 import org.springframework.data.domain.Page;
 
+import java.util.List;
+
 /**
  * Serves all kinds of fetch topic requests
  */
@@ -84,16 +92,53 @@ public interface TopicFetchService extends EntityService<Topic> {
      *                      The final validation of provided input will be at DAO level.
      *                      That allow as to exclude additional DAO call,
      *                      as for input validation we need the total count of page elements.
+     * @param filter restrictions chosen by user to narrow the found topics down with
+     * @return search results page along with numbers of the found topics per branch, author and period they were
+     *         updated during
+     */
+    FoundTopics searchByTitleAndContent(String phrase, String page, TopicSearchFilter filter);
+
+    /**
+     * Search by posts, content of which corresponds to the text of search. Unlike
+     * {@link #searchByTitleAndContent(String, String, TopicSearchFilter)} posts are not loaded, only their ids and the
+     * pieces of their content with the found words highlighted are returned, so that the results can link to the
+     * posts themselves.
+     *
+     * @param phrase search request from the user
+     * @param page   requested page number, page size is calculated based on user's preferences
      * @return search results page
      */
-    Page<Topic> searchByTitleAndContent(String phrase, String page);
+    Page<FoundPost> searchPostsByContent(String phrase, String page);
+
+    /**
+     * Suggests topics of the branches current user can see while the search text is being typed, so that user can go
+     * to the topic without the full search.
+     *
+     * @param text text being typed, the last word may be not finished
+     * @return a few topics whose title words start with the words of the text, most relevant first
+     */
+    List<TopicSuggestion> suggestTopics(String text);
 
     /**
      * Indexing topics from the database.
      * This functionality is required either when data exists in the database,
      * but the index doesn't contain this data or the index is re-created.
+     * Topics are indexed in background batch by batch, if previous rebuilding
+     * was stopped or failed, it's continued after the last indexed topic.
+     * Does nothing if the index is already being rebuilt.
      */
     void rebuildSearchIndex();
+
+    /**
+     * @return progress of the search index rebuilding started by {@link #rebuildSearchIndex()}
+     */
+    SearchIndexRebuildProgress getSearchIndexRebuildProgress();
+
+    /**
+     * @return state of the queue of changes waiting to be written to the search index, shows how far the search lags
+     *         behind the saved topics and posts
+     */
+    IndexingQueueState getSearchIndexQueueState();
     
     /**
      * Check if user has given permission. Throws 
@@ -29,7 +29,9 @@ import org.jtalks.jcommune.service.exceptions.UserTriesActivatingAccountAgainExc
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import org.jtalks.jcommune.model.dto.LoginUserDto;
 
 /**
@@ -193,6 +195,15 @@ public interface UserService extends EntityService<JCUser> {
      */
     String processUserBbCodesInPost(String postContent);
 
+    /**
+     * Gets ids of the users mentioned in [user] bb codes of the posts with one query, so that the posts can be
+     * processed later without querying users, e.g. in threads which must not use the database.
+     *
+     * @param postContents contents of the posts which can contain [user] bb codes
+     * @return ids of existing mentioned users by their names
+     */
+    Map<String, Long> getMentionedUserIds(Collection<String> postContents);
+
     /**
      * Sends email to user that was mentioned in the post
      * and mark BB code as already notified users
@@ -22,8 +22,9 @@ import org.kefirsf.bb.TextProcessor;
  *
  * @author Vyacheslav Mishcheryakov
  */
-public class BBCodeListPreprocessor implements TextProcessor {
-
+public class BBCodeListPreprocessor implements TextProcessor, InPlaceTextProcessor {
+    /** Tags {@link ListItemsProcessor} looks for, if text contains none of them it's returned as is */
+    private static final String[] LIST_TAGS = {"[list", "[/list]", "[*]"};
 
     /**
      * Process incoming text with replacing [*] tags by [*]...[/*]
@@ -80,4 +81,50 @@ public class BBCodeListPreprocessor implements TextProcessor {
     public StringBuffer process(StringBuffer bbEncodedText) {
         return new StringBuffer(process(bbEncodedText.toString()));
     }
-}
\ No newline at end of file
+
+    /**
+     * Process incoming text with replacing [*] tags by [*]...[/*], text without lists is not copied at all
+     *
+     * @param bbEncodedText bb encoded text to process, contains processed text afterwards
+     */
+    @Override
+    public void processInPlace(StringBuilder bbEncodedText) {
+        if (containsListTags(bbEncodedText)) {
+            StringBuilder result = preprocessLists(bbEncodedText.toString());
+            bbEncodedText.setLength(0);
+            bbEncodedText.append(result);
+        }
+    }
+
+    /**
+     * Checks whether the text contains any of list tags ignoring their case, doesn't create lower case copy of the
+     * text for this.
+     *
+     * @param bbEncodedText bb encoded text to check
+     * @return {@code true} if there is at least one list tag in the text
+     */
+    private boolean containsListTags(CharSequence bbEncodedText) {
+        for (int i = 0; i < bbEncodedText.length(); i++) {
+            if (bbEncodedText.charAt(i) == '[') {
+                for (String tag : LIST_TAGS) {
+                    if (regionMatchesIgnoreCase(bbEncodedText, i, tag)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatchesIgnoreCase(CharSequence text, int offset, String tag) {
+        if (offset + tag.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < tag.length(); i++) {
+            if (Character.toLowerCase(text.charAt(offset + i)) != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
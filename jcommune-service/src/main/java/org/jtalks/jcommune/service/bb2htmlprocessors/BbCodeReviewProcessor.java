@@ -45,9 +45,15 @@ import java.util.regex.Pattern;
  * @author Evgeny Kapinos
  * @see <a href="http://jira.jtalks.org/browse/JC-1261">JIRA</a> for high-level details.
  */
-public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextProcessor, TextPostProcessor {
+public class BbCodeReviewProcessor extends TextProcessorAdapter
+        implements TextProcessor, InPlaceTextProcessor, TextPostProcessor {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * Attribute in the http request which is set when the post being processed is code review, in other words it's
+     * the first post of code review topic.
+     */
+    public static final String CODE_REVIEW_POST_ATTRIBUTE = "isCodeReviewPost";
     private static final String CODE_JAVA_BBCODE_END_REPLACEMENT = "[-code]";
     private static final String CODE_JAVA_BBCODE_END_REPLACEMENT_PATTERN = "\\[-code\\]";
     /**
@@ -65,21 +71,30 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
      */
     @Override
     public String process(String bbEncodedText) {
+        StringBuilder result = new StringBuilder(bbEncodedText);
+        processInPlace(result);
+        return result.toString();
+    }
+
+    /**
+     * Process incoming encoded text and replacing [/code] tags to [-code]. Both tags have the same length, so they are
+     * replaced right in the buffer and the text isn't copied even for code reviews.
+     *
+     * @param bbEncodedText BB encoded text to process, contains processed text afterwards
+     */
+    @Override
+    public void processInPlace(StringBuilder bbEncodedText) {
         HttpServletRequest httpServletRequest = getServletRequest();
         httpServletRequest.removeAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE);
 
         if (!isCodeReviewPost(httpServletRequest) || !isValidCodeReviewBbCodeString(bbEncodedText)) {
-            return bbEncodedText;
+            return;
         }
 
-        List<Boolean> replaceHistoryList = getReplaceHistoryList(bbEncodedText);
-        if (replaceHistoryList.isEmpty()) {
-            return bbEncodedText;
+        List<Boolean> replaceHistoryList = substituteCloseCodeTagsWithTemporaryReplacement(bbEncodedText);
+        if (!replaceHistoryList.isEmpty()) {
+            httpServletRequest.setAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
         }
-
-        httpServletRequest.setAttribute(REPLACE_HISTORY_LIST_ATTRIBUTE, replaceHistoryList);
-
-        return substituteCloseCodeTagsWithTemporaryReplacementInEncodedText(bbEncodedText);
     }
 
     /**
@@ -137,7 +152,7 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
      * @return {@code true, false}
      */
     private boolean isCodeReviewPost(HttpServletRequest httpServletRequest) {
-        String isCodeReviewPost = (String) httpServletRequest.getAttribute("isCodeReviewPost");
+        String isCodeReviewPost = (String) httpServletRequest.getAttribute(CODE_REVIEW_POST_ATTRIBUTE);
         return (isCodeReviewPost != null);
     }
 
@@ -146,12 +161,13 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
      *
      * @return {@code true, false}
      */
-    private boolean isValidCodeReviewBbCodeString(String bbEncodedText) {
-        // We use Pattern.DOTALL flag for extend ".*" pattern behavior to line terminators too 
-        Pattern pattern = Pattern.compile(TopicModificationService.CODE_JAVA_BBCODE_START_PATTERN + ".*"
-                + TopicModificationService.CODE_JAVA_BBCODE_END_PATTERN, Pattern.DOTALL);
-        Matcher matcher = pattern.matcher(bbEncodedText);
-        if (!matcher.matches()) {
+    private boolean isValidCodeReviewBbCodeString(StringBuilder bbEncodedText) {
+        int wrapLength = TopicModificationService.CODE_JAVA_BBCODE_START.length()
+                + TopicModificationService.CODE_JAVA_BBCODE_END.length();
+        if (bbEncodedText.length() < wrapLength
+                || !startsWith(bbEncodedText, TopicModificationService.CODE_JAVA_BBCODE_START, 0)
+                || !startsWith(bbEncodedText, TopicModificationService.CODE_JAVA_BBCODE_END,
+                        bbEncodedText.length() - TopicModificationService.CODE_JAVA_BBCODE_END.length())) {
             logger.warn("BbCodeReviewProcessor called, but target encoded text \"" + bbEncodedText
                     + "\" doesn't wrapped with " + TopicModificationService.CODE_JAVA_BBCODE_START + "..."
                     + TopicModificationService.CODE_JAVA_BBCODE_END
@@ -162,45 +178,42 @@ public class BbCodeReviewProcessor extends TextProcessorAdapter implements TextP
     }
 
     /**
-     * Removes regular wrap [code]...[/code] in Code Review text
-     *
-     * @return user text from full Code Review with wrap
-     */
-    private String getUserCodeReviewText(String bbEncodedText) {
-        return bbEncodedText.substring(TopicModificationService.CODE_JAVA_BBCODE_START.length(),
-                bbEncodedText.length() -
-                        TopicModificationService.CODE_JAVA_BBCODE_END.length());
-    }
-
-    /**
-     * Analyze Code Review text and creates replace history list
+     * Replaces [/code] tags in user part of Code Review text (without regular wrap [code]...[/code]) with [-code]
+     * tags and creates replace history list
      *
-     * @return replace history list
+     * @return replace history list, {@code true} in it means that [/code] was replaced, {@code false} - that [-code]
+     *         was in the text originally
      */
-    private List<Boolean> getReplaceHistoryList(String bbEncodedText) {
-        String textOnly = getUserCodeReviewText(bbEncodedText);
-
+    private List<Boolean> substituteCloseCodeTagsWithTemporaryReplacement(StringBuilder bbEncodedText) {
         List<Boolean> replaceHistoryList = new ArrayList<Boolean>();
-
-        Pattern pattern = Pattern.compile(TopicModificationService.CODE_JAVA_BBCODE_END_PATTERN + "|"
-                + CODE_JAVA_BBCODE_END_REPLACEMENT_PATTERN);
-        Matcher matcher = pattern.matcher(textOnly);
-        while (matcher.find()) {
-            replaceHistoryList.add(matcher.group().equals(TopicModificationService.CODE_JAVA_BBCODE_END));
+        int tagLength = TopicModificationService.CODE_JAVA_BBCODE_END.length();
+        int userTextEnd = bbEncodedText.length() - TopicModificationService.CODE_JAVA_BBCODE_END.length();
+        int position = TopicModificationService.CODE_JAVA_BBCODE_START.length();
+        while (position + tagLength <= userTextEnd) {
+            if (startsWith(bbEncodedText, TopicModificationService.CODE_JAVA_BBCODE_END, position)) {
+                bbEncodedText.replace(position, position + tagLength, CODE_JAVA_BBCODE_END_REPLACEMENT);
+                replaceHistoryList.add(true);
+                position += tagLength;
+            } else if (startsWith(bbEncodedText, CODE_JAVA_BBCODE_END_REPLACEMENT, position)) {
+                replaceHistoryList.add(false);
+                position += tagLength;
+            } else {
+                position++;
+            }
         }
         return replaceHistoryList;
     }
 
-    /**
-     * Creates new BBcode string without [/code] tags in user part (replaced by [-code] tag)
-     *
-     * @return safety BBcode string with temporary replacements
-     */
-    private String substituteCloseCodeTagsWithTemporaryReplacementInEncodedText(String bbEncodedText) {
-        return TopicModificationService.CODE_JAVA_BBCODE_START
-                + getUserCodeReviewText(bbEncodedText).replaceAll(TopicModificationService.CODE_JAVA_BBCODE_END_PATTERN,
-                CODE_JAVA_BBCODE_END_REPLACEMENT)
-                + TopicModificationService.CODE_JAVA_BBCODE_END;
+    private boolean startsWith(StringBuilder text, String prefix, int offset) {
+        if (offset < 0 || offset + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -15,8 +15,16 @@
 
 package org.jtalks.jcommune.service.bb2htmlprocessors;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
 import org.kefirsf.bb.TextProcessorAdapter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * Process for [user][/user] code. It adds link to user mentioned in tag before starting
@@ -25,7 +33,12 @@ import org.kefirsf.bb.TextProcessorAdapter;
  * @author Anuar_Nurmakanov
  *
  */
-public class BbUserPreprocessor extends TextProcessorAdapter {
+public class BbUserPreprocessor extends TextProcessorAdapter implements InPlaceTextProcessor, PreloadingTextProcessor {
+    /** Ids of users mentioned in the posts converted in parallel, see {@link #preload(Collection)} */
+    @VisibleForTesting
+    static final String MENTIONED_USER_IDS_ATTRIBUTE = "BbUserPreprocessor_mentionedUserIds";
+    /** Beginning of both [user] and [user notified=true] tags */
+    private static final String USER_TAG_START = "[user";
     private final UserService userService;
 
     /**
@@ -41,7 +54,49 @@ public class BbUserPreprocessor extends TextProcessorAdapter {
     @Override
     public CharSequence process(CharSequence source) {
         String notProcessedSource = source.toString();
-        return userService.processUserBbCodesInPost(notProcessedSource);
+        return processUserBbCodes(notProcessedSource);
+    }
+
+    /**
+     * {@inheritDoc} Text without [user] tags isn't passed to user service at all as there is nothing to process.
+     */
+    @Override
+    public void processInPlace(StringBuilder bbEncodedText) {
+        if (bbEncodedText.indexOf(USER_TAG_START) >= 0) {
+            String result = processUserBbCodes(bbEncodedText.toString());
+            bbEncodedText.setLength(0);
+            bbEncodedText.append(result);
+        }
+    }
+
+    /**
+     * Loads ids of the users mentioned in all the texts with one query, so that the texts are processed without
+     * user service.
+     *
+     * @param bbEncodedTexts BB encoded texts going to be processed
+     * @return ids of the mentioned users in {@link #MENTIONED_USER_IDS_ATTRIBUTE}
+     */
+    @Override
+    public Map<String, Object> preload(Collection<String> bbEncodedTexts) {
+        Map<String, Long> mentionedUserIds = userService.getMentionedUserIds(bbEncodedTexts);
+        return Collections.<String, Object>singletonMap(MENTIONED_USER_IDS_ATTRIBUTE, mentionedUserIds);
     }
 
+    /**
+     * Replaces [user] tags with links to profiles using preloaded ids of the users if there are any in the request.
+     *
+     * @param bbEncodedText BB encoded text
+     * @return text with [user] tags replaced
+     */
+    @SuppressWarnings("unchecked")
+    private String processUserBbCodes(String bbEncodedText) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Map<String, Long> mentionedUserIds = attributes == null ? null
+                : (Map<String, Long>) attributes.getAttribute(MENTIONED_USER_IDS_ATTRIBUTE,
+                        RequestAttributes.SCOPE_REQUEST);
+        if (mentionedUserIds == null) {
+            return userService.processUserBbCodesInPost(bbEncodedText);
+        }
+        return MentionedUsers.parse(bbEncodedText).getTextWithProcessedUserTags(mentionedUserIds);
+    }
 }
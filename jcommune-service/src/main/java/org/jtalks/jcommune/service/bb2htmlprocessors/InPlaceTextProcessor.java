@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+/**
+ * bb2html pre processor which is able to change the text right in the buffer it's given instead of creating a new
+ * copy of the text. Long posts are passed through several pre processors, so if all of them work with the same
+ * buffer the text isn't copied on each step. Result must be the same as if the text was processed with
+ * {@link org.kefirsf.bb.TextProcessor#process(String)}.
+ */
+public interface InPlaceTextProcessor {
+
+    /**
+     * Processes BB encoded text, leaves the buffer untouched if there is nothing to process in the text.
+     *
+     * @param bbEncodedText buffer with the text to be processed, contains the result of processing afterwards
+     */
+    void processInPlace(StringBuilder bbEncodedText);
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.bb2htmlprocessors;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * bb2html pre processor which needs data from the database to process the text. Posts of one page are converted in
+ * parallel in threads which must not use the database, so the data for all of them is loaded beforehand in the thread
+ * of the request and is given to the processor in request attributes of each post.
+ */
+public interface PreloadingTextProcessor {
+
+    /**
+     * Loads everything needed to process the texts, is called in the thread of the request.
+     *
+     * @param bbEncodedTexts BB encoded texts going to be processed
+     * @return request attributes to be set while the texts are processed, empty if there is nothing to load
+     */
+    Map<String, Object> preload(Collection<String> bbEncodedTexts);
+}
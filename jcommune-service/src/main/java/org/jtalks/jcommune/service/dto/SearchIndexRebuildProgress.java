@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.dto;
+
+/**
+ * Snapshot of the search index rebuilding progress to be shown to administrators.
+ *
+ * @see org.jtalks.jcommune.service.nontransactional.SearchIndexRebuilder
+ */
+public class SearchIndexRebuildProgress {
+    /**
+     * State of the rebuilding.
+     */
+    public enum State {
+        /** Rebuilding was not started since the forum start */
+        NOT_STARTED,
+        /** Topics are being indexed */
+        RUNNING,
+        /** Stop is requested, batches being indexed are being finished */
+        STOPPING,
+        /** Rebuilding was stopped, the next start continues after the last indexed topic */
+        STOPPED,
+        /** Rebuilding failed, the next start continues after the last indexed topic */
+        FAILED,
+        /** All the topics are indexed, the next start rebuilds the index from the beginning */
+        FINISHED
+    }
+
+    private final State state;
+    private final long lastIndexedTopicId;
+    private final long indexedTopicCount;
+    private final long totalTopicCount;
+    private final long estimatedSecondsLeft;
+
+    /**
+     * @param state                state of the rebuilding
+     * @param lastIndexedTopicId   id of the topic rebuilding is continued after
+     * @param indexedTopicCount    number of topics indexed by now
+     * @param totalTopicCount      number of topics to be indexed in total
+     * @param estimatedSecondsLeft estimated time to finish the rebuilding, -1 if unknown
+     */
+    public SearchIndexRebuildProgress(State state, long lastIndexedTopicId, long indexedTopicCount,
+                                      long totalTopicCount, long estimatedSecondsLeft) {
+        this.state = state;
+        this.lastIndexedTopicId = lastIndexedTopicId;
+        this.indexedTopicCount = indexedTopicCount;
+        this.totalTopicCount = totalTopicCount;
+        this.estimatedSecondsLeft = estimatedSecondsLeft;
+    }
+
+    /**
+     * @return state of the rebuilding
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return id of the last topic which is indexed along with all the topics before it
+     */
+    public long getLastIndexedTopicId() {
+        return lastIndexedTopicId;
+    }
+
+    /**
+     * @return number of topics indexed by now
+     */
+    public long getIndexedTopicCount() {
+        return indexedTopicCount;
+    }
+
+    /**
+     * @return number of topics to be indexed in total, counted when the rebuilding is started
+     */
+    public long getTotalTopicCount() {
+        return totalTopicCount;
+    }
+
+    /**
+     * @return percentage of indexed topics, topics created during the rebuilding may make it a bit more than 100
+     */
+    public int getPercentDone() {
+        return totalTopicCount == 0 ? 100 : (int) (indexedTopicCount * 100 / totalTopicCount);
+    }
+
+    /**
+     * @return estimated time to finish the rebuilding in seconds, -1 if the rebuilding is not running or nothing is
+     *         indexed yet to estimate the speed
+     */
+    public long getEstimatedSecondsLeft() {
+        return estimatedSecondsLeft;
+    }
+}
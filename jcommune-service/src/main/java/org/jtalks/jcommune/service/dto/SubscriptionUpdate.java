@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.dto;
+
+/**
+ * Update of a subscribed topic or branch which is not sent right away but is collected to be sent later as a part of
+ * a digest. Holds everything needed to mention the update in a mail, so that the mail can be sent when there is no
+ * request to build links from and the entity may be already changed or removed.
+ */
+public class SubscriptionUpdate {
+    private final String key;
+    private final String title;
+    private final String link;
+    private final String linkLabel;
+    private int updatesCount;
+
+    /**
+     * @param key       identifies the updated topic or branch, updates with the same key are merged in a digest
+     * @param title     title of the updated topic or branch
+     * @param link      link to the update
+     * @param linkLabel link to be shown to the user, without port
+     */
+    public SubscriptionUpdate(String key, String title, String link, String linkLabel) {
+        this(key, title, link, linkLabel, 1);
+    }
+
+    /**
+     * @param key          identifies the updated topic or branch, updates with the same key are merged in a digest
+     * @param title        title of the updated topic or branch
+     * @param link         link to the first of the updates
+     * @param linkLabel    link to be shown to the user, without port
+     * @param updatesCount how many times the entity was updated
+     */
+    public SubscriptionUpdate(String key, String title, String link, String linkLabel, int updatesCount) {
+        this.key = key;
+        this.title = title;
+        this.link = link;
+        this.linkLabel = linkLabel;
+        this.updatesCount = updatesCount;
+    }
+
+    /**
+     * @return identifier of the updated topic or branch, unlike link it's the same for all updates of the entity
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return title of the updated topic or branch
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return link to the update, for topics it's the first post added since the last digest
+     */
+    public String getLink() {
+        return link;
+    }
+
+    /**
+     * @return link to be shown to the user, without port
+     */
+    public String getLinkLabel() {
+        return linkLabel;
+    }
+
+    /**
+     * @return how many times the entity was updated since the last digest
+     */
+    public int getUpdatesCount() {
+        return updatesCount;
+    }
+
+    /**
+     * Takes into account one more update of the same entity.
+     *
+     * @param update another update of the entity
+     */
+    public void merge(SubscriptionUpdate update) {
+        updatesCount += update.updatesCount;
+    }
+}
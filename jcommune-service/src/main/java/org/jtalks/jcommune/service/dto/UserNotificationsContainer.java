@@ -28,6 +28,7 @@ public class UserNotificationsContainer {
     private boolean mentioningNotificationsEnabled;
     private boolean sendPmNotification;
     private boolean autosubscribe;
+    private boolean subscriptionDigestEnabled;
 
     /**
      * Create instance with required fields.
@@ -35,12 +36,15 @@ public class UserNotificationsContainer {
      * @param autosubscribe   autosubscribe to topic/post flag
      * @param mentioningNotificationsEnabled whether email notifications are send when user was mentioned in forum
      * @param sendPmNotification send notification when get PM
+     * @param subscriptionDigestEnabled send updates of subscriptions periodically as one mail
      */
     public UserNotificationsContainer(boolean autosubscribe,
-                                      boolean mentioningNotificationsEnabled, boolean sendPmNotification) {
+                                      boolean mentioningNotificationsEnabled, boolean sendPmNotification,
+                                      boolean subscriptionDigestEnabled) {
         this.autosubscribe = autosubscribe;
         this.mentioningNotificationsEnabled = mentioningNotificationsEnabled;
         this.sendPmNotification = sendPmNotification;
+        this.subscriptionDigestEnabled = subscriptionDigestEnabled;
     }
 
     /**
@@ -79,4 +83,11 @@ public class UserNotificationsContainer {
     public void setAutosubscribe(boolean autosubscribe) {
         this.autosubscribe = autosubscribe;
     }
+
+    /**
+     * @see org.jtalks.jcommune.model.entity.JCUser#isSubscriptionDigestEnabled()
+     */
+    public boolean isSubscriptionDigestEnabled() {
+        return subscriptionDigestEnabled;
+    }
 }
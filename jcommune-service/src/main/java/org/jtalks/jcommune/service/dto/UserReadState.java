@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.dto;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dto.TopicActivity;
+import org.jtalks.jcommune.model.entity.Topic;
+
+import java.util.Arrays;
+
+/**
+ * What user has read, in the form unread flags of a page of topics are computed from without querying the database
+ * for each topic: time the whole forum was marked as read, times the branches were marked as read and creation dates
+ * of the last read posts of the topics. Dates are kept as milliseconds in open addressing tables keyed by ids, so
+ * each topic costs two array slots rather than a map entry with boxed key and date.
+ */
+public class UserReadState {
+    /** Stands for the absent date, dates before the epoch are not expected in the forum */
+    private static final long NOT_READ = Long.MIN_VALUE;
+
+    private final long forumMarkTime;
+    private final LongLongTable branchMarkTimes = new LongLongTable();
+    private final LongLongTable lastReadPostDates = new LongLongTable();
+
+    /**
+     * @param forumMarkedAsReadTime time user marked the whole forum as read, null if never
+     */
+    public UserReadState(DateTime forumMarkedAsReadTime) {
+        this.forumMarkTime = forumMarkedAsReadTime == null ? NOT_READ : forumMarkedAsReadTime.getMillis();
+    }
+
+    /**
+     * @param branchId id of the branch user marked as read
+     * @param markTime time the branch was marked as read
+     */
+    public void markBranchAsRead(long branchId, DateTime markTime) {
+        branchMarkTimes.putMax(branchId, markTime.getMillis());
+    }
+
+    /**
+     * @param topicId          id of the topic user read
+     * @param lastReadPostDate creation date of the last post user read in the topic
+     */
+    public void readTopic(long topicId, DateTime lastReadPostDate) {
+        lastReadPostDates.putMax(topicId, lastReadPostDate.getMillis());
+    }
+
+    /**
+     * @param topic topic to check
+     * @return whether the topic wasn't modified since user marked its branch or the whole forum as read, such topics
+     *         are read entirely and their last read posts are not needed
+     */
+    public boolean isMarkedAsRead(Topic topic) {
+        long markTime = getMarkTime(topic.getBranch().getId());
+        return markTime != NOT_READ && topic.getModificationDate().getMillis() < markTime;
+    }
+
+    /**
+     * @param branchId id of the branch
+     * @return time in milliseconds user marked the branch or the whole forum as read, whichever is later, topics
+     *         which got posts before this time are read; {@link Long#MIN_VALUE} if neither was marked
+     */
+    public long getMarkTime(long branchId) {
+        return Math.max(forumMarkTime, branchMarkTimes.get(branchId));
+    }
+
+    /**
+     * @param activity last post of the topic
+     * @return whether user read the last post of the topic or marked its branch or the whole forum as read after it
+     */
+    public boolean isRead(TopicActivity activity) {
+        return activity.getLastPostTime() < getMarkTime(activity.getBranchId())
+                || lastReadPostDates.get(activity.getTopicId()) >= activity.getLastPostTime();
+    }
+
+    /**
+     * @param topic topic to get the last read post for
+     * @return creation date of the last post user read in the topic, null if user didn't read the topic since the
+     *         whole forum was marked as read: last read posts made before the mark are purged lazily and may still
+     *         be there
+     */
+    public DateTime getLastReadPostDate(Topic topic) {
+        if (isMarkedAsRead(topic)) {
+            return topic.getLastPost().getCreationDate();
+        }
+        long lastReadPostDate = lastReadPostDates.get(topic.getId());
+        return lastReadPostDate == NOT_READ || lastReadPostDate < forumMarkTime ? null : new DateTime(lastReadPostDate);
+    }
+
+    /**
+     * Map from long ids to long dates with linear probing. {@link #NOT_READ} marks free slots, thus can't be stored.
+     */
+    private static final class LongLongTable {
+        private static final int INITIAL_CAPACITY = 16;
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private long[] values = emptyValues(INITIAL_CAPACITY);
+        private int size;
+
+        private long get(long key) {
+            for (int slot = slot(key, keys.length); values[slot] != NOT_READ; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return NOT_READ;
+        }
+
+        /**
+         * Keeps the greater value if the key is already present.
+         */
+        private void putMax(long key, long value) {
+            if (2 * (size + 1) > keys.length) {
+                resize();
+            }
+            int slot = slot(key, keys.length);
+            while (values[slot] != NOT_READ && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            if (values[slot] == NOT_READ) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = Math.max(values[slot], value);
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = emptyValues(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != NOT_READ) {
+                    int slot = slot(oldKeys[i], keys.length);
+                    while (values[slot] != NOT_READ) {
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int capacity) {
+            int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & (capacity - 1);
+        }
+
+        private static long[] emptyValues(int capacity) {
+            long[] values = new long[capacity];
+            Arrays.fill(values, NOT_READ);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.jmx;
+
+/**
+ * Exposes the state of the outbound mail queue via JMX so that we can see whether mails are sent in time and whether
+ * the mail server rejects them.
+ *
+ * @see org.jtalks.jcommune.service.transactional.TransactionalMailQueueService
+ */
+public interface MailQueueStatisticsMXBean {
+    /**
+     * @return number of mails in the queue, including mails waiting for the next attempt
+     */
+    long getQueueSize();
+
+    /**
+     * @return how many mails were accepted by the mail server since the start
+     */
+    long getSentCount();
+
+    /**
+     * @return how many times the mail server failed to accept a mail since the start
+     */
+    long getFailedAttemptCount();
+
+    /**
+     * @return how many mails were removed from the queue without being sent because all the attempts failed
+     */
+    long getDroppedCount();
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.jmx;
+
+/**
+ * Exposes the counters of the rendered post HTML cache via JMX so that we can see whether the cache is sized well
+ * without restarting the app with a profiler attached.
+ *
+ * @see org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService
+ */
+public interface RenderedPostCacheStatisticsMXBean {
+    /**
+     * @return how many times rendered HTML was taken from the cache instead of converting BB-codes
+     */
+    long getHitCount();
+
+    /**
+     * @return how many times there was no HTML in the cache (or it was rendered for an outdated version of the post)
+     *         so BB-codes had to be converted
+     */
+    long getMissCount();
+
+    /**
+     * @return how many entries were evicted by the cache itself because it was full
+     */
+    long getEvictionCount();
+
+    /**
+     * @return how many entries were explicitly removed because the post was changed or deleted
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return the number of posts whose HTML is currently cached
+     */
+    int getSize();
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.jmx;
+
+/**
+ * Allows to watch and control rebuilding of the search index via JMX. Limits can be changed while the index is being
+ * rebuilt, e.g. to slow it down when the forum is busy.
+ *
+ * @see org.jtalks.jcommune.service.nontransactional.SearchIndexRebuilder
+ */
+public interface SearchIndexRebuilderMXBean {
+    /**
+     * @return name of the rebuilding state
+     * @see org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress.State
+     */
+    String getState();
+
+    /**
+     * @return id of the last topic which is indexed along with all the topics before it
+     */
+    long getLastIndexedTopicId();
+
+    /**
+     * @return number of topics indexed by now
+     */
+    long getIndexedTopicCount();
+
+    /**
+     * @return number of topics to be indexed in total
+     */
+    long getTotalTopicCount();
+
+    /**
+     * @return percentage of indexed topics
+     */
+    int getPercentDone();
+
+    /**
+     * @return estimated time to finish the rebuilding in seconds, -1 if unknown
+     */
+    long getEstimatedSecondsLeft();
+
+    /**
+     * @return number of topics read from the database and indexed at once
+     */
+    int getBatchSize();
+
+    /**
+     * @param batchSize number of topics read from the database and indexed at once, used for the next batch
+     */
+    void setBatchSize(int batchSize);
+
+    /**
+     * @return number of batches indexed in parallel
+     */
+    int getThreadCount();
+
+    /**
+     * @param threadCount number of batches indexed in parallel, used when the rebuilding is started next time
+     */
+    void setThreadCount(int threadCount);
+
+    /**
+     * @return maximum number of topics read from the database per second, 0 if not limited
+     */
+    int getMaxTopicsPerSecond();
+
+    /**
+     * @param maxTopicsPerSecond maximum number of topics read from the database per second, 0 not to limit
+     */
+    void setMaxTopicsPerSecond(int maxTopicsPerSecond);
+
+    /**
+     * Starts the rebuilding or continues it after the last indexed topic if it was stopped or failed.
+     *
+     * @return {@code false} if the rebuilding is already running
+     */
+    boolean start();
+
+    /**
+     * Stops the rebuilding after the batches being indexed are finished.
+     */
+    void stop();
+}
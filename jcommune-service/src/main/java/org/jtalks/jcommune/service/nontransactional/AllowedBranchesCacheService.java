@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cache of ids of the branches users are allowed to see topics of. Permissions are given to groups, so all the users
+ * of the same groups share one entry keyed by the sorted ids of their groups, anonymous users have an entry of their
+ * own. Ids are kept as a primitive array rather than a list of boxed numbers.<br/>
+ * User who joins or leaves a group gets another key, so entries don't become outdated when members of groups change,
+ * but all of them have to be removed when permissions of branches change.
+ */
+public class AllowedBranchesCacheService {
+    /** Anonymous users have no groups, so their key can't be confused with the key of a user without groups */
+    static final String ANONYMOUS_KEY = "anonymous";
+
+    private final Ehcache allowedBranchesCache;
+    private final TopicDao topicDao;
+
+    /**
+     * @param allowedBranchesCache bounded cache to store ids of the branches in
+     * @param topicDao             to get ids of the branches which are not cached yet
+     */
+    public AllowedBranchesCacheService(Ehcache allowedBranchesCache, TopicDao topicDao) {
+        this.allowedBranchesCache = allowedBranchesCache;
+        this.topicDao = topicDao;
+    }
+
+    /**
+     * Gets ids of the branches the user is allowed to see topics of, same as
+     * {@link TopicDao#getAllowedBranchesIds(JCUser)} does, but queries them only for the first user of the groups.
+     *
+     * @param user user to get the branches for, anonymous one as well
+     * @return unmodifiable list of ids of the branches
+     */
+    public List<Long> getAllowedBranchesIds(JCUser user) {
+        String key = key(user);
+        Element element = allowedBranchesCache.get(key);
+        long[] branchIds;
+        if (element == null) {
+            List<Long> allowedBranchesIds = topicDao.getAllowedBranchesIds(user);
+            branchIds = new long[allowedBranchesIds.size()];
+            for (int i = 0; i < branchIds.length; i++) {
+                branchIds[i] = allowedBranchesIds.get(i);
+            }
+            allowedBranchesCache.put(new Element(key, branchIds));
+        } else {
+            branchIds = (long[]) element.getObjectValue();
+        }
+        return asList(branchIds);
+    }
+
+    /**
+     * Removes ids of the branches of all the groups, should be used when permissions of a branch are changed or a new
+     * branch is created. Within a transaction ids are removed after it's committed, otherwise a concurrent request
+     * could cache them again from the permissions which are not committed yet.
+     */
+    public void invalidate() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            allowedBranchesCache.removeAll();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                allowedBranchesCache.removeAll();
+            }
+        });
+    }
+
+    /**
+     * @param user current user
+     * @return sorted ids of the groups of the user separated by commas or {@link #ANONYMOUS_KEY}
+     */
+    static String key(JCUser user) {
+        if (user.isAnonymous()) {
+            return ANONYMOUS_KEY;
+        }
+        List<Group> groups = user.getGroups();
+        long[] groupIds = new long[groups.size()];
+        for (int i = 0; i < groupIds.length; i++) {
+            groupIds[i] = groups.get(i).getId();
+        }
+        Arrays.sort(groupIds);
+        StringBuilder key = new StringBuilder();
+        for (long groupId : groupIds) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(groupId);
+        }
+        return key.toString();
+    }
+
+    private static List<Long> asList(final long[] branchIds) {
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int index) {
+                return branchIds[index];
+            }
+
+            @Override
+            public int size() {
+                return branchIds.length;
+            }
+        };
+    }
+}
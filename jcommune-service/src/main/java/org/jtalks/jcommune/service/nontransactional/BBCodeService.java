@@ -14,15 +14,36 @@
  */
 package org.jtalks.jcommune.service.nontransactional;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.Validate;
 import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.plugin.api.service.PluginBbCodeService;
+import org.jtalks.jcommune.service.bb2htmlprocessors.InPlaceTextProcessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.PreloadingTextProcessor;
 import org.jtalks.jcommune.service.bb2htmlprocessors.TextPostProcessor;
 import org.kefirsf.bb.BBProcessorFactory;
 import org.kefirsf.bb.TextProcessor;
+import org.springframework.data.domain.Page;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Provides various helper methods for encoding/decoding BB codes. This class is used by our JSTL tags on JSP pages.
@@ -31,6 +52,10 @@ import java.util.List;
  */
 public class BBCodeService implements PluginBbCodeService {
     private static final String QUOTE_PATEERN = "[quote=\"%s\"]%s[/quote]";
+    /** Configuration KefirBB takes by default if it's present in classpath */
+    private static final String CONVERTER_CONFIGURATION = "kefirbb.xml";
+    /** Version and build time of the application, processors code may change from one build to another */
+    private static final String BUILD_PROPERTIES = "org/jtalks/jcommune/service/build.properties";
     /** Processor is thread safe as it's explicitly stated in documentation */
     private final TextProcessor processor = BBProcessorFactory.getInstance().create();
     /** Processor to strip bb-codes */
@@ -44,6 +69,23 @@ public class BBCodeService implements PluginBbCodeService {
      * codes has been processed.
      */
     private final List<TextPostProcessor> postprocessors = new ArrayList<>();
+    /**
+     * Postprocessors whose result depends on the request the text is shown in, e.g. on the name of the server links are
+     * checked against. Their result is never stored or cached, they are applied to stored and cached HTML each time
+     * the post is shown.
+     */
+    private final List<TextPostProcessor> requestDependentPostprocessors = new ArrayList<>();
+    /**
+     * Whether pre-processors work with one buffer instead of creating a copy of the text each, see
+     * {@link InPlaceTextProcessor}. Result of the conversion is the same in both modes.
+     */
+    private boolean fusedPreprocessing;
+    /** Keeps already rendered HTML of posts so that we don't convert the same post on every page view */
+    private RenderedPostCacheService renderedPostCacheService;
+    /** Bounded pool to convert posts of one page in parallel, if not set posts are converted one by one */
+    private ExecutorService renderingPool;
+    /** Lazily calculated, see {@link #getRenderingVersion()} */
+    private volatile String renderingVersion;
 
     /**
      * Quotes text given as a valid BB-coded quote. Such a quotes are rendered automatically in posts or forum messages.
@@ -70,20 +112,269 @@ public class BBCodeService implements PluginBbCodeService {
      * @return the same text with HTML markup to be shown
      */
     public String convertBbToHtml(String bbEncodedText) {
-        for (TextProcessor preprocessor : preprocessors) {
-            bbEncodedText = preprocessor.process(bbEncodedText);
+        return postProcessForRequest(convertBbToStoredHtml(bbEncodedText));
+    }
+
+    /**
+     * Does the same as {@link #convertBbToHtml(String)} except for the request dependent post-processing, so the
+     * result can be stored or cached and shown in any request.
+     *
+     * @param bbEncodedText string with BB-style markup
+     * @return the same text with HTML markup, not post-processed for the current request
+     * @see #postProcessForRequest(String)
+     */
+    private String convertBbToStoredHtml(String bbEncodedText) {
+        if (fusedPreprocessing) {
+            bbEncodedText = processor.process(preprocessInPlace(bbEncodedText)).toString();
+        } else {
+            for (TextProcessor preprocessor : preprocessors) {
+                bbEncodedText = preprocessor.process(bbEncodedText);
+            }
+            bbEncodedText = processor.process(bbEncodedText);
         }
-        bbEncodedText = processor.process(bbEncodedText);
         for (TextPostProcessor postpreprocessor : postprocessors) {
             bbEncodedText = postpreprocessor.postProcess(bbEncodedText);
         }
         return bbEncodedText;
     }
 
+    /**
+     * Applies the request dependent post-processors to HTML, should be done each time the HTML is going to be shown.
+     *
+     * @param html HTML converted with {@link #convertBbToStoredHtml(String)}, stored or cached
+     * @return HTML to be shown in the current request
+     */
+    private String postProcessForRequest(String html) {
+        for (TextPostProcessor postprocessor : requestDependentPostprocessors) {
+            html = postprocessor.postProcess(html);
+        }
+        return html;
+    }
+
+    /**
+     * Passes the text through all the pre-processors using one buffer. Pre-processors that can't work with the buffer
+     * are still given a string, and the buffer is refilled with their result.
+     *
+     * @param bbEncodedText string with BB-style markup
+     * @return buffer with pre-processed text
+     */
+    private StringBuilder preprocessInPlace(String bbEncodedText) {
+        StringBuilder buffer = new StringBuilder(bbEncodedText);
+        for (TextProcessor preprocessor : preprocessors) {
+            if (preprocessor instanceof InPlaceTextProcessor) {
+                ((InPlaceTextProcessor) preprocessor).processInPlace(buffer);
+            } else {
+                String result = preprocessor.process(buffer.toString());
+                buffer.setLength(0);
+                buffer.append(result);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Converts content of the post into HTML the same way as {@link #convertBbToHtml(String)} does, but doesn't do
+     * the actual conversion if possible. First HTML stored in the post itself is used if it was rendered with the
+     * current converter configuration, then the cache is checked. If the post is rendered here, it's marked to be
+     * stored in the database so that it's not rendered again. Request dependent post-processing is done in any case.
+     *
+     * @param post post to convert the content of
+     * @return content of the post with HTML markup to be shown
+     * @see #renderPostContent(Post)
+     */
+    @Override
+    public String convertPostToHtml(Post post) {
+        if (getRenderingVersion().equals(post.getRenderedContentVersion())) {
+            return postProcessForRequest(post.getRenderedContent());
+        }
+        String html = renderedPostCacheService.getRenderedContent(post);
+        if (html == null) {
+            html = convertBbToStoredHtml(post.getPostContent());
+            renderedPostCacheService.putRenderedContent(post, html);
+            renderedPostCacheService.markForStoring(post);
+        }
+        return postProcessForRequest(html);
+    }
+
+    /**
+     * Converts content of all the posts of the page into HTML the same way as {@link #convertPostToHtml(Post)} does,
+     * but posts that have to be actually converted are converted in parallel. Converted posts are put to the cache,
+     * so if the page is rendered after this method, each post is converted only once no matter which method is used.
+     * Should be called before the view is rendered, as it's rendered in one thread.
+     *
+     * @param posts page of posts to convert the content of
+     * @return post ids mapped to the content of the posts with HTML markup to be shown, in the order of the page
+     */
+    @Override
+    public Map<Long, String> convertPostsToHtml(Page<Post> posts) {
+        Map<Long, String> renderedPosts = new LinkedHashMap<>();
+        List<Post> postsToRender = new ArrayList<>();
+        for (Post post : posts.getContent()) {
+            String html = getRenderedContent(post);
+            renderedPosts.put(post.getId(), html == null ? null : postProcessForRequest(html));
+            if (html == null) {
+                postsToRender.add(post);
+            }
+        }
+        List<String> htmls = renderPosts(postsToRender);
+        for (int i = 0; i < postsToRender.size(); i++) {
+            Post post = postsToRender.get(i);
+            renderedPostCacheService.putRenderedContent(post, htmls.get(i));
+            renderedPostCacheService.markForStoring(post);
+            renderedPosts.put(post.getId(), postProcessForRequest(htmls.get(i)));
+        }
+        return renderedPosts;
+    }
+
+    /**
+     * Gets HTML of the post rendered earlier without affecting cache statistics, the post is going to be shown with
+     * {@link #convertPostToHtml(Post)} which will take the statistics into account.
+     *
+     * @param post post to get HTML of
+     * @return HTML stored in the post or cached, {@code null} if there is no up to date HTML, not post-processed
+     *         for the current request
+     */
+    private String getRenderedContent(Post post) {
+        if (getRenderingVersion().equals(post.getRenderedContentVersion())) {
+            return post.getRenderedContent();
+        }
+        return renderedPostCacheService.peekRenderedContent(post);
+    }
+
+    /**
+     * Converts the posts in {@link #renderingPool} or in current thread if there is no pool or nothing to do in
+     * parallel. Each post is converted in its own request, see {@link PostRenderingRequest}. Everything the posts are
+     * converted from is taken from the entities here, in the thread of the request, so that the pool doesn't touch
+     * entities and the session they are bound to.
+     *
+     * @param posts posts to convert the content of
+     * @return HTML of the posts in the same order
+     */
+    private List<String> renderPosts(List<Post> posts) {
+        HttpServletRequest request = getCurrentRequest();
+        Map<String, Object> preloadedAttributes = request == null
+                ? Collections.<String, Object>emptyMap() : preload(posts);
+        List<PostRenderingTask> tasks = new ArrayList<>();
+        for (Post post : posts) {
+            tasks.add(new PostRenderingTask(post, request, preloadedAttributes));
+        }
+        List<String> htmls = new ArrayList<>();
+        if (renderingPool == null || tasks.size() < 2) {
+            for (PostRenderingTask task : tasks) {
+                htmls.add(task.call());
+            }
+            return htmls;
+        }
+        try {
+            for (Future<String> html : renderingPool.invokeAll(tasks)) {
+                htmls.add(html.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting posts to HTML", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Could not convert posts to HTML", e.getCause());
+        }
+        return htmls;
+    }
+
+    /**
+     * Loads data of all the posts needed by pre-processors, see {@link PreloadingTextProcessor}.
+     *
+     * @param posts posts going to be converted
+     * @return request attributes to be set while the posts are converted
+     */
+    private Map<String, Object> preload(List<Post> posts) {
+        if (posts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> contents = new ArrayList<>();
+        for (Post post : posts) {
+            contents.add(post.getPostContent());
+        }
+        Map<String, Object> attributes = new HashMap<>();
+        for (TextProcessor preprocessor : preprocessors) {
+            if (preprocessor instanceof PreloadingTextProcessor) {
+                attributes.putAll(((PreloadingTextProcessor) preprocessor).preload(contents));
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * @return request bound to the current thread, {@code null} if the thread doesn't process a request
+     */
+    private HttpServletRequest getCurrentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes
+                ? ((ServletRequestAttributes) attributes).getRequest() : null;
+    }
+
+    /**
+     * Converts content of the post into HTML and stores the result in the post itself, should be used each time the
+     * post content is changed so that it's not converted on each page view. The post is converted the same way the
+     * page with the post converts it, e.g. the first post of a code review is converted as a code review. Request
+     * dependent post-processing is not applied, it's done each time the post is shown.
+     *
+     * @param post post to render the content of
+     */
+    public void renderPostContent(Post post) {
+        String html = new PostRenderingTask(post, getCurrentRequest(), Collections.<String, Object>emptyMap()).call();
+        post.setRenderedContent(html, getRenderingVersion());
+    }
+
+    /**
+     * Gets the version of converter configuration: kefirbb.xml, the lists of pre- and post-processors and the build
+     * of the application the processors come from. If any of them is changed, HTML rendered with the previous
+     * configuration becomes outdated. Request dependent post-processors are not taken into account, as their result
+     * is not stored.
+     *
+     * @return a hash of current converter configuration
+     */
+    public String getRenderingVersion() {
+        if (renderingVersion == null) {
+            renderingVersion = calculateRenderingVersion();
+        }
+        return renderingVersion;
+    }
+
+    private String calculateRenderingVersion() {
+        StringBuilder configuration = new StringBuilder(readResource(CONVERTER_CONFIGURATION));
+        configuration.append(readResource(BUILD_PROPERTIES));
+        for (TextProcessor preprocessor : preprocessors) {
+            configuration.append(preprocessor.getClass().getName());
+        }
+        for (TextPostProcessor postprocessor : postprocessors) {
+            configuration.append(postprocessor.getClass().getName());
+        }
+        return DigestUtils.md5Hex(configuration.toString());
+    }
+
+    private String readResource(String name) {
+        InputStream configuration = getClass().getClassLoader().getResourceAsStream(name);
+        if (configuration == null) {
+            return "";
+        }
+        try {
+            return IOUtils.toString(configuration, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + name, e);
+        } finally {
+            IOUtils.closeQuietly(configuration);
+        }
+    }
+
     /** @param preprocessors objects that process input text from users post before the actual bb-converting is
      *                       started */
     public void setPreprocessors(List<TextProcessor> preprocessors) {
         this.preprocessors.addAll(preprocessors);
+        this.renderingVersion = null;
     }
 
     /**
@@ -93,6 +384,41 @@ public class BBCodeService implements PluginBbCodeService {
      */
     public void setPostprocessors(List<TextPostProcessor> postprocessors) {
         this.postprocessors.addAll(postprocessors);
+        this.renderingVersion = null;
+    }
+
+    /**
+     * @param requestDependentPostprocessors objects that process HTML each time it's shown, after it was taken from
+     *                                       the post or the cache or converted with the other processors, e.g. to
+     *                                       mark links to other sites
+     */
+    public void setRequestDependentPostprocessors(List<TextPostProcessor> requestDependentPostprocessors) {
+        this.requestDependentPostprocessors.addAll(requestDependentPostprocessors);
+    }
+
+    /**
+     * @param fusedPreprocessing whether pre-processors should work with one buffer instead of creating a copy of the
+     *                           text each, pre-processors have to implement {@link InPlaceTextProcessor} to benefit
+     *                           from it
+     */
+    public void setFusedPreprocessing(boolean fusedPreprocessing) {
+        this.fusedPreprocessing = fusedPreprocessing;
+    }
+
+    /**
+     * @param renderingPool bounded pool to convert posts of one page in parallel in
+     *                      {@link #convertPostsToHtml(Page)}
+     */
+    public void setRenderingPool(ExecutorService renderingPool) {
+        this.renderingPool = renderingPool;
+    }
+
+    /**
+     * @param renderedPostCacheService cache of posts already converted to HTML, used by {@link
+     *                                 #convertPostToHtml(Post)}
+     */
+    public void setRenderedPostCacheService(RenderedPostCacheService renderedPostCacheService) {
+        this.renderedPostCacheService = renderedPostCacheService;
     }
 
     /**
@@ -105,4 +431,55 @@ public class BBCodeService implements PluginBbCodeService {
     public String stripBBCodes(String bbCode) {
         return stripBBCodesProcessor.process(bbCode);
     }
+
+    /**
+     * @param post post to be converted
+     * @return whether the post is the first post of a code review, page with such a post converts it differently
+     */
+    private static boolean isCodeReviewPost(Post post) {
+        Topic topic = post.getTopic();
+        return topic != null && topic.isCodeReview() && post.equals(topic.getFirstPost());
+    }
+
+    /**
+     * Converts content of one post in the thread it's called in as if it's converted in the request of the page with
+     * the post. The post itself is read when the task is created, so the task can be called in any thread.
+     */
+    private class PostRenderingTask implements Callable<String> {
+        private final String postContent;
+        private final boolean codeReviewPost;
+        private final HttpServletRequest request;
+        private final Map<String, Object> preloadedAttributes;
+
+        /**
+         * @param post                post to convert the content of
+         * @param request             request of the page with the post, {@code null} if the post is converted not in
+         *                            a request
+         * @param preloadedAttributes attributes set by pre-processors for all the posts of the page
+         */
+        PostRenderingTask(Post post, HttpServletRequest request, Map<String, Object> preloadedAttributes) {
+            this.postContent = post.getPostContent();
+            this.codeReviewPost = isCodeReviewPost(post);
+            this.request = request;
+            this.preloadedAttributes = preloadedAttributes;
+        }
+
+        /**
+         * @return content of the post with HTML markup to be stored, not post-processed for the request
+         */
+        @Override
+        public String call() {
+            if (request == null) {
+                return convertBbToStoredHtml(postContent);
+            }
+            RequestAttributes previousAttributes = RequestContextHolder.getRequestAttributes();
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+                    new PostRenderingRequest(request, codeReviewPost, preloadedAttributes)));
+            try {
+                return convertBbToStoredHtml(postContent);
+            } finally {
+                RequestContextHolder.setRequestAttributes(previousAttributes);
+            }
+        }
+    }
 }
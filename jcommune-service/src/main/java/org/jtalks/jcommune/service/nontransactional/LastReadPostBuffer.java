@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import org.joda.time.DateTime;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps last read posts of users in memory until they are written to the database in batches, so showing a topic to
+ * the user doesn't turn the request into a write. Only the latest read post per user and topic is kept, so the user
+ * going through pages of a topic results in one record to be written.<br/>
+ * Dates stay available via {@link #getDates(long)} until they are written, so users see what they've read before the
+ * database does. Dates which were not written yet are lost when the forum is stopped, the only result is that
+ * topics read during the last seconds look unread again.
+ */
+public class LastReadPostBuffer {
+    private Table<Long, Long, DateTime> pending = HashBasedTable.create();
+    /** Dates which are being written now, they are kept till the end of writing to be available to the users */
+    private Table<Long, Long, DateTime> writing = HashBasedTable.create();
+
+    /**
+     * Remembers the read post if it's later than the one already remembered for the user and topic.
+     *
+     * @param userId   id of the user who read the post
+     * @param topicId  id of the topic the post belongs to
+     * @param postDate creation date of the read post
+     */
+    public synchronized void put(long userId, long topicId, DateTime postDate) {
+        putLatest(pending, userId, topicId, postDate);
+    }
+
+    /**
+     * @param userId id of the user
+     * @return creation dates of the posts the user has read but which are not written yet, by topic ids
+     */
+    public synchronized Map<Long, DateTime> getDates(long userId) {
+        Map<Long, DateTime> dates = new HashMap<>(writing.row(userId));
+        for (Map.Entry<Long, DateTime> date : pending.row(userId).entrySet()) {
+            DateTime writingDate = dates.get(date.getKey());
+            if (writingDate == null || date.getValue().isAfter(writingDate)) {
+                dates.put(date.getKey(), date.getValue());
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Takes the remembered dates to be written, the rest is left to be taken next time. Dates of one user are taken
+     * together as long as possible, so that one write touches as few users as possible. One of {@link #written()} or
+     * {@link #notWritten()} has to be called after the writing transaction is committed or rolled back.
+     *
+     * @param maxCount maximum number of dates to take
+     * @return creation dates of the read posts by ids of users (rows) and topics (columns), empty if there is nothing
+     *         to write or the previous dates are still being written
+     */
+    public synchronized Table<Long, Long, DateTime> takeForWriting(int maxCount) {
+        if (!writing.isEmpty()) {
+            return HashBasedTable.create();
+        }
+        int count = 0;
+        // cells are iterated row by row, i.e. user by user
+        Iterator<Table.Cell<Long, Long, DateTime>> cells = pending.cellSet().iterator();
+        while (cells.hasNext() && count < maxCount) {
+            Table.Cell<Long, Long, DateTime> cell = cells.next();
+            writing.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+            cells.remove();
+            count++;
+        }
+        return HashBasedTable.create(writing);
+    }
+
+    /**
+     * Forgets the dates taken by {@link #takeForWriting(int)} since the database has them now.
+     */
+    public synchronized void written() {
+        writing = HashBasedTable.create();
+    }
+
+    /**
+     * Returns the dates taken by {@link #takeForWriting(int)} back to be written next time.
+     */
+    public synchronized void notWritten() {
+        for (Table.Cell<Long, Long, DateTime> cell : writing.cellSet()) {
+            putLatest(pending, cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+        }
+        writing = HashBasedTable.create();
+    }
+
+    /**
+     * Forgets all the dates of the user, e.g. when the whole forum is marked as read and older dates don't matter.
+     * Dates which are being written now can't be cancelled.
+     *
+     * @param userId id of the user
+     */
+    public synchronized void remove(long userId) {
+        pending.row(userId).clear();
+    }
+
+    /**
+     * @return number of users and topics the dates are kept for, including the ones being written
+     */
+    public synchronized int size() {
+        return pending.size() + writing.size();
+    }
+
+    private static void putLatest(Table<Long, Long, DateTime> dates, long userId, long topicId, DateTime postDate) {
+        DateTime previousDate = dates.get(userId, topicId);
+        if (previousDate == null || postDate.isAfter(previousDate)) {
+            dates.put(userId, topicId, postDate);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.model.entity.QueuedMail;
+import org.jtalks.jcommune.service.MailQueueService;
+import org.jtalks.jcommune.service.transactional.TransactionalMailQueueService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sends mails of {@link MailQueueService} by timer. Mails taken from the queue are split into sessions, each session
+ * is sent over its own connection to the mail server and sessions are sent in parallel. Nothing is sent inside a
+ * transaction: mails are taken from the queue in one and each session is reported back to the queue in its own one
+ * as soon as it's sent.
+ */
+public class MailQueueSender {
+    /** How many mails are taken from the queue at once */
+    static final int BATCH_SIZE = 100;
+    /** How many mails are sent over one connection to the mail server */
+    static final int SESSION_SIZE = 20;
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailQueueSender.class);
+
+    private final MailQueueService mailQueueService;
+    private final JavaMailSender mailSender;
+    private final ExecutorService sendingPool;
+
+    /**
+     * @param mailQueueService to take mails from and report sent mails to
+     * @param mailSender       to send mails to the mail server
+     * @param sendingPool      threads to send sessions of mails in parallel
+     */
+    public MailQueueSender(MailQueueService mailQueueService, JavaMailSender mailSender,
+                           ExecutorService sendingPool) {
+        this.mailQueueService = mailQueueService;
+        this.mailSender = mailSender;
+        this.sendingPool = sendingPool;
+    }
+
+    /**
+     * Sends the mails whose time to be sent has come. Sessions which failed unexpectedly are not reported, so their
+     * mails are sent again after sending timeout of the queue.
+     */
+    public void sendQueuedMails() {
+        List<QueuedMail> mails = mailQueueService.takeMailsToSend(BATCH_SIZE);
+        if (mails.isEmpty()) {
+            return;
+        }
+        List<SendingSession> sessions = new ArrayList<>();
+        for (int from = 0; from < mails.size(); from += SESSION_SIZE) {
+            sessions.add(new SendingSession(mails.subList(from, Math.min(from + SESSION_SIZE, mails.size()))));
+        }
+        List<Future<List<QueuedMail>>> results;
+        try {
+            results = sendingPool.invokeAll(sessions);
+        } catch (InterruptedException e) {
+            LOGGER.warn("Sending of queued mails was interrupted, they will be sent again");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (int i = 0; i < sessions.size(); i++) {
+            try {
+                List<QueuedMail> failedMails = results.get(i).get();
+                List<QueuedMail> sentMails = new ArrayList<>(sessions.get(i).mails);
+                sentMails.removeAll(failedMails);
+                mailQueueService.sendingFinished(sentMails, failedMails);
+            } catch (InterruptedException e) {
+                LOGGER.warn("Sending of queued mails was interrupted, not reported ones will be sent again");
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOGGER.error("Unexpected error while sending queued mails, they will be sent again", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Sends mails over one connection to the mail server.
+     */
+    private class SendingSession implements Callable<List<QueuedMail>> {
+        private final List<QueuedMail> mails;
+
+        private SendingSession(List<QueuedMail> mails) {
+            this.mails = mails;
+        }
+
+        /**
+         * @return mails which were not accepted by the mail server
+         */
+        @Override
+        public List<QueuedMail> call() {
+            List<QueuedMail> failedMails = new ArrayList<>();
+            List<QueuedMail> mailsToSend = new ArrayList<>();
+            List<MimeMessage> messages = new ArrayList<>();
+            for (QueuedMail mail : mails) {
+                try {
+                    byte[] bytes = mail.getMessage().getBytes(TransactionalMailQueueService.MESSAGE_CHARSET);
+                    messages.add(mailSender.createMimeMessage(new ByteArrayInputStream(bytes)));
+                    mailsToSend.add(mail);
+                } catch (MailException e) {
+                    LOGGER.error("Queued mail to [" + mail.getRecipient() + "] can't be read", e);
+                    failedMails.add(mail);
+                }
+            }
+            if (messages.isEmpty()) {
+                return failedMails;
+            }
+            try {
+                mailSender.send(messages.toArray(new MimeMessage[messages.size()]));
+            } catch (MailSendException e) {
+                LOGGER.warn("Mail server failed to accept [{}] of [{}] mails: {}",
+                        new Object[]{e.getFailedMessages().size(), messages.size(), e.getMessage()});
+                for (int i = 0; i < messages.size(); i++) {
+                    if (e.getFailedMessages().isEmpty() || e.getFailedMessages().containsKey(messages.get(i))) {
+                        failedMails.add(mailsToSend.get(i));
+                    }
+                }
+            } catch (MailException e) {
+                LOGGER.warn("Mail server failed to accept [{}] mails: {}", messages.size(), e.getMessage());
+                failedMails.addAll(mailsToSend);
+            }
+            return failedMails;
+        }
+    }
+}
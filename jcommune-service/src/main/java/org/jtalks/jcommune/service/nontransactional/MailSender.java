@@ -18,14 +18,17 @@ import com.sun.mail.smtp.SMTPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailPreparationException;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.scheduling.annotation.Async;
 
 import javax.mail.Address;
+import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
 /**
- * Object sends email in a separate thread.
+ * Object sends email in a separate thread if it's a single message or in the current thread if it's a batch of
+ * messages sent over one connection.
  * Amount of thread depends on parameter "pool-size" in spring task.
  * See http://docs.spring.io/spring/docs/3.0.x/spring-framework-reference/html/scheduling.html
  *
@@ -38,28 +41,49 @@ public class MailSender extends JavaMailSenderImpl {
     @Override
     public void send(MimeMessage mimeMessage) throws MailException {
         try {
-            String subject = mimeMessage.getSubject();
+            send(new MimeMessage[]{mimeMessage});
+        } catch (Exception e) {
+            LOGGER.error("Mail sending failed", e);
+        }
+    }
+
+    /**
+     * Sends messages synchronously using one connection to the mail server, thus it's much faster than sending them
+     * one by one. Unlike {@link #send(MimeMessage)} errors are not swallowed, so the caller can send failed messages
+     * again.
+     *
+     * @param mimeMessages messages to send
+     * @throws MailException if some of the messages were not sent, if it's a
+     *                       {@link org.springframework.mail.MailSendException} it contains failed messages from the
+     *                       given array
+     */
+    @Override
+    public void send(MimeMessage[] mimeMessages) throws MailException {
+        try {
+            SMTPMessage[] messages = new SMTPMessage[mimeMessages.length];
             StringBuilder to = new StringBuilder();
-            for (Address address : mimeMessage.getRecipients(MimeMessage.RecipientType.TO)) {
-                to.append(address.toString());
+            for (int i = 0; i < mimeMessages.length; i++) {
+                for (Address address : mimeMessages[i].getRecipients(MimeMessage.RecipientType.TO)) {
+                    to.append(address.toString()).append(' ');
+                }
+                messages[i] = new SMTPMessage(mimeMessages[i]);
+                messages[i].setEnvelopeFrom(getUsername());
             }
-            SMTPMessage message = new SMTPMessage(mimeMessage);
-            message.setEnvelopeFrom(getUsername());
             long started = System.currentTimeMillis();
-            super.send(message);
+            doSend(messages, mimeMessages);
             long secsTook = (System.currentTimeMillis() - started) / 1000;
             if (secsTook > 30) {
-                LOGGER.warn("Sending email took long time [{}] for receiver: [{}]. Subject: [{}]",
-                        new Object[]{secsTook, to, subject});
+                LOGGER.warn("Sending [{}] emails took long time [{}] for receivers: [{}]",
+                        new Object[]{mimeMessages.length, secsTook, to});
             } else if (secsTook > 5) {
-                LOGGER.info("Sending email took long time [{}] for receiver: [{}]. Subject: [{}]",
-                        new Object[]{secsTook, to, subject});
+                LOGGER.info("Sending [{}] emails took long time [{}] for receivers: [{}]",
+                        new Object[]{mimeMessages.length, secsTook, to});
             }
-            LOGGER.debug("Email was sent to [{}] with subject [{}]. Note that this doesn't mean the mail" +
-                    " is delivered to the end user, this only means that mail server accepted the email and will" +
-                    " try to send it further.", to, subject);
-        } catch (Exception e) {
-            LOGGER.error("Mail sending failed", e);
+            LOGGER.debug("Emails were sent to [{}]. Note that this doesn't mean the mails are delivered to the end" +
+                    " users, this only means that mail server accepted the emails and will try to send them further.",
+                    to);
+        } catch (MessagingException e) {
+            throw new MailPreparationException(e);
         }
     }
 }
@@ -18,12 +18,13 @@ import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.generic.EscapeTool;
 import org.jtalks.common.model.entity.Entity;
 import org.jtalks.jcommune.model.entity.*;
+import org.jtalks.jcommune.service.MailQueueService;
 import org.jtalks.jcommune.service.dto.EntityToDtoConverter;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
 import org.jtalks.jcommune.service.exceptions.MailingFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.MessageSource;
-import org.springframework.mail.MailException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.ui.velocity.VelocityEngineUtils;
@@ -34,9 +35,15 @@ import org.springframework.web.context.request.ServletRequestAttributes;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * This service is focused on sending e-mail to forum users.
@@ -63,11 +70,25 @@ public class MailService {
     private static final String CUR_USER = "cur_user";
     private static final String USER = "user";
     private static final String NAME = "name";
-    private static final String TOPIC = "topic";
+    private static final String TOPIC_TITLE = "topicTitle";
+    private static final String UPDATES = "updates";
     private static final String MESSAGE_SOURCE = "messageSource";
     private static final String RECIPIENT_LOCALE = "locale";
     private static final String NO_ARGS = "noArgs";
     private static final String ESCAPE_TOOL = "escape";
+    private static final String[] TEMPLATE_NAMES = {"accountActivation.vm", "branchSubscriptionNotification.vm",
+            "moveTopic.vm", "passwordRecovery.vm", "receivedPrivateMessageNotification.vm",
+            REMOVE_CODE_REVIEW_MESSAGE_BODY_TEMPLATE, REMOVE_TOPIC_MESSAGE_BODY_TEMPLATE,
+            "subscriptionDigest.vm", "subscriptionNotification.vm", "userMentioning.vm"};
+    /**
+     * Is put to the mails sent to many recipients instead of the recipient's name, so that the mail can be rendered
+     * once for all of them. Consists of letters and digits only, so it's not changed by escaping.
+     */
+    private static final String RECIPIENT_NAME_PLACEHOLDER =
+            "recipient" + UUID.randomUUID().toString().replace("-", "");
+    private static final JCUser RECIPIENT_PLACEHOLDER = new JCUser(RECIPIENT_NAME_PLACEHOLDER, null, null);
+    /** Mails are sent to all recipients of one update one by one, so we don't need to remember many of them */
+    private static final int MAX_SHARED_MAILS = 100;
     private final JavaMailSender mailSender;
     private final String from;
     private final VelocityEngine velocityEngine;
@@ -75,6 +96,14 @@ public class MailService {
     private final JCommuneProperty notificationsEnabledProperty;
     private final EscapeTool escapeTool;
     private final EntityToDtoConverter converter;
+    private final MailQueueService mailQueueService;
+    private final Map<List<Object>, RenderedMail> sharedMails = Collections.synchronizedMap(
+            new LinkedHashMap<List<Object>, RenderedMail>(MAX_SHARED_MAILS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, RenderedMail> eldest) {
+                    return size() > MAX_SHARED_MAILS;
+                }
+            });
 
     /**
      * Creates a mailing service with a default template message autowired.
@@ -88,6 +117,7 @@ public class MailService {
      * @param source                       for resolving internationalization messages
      * @param notificationsEnabledProperty to check whether email notifications are enabled
      * @param escapeTool                   velocity tool to perform html-escape
+     * @param mailQueueService             to send mails in background
      */
     public MailService(JavaMailSender sender,
                        String from,
@@ -95,7 +125,8 @@ public class MailService {
                        MessageSource source,
                        JCommuneProperty notificationsEnabledProperty,
                        EscapeTool escapeTool,
-                       EntityToDtoConverter converter) {
+                       EntityToDtoConverter converter,
+                       MailQueueService mailQueueService) {
         this.mailSender = sender;
         this.from = from;
         this.velocityEngine = engine;
@@ -103,6 +134,18 @@ public class MailService {
         this.notificationsEnabledProperty = notificationsEnabledProperty;
         this.escapeTool = escapeTool;
         this.converter = converter;
+        this.mailQueueService = mailQueueService;
+    }
+
+    /**
+     * Compiles all the templates on startup, so that the first mails are not slowed down by compilation and broken
+     * templates are found before any mail is sent. The engine should be configured to cache compiled templates.
+     */
+    public void init() {
+        for (String templateName : TEMPLATE_NAMES) {
+            velocityEngine.getTemplate(HTML_TEMPLATES_PATH + templateName, "UTF-8");
+            velocityEngine.getTemplate(PLAIN_TEXT_TEMPLATES_PATH + templateName, "UTF-8");
+        }
     }
 
     /**
@@ -159,6 +202,55 @@ public class MailService {
         }
     }
 
+    /**
+     * Collects what is needed to mention the update of subscribed entity in a digest. Links are built from the
+     * current request, so this method should be called while the request is processed.
+     *
+     * @param entity changed subscribed entity
+     * @return update to be sent later with {@link #sendSubscriptionDigest(JCUser, Collection)}
+     */
+    public SubscriptionUpdate createSubscriptionUpdate(SubscriptionAwareEntity entity) {
+        String urlSuffix = entity.getUrlSuffix();
+        return new SubscriptionUpdate(getSubscriptionKey(entity), getTitle((Entity) entity),
+                this.getDeploymentRootUrl() + urlSuffix, getDeploymentRootUrlWithoutPort() + urlSuffix);
+    }
+
+    /**
+     * @param entity changed subscribed entity
+     * @return key which is the same for all the updates of the entity, updates of code review comments are
+     *         considered updates of the code review topic
+     */
+    private String getSubscriptionKey(SubscriptionAwareEntity entity) {
+        if (entity instanceof Branch) {
+            return "branch" + ((Branch) entity).getId();
+        } else if (entity instanceof Post) {
+            return "topic" + ((Post) entity).getTopic().getId();
+        }
+        return "topic" + ((Entity) entity).getId();
+    }
+
+    /**
+     * Sends one mail about all the updates of subscribed entities collected since the previous digest. Doesn't need
+     * the current request, so can be called by timer. This method won't check if user is still subscribed to the
+     * updated entities.
+     *
+     * @param recipient a person to be notified about updates by email
+     * @param updates   updates of subscribed entities, there should be at least one
+     */
+    public void sendSubscriptionDigest(JCUser recipient, Collection<SubscriptionUpdate> updates) {
+        Locale locale = recipient.getLanguage().getLocale();
+        Map<String, Object> model = new HashMap<>();
+        model.put(USER, recipient);
+        model.put(RECIPIENT_LOCALE, locale);
+        model.put(UPDATES, updates);
+        try {
+            this.sendEmail(recipient.getEmail(), messageSource.getMessage("subscriptionDigest.subject",
+                    new Object[]{}, locale), model, "subscriptionDigest.vm");
+        } catch (MailingFailedException e) {
+            LOGGER.error("Failed to sent subscription digest for user: " + recipient.getUsername());
+        }
+    }
+
     /**
      * Sends email on forum updates.
      *
@@ -169,10 +261,9 @@ public class MailService {
      */
     private void sendEmailOnForumUpdates(JCUser recipient, Map<String, Object> model, Locale locale,
                                          Entity entity, String subject, String nameTemplate) throws MailingFailedException {
-        model.put(USER, recipient);
         model.put(RECIPIENT_LOCALE, locale);
         String titleEntity = this.getTitleName(entity);
-        this.sendEmail(recipient.getEmail(), messageSource.getMessage(subject,
+        this.sendEmailToOneOfMany(recipient, messageSource.getMessage(subject,
                 new Object[]{}, locale) + titleEntity, model, nameTemplate);
     }
 
@@ -233,13 +324,12 @@ public class MailService {
         String url = this.getDeploymentRootUrl() + urlSuffix;
         Locale locale = recipient.getLanguage().getLocale();
         Map<String, Object> model = new HashMap<>();
-        model.put(NAME, recipient.getUsername());
         model.put(LINK, url);
         model.put(LINK_UNSUBSCRIBE, this.getDeploymentRootUrl() + getUnsubscribeBranchLink(topic.getBranch()));
         model.put(LINK_LABEL, getDeploymentRootUrlWithoutPort() + urlSuffix);
         model.put(RECIPIENT_LOCALE, locale);
         try {
-            this.sendEmail(recipient.getEmail(), messageSource.getMessage("moveTopic.subject",
+            this.sendEmailToOneOfMany(recipient, messageSource.getMessage("moveTopic.subject",
                     new Object[]{}, locale), model, "moveTopic.vm");
         } catch (MailingFailedException e) {
             LOGGER.error("Failed to sent activation mail for user: " + recipient.getUsername());
@@ -258,14 +348,13 @@ public class MailService {
         String url = this.getDeploymentRootUrl() + urlSuffix;
         Locale locale = recipient.getLanguage().getLocale();
         Map<String, Object> model = new HashMap<>();
-        model.put(NAME, recipient.getUsername());
         model.put(CUR_USER, curUser);
         model.put(LINK, url);
         model.put(LINK_UNSUBSCRIBE, this.getDeploymentRootUrl() + getUnsubscribeBranchLink(topic.getBranch()));
         model.put(LINK_LABEL, getDeploymentRootUrlWithoutPort() + urlSuffix);
         model.put(RECIPIENT_LOCALE, locale);
         try {
-            this.sendEmail(recipient.getEmail(), messageSource.getMessage("moveTopic.subject",
+            this.sendEmailToOneOfMany(recipient, messageSource.getMessage("moveTopic.subject",
                     new Object[]{}, locale), model, "moveTopic.vm");
         } catch (MailingFailedException e) {
             LOGGER.error("Failed to sent activation mail for user: " + recipient.getUsername());
@@ -299,7 +388,8 @@ public class MailService {
 
     /**
      * Just a convenience method for message sending to encapsulate
-     * boilerplate error handling code.
+     * boilerplate error handling code. The message is put to the queue
+     * and is sent to the mail server in background.
      *
      * @param to           destination email address
      * @param subject      message headline
@@ -309,27 +399,95 @@ public class MailService {
      */
     private void sendEmail(String to, String subject, Map<String, Object> model,
                            String templateName) throws MailingFailedException {
+        if (!isNotificationsEnabled(to, subject)) {
+            return;
+        }
+        putTemplateTools(model);
+        String plainText = this.mergePlainTextTemplate(templateName, model);
+        String htmlText = this.mergeHtmlTemplate(templateName, model);
+        this.sendEmail(to, subject, plainText, htmlText);
+    }
+
+    /**
+     * Sends one of the mails about the same update to many recipients. The text of such mails differs only by the
+     * recipient's name, so the templates are merged once for all of them and then the name of each recipient is put
+     * into the merged text. Model shouldn't contain recipient's data other than the locale, the name is available to
+     * templates as {@code $user.username} and {@code $name}.
+     *
+     * @param recipient    a person to send the mail to
+     * @param subject      message headline
+     * @param model        template params to be substituted in velocity template, the same for all recipients with
+     *                     the same locale
+     * @param templateName template file name, like "template.vm"
+     * @throws MailingFailedException exception with error message specified ic case of some error
+     */
+    private void sendEmailToOneOfMany(JCUser recipient, String subject, Map<String, Object> model,
+                                      String templateName) throws MailingFailedException {
+        if (!isNotificationsEnabled(recipient.getEmail(), subject)) {
+            return;
+        }
+        List<Object> key = Arrays.<Object>asList(templateName, new HashMap<>(model));
+        RenderedMail mail = sharedMails.get(key);
+        if (mail == null) {
+            model.put(USER, RECIPIENT_PLACEHOLDER);
+            model.put(NAME, RECIPIENT_NAME_PLACEHOLDER);
+            putTemplateTools(model);
+            mail = new RenderedMail(mergePlainTextTemplate(templateName, model),
+                    mergeHtmlTemplate(templateName, model));
+            sharedMails.put(key, mail);
+        }
+        String name = recipient.getUsername();
+        this.sendEmail(recipient.getEmail(), subject, mail.plainText.replace(RECIPIENT_NAME_PLACEHOLDER, name),
+                mail.htmlText.replace(RECIPIENT_NAME_PLACEHOLDER, escapeTool.html(name)));
+    }
+
+    /**
+     * @param to      destination email address
+     * @param subject message headline
+     * @return whether email notifications are enabled, if they are not it's logged that the mail is not sent
+     */
+    private boolean isNotificationsEnabled(String to, String subject) {
         if (!notificationsEnabledProperty.booleanValue()) {
             LOGGER.debug("Email notifications are turned off in Forum Settings, skip sending to [{}]" +
                     " mail with subject [{}]. User with Admin Permissions can enter Poulpe (that should be changed" +
                     " soon) and change the setting.", to, subject);
-            return;
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Puts to the model objects used by all the templates to get localized messages and to escape values.
+     *
+     * @param model template params to be substituted in velocity template
+     */
+    private void putTemplateTools(Map<String, Object> model) {
+        model.put(MESSAGE_SOURCE, messageSource);
+        model.put(ESCAPE_TOOL, escapeTool);
+        model.put(NO_ARGS, new Object[]{});
+    }
+
+    /**
+     * Puts the message with already merged templates to the queue.
+     *
+     * @param to        destination email address
+     * @param subject   message headline
+     * @param plainText plain text version of the message
+     * @param htmlText  html version of the message
+     * @throws MailingFailedException exception with error message specified ic case of some error
+     */
+    private void sendEmail(String to, String subject, String plainText,
+                           String htmlText) throws MailingFailedException {
         LOGGER.debug("Sending email to [{}] with subject [{}]", to, subject);
         try {
-            model.put(MESSAGE_SOURCE, messageSource);
-            model.put(ESCAPE_TOOL, escapeTool);
-            model.put(NO_ARGS, new Object[]{});
-            String plainText = this.mergePlainTextTemplate(templateName, model);
-            String htmlText = this.mergeHtmlTemplate(templateName, model);
             MimeMessage message = mailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(message, true);
             helper.setTo(to);
             helper.setFrom(from);
             helper.setSubject(subject);
             helper.setText(plainText, htmlText);
-            mailSender.send(message);
-        } catch (MailException | MessagingException e) {
+            mailQueueService.enqueue(message);
+        } catch (MessagingException e) {
             LOGGER.error("Mail sending failed", e);
             throw new MailingFailedException(e);
         }
@@ -397,15 +555,21 @@ public class MailService {
      * @return title for Topic/Branch or "" if entity is not instanceof Topic/Branch
      */
     private String getTitleName(Entity entity) {
+        String title = getTitle(entity);
+        return "".equals(title) ? "" : ": " + title;
+    }
+
+    /**
+     * @param entity entity like "Branch/Topics"
+     * @return title for Topic/Branch or "" if entity is not instanceof Topic/Branch
+     */
+    private String getTitle(Entity entity) {
         if (entity instanceof Topic) {
-            Topic topic = (Topic) entity;
-            return ": " + topic.getTitle();
+            return ((Topic) entity).getTitle();
         } else if (entity instanceof Branch) {
-            Branch branch = (Branch) entity;
-            return ": " + branch.getName();
+            return ((Branch) entity).getName();
         } else if (entity instanceof Post) {
-            Post post = (Post) entity;
-            return ": " + post.getTopic().getTitle();
+            return ((Post) entity).getTopic().getTitle();
         } else {
             return "";
         }
@@ -420,10 +584,9 @@ public class MailService {
     public void sendRemovingTopicMail(JCUser recipient, Topic topic) {
         Locale locale = recipient.getLanguage().getLocale();
         Map<String, Object> model = new HashMap<>();
-        model.put(USER, recipient);
         model.put(RECIPIENT_LOCALE, locale);
         model.put(LINK_UNSUBSCRIBE, this.getDeploymentRootUrl() + getUnsubscribeBranchLink(topic.getBranch()));
-        model.put(TOPIC, topic);
+        model.put(TOPIC_TITLE, topic.getTitle());
 
         try {
 
@@ -436,7 +599,7 @@ public class MailService {
             }
 
             String subject = messageSource.getMessage(subjectTemplate, new Object[]{}, locale);
-            this.sendEmail(recipient.getEmail(), subject, model, messageBodyTemplate);
+            this.sendEmailToOneOfMany(recipient, subject, model, messageBodyTemplate);
 
         } catch (MailingFailedException e) {
             LOGGER.error("Failed to sent mail about removing topic or code review for user: "
@@ -454,11 +617,10 @@ public class MailService {
     public void sendRemovingTopicMail(JCUser recipient, Topic topic, String curUser) {
         Locale locale = recipient.getLanguage().getLocale();
         Map<String, Object> model = new HashMap<>();
-        model.put(USER, recipient);
         model.put(RECIPIENT_LOCALE, locale);
         model.put(CUR_USER, curUser);
         model.put(LINK_UNSUBSCRIBE, this.getDeploymentRootUrl() + getUnsubscribeBranchLink(topic.getBranch()));
-        model.put(TOPIC, topic);
+        model.put(TOPIC_TITLE, topic.getTitle());
 
         try {
 
@@ -471,7 +633,7 @@ public class MailService {
             }
 
             String subject = messageSource.getMessage(subjectTemplate, new Object[]{}, locale);
-            this.sendEmail(recipient.getEmail(), subject, model, messageBodyTemplate);
+            this.sendEmailToOneOfMany(recipient, subject, model, messageBodyTemplate);
 
         } catch (MailingFailedException e) {
             LOGGER.error("Failed to sent mail about removing topic or code review for user: "
@@ -526,4 +688,17 @@ public class MailService {
     private String getTopicUrlSuffix(Topic topic) {
         return converter.convertTopicToDto(topic).getTopicUrl();
     }
+
+    /**
+     * Mail with merged templates, the same for many recipients.
+     */
+    private static final class RenderedMail {
+        private final String plainText;
+        private final String htmlText;
+
+        private RenderedMail(String plainText, String htmlText) {
+            this.plainText = plainText;
+            this.htmlText = htmlText;
+        }
+    }
 }
@@ -31,10 +31,6 @@ import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static java.lang.String.format;
 
 
 /**
@@ -50,10 +46,10 @@ public class MentionedUsers {
     public static final String MENTIONED_AND_NOTIFIED_USER_TEMPLATE = "[user notified=true]%s[/user]";
     public static final String USER_WITH_LINK_TO_PROFILE_TEMPLATE = "[user=%s]%s[/user]";
     private static final Logger LOGGER = LoggerFactory.getLogger(MentionedUsers.class);
-    private static final Pattern ALL_MENTIONED_USERS_PATTERN =
-            Pattern.compile("\\[user\\].*?\\[/user\\]|\\[user notified=true\\].*?\\[/user\\]");
-    private static final Pattern MENTIONED_AND_NOT_NOTIFIED_USERS_PATTERN =
-            Pattern.compile("\\[user\\].*?\\[/user\\]");
+    private static final String OPEN_TAG_PREFIX = "[user";
+    private static final String NOT_NOTIFIED_OPEN_TAG = "[user]";
+    private static final String NOTIFIED_OPEN_TAG = "[user notified=true]";
+    private static final String CLOSE_TAG = "[/user]";
     private static final String CLOSE_BRACKET_CODE_PLACEHOLDER = "@w0956756wo@";
     private static final String OPEN_BRACKET_CODE_PLACEHOLDER = "@ywdffgg434y@";
     private static final String SLASH_CODE_PLACEHOLDER = "14@123435vggv4f";
@@ -67,7 +63,6 @@ public class MentionedUsers {
         CHARS_PLACEHOLDERS.put("<", LOWER_THEN_PLACEHOLDER);
     }
 
-    private final Map<String, String> encodedUserNames = new HashMap<>();
     /**
      * Content of the post
      */
@@ -135,9 +130,10 @@ public class MentionedUsers {
             throw new IllegalStateException("To call this method you should create class with Post type parameter");
         }
 
-        Set<String> mentionedUsersNames = extractNotNotifiedMentionedUsers(postContent);
-        if (!CollectionUtils.isEmpty(mentionedUsersNames)) {
-            markUsersAsAlreadyNotified(mentionedUsersNames, postDao);
+        List<UserTag> notNotifiedTags = findUserTags(postContent, false);
+        if (!notNotifiedTags.isEmpty()) {
+            post.setPostContent(markTagsAsNotified(postContent, notNotifiedTags));
+            postDao.saveOrUpdate(post);
         }
     }
 
@@ -148,13 +144,93 @@ public class MentionedUsers {
      * @return text with BB codes replaced by user profile links
      */
     public String getTextWithProcessedUserTags(UserDao userDao) {
-        Set<String> mentionedUsers = extractAllMentionedUsers(postContent);
-        Map<String, String> userToUserProfileLinkMap = new HashMap<>();
-        for (String mentionedUser : mentionedUsers) {
-            String mentionedUserProfileLink = getLinkToUserProfile(mentionedUser, userDao);
-            userToUserProfileLinkMap.put(mentionedUser, mentionedUserProfileLink);
+        return getTextWithProcessedUserTags(userDao, null);
+    }
+
+    /**
+     * Returns post text with BB codes replaced by user profile links, ids of the mentioned users are taken from the
+     * cache and only users missing there are queried.
+     *
+     * @param userDao     service for working with user objects
+     * @param userIdCache cache of user ids by their names, can be {@code null} to query all mentioned users
+     * @return text with BB codes replaced by user profile links
+     */
+    public String getTextWithProcessedUserTags(UserDao userDao, UserIdCacheService userIdCache) {
+        List<UserTag> tags = findUserTags(postContent, true);
+        if (tags.isEmpty()) {
+            return postContent;
         }
-        return addLinksToUserProfileForMentionedUsers(postContent, userToUserProfileLinkMap);
+        Set<String> mentionedUsernames = new HashSet<>();
+        for (UserTag tag : tags) {
+            mentionedUsernames.add(tag.username);
+        }
+        Map<String, Long> mentionedUserIds = getUserIds(mentionedUsernames, userDao, userIdCache);
+        return addLinksToUserProfileForMentionedUsers(postContent, tags, mentionedUserIds);
+    }
+
+    /**
+     * Returns post text with BB codes replaced by user profile links, ids of the mentioned users are already loaded,
+     * e.g. with {@link #getMentionedUserIds(Collection, UserDao, UserIdCacheService)}. Users missing among them are
+     * treated as not existing.
+     *
+     * @param mentionedUserIds ids of existing mentioned users by their names
+     * @return text with BB codes replaced by user profile links
+     */
+    public String getTextWithProcessedUserTags(Map<String, Long> mentionedUserIds) {
+        List<UserTag> tags = findUserTags(postContent, true);
+        if (tags.isEmpty()) {
+            return postContent;
+        }
+        return addLinksToUserProfileForMentionedUsers(postContent, tags, mentionedUserIds);
+    }
+
+    /**
+     * Gets ids of the users mentioned in any of the texts with one query, so that the texts can be processed later
+     * without querying users, see {@link #getTextWithProcessedUserTags(Map)}.
+     *
+     * @param postContents texts which can contain users mentioning
+     * @param userDao      service for working with user objects
+     * @param userIdCache  cache of user ids by their names, can be {@code null} to query all mentioned users
+     * @return ids of existing mentioned users by their names
+     */
+    public static Map<String, Long> getMentionedUserIds(Collection<String> postContents, UserDao userDao,
+                                                        UserIdCacheService userIdCache) {
+        Set<String> mentionedUsernames = new HashSet<>();
+        for (String postContent : postContents) {
+            for (UserTag tag : findUserTags(postContent, true)) {
+                mentionedUsernames.add(tag.username);
+            }
+        }
+        if (mentionedUsernames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return getUserIds(mentionedUsernames, userDao, userIdCache);
+    }
+
+    /**
+     * Gets the ways the name of the user may be written between user tags: as is or encoded the way names with special
+     * characters are encoded by the editor, see {@link #decodeUsername(String)}.
+     *
+     * @param username name of the user the way it's stored in the database
+     * @return names that can be found in user tags of the posts mentioning the user
+     */
+    public static Set<String> getNamesInTags(String username) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(username);
+        String encodedUsername = username;
+        for (Map.Entry<String, String> encodeEntry : CHARS_PLACEHOLDERS.entrySet()) {
+            encodedUsername = encodedUsername.replace(encodeEntry.getKey(), encodeEntry.getValue());
+        }
+        // the editor doesn't encode these characters, so the engine is invoked only when it's needed
+        if (!encodedUsername.matches("[\\w ;,/?:@&=+$.!~*()#-]*")) {
+            Object jsEncodedName = invokeJavaScript("encodeURI", encodedUsername.replace("'", "\\'"));
+            if (jsEncodedName != null) {
+                // spaces are left as is by the editor
+                encodedUsername = jsEncodedName.toString().replace("%20", " ");
+            }
+        }
+        names.add(encodedUsername);
+        return names;
     }
 
     /**
@@ -163,7 +239,7 @@ public class MentionedUsers {
      * @return extracted users' names
      */
     public Set<String> extractAllMentionedUsers(String canContainMentionedUsers) {
-        return extractMentionedUsers(canContainMentionedUsers, ALL_MENTIONED_USERS_PATTERN);
+        return extractMentionedUsers(canContainMentionedUsers, true);
     }
 
     /**
@@ -172,49 +248,119 @@ public class MentionedUsers {
      * @return names of users that were mentioned but not notified yet
      */
     private Set<String> extractNotNotifiedMentionedUsers(String canContainMentionedUsers) {
-        return extractMentionedUsers(canContainMentionedUsers, MENTIONED_AND_NOT_NOTIFIED_USERS_PATTERN);
+        return extractMentionedUsers(canContainMentionedUsers, false);
     }
 
     /**
      * Extract names of users that were mentioned in passed text.
      *
      * @param canContainMentionedUsers can contain users mentioning
-     * @param mentionedUserPattern     pattern to extract mentioned user in given text
+     * @param includeNotified          whether users from [user notified=true] tags should be extracted too
      * @return extracted users' names
      */
-    private Set<String> extractMentionedUsers(String canContainMentionedUsers, Pattern mentionedUserPattern) {
-        if (!StringUtils.isEmpty(canContainMentionedUsers)) {
-            Matcher matcher = mentionedUserPattern.matcher(canContainMentionedUsers);
-            Set<String> mentionedUsernames = new HashSet<>();
-            while (matcher.find()) {
-                String userBBCode = matcher.group();
-                String mentionedUser = userBBCode.replaceAll("\\[.*?\\]", StringUtils.EMPTY);
-                mentionedUsernames.add(decodeUsername(mentionedUser));
+    private Set<String> extractMentionedUsers(String canContainMentionedUsers, boolean includeNotified) {
+        List<UserTag> tags = findUserTags(canContainMentionedUsers, includeNotified);
+        if (tags.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> mentionedUsernames = new HashSet<>();
+        for (UserTag tag : tags) {
+            mentionedUsernames.add(tag.username);
+        }
+        return mentionedUsernames;
+    }
+
+    /**
+     * Finds user BB codes in the text in one pass without creating intermediate strings, only names of mentioned
+     * users are copied. Recognizes the same tags regular expression {@code \[user\].*?\[/user\]} did: the name lasts
+     * till the nearest closing tag and can't contain line breaks.
+     *
+     * @param text            text which can contain users mentioning
+     * @param includeNotified whether [user notified=true] tags should be found too or only [user] ones
+     * @return found tags in the order they appear in the text
+     */
+    private static List<UserTag> findUserTags(String text, boolean includeNotified) {
+        if (StringUtils.isEmpty(text)) {
+            return Collections.emptyList();
+        }
+        List<UserTag> tags = new ArrayList<>();
+        int tagStart = text.indexOf(OPEN_TAG_PREFIX);
+        while (tagStart >= 0) {
+            int nameStart = getOpenTagEnd(text, tagStart, includeNotified);
+            int nameEnd = nameStart < 0 ? -1 : findCloseTagOnTheSameLine(text, nameStart);
+            if (nameEnd >= 0) {
+                tags.add(new UserTag(text, tagStart, nameStart, nameEnd));
+                tagStart = text.indexOf(OPEN_TAG_PREFIX, nameEnd + CLOSE_TAG.length());
+            } else {
+                tagStart = text.indexOf(OPEN_TAG_PREFIX, tagStart + 1);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * @return index right after the opening user tag which starts at the given index or -1 if there is no such tag
+     */
+    private static int getOpenTagEnd(String text, int tagStart, boolean includeNotified) {
+        if (text.startsWith(NOT_NOTIFIED_OPEN_TAG, tagStart)) {
+            return tagStart + NOT_NOTIFIED_OPEN_TAG.length();
+        }
+        if (includeNotified && text.startsWith(NOTIFIED_OPEN_TAG, tagStart)) {
+            return tagStart + NOTIFIED_OPEN_TAG.length();
+        }
+        return -1;
+    }
+
+    /**
+     * @return index of the nearest closing user tag or -1 if the line ends before it
+     */
+    private static int findCloseTagOnTheSameLine(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '[' && text.startsWith(CLOSE_TAG, i)) {
+                return i;
+            }
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return -1;
             }
-            return mentionedUsernames;
         }
-        return Collections.emptySet();
+        return -1;
+    }
+
+    /**
+     * Gets the name of the user the way it's stored in the database: without BB codes inside and with decoded
+     * special characters.
+     *
+     * @param nameInTag text between opening and closing user tags
+     * @return decoded username
+     */
+    private static String getUsername(String nameInTag) {
+        String username = nameInTag;
+        if (username.indexOf('[') >= 0) {
+            username = (username + CLOSE_TAG).replaceAll("\\[.*?\\]", StringUtils.EMPTY);
+        }
+        return decodeUsername(username);
     }
 
-    private String decodeUsername(String encodedUsername) {
+    private static String decodeUsername(String encodedUsername) {
         String decodeUserName = encodedUsername;
 
-        Object jsDecodedName = invokeJavaScript("decodeURI", encodedUsername.replace("\\", "\\\\"));
-        if (jsDecodedName != null) {
-            decodeUserName = jsDecodedName.toString();
+        // decodeURI doesn't change text without escape sequences, so the engine is invoked only when it's needed
+        if (encodedUsername.indexOf('%') >= 0) {
+            Object jsDecodedName = invokeJavaScript("decodeURI", encodedUsername.replace("\\", "\\\\"));
+            if (jsDecodedName != null) {
+                decodeUserName = jsDecodedName.toString();
+            }
         }
 
-        for (Map.Entry<String, String> decodeEntry : CHARS_PLACEHOLDERS.entrySet()) {
-            decodeUserName = decodeUserName.replace(decodeEntry.getValue(), decodeEntry.getKey());
+        if (decodeUserName.indexOf('@') >= 0) {
+            for (Map.Entry<String, String> decodeEntry : CHARS_PLACEHOLDERS.entrySet()) {
+                decodeUserName = decodeUserName.replace(decodeEntry.getValue(), decodeEntry.getKey());
+            }
         }
-        encodedUserNames.put(decodeUserName, encodedUsername);
         return decodeUserName;
     }
 
-    private String encodeUsername(String decodedUsername) {
-        return encodedUserNames.get(decodedUsername);
-    }
-
     /**
      * Invokes JavaScript function via built-in JavaScript engine
      *
@@ -222,7 +368,7 @@ public class MentionedUsers {
      * @param arguments    arguments of the function joined in one string
      * @return result of the invocation or null if some error happened
      */
-    private Object invokeJavaScript(String functionName, String arguments) {
+    private static Object invokeJavaScript(String functionName, String arguments) {
         Object result = null;
 
         ScriptEngineManager factory = new ScriptEngineManager();
@@ -274,50 +420,72 @@ public class MentionedUsers {
     }
 
     /**
-     * Mark user tags as already notified
+     * Change BB user tags to mark users as already notified. Tags with encoded names are left as is, since names
+     * of notified users are decoded.
      *
-     * @param mentionedUsernames the set of names of mentioned users
-     * @param postDao            service for working with Post objects
+     * @param source          text with the tags
+     * @param notNotifiedTags [user] tags found in the text
+     * @return text with [user notified=true] tags instead of [user] ones
      */
-    private void markUsersAsAlreadyNotified(Set<String> mentionedUsernames, PostDao postDao) {
-        for (String user : mentionedUsernames) {
-            markUserAsAlreadyNotified(user, postDao);
+    private String markTagsAsNotified(String source, List<UserTag> notNotifiedTags) {
+        StringBuilder result = new StringBuilder(source.length()
+                + notNotifiedTags.size() * (NOTIFIED_OPEN_TAG.length() - NOT_NOTIFIED_OPEN_TAG.length()));
+        int copiedTill = 0;
+        for (UserTag tag : notNotifiedTags) {
+            if (tag.isNameEncoded(source)) {
+                continue;
+            }
+            result.append(source, copiedTill, tag.start).append(NOTIFIED_OPEN_TAG);
+            copiedTill = tag.nameStart;
         }
+        return result.append(source, copiedTill, source.length()).toString();
     }
 
     /**
-     * Change BB user tag to mark user as already notified
+     * Gets ids of mentioned users with one query. Database can compare names ignoring case, but there are different
+     * users whose names differ only in case, so the name in the tag should match exactly.
      *
-     * @param username this user was mentioned
-     * @param postDao  service for working with Post objects
+     * @param usernames   names of mentioned users
+     * @param userDao     service for working with user objects
+     * @param userIdCache cache of user ids by their names, can be {@code null}
+     * @return ids of existing users by their names
      */
-    private void markUserAsAlreadyNotified(String username, PostDao postDao) {
-        String initialUserMentioning = format(MENTIONED_NOT_NOTIFIED_USER_TEMPLATE, username);
-        String notifiedUserMentioning = format(MENTIONED_AND_NOTIFIED_USER_TEMPLATE, username);
-
-        String newPostContent =
-                post.getPostContent().replace(initialUserMentioning, notifiedUserMentioning);
-        post.setPostContent(newPostContent);
-        postDao.saveOrUpdate(post);
+    private static Map<String, Long> getUserIds(Set<String> usernames, UserDao userDao,
+                                                UserIdCacheService userIdCache) {
+        Map<String, Long> userIds = new HashMap<>();
+        Set<String> notCachedUsernames = new HashSet<>();
+        for (String username : usernames) {
+            Long userId = userIdCache == null ? null : userIdCache.getUserId(username);
+            if (userId != null) {
+                userIds.put(username, userId);
+            } else {
+                notCachedUsernames.add(username);
+            }
+        }
+        if (!notCachedUsernames.isEmpty()) {
+            for (JCUser user : userDao.getByUsernames(notCachedUsernames)) {
+                if (notCachedUsernames.contains(user.getUsername())) {
+                    userIds.put(user.getUsername(), user.getId());
+                    if (userIdCache != null) {
+                        userIdCache.putUserId(user.getUsername(), user.getId());
+                    }
+                }
+            }
+        }
+        return userIds;
     }
 
     /**
      * Get link to user's profile.
      *
-     * @param username user's name
-     * @return null when user doesn't exist, otherwise link to user's profile
+     * @param username    user's name
+     * @param userId      user's id
+     * @param contextPath forum application name
+     * @return link to user's profile
      */
-    private String getLinkToUserProfile(String username, UserDao userDao) {
-        String userPofileLink = null;
-
-        JCUser user = userDao.getByUsername(username);
-        if (user != null && user.getUsername().equals(username)) {
-            userPofileLink = getApplicationNameAsContextPath() + "/users/" + user.getId();
-            LOGGER.trace("{} has the following url of profile - {}", username, userPofileLink);
-        } else {
-            LOGGER.trace("Mentioned user wasn't find: {}", username);
-        }
-
+    private String getLinkToUserProfile(String username, long userId, String contextPath) {
+        String userPofileLink = contextPath + "/users/" + userId;
+        LOGGER.trace("{} has the following url of profile - {}", username, userPofileLink);
         return userPofileLink;
     }
 
@@ -333,27 +501,64 @@ public class MentionedUsers {
     }
 
     /**
-     * Add links to users' profiles for mentioned users.
+     * Add links to users' profiles for mentioned users, tags of not existing users are replaced with their names.
      *
-     * @param source                   will be changed and all mentioned users in it will contain links to their
-     *                                 profiles
-     * @param userToUserProfileLinkMap user to it links of profile map
+     * @param source           text with user tags
+     * @param tags             user tags found in the source
+     * @param mentionedUserIds ids of existing mentioned users by their names
      * @return source with users with attached links to profiles
      */
     private String addLinksToUserProfileForMentionedUsers(
-            String source, Map<String, String> userToUserProfileLinkMap) {
-        String changedSource = source;
-        for (Map.Entry<String, String> userToLinkMap : userToUserProfileLinkMap.entrySet()) {
-            String username = encodeUsername(userToLinkMap.getKey());
-            String userNotNotifiedBBCode = format(MENTIONED_NOT_NOTIFIED_USER_TEMPLATE, username);
-            String userNotifiedBBCode = format(MENTIONED_AND_NOTIFIED_USER_TEMPLATE, username);
-            String userBBCodeWithLink = username;
-            if (userToLinkMap.getValue() != null) {
-                userBBCodeWithLink = format(USER_WITH_LINK_TO_PROFILE_TEMPLATE, userToLinkMap.getValue(), username);
+            String source, List<UserTag> tags, Map<String, Long> mentionedUserIds) {
+        String contextPath = mentionedUserIds.isEmpty() ? null : getApplicationNameAsContextPath();
+        StringBuilder result = new StringBuilder(source.length() + tags.size() * 16);
+        int copiedTill = 0;
+        for (UserTag tag : tags) {
+            if (tag.hasNestedTags(source)) {
+                // such names are changed when extracted, there is no user with the name written in the tag
+                continue;
             }
-            changedSource = changedSource.replace(userNotNotifiedBBCode, userBBCodeWithLink);
-            changedSource = changedSource.replace(userNotifiedBBCode, userBBCodeWithLink);
+            result.append(source, copiedTill, tag.start);
+            Long userId = mentionedUserIds.get(tag.username);
+            if (userId != null) {
+                result.append("[user=").append(getLinkToUserProfile(tag.username, userId, contextPath)).append(']')
+                        .append(source, tag.nameStart, tag.nameEnd).append(CLOSE_TAG);
+            } else {
+                LOGGER.trace("Mentioned user wasn't find: {}", tag.username);
+                result.append(source, tag.nameStart, tag.nameEnd);
+            }
+            copiedTill = tag.nameEnd + CLOSE_TAG.length();
+        }
+        return result.append(source, copiedTill, source.length()).toString();
+    }
+
+    /**
+     * User BB code found in the text, keeps offsets of its parts instead of the parts themselves.
+     */
+    private static final class UserTag {
+        /** Index of the opening tag */
+        private final int start;
+        /** Index right after the opening tag */
+        private final int nameStart;
+        /** Index of the closing tag */
+        private final int nameEnd;
+        /** Decoded name of the mentioned user */
+        private final String username;
+
+        private UserTag(String text, int start, int nameStart, int nameEnd) {
+            this.start = start;
+            this.nameStart = nameStart;
+            this.nameEnd = nameEnd;
+            this.username = getUsername(text.substring(nameStart, nameEnd));
+        }
+
+        private boolean hasNestedTags(String text) {
+            int bracket = text.indexOf('[', nameStart);
+            return bracket >= 0 && bracket < nameEnd;
+        }
+
+        private boolean isNameEncoded(String text) {
+            return username.length() != nameEnd - nameStart || !text.startsWith(username, nameStart);
         }
-        return changedSource;
     }
 }
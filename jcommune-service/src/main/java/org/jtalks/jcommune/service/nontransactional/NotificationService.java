@@ -22,8 +22,10 @@ import org.jtalks.jcommune.plugin.api.core.Plugin;
 import org.jtalks.jcommune.plugin.api.core.TopicPlugin;
 import org.jtalks.jcommune.plugin.api.filters.StateFilter;
 import org.jtalks.jcommune.plugin.api.filters.TypeFilter;
+import org.jtalks.jcommune.service.SubscriptionDigestService;
 import org.jtalks.jcommune.service.SubscriptionService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -48,28 +50,33 @@ public class NotificationService {
     private UserService userService;
     private MailService mailService;
     private final PluginLoader pluginLoader;
+    private final SubscriptionDigestService subscriptionDigestService;
 
     /**
      * @param userService                  to determine the update author
      * @param mailService                  to perform actual email notifications
      * @param subscriptionService          to get the subscribers of the entity
      * @param pluginLoader                 to get different subscribers for plugable topics
+     * @param subscriptionDigestService    to collect updates for subscribers who prefer digests
      */
     public NotificationService(
             UserService userService,
             MailService mailService,
             SubscriptionService subscriptionService,
-            PluginLoader pluginLoader) {
+            PluginLoader pluginLoader,
+            SubscriptionDigestService subscriptionDigestService) {
         this.userService = userService;
         this.mailService = mailService;
         this.subscriptionService = subscriptionService;
         this.pluginLoader = pluginLoader;
+        this.subscriptionDigestService = subscriptionDigestService;
     }
 
     /**
      * Notifies subscribers about subscribed entity updates by email.
      * If mailing failed this implementation simply continues
-     * with other subscribers.
+     * with other subscribers. Subscribers who prefer digests get the
+     * update with the next digest instead.
      *
      * @param entity changed subscribed entity.
      */
@@ -77,8 +84,9 @@ public class NotificationService {
         Collection<JCUser> subscribers = subscriptionService.getAllowedSubscribers(entity);
         filterSubscribers(subscribers, entity);
 
+        SubscriptionUpdate update = null;
         for (JCUser user : subscribers) {
-            mailService.sendUpdatesOnSubscription(user, entity);
+            update = notifyAboutUpdate(user, entity, update);
         }
     }
 
@@ -92,13 +100,33 @@ public class NotificationService {
         Collection<JCUser> subscribers = subscriptionService.getAllowedSubscribers(entity);
         filterSubscribers(subscribers, entity);
 
+        SubscriptionUpdate update = null;
         for (JCUser user : subscribers) {
             if (!topicSubscribers.contains(user)) {
-                mailService.sendUpdatesOnSubscription(user, entity);
+                update = notifyAboutUpdate(user, entity, update);
             }
         }
     }
 
+    /**
+     * Sends the update to the subscriber right away or adds it to the digest if the subscriber prefers digests.
+     *
+     * @param subscriber user subscribed to the entity
+     * @param entity     changed subscribed entity
+     * @param update     update created for previous subscribers or {@code null} if it's not created yet
+     * @return update to be reused for next subscribers, so that links are built once
+     */
+    private SubscriptionUpdate notifyAboutUpdate(JCUser subscriber, SubscriptionAwareEntity entity,
+                                                 SubscriptionUpdate update) {
+        if (!subscriber.isSubscriptionDigestEnabled()) {
+            mailService.sendUpdatesOnSubscription(subscriber, entity);
+            return update;
+        }
+        SubscriptionUpdate created = (update == null) ? mailService.createSubscriptionUpdate(entity) : update;
+        subscriptionDigestService.addUpdate(subscriber, created);
+        return created;
+    }
+
     /**
      * Notifies topic starter by email that his or her topic
      * was moved to another sections and also notifies all branch
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.service.bb2htmlprocessors.BbCodeReviewProcessor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Request in which a single post is converted to HTML when several posts of a page are converted at the same time.
+ * Bb2html processors keep their state in request attributes, so each post gets its own attributes: they are read from
+ * the original request, but changes stay in this one. Also the attributes are set the same way as the page with
+ * the post does it before the post is converted. The request is used in the threads of the pool posts are converted
+ * in, so it's created from data of the post rather than the post itself.
+ */
+class PostRenderingRequest extends HttpServletRequestWrapper {
+    /** Attributes changed in this request, removed attributes are kept with {@code null} value */
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    /**
+     * @param request             request of the page the post is shown on
+     * @param codeReviewPost      whether the post is the first post of a code review
+     * @param preloadedAttributes attributes pre-processors loaded for all the posts of the page
+     */
+    PostRenderingRequest(HttpServletRequest request, boolean codeReviewPost, Map<String, Object> preloadedAttributes) {
+        super(request);
+        attributes.putAll(preloadedAttributes);
+        if (codeReviewPost) {
+            setAttribute(BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE, "true");
+        } else {
+            removeAttribute(BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getAttribute(String name) {
+        if (attributes.containsKey(name)) {
+            return attributes.get(name);
+        }
+        return super.getAttribute(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Enumeration getAttributeNames() {
+        Set<String> names = new HashSet<>();
+        Enumeration originalNames = super.getAttributeNames();
+        while (originalNames.hasMoreElements()) {
+            names.add((String) originalNames.nextElement());
+        }
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            if (attribute.getValue() == null) {
+                names.remove(attribute.getKey());
+            } else {
+                names.add(attribute.getKey());
+            }
+        }
+        return Collections.enumeration(names);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAttribute(String name) {
+        attributes.put(name, null);
+    }
+}
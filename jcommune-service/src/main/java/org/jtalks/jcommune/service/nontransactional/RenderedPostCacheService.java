@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.jtalks.jcommune.model.dao.PostDao;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.service.jmx.RenderedPostCacheStatisticsMXBean;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operations above the cache of post contents already converted from BB-codes to HTML. Entries are stored by post id
+ * together with the last modification date of the post they were rendered for, thus if the post was changed the
+ * entry is not used even if nobody invalidated it explicitly.<br/>
+ * Also remembers posts whose HTML was rendered on the fly because there was no up-to-date HTML stored in the database,
+ * so that it can be stored in background and further page views don't need to render it again.<br/>
+ * HTML depends on other entities only by the users mentioned in posts: mentions of existing users are converted to
+ * links to their profiles. So HTML of the posts mentioning a user is dropped when the user is created or removed, see
+ * {@link #invalidateMentionsOf(String)}.
+ */
+public class RenderedPostCacheService implements RenderedPostCacheStatisticsMXBean {
+    /** Prevents unlimited growth if posts are shown faster than they are stored */
+    private static final int MAX_POSTS_TO_STORE = 10000;
+
+    private final Ehcache renderedPostsCache;
+    private final PostDao postDao;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Set<Long> postsToStore = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    /**
+     * @param renderedPostsCache bounded cache to store rendered HTML in
+     * @param postDao            to drop HTML stored in the posts mentioning created or removed users
+     */
+    public RenderedPostCacheService(Ehcache renderedPostsCache, PostDao postDao) {
+        this.renderedPostsCache = renderedPostsCache;
+        this.postDao = postDao;
+    }
+
+    /**
+     * Gets HTML rendered for the current version of the post.
+     *
+     * @param post post to get HTML for
+     * @return rendered HTML or {@code null} if there is no HTML in the cache for the current version of the post
+     */
+    public String getRenderedContent(Post post) {
+        String html = peekRenderedContent(post);
+        if (html != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return html;
+    }
+
+    /**
+     * Does the same as {@link #getRenderedContent(Post)} but is not taken into account in hit/miss statistics, should
+     * be used when HTML is needed not to show it to the user.
+     *
+     * @param post post to get HTML for
+     * @return rendered HTML or {@code null} if there is no HTML in the cache for the current version of the post
+     */
+    public String peekRenderedContent(Post post) {
+        Element element = renderedPostsCache.get(post.getId());
+        if (element != null) {
+            RenderedPost renderedPost = (RenderedPost) element.getObjectValue();
+            if (renderedPost.lastTouchedMillis == lastTouchedMillis(post)) {
+                return renderedPost.html;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts HTML rendered for the current version of the post to the cache.
+     *
+     * @param post post the HTML was rendered for
+     * @param html post content converted to HTML
+     */
+    public void putRenderedContent(Post post, String html) {
+        renderedPostsCache.put(new Element(post.getId(), new RenderedPost(lastTouchedMillis(post), html)));
+    }
+
+    /**
+     * Remembers that HTML of the post stored in the database is absent or outdated, so it should be replaced with the
+     * HTML from the cache.
+     *
+     * @param post post to store HTML of
+     * @see #takePostsToStore(int)
+     */
+    public void markForStoring(Post post) {
+        if (postsToStore.size() < MAX_POSTS_TO_STORE) {
+            postsToStore.add(post.getId());
+        }
+    }
+
+    /**
+     * Takes ids of the posts marked with {@link #markForStoring(Post)}, taken posts are not marked anymore.
+     *
+     * @param count maximum number of posts to take
+     * @return ids of the posts whose HTML should be stored in the database
+     */
+    public List<Long> takePostsToStore(int count) {
+        List<Long> postIds = new ArrayList<>();
+        Iterator<Long> iterator = postsToStore.iterator();
+        while (iterator.hasNext() && postIds.size() < count) {
+            postIds.add(iterator.next());
+            iterator.remove();
+        }
+        return postIds;
+    }
+
+    /**
+     * Removes HTML of the post from the cache, should be used when post content is changed or the post is removed.
+     *
+     * @param post post to remove HTML of
+     */
+    public void invalidate(Post post) {
+        if (renderedPostsCache.remove(post.getId())) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops HTML of the posts which may mention the user both from the database and from the cache, should be used
+     * when the user is created or removed, as it changes whether the mentions are links to the profile. Should be
+     * called within the transaction the user is saved or removed in, then the cache is cleared after the commit,
+     * otherwise a concurrent request could cache HTML rendered before the user is committed again.
+     *
+     * @param username name of the created or removed user
+     */
+    public void invalidateMentionsOf(String username) {
+        final List<Long> postIds = postDao.getIdsOfPostsMentioning(MentionedUsers.getNamesInTags(username));
+        if (postIds.isEmpty()) {
+            return;
+        }
+        postDao.dropRenderedContent(postIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(postIds);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                invalidate(postIds);
+            }
+        });
+    }
+
+    private void invalidate(List<Long> postIds) {
+        for (Long postId : postIds) {
+            postsToStore.remove(postId);
+            if (renderedPostsCache.remove(postId)) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEvictionCount() {
+        return renderedPostsCache.getStatistics().getEvictionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return renderedPostsCache.getSize();
+    }
+
+    private long lastTouchedMillis(Post post) {
+        return post.getLastTouchedDate().getMillis();
+    }
+
+    /**
+     * Rendered HTML along with the version of the post it was rendered for.
+     */
+    private static final class RenderedPost implements Serializable {
+        private final long lastTouchedMillis;
+        private final String html;
+
+        private RenderedPost(long lastTouchedMillis, String html) {
+            this.lastTouchedMillis = lastTouchedMillis;
+            this.html = html;
+        }
+    }
+}
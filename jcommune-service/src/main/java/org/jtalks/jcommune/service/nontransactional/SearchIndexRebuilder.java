@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.service.SearchIndexService;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress.State;
+import org.jtalks.jcommune.service.jmx.SearchIndexRebuilderMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rebuilds the search index in background batch by batch instead of indexing the whole forum at once. Topics are
+ * indexed in the order of their ids and the id of the last indexed topic is remembered, so stopped or failed
+ * rebuilding continues from where it was interrupted. Along with each batch, documents of deleted topics and posts
+ * with topic ids between the previous batch and the last topic of the batch are removed, and documents of topics
+ * after the last one are removed when the rebuilding is finished. The rest of the index is kept, so search works
+ * while the index is rebuilt. Reading from the database is throttled not to slow down the forum itself.
+ * <p/>
+ * Ids of the next batch are read while previous batches are indexed by the pool of {@link #getThreadCount()} threads.
+ * The last indexed topic is moved forward only when all the batches before it are indexed.
+ */
+public class SearchIndexRebuilder implements SearchIndexRebuilderMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchIndexRebuilder.class);
+
+    private final SearchIndexService indexService;
+    private volatile int batchSize;
+    private volatile int threadCount;
+    private volatile int maxTopicsPerSecond;
+
+    private State state = State.NOT_STARTED;
+    private Thread worker;
+    private volatile boolean stopRequested;
+    private volatile long lastIndexedTopicId;
+    private volatile long indexedTopicCount;
+    private volatile long totalTopicCount;
+    private volatile long runStartTime;
+    private volatile long indexedInRunCount;
+
+    /**
+     * @param indexService       to read and index topics batch by batch
+     * @param batchSize          number of topics read from the database and indexed at once
+     * @param threadCount        number of batches indexed in parallel
+     * @param maxTopicsPerSecond maximum number of topics read from the database per second, 0 not to limit
+     */
+    public SearchIndexRebuilder(SearchIndexService indexService, int batchSize, int threadCount,
+                                int maxTopicsPerSecond) {
+        this.indexService = indexService;
+        this.batchSize = batchSize;
+        this.threadCount = threadCount;
+        this.maxTopicsPerSecond = maxTopicsPerSecond;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean start() {
+        if (state == State.RUNNING || state == State.STOPPING) {
+            return false;
+        }
+        if (state != State.STOPPED && state != State.FAILED) {
+            lastIndexedTopicId = 0;
+            indexedTopicCount = 0;
+        }
+        LOGGER.info("Rebuilding of the search index is started after topic [{}]", lastIndexedTopicId);
+        stopRequested = false;
+        state = State.RUNNING;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                rebuild();
+            }
+        }, "search-index-rebuilder");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void stop() {
+        if (state == State.RUNNING) {
+            state = State.STOPPING;
+            stopRequested = true;
+        }
+    }
+
+    /**
+     * @return current state of the rebuilding
+     */
+    public synchronized SearchIndexRebuildProgress getProgress() {
+        return new SearchIndexRebuildProgress(state, lastIndexedTopicId, indexedTopicCount, totalTopicCount,
+                estimateSecondsLeft());
+    }
+
+    /**
+     * Waits until the rebuilding is finished, needed for testing.
+     *
+     * @throws InterruptedException if waiting thread is interrupted
+     */
+    void awaitCompletion() throws InterruptedException {
+        Thread running;
+        synchronized (this) {
+            running = worker;
+        }
+        if (running != null) {
+            running.join();
+        }
+    }
+
+    private void rebuild() {
+        State result = State.FAILED;
+        ExecutorService indexingPool = Executors.newFixedThreadPool(threadCount);
+        try {
+            result = indexBatches(indexingPool) ? State.FINISHED : State.STOPPED;
+        } catch (InterruptedException e) {
+            result = State.STOPPED;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException e) {
+            LOGGER.error("Rebuilding of the search index failed after topic [" + lastIndexedTopicId + "]", e);
+        } finally {
+            indexingPool.shutdownNow();
+            finish(result);
+        }
+    }
+
+    /**
+     * @return {@code true} if all the topics are indexed, {@code false} if the rebuilding was stopped before
+     */
+    private boolean indexBatches(ExecutorService indexingPool) throws InterruptedException, ExecutionException {
+        totalTopicCount = indexedTopicCount + indexService.countTopicsToIndex(lastIndexedTopicId);
+        runStartTime = System.currentTimeMillis();
+        indexedInRunCount = 0;
+        Deque<Batch> indexedBatches = new ArrayDeque<>();
+        long lastReadTopicId = lastIndexedTopicId;
+        while (!stopRequested) {
+            long batchStartTime = System.currentTimeMillis();
+            List<Long> topicIds = indexService.getTopicIdsToIndex(lastReadTopicId, batchSize);
+            if (topicIds.isEmpty()) {
+                break;
+            }
+            indexedBatches.add(new Batch(topicIds,
+                    indexingPool.submit(new IndexingTask(lastReadTopicId, topicIds))));
+            lastReadTopicId = topicIds.get(topicIds.size() - 1);
+            if (indexedBatches.size() >= threadCount) {
+                completeBatch(indexedBatches.poll());
+            }
+            throttle(batchStartTime, topicIds.size());
+        }
+        while (!indexedBatches.isEmpty()) {
+            completeBatch(indexedBatches.poll());
+        }
+        if (stopRequested) {
+            return false;
+        }
+        indexService.removeStaleDocuments(lastIndexedTopicId, Long.MAX_VALUE);
+        return true;
+    }
+
+    private void completeBatch(Batch batch) throws InterruptedException, ExecutionException {
+        batch.indexing.get();
+        lastIndexedTopicId = batch.lastTopicId;
+        indexedTopicCount += batch.size;
+        indexedInRunCount += batch.size;
+    }
+
+    /**
+     * Waits so that topics of the batch are not read faster than allowed.
+     */
+    private void throttle(long batchStartTime, int topicCount) throws InterruptedException {
+        int limit = maxTopicsPerSecond;
+        if (limit > 0) {
+            long delay = batchStartTime + topicCount * 1000L / limit - System.currentTimeMillis();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private synchronized void finish(State result) {
+        state = result;
+        worker = null;
+        LOGGER.info("Rebuilding of the search index is {}, {} of {} topics are indexed",
+                new Object[]{result, indexedTopicCount, totalTopicCount});
+    }
+
+    private long estimateSecondsLeft() {
+        long indexedInRun = indexedInRunCount;
+        if (state != State.RUNNING || indexedInRun == 0) {
+            return -1;
+        }
+        long topicsLeft = Math.max(0, totalTopicCount - indexedTopicCount);
+        return topicsLeft * (System.currentTimeMillis() - runStartTime) / indexedInRun / 1000;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getState() {
+        return getProgress().getState().name();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLastIndexedTopicId() {
+        return lastIndexedTopicId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getIndexedTopicCount() {
+        return indexedTopicCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTotalTopicCount() {
+        return totalTopicCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPercentDone() {
+        return getProgress().getPercentDone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEstimatedSecondsLeft() {
+        return getProgress().getEstimatedSecondsLeft();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxTopicsPerSecond() {
+        return maxTopicsPerSecond;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxTopicsPerSecond(int maxTopicsPerSecond) {
+        this.maxTopicsPerSecond = maxTopicsPerSecond;
+    }
+
+    /**
+     * Indexes one batch of topics and removes stale documents of its id range in separate transactions.
+     */
+    private final class IndexingTask implements Callable<Void> {
+        private final long afterTopicId;
+        private final List<Long> topicIds;
+
+        private IndexingTask(long afterTopicId, List<Long> topicIds) {
+            this.afterTopicId = afterTopicId;
+            this.topicIds = topicIds;
+        }
+
+        @Override
+        public Void call() {
+            indexService.indexTopics(topicIds);
+            indexService.removeStaleDocuments(afterTopicId, topicIds.get(topicIds.size() - 1));
+            return null;
+        }
+    }
+
+    /**
+     * Batch submitted for indexing.
+     */
+    private static final class Batch {
+        private final long lastTopicId;
+        private final int size;
+        private final Future<Void> indexing;
+
+        private Batch(List<Long> topicIds, Future<Void> indexing) {
+            this.lastTopicId = topicIds.get(topicIds.size() - 1);
+            this.size = topicIds.size();
+            this.indexing = indexing;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * Operations above the cache of user ids by their usernames. Links to profiles of users mentioned in posts need only
+ * the id, so the cache lets show posts without querying users each time they are mentioned.<br/>
+ * Only existing users are cached, so registration of a new user doesn't make entries outdated. But the entry of the
+ * user has to be removed when the user is deleted or gets another username.
+ */
+public class UserIdCacheService {
+
+    private final Ehcache userIdsCache;
+
+    /**
+     * @param userIdsCache bounded cache to store user ids in
+     */
+    public UserIdCacheService(Ehcache userIdsCache) {
+        this.userIdsCache = userIdsCache;
+    }
+
+    /**
+     * Gets id of the user with exactly the same username.
+     *
+     * @param username username, case matters
+     * @return user id or {@code null} if user is not in cache
+     */
+    public Long getUserId(String username) {
+        Element element = userIdsCache.get(username);
+        if (element == null) {
+            return null;
+        }
+        return (Long) element.getObjectValue();
+    }
+
+    /**
+     * Puts id of the existing user to cache.
+     *
+     * @param username username, case matters
+     * @param userId   id of the user
+     */
+    public void putUserId(String username, long userId) {
+        userIdsCache.put(new Element(username, userId));
+    }
+
+    /**
+     * Removes id of the user from cache, should be used when the user is removed or the username is changed.
+     *
+     * @param username username the user had before
+     */
+    public void invalidate(String username) {
+        userIdsCache.remove(username);
+    }
+}
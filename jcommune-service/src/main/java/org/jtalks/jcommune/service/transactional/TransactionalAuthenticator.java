@@ -37,6 +37,7 @@ import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.nontransactional.EncryptionService;
 import org.jtalks.jcommune.service.nontransactional.ImageService;
 import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService;
 import org.jtalks.jcommune.plugin.api.PluginLoader;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.slf4j.Logger;
@@ -93,6 +94,7 @@ public class TransactionalAuthenticator extends AbstractTransactionalEntityServi
     private ImageService avatarService;
     private GroupDao groupDao;
     private PluginService pluginService;
+    private RenderedPostCacheService renderedPostCacheService;
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalAuthenticator.class);
 
 
@@ -106,6 +108,8 @@ public class TransactionalAuthenticator extends AbstractTransactionalEntityServi
      * @param sessionStrategy       used in login logic to call onAuthentication hook
      *                              which stored this user to online uses list.
      * @param authenticationManager to authenticate users
+     * @param renderedPostCacheService to drop HTML of the posts mentioning new users, as mentions of them become
+     *                              links to their profiles
      */
     public TransactionalAuthenticator(PluginLoader pluginLoader, UserDao dao, GroupDao groupDao,
                                       EncryptionService encryptionService,
@@ -116,7 +120,8 @@ public class TransactionalAuthenticator extends AbstractTransactionalEntityServi
                                       RememberMeServices rememberMeServices,
                                       SessionAuthenticationStrategy sessionStrategy,
                                       Validator validator,
-                                      AuthenticationManager authenticationManager) {
+                                      AuthenticationManager authenticationManager,
+                                      RenderedPostCacheService renderedPostCacheService) {
         super(dao);
         this.groupDao = groupDao;
         this.pluginLoader = pluginLoader;
@@ -129,6 +134,7 @@ public class TransactionalAuthenticator extends AbstractTransactionalEntityServi
         this.sessionStrategy = sessionStrategy;
         this.validator = validator;
         this.authenticationManager = authenticationManager;
+        this.renderedPostCacheService = renderedPostCacheService;
     }
 
     /**
@@ -305,6 +311,9 @@ public class TransactionalAuthenticator extends AbstractTransactionalEntityServi
             user.addGroup(group);
         }
         getDao().saveOrUpdate(user);
+        if (newUser) {
+            renderedPostCacheService.invalidateMentionsOf(user.getUsername());
+        }
         return user;
     }
 
@@ -398,6 +407,7 @@ public class TransactionalAuthenticator extends AbstractTransactionalEntityServi
         user.setAvatar(avatarService.getDefaultImage());
         user.setRegistrationDate(new DateTime());
         this.getDao().saveOrUpdate(user);
+        renderedPostCacheService.invalidateMentionsOf(user.getUsername());
         mailService.sendAccountActivationMail(user);
         LOGGER.info("JCUser registered: {}", user.getUsername());
         return user;
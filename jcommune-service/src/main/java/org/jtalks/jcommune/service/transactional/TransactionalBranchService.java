@@ -30,6 +30,7 @@ import org.jtalks.jcommune.plugin.api.service.PluginBranchService;
 import org.jtalks.jcommune.service.BranchLastPostService;
 import org.jtalks.jcommune.service.BranchService;
 import org.jtalks.jcommune.service.TopicModificationService;
+import org.jtalks.jcommune.service.nontransactional.AllowedBranchesCacheService;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.jtalks.jcommune.service.security.PermissionService;
@@ -58,6 +59,7 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
     private TopicModificationService topicService;
     private PermissionService permissionService;
     private BranchLastPostService lastPostService;
+    private AllowedBranchesCacheService allowedBranchesCacheService;
 
     /**
      * Create an instance of entity based service
@@ -67,6 +69,7 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
      * @param topicDao          data access object for operations with topics
      * @param topicService      service to perform complex operations with topics
      * @param permissionService service to perform permissions operations
+     * @param allowedBranchesCacheService to forget branches users were allowed to see when permissions change
      */
     public TransactionalBranchService(
             BranchDao branchDao,
@@ -75,7 +78,8 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
             GroupDao groupDao,
             TopicModificationService topicService,
             PermissionService permissionService,
-            BranchLastPostService lastPostService) {
+            BranchLastPostService lastPostService,
+            AllowedBranchesCacheService allowedBranchesCacheService) {
         super(branchDao);
         this.sectionDao = sectionDao;
         this.topicDao = topicDao;
@@ -83,6 +87,7 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
         this.permissionService = permissionService;
         this.groupDao = groupDao;
         this.lastPostService = lastPostService;
+        this.allowedBranchesCacheService = allowedBranchesCacheService;
     }
 
     /**
@@ -149,12 +154,6 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
             if (jcommuneBranch.getLastPost() == null) {
                 lastPostService.refreshLastPostInBranch(jcommuneBranch);
             }
-            //TODO Was removed till milestone 2 due to performance issues
-//            JCUser user = userService.getCurrentUser();
-//            if (!user.isAnonymous()) {
-//                boolean isUnreadPosts = getDao().isUnreadPostsInBranch(jcommuneBranch, user);
-//                jcommuneBranch.setUnreadPosts(isUnreadPosts);
-//            }
         }
     }
 
@@ -215,6 +214,7 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
         PermissionChanges permissionChanges = new PermissionChanges(BranchPermission.VIEW_TOPICS, groups,
                 Collections.<Group>emptyList());
         permissionService.changeGrants(branch, permissionChanges);
+        allowedBranchesCacheService.invalidate();
     }
 
     /**
@@ -263,5 +263,6 @@ public class TransactionalBranchService extends AbstractTransactionalEntityServi
         } else {
             permissionService.changeRestrictions(branch, changes);
         }
+        allowedBranchesCacheService.invalidate();
     }
 }
@@ -14,49 +14,94 @@
  */
 package org.jtalks.jcommune.service.transactional;
 
-import org.apache.commons.collections.ListUtils;
+import com.google.common.collect.Table;
 import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.activity.TopicActivityIndex;
 import org.jtalks.jcommune.model.dao.LastReadPostDao;
 import org.jtalks.jcommune.model.dao.BranchReadedMarkerDao;
+import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.dao.UserDao;
+import org.jtalks.jcommune.model.dto.TopicActivity;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.plugin.api.service.PluginLastReadPostService;
 import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.dto.UserReadState;
+import org.jtalks.jcommune.service.nontransactional.LastReadPostBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 
 /**
  * Performs last read posts management to track topic updates
- * since user's last visit.
+ * since user's last visit. Last read posts are kept in the buffer
+ * and are written to the database in batches by timer.
  *
  * @author Evgeniy Naumenko
  * @author Anuar_Nurmakanov
  */
 public class TransactionalLastReadPostService implements LastReadPostService, PluginLastReadPostService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalLastReadPostService.class);
+    /** Topics modified by other application instances are taken with an overlap, not to miss late commits */
+    private static final int ACTIVITY_SYNC_OVERLAP_MINUTES = 1;
+    /** Last read posts deleted in one transaction, small enough to not lock the table for long */
+    private static final int PURGE_BATCH_SIZE = 1000;
+    /** Marks committed later than they were made are found by the next lookup as well */
+    private static final int PURGE_LOOKUP_OVERLAP_MINUTES = 1;
+    /** Last read posts written in one transaction, the rest waits for the next write */
+    static final int WRITE_BATCH_SIZE = 500;
 
     private final UserService userService;
     private final LastReadPostDao lastReadPostDao;
     private final UserDao userDao;
     private final BranchReadedMarkerDao branchReadedMarkerDao;
+    private final LastReadPostBuffer lastReadPostBuffer;
+    private final TopicActivityIndex topicActivityIndex;
+    private final TopicDao topicDao;
+    /** Users whose stale last read posts are being purged, accessed by timer only */
+    private final Queue<Long> usersToPurge = new ArrayDeque<>();
+    private DateTime lastPurgeLookupTime = new DateTime(0);
+    /** Serializes loading and synchronization of the index of topics */
+    private final Object topicActivityLock = new Object();
+    private DateTime lastActivitySyncTime;
     /**
      * Constructs an instance with required fields.
      *
-     * @param userService     to figure out the current user logged in
-     * @param lastReadPostDao to save/read last read post information from a database
-     * @param userDao         to save an information about user of forum
+     * @param userService           to figure out the current user logged in
+     * @param lastReadPostDao       to save/read last read post information from a database
+     * @param userDao               to save an information about user of forum
+     * @param branchReadedMarkerDao to save/read marks of branches read by users
+     * @param lastReadPostBuffer    to keep last read posts until they are written to the database
+     * @param topicActivityIndex    to find topics which got posts after user marked their branches as read
+     * @param topicDao              to fill the index of topics on the first use
      */
     public TransactionalLastReadPostService(
             UserService userService,
             LastReadPostDao lastReadPostDao,
             UserDao userDao,
-            BranchReadedMarkerDao branchReadedMarkerDao) {
+            BranchReadedMarkerDao branchReadedMarkerDao,
+            LastReadPostBuffer lastReadPostBuffer,
+            TopicActivityIndex topicActivityIndex,
+            TopicDao topicDao) {
         this.userService = userService;
         this.lastReadPostDao = lastReadPostDao;
         this.userDao = userDao;
         this.branchReadedMarkerDao = branchReadedMarkerDao;
+        this.lastReadPostBuffer = lastReadPostBuffer;
+        this.topicActivityIndex = topicActivityIndex;
+        this.topicDao = topicDao;
     }
 
     /**
@@ -65,103 +110,162 @@ public class TransactionalLastReadPostService implements LastReadPostService, Pl
     @Override
     public List<Topic> fillLastReadPostForTopics(List<Topic> topics) {
         JCUser currentUser = userService.getCurrentUser();
-        if (!currentUser.isAnonymous()) {
-            List<Topic> notModifiedTopics = extractNotModifiedTopicsSinceForumMarkedAsRead(
-                    currentUser, topics);
-            for (Topic notModifiedTopic : notModifiedTopics) {
-                Post lastPost = notModifiedTopic.getLastPost();
-                notModifiedTopic.setLastReadPostDate(lastPost.getCreationDate());
+        if (!currentUser.isAnonymous() && !topics.isEmpty()) {
+            UserReadState readState = loadReadState(currentUser, topics);
+            for (Topic topic : topics) {
+                DateTime lastReadPostDate = readState.getLastReadPostDate(topic);
+                if (lastReadPostDate != null) {
+                    topic.setLastReadPostDate(lastReadPostDate);
+                }
             }
-            //
-            @SuppressWarnings("unchecked")
-            List<Topic> modifiedTopics = ListUtils.removeAll(topics, notModifiedTopics);
-            fillLastReadPostsForModifiedTopics(modifiedTopics, currentUser);
         }
         return topics;
     }
 
     /**
-     * Extract topics that don't have modifications after marking all forum as read
-     * or after marking their branch as read.
-     *
-     * @param currentUser the current user of application
-     * @param sourceTopics        the list of topics that must be processed
-     * @return topics that don't have modification after marking all forum as read
+     * {@inheritDoc}
+     * <p/>
+     * Topics which got posts after the branch or the whole forum was marked as read are taken from
+     * {@link TopicActivityIndex}, and last read posts of the user in all the branches having such topics are read with
+     * one query, only the ones made since the earliest mark of these branches. So the main page costs a query for the
+     * markers of the branches and one for the last read posts regardless of the number of branches and topics, and
+     * each branch is checked against all of its topics with new posts.
      */
-    private List<Topic> extractNotModifiedTopicsSinceForumMarkedAsRead(
-            JCUser currentUser,
-            List<Topic> sourceTopics) {
-        DateTime forumMarkAsReadDate = currentUser.getAllForumMarkedAsReadTime();
-        List<Topic> topics = new ArrayList<>();
-        if (!sourceTopics.isEmpty()) {
-            Branch branch = sourceTopics.get(0).getBranch();
-            BranchReadedMarker markBranch = branchReadedMarkerDao.getMarkerFor(currentUser, branch);
-            DateTime markTime = getLastMarkDateTime(markBranch, forumMarkAsReadDate);
-            for (Topic topic : sourceTopics) {
-                if (!topic.getBranch().equals(branch)) {
-                    branch = topic.getBranch();
-                    markBranch = branchReadedMarkerDao.getMarkerFor(currentUser, branch);
-                    markTime = getLastMarkDateTime(markBranch, forumMarkAsReadDate);
-                }
-                if(markTime != null && topic.getModificationDate().isBefore(markTime)) {
-                    topics.add(topic);
+    @Override
+    public void fillUnreadPostsInBranches(List<Branch> branches) {
+        JCUser currentUser = userService.getCurrentUser();
+        if (currentUser.isAnonymous() || branches.isEmpty()) {
+            return;
+        }
+        if (!topicActivityIndex.isLoaded()) {
+            synchronized (topicActivityLock) {
+                if (!topicActivityIndex.isLoaded()) {
+                    loadTopicActivityIndex();
                 }
             }
         }
-        return topics;
+        UserReadState readState = new UserReadState(currentUser.getAllForumMarkedAsReadTime());
+        for (BranchReadedMarker marker : branchReadedMarkerDao.getMarkersFor(currentUser, branches)) {
+            readState.markBranchAsRead(marker.getBranch().getId(), marker.getMarkTime());
+        }
+        Map<Branch, Iterable<TopicActivity>> branchesToCheck = new LinkedHashMap<>();
+        long earliestMarkTime = Long.MAX_VALUE;
+        for (Branch branch : branches) {
+            long markTime = readState.getMarkTime(branch.getId());
+            Iterable<TopicActivity> topics = topicActivityIndex.getTopicsWithPostsSince(branch.getId(), markTime);
+            if (topics.iterator().hasNext()) {
+                branchesToCheck.put(branch, topics);
+                earliestMarkTime = Math.min(earliestMarkTime, markTime);
+            } else {
+                branch.setUnreadPosts(false);
+            }
+        }
+        if (branchesToCheck.isEmpty()) {
+            return;
+        }
+        Set<Long> branchIds = new HashSet<>();
+        for (Branch branch : branchesToCheck.keySet()) {
+            branchIds.add(branch.getId());
+        }
+        DateTime since = new DateTime(Math.max(0, earliestMarkTime));
+        for (Map.Entry<Long, DateTime> lastReadPostDate
+                : lastReadPostDao.getLastReadPostDatesInBranches(currentUser, branchIds, since).entrySet()) {
+            readState.readTopic(lastReadPostDate.getKey(), lastReadPostDate.getValue());
+        }
+        readBufferedTopics(currentUser, readState);
+        for (Map.Entry<Branch, Iterable<TopicActivity>> branchTopics : branchesToCheck.entrySet()) {
+            branchTopics.getKey().setUnreadPosts(containsUnread(branchTopics.getValue(), readState));
+        }
     }
 
     /**
-     * Compares date from marker with specified date and returns greater value
-     *
-     * @param marker marker object
-     * @param date date to compare
-     *
-     * @return greater value if both not null
-     *         null if both null
-     *         not null one if another null
+     * {@inheritDoc}
      */
-    private DateTime getLastMarkDateTime(BranchReadedMarker marker, DateTime date) {
-        if (marker == null) {
-            return date;
-        } else if (date == null) {
-            return marker.getMarkTime();
-        } else {
-            return marker.getMarkTime().isBefore(date) ? date : marker.getMarkTime();
+    @Override
+    @Scheduled(fixedDelay = 10000)
+    public void syncTopicActivityIndex() {
+        synchronized (topicActivityLock) {
+            if (topicActivityIndex.isLoaded()) {
+                DateTime syncTime = new DateTime();
+                topicActivityIndex.merge(topicDao.getTopicActivitiesModifiedSince(lastActivitySyncTime));
+                lastActivitySyncTime = syncTime.minusMinutes(ACTIVITY_SYNC_OVERLAP_MINUTES);
+            }
         }
     }
 
     /**
-     * For topics modified since forum was marked as all read we need to calculate
-     * last read posts from data that were saved in repository.
-     *
-     * @param modifiedTopics the list of modified topics
-     * @param currentUser    the current user of application
+     * {@inheritDoc}
      */
-    private void fillLastReadPostsForModifiedTopics(List<Topic> modifiedTopics, JCUser currentUser) {
-        List<LastReadPost> lastReadPosts = lastReadPostDao.getLastReadPosts(currentUser, modifiedTopics);
-        for (Topic topic : modifiedTopics) {
-            LastReadPost lastReadPost = findLastReadPost(lastReadPosts, topic.getId());
-            if (lastReadPost != null) {
-                topic.setLastReadPostDate(lastReadPost.getPostCreationDate());
+    @Override
+    @Scheduled(fixedDelay = 3600000)
+    public void reloadTopicActivityIndex() {
+        synchronized (topicActivityLock) {
+            loadTopicActivityIndex();
+        }
+    }
+
+    /**
+     * Fills the index of topics with the ones stored in the database, should be called under
+     * {@link #topicActivityLock}.
+     */
+    private void loadTopicActivityIndex() {
+        DateTime reloadTime = new DateTime();
+        topicActivityIndex.startReload();
+        topicActivityIndex.finishReload(topicDao.getTopicActivities());
+        lastActivitySyncTime = reloadTime.minusMinutes(ACTIVITY_SYNC_OVERLAP_MINUTES);
+    }
+
+    private static boolean containsUnread(Iterable<TopicActivity> activities, UserReadState readState) {
+        for (TopicActivity activity : activities) {
+            if (!readState.isRead(activity)) {
+                return true;
             }
         }
+        return false;
     }
 
     /**
-     * Find last read post in the list for given topic.
+     * Loads what user has read of the given topics with two queries regardless of the number of topics and their
+     * branches: markers of all the branches of the topics and last read posts of the topics which were modified after
+     * their branch or the whole forum was marked as read. Last read posts which are not written to the database yet
+     * are taken from the buffer.
      *
-     * @param lastReadPosts the list of last read posts where we are going to search
-     * @param topicId       an identifier of topic for which we find last read post in list
-     * @return last read post for given topic
+     * @param currentUser the current user of application
+     * @param topics      the list of topics that must be processed
+     * @return read state of the topics
      */
-    private LastReadPost findLastReadPost(List<LastReadPost> lastReadPosts, long topicId) {
-        for (LastReadPost lastReadPost : lastReadPosts) {
-            if (lastReadPost.getTopic().getId() == topicId) {
-                return lastReadPost;
+    private UserReadState loadReadState(JCUser currentUser, List<Topic> topics) {
+        UserReadState readState = new UserReadState(currentUser.getAllForumMarkedAsReadTime());
+        Set<Branch> branches = new HashSet<>();
+        for (Topic topic : topics) {
+            branches.add(topic.getBranch());
+        }
+        for (BranchReadedMarker marker : branchReadedMarkerDao.getMarkersFor(currentUser, branches)) {
+            readState.markBranchAsRead(marker.getBranch().getId(), marker.getMarkTime());
+        }
+        List<Topic> modifiedTopics = new ArrayList<>();
+        for (Topic topic : topics) {
+            if (!readState.isMarkedAsRead(topic)) {
+                modifiedTopics.add(topic);
             }
         }
-        return null;
+        for (LastReadPost lastReadPost : lastReadPostDao.getLastReadPosts(currentUser, modifiedTopics)) {
+            readState.readTopic(lastReadPost.getTopic().getId(), lastReadPost.getPostCreationDate());
+        }
+        readBufferedTopics(currentUser, readState);
+        return readState;
+    }
+
+    /**
+     * Applies last read posts which are not written to the database yet.
+     *
+     * @param user      user to take the last read posts of
+     * @param readState what user has read
+     */
+    private void readBufferedTopics(JCUser user, UserReadState readState) {
+        for (Map.Entry<Long, DateTime> bufferedDate : lastReadPostBuffer.getDates(user.getId()).entrySet()) {
+            readState.readTopic(bufferedDate.getKey(), bufferedDate.getValue());
+        }
     }
 
     /**
@@ -206,7 +310,8 @@ public class TransactionalLastReadPostService implements LastReadPostService, Pl
     }
 
     /**
-     * Stores last read post info into database for the particular topic and user.
+     * Puts last read post info to the buffer to be stored into database for the particular topic and user. Buffer
+     * keeps only the latest post and the database record is never moved back, so there is no need to read it here.
      *
      * @param user      user to save last read post data for
      * @param topic     topic to store info for
@@ -218,18 +323,50 @@ public class TransactionalLastReadPostService implements LastReadPostService, Pl
         if (lastTimeForumWasMarkedRead != null && topicModifiedDate.isBefore(lastTimeForumWasMarkedRead)) {
             return;
         }
+        lastReadPostBuffer.put(user.getId(), topic.getId(), lastPost.getCreationDate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Scheduled(fixedDelay = 5000)
+    public void writeBufferedLastReadPosts() {
+        final Table<Long, Long, DateTime> dates = lastReadPostBuffer.takeForWriting(WRITE_BATCH_SIZE);
+        if (dates.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            //dates are released only when it's known whether they are in the database
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    writingFinished(status == STATUS_COMMITTED, dates.size());
+                }
+            });
+            lastReadPostDao.saveLastReadPostDates(dates);
+            return;
+        }
+        try {
+            lastReadPostDao.saveLastReadPostDates(dates);
+        } catch (RuntimeException e) {
+            writingFinished(false, dates.size());
+            throw e;
+        }
+        writingFinished(true, dates.size());
+    }
 
-        LastReadPost lastReadPost = lastReadPostDao.getLastReadPost(user, topic);
-        if (lastReadPost == null) {
-            lastReadPost = new LastReadPost(user, topic, lastPost.getCreationDate());
+    /**
+     * @param written whether the dates taken from the buffer are in the database
+     * @param count   number of the taken dates
+     */
+    private void writingFinished(boolean written, int count) {
+        if (written) {
+            lastReadPostBuffer.written();
         } else {
-            if (lastPost.getCreationDate().isAfter(lastReadPost.getPostCreationDate())) {
-                lastReadPost.setPostCreationDate(lastPost.getCreationDate());
-            } else {
-                return;
-            }
+            LOGGER.warn("Failed to write [{}] last read posts, they will be written next time", count);
+            lastReadPostBuffer.notWritten();
         }
-        lastReadPostDao.saveOrUpdate(lastReadPost);
     }
 
     /**
@@ -258,7 +395,36 @@ public class TransactionalLastReadPostService implements LastReadPostService, Pl
         currentUser.setAllForumMarkedAsReadTime(new DateTime());
         userDao.saveOrUpdate(currentUser);
 
-        lastReadPostDao.deleteLastReadPostsFor(currentUser);
+        lastReadPostBuffer.remove(currentUser.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Users are looked up when there is nobody left to purge, only those who marked the forum as read since the
+     * previous lookup. Stale last read posts are never used, see {@link UserReadState}, so purging them late or not
+     * at all after restart only costs space.
+     */
+    @Override
+    @Scheduled(fixedDelay = 10000)
+    public void purgeStaleLastReadPosts() {
+        if (usersToPurge.isEmpty()) {
+            DateTime lookupTime = new DateTime();
+            usersToPurge.addAll(userDao.getIdsOfUsersMarkedForumAsReadAfter(lastPurgeLookupTime));
+            lastPurgeLookupTime = lookupTime.minusMinutes(PURGE_LOOKUP_OVERLAP_MINUTES);
+        }
+        int deleted = 0;
+        while (!usersToPurge.isEmpty() && deleted < PURGE_BATCH_SIZE) {
+            int maxCount = PURGE_BATCH_SIZE - deleted;
+            int userDeleted = lastReadPostDao.deleteStaleLastReadPosts(usersToPurge.peek(), maxCount);
+            if (userDeleted < maxCount) {
+                usersToPurge.remove();
+            }
+            deleted += userDeleted;
+        }
+        if (deleted > 0) {
+            LOGGER.debug("[{}] stale last read posts were purged", deleted);
+        }
     }
 
 }
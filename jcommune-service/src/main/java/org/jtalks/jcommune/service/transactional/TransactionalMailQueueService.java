@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.QueuedMailDao;
+import org.jtalks.jcommune.model.entity.QueuedMail;
+import org.jtalks.jcommune.service.MailQueueService;
+import org.jtalks.jcommune.service.exceptions.MailingFailedException;
+import org.jtalks.jcommune.service.jmx.MailQueueStatisticsMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores mails in the database, they are sent by {@link org.jtalks.jcommune.service.nontransactional.MailQueueSender}.
+ * Mails are only taken from the queue and reported back here, each time in a short transaction, the mail server is
+ * talked to outside of them, so rows of the queue are not locked while mails are sent.
+ */
+public class TransactionalMailQueueService extends AbstractTransactionalEntityService<QueuedMail, QueuedMailDao>
+        implements MailQueueService, MailQueueStatisticsMXBean {
+    /**
+     * Messages are 7-bit or 8-bit text, this charset maps each byte to the character with the same code, so the
+     * message is stored as text without changes. Sender has to read them with the same charset.
+     */
+    public static final Charset MESSAGE_CHARSET = Charset.forName("ISO-8859-1");
+    /** Mail is removed from the queue after this number of failed attempts */
+    static final int MAX_ATTEMPTS = 10;
+    /** Mails taken to be sent are not taken again for this time, if they aren't reported by then they are resent */
+    static final int SENDING_TIMEOUT_MINUTES = 10;
+    /** Delay before the second attempt, it's doubled after each next failed attempt */
+    private static final int FIRST_RETRY_DELAY_MINUTES = 1;
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalMailQueueService.class);
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param dao to store queued mails
+     */
+    public TransactionalMailQueueService(QueuedMailDao dao) {
+        super(dao);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void enqueue(MimeMessage message) throws MailingFailedException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            message.writeTo(bytes);
+            String recipient = InternetAddress.toString(message.getRecipients(Message.RecipientType.TO));
+            getDao().saveOrUpdate(new QueuedMail(recipient, new String(bytes.toByteArray(), MESSAGE_CHARSET)));
+        } catch (MessagingException | IOException e) {
+            throw new MailingFailedException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<QueuedMail> takeMailsToSend(int count) {
+        List<QueuedMail> mails = getDao().getMailsToSend(count);
+        DateTime sendingTimeout = new DateTime().plusMinutes(SENDING_TIMEOUT_MINUTES);
+        for (QueuedMail mail : mails) {
+            mail.setNextAttemptDate(sendingTimeout);
+            getDao().saveOrUpdate(mail);
+        }
+        return mails;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendingFinished(Collection<QueuedMail> sentMails, Collection<QueuedMail> failedMails) {
+        for (QueuedMail mail : sentMails) {
+            getDao().delete(mail);
+            sent.incrementAndGet();
+        }
+        for (QueuedMail mail : failedMails) {
+            attemptFailed(mail);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getQueueSize() {
+        return getDao().getQueueSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFailedAttemptCount() {
+        return failedAttempts.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Postpones the next attempt to send the mail or removes it from the queue if there are no attempts left.
+     *
+     * @param mail mail which was not accepted by the mail server
+     */
+    private void attemptFailed(QueuedMail mail) {
+        failedAttempts.incrementAndGet();
+        if (mail.getAttempts() + 1 >= MAX_ATTEMPTS) {
+            LOGGER.error("Mail to [{}] created at [{}] was not sent after [{}] attempts, it's removed from the queue",
+                    new Object[]{mail.getRecipient(), mail.getCreationDate(), MAX_ATTEMPTS});
+            getDao().delete(mail);
+            dropped.incrementAndGet();
+        } else {
+            int delayMinutes = FIRST_RETRY_DELAY_MINUTES << mail.getAttempts();
+            mail.attemptFailed(new DateTime().plusMinutes(delayMinutes));
+            getDao().saveOrUpdate(mail);
+        }
+    }
+}
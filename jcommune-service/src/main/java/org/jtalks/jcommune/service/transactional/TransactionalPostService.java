@@ -31,13 +31,17 @@ import org.jtalks.jcommune.plugin.api.service.PluginPostService;
 import org.jtalks.jcommune.service.BranchLastPostService;
 import org.jtalks.jcommune.service.PostService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.AllowedBranchesCacheService;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
+import org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService;
 import org.jtalks.jcommune.service.security.AclClassName;
 import org.jtalks.jcommune.service.security.PermissionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 
@@ -55,6 +59,8 @@ import java.util.Map;
  */
 public class TransactionalPostService extends AbstractTransactionalEntityService<Post, PostDao>
         implements PostService, PluginPostService {
+    /** How many posts can be updated in one transaction by {@link #storeRenderedContentByTimer()} */
+    private static final int RENDERED_CONTENT_STORING_BATCH_SIZE = 100;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -65,6 +71,9 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
     private BranchLastPostService branchLastPostService;
     private PermissionService permissionService;
     private PluginLoader pluginLoader;
+    private RenderedPostCacheService renderedPostCacheService;
+    private BBCodeService bbCodeService;
+    private AllowedBranchesCacheService allowedBranchesCacheService;
 
     /**
      * Create an instance of Post entity based service
@@ -75,6 +84,9 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
      * @param notificationService   to send email updates for subscribed users
      * @param userService           to get current user
      * @param branchLastPostService to refresh the last post of the branch
+     * @param renderedPostCacheService to drop HTML of changed and removed posts
+     * @param bbCodeService         to render HTML of the posts when they are saved
+     * @param allowedBranchesCacheService to get branches the current user is allowed to see posts of
      */
     public TransactionalPostService(
             PostDao dao,
@@ -84,7 +96,10 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
             UserService userService,
             BranchLastPostService branchLastPostService,
             PermissionService permissionService,
-            PluginLoader pluginLoader) {
+            PluginLoader pluginLoader,
+            RenderedPostCacheService renderedPostCacheService,
+            BBCodeService bbCodeService,
+            AllowedBranchesCacheService allowedBranchesCacheService) {
         super(dao);
         this.topicDao = topicDao;
         this.securityService = securityService;
@@ -93,6 +108,9 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
         this.branchLastPostService = branchLastPostService;
         this.permissionService = permissionService;
         this.pluginLoader = pluginLoader;
+        this.renderedPostCacheService = renderedPostCacheService;
+        this.bbCodeService = bbCodeService;
+        this.allowedBranchesCacheService = allowedBranchesCacheService;
     }
 
     /**
@@ -118,7 +136,9 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
         post.updateModificationDate();
 
         this.getDao().saveOrUpdate(post);
+        renderedPostCacheService.invalidate(post);
         userService.notifyAndMarkNewlyMentionedUsers(post);
+        bbCodeService.renderPostContent(post);
 
         logger.debug("Post id={} updated.", post.getId());
     }
@@ -149,6 +169,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
         // todo: event API?
         topicDao.saveOrUpdate(topic);
         securityService.deleteFromAcl(post);
+        renderedPostCacheService.invalidate(post);
         notificationService.subscribedEntityChanged(topic);
         if (deletedPostIsLastPostInBranch) {
             branchLastPostService.refreshLastPostInBranch(branch);
@@ -163,7 +184,7 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
     @Override
     public Page<Post> getPostsOfUser(JCUser userCreated, String page) {
         JCUser currentUser = userService.getCurrentUser();
-        List<Long> allowedBranchesIds = topicDao.getAllowedBranchesIds(currentUser);
+        List<Long> allowedBranchesIds = allowedBranchesCacheService.getAllowedBranchesIds(currentUser);
 
         PageRequest pageRequest = new PageRequest(page, currentUser.getPageSize());
 
@@ -273,6 +294,23 @@ public class TransactionalPostService extends AbstractTransactionalEntityService
         return post;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Scheduled(fixedDelay = 10000)
+    public void storeRenderedContentByTimer() {
+        String renderingVersion = bbCodeService.getRenderingVersion();
+        for (Long postId : renderedPostCacheService.takePostsToStore(RENDERED_CONTENT_STORING_BATCH_SIZE)) {
+            Post post = getDao().get(postId);
+            String html = (post == null) ? null : renderedPostCacheService.peekRenderedContent(post);
+            if (html != null) {
+                post.setRenderedContent(html, renderingVersion);
+                getDao().saveOrUpdate(post);
+            }
+        }
+    }
+
     /**
      * Checks if current user can create comments in specified topic
      *
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.jtalks.jcommune.model.dao.search.TopicSearchDao;
+import org.jtalks.jcommune.service.SearchIndexService;
+
+import java.util.List;
+
+/**
+ * Delegates to the search DAO, the only reason of the class is to wrap each batch into a separate transaction, so
+ * that entities loaded for indexing don't pile up in one session.
+ */
+public class TransactionalSearchIndexService implements SearchIndexService {
+    private final TopicSearchDao searchDao;
+
+    /**
+     * @param searchDao for search index access
+     */
+    public TransactionalSearchIndexService(TopicSearchDao searchDao) {
+        this.searchDao = searchDao;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Long> getTopicIdsToIndex(long lastIndexedTopicId, int count) {
+        return searchDao.getTopicIdsToIndex(lastIndexedTopicId, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long countTopicsToIndex(long lastIndexedTopicId) {
+        return searchDao.countTopicsToIndex(lastIndexedTopicId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeStaleDocuments(long afterTopicId, long lastTopicId) {
+        searchDao.removeStaleDocuments(afterTopicId, lastTopicId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void indexTopics(List<Long> topicIds) {
+        searchDao.indexTopics(topicIds);
+    }
+}
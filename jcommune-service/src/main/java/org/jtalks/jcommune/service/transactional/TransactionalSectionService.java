@@ -23,6 +23,7 @@ import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.BranchService;
+import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.SectionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
@@ -50,6 +51,8 @@ public class TransactionalSectionService extends AbstractTransactionalEntityServ
     private TopicDao topicDao;
 
     private PostDao postDao;
+
+    private LastReadPostService lastReadPostService;
     
     /**
      * Create an instance of entity based service
@@ -59,14 +62,17 @@ public class TransactionalSectionService extends AbstractTransactionalEntityServ
      * @param userService object, that represents service for the working with users
      * @param topicDao object, that represents service for the working with topics
      * @param postDao object, that represents service for the working with posts
+     * @param lastReadPostService to find branches with posts the current user didn't read
      */
     public TransactionalSectionService(SectionDao dao, BranchService branchService, UserService userService,
-                                       TopicDao topicDao, PostDao postDao) {
+                                       TopicDao topicDao, PostDao postDao,
+                                       LastReadPostService lastReadPostService) {
         super(dao);
         this.branchService = branchService;
         this.userService = userService;
         this.topicDao = topicDao;
         this.postDao = postDao;
+        this.lastReadPostService = lastReadPostService;
     }
 
     /**
@@ -105,10 +111,15 @@ public class TransactionalSectionService extends AbstractTransactionalEntityServ
      * {@inheritDoc}
      */
     public void prepareSectionsForView(List<Section> sections) {
+        List<org.jtalks.jcommune.model.entity.Branch> allBranches = new ArrayList<>();
         for (Section section : sections) {
             List<Branch> branches = section.getBranches();
             branchService.fillStatisticInfo(branches);
+            for (Branch branch : branches) {
+                allBranches.add((org.jtalks.jcommune.model.entity.Branch) branch);
+            }
         }
+        lastReadPostService.fillUnreadPostsInBranches(allBranches);
     }
 
     /**
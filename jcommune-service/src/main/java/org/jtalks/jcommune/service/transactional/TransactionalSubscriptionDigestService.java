@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.SubscriptionDigestEntryDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.SubscriptionDigestEntry;
+import org.jtalks.jcommune.service.SubscriptionDigestService;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
+import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps collected updates in the database, so they are not lost on restart and all instances of the forum sharing
+ * the database collect them into the same digests. Digest is sent when the oldest update in it is older than the
+ * digest interval, the timer configured in the application context only checks for such digests. Digest mails are
+ * queued in the same transaction the sent updates are removed in, so a digest is sent exactly once.
+ */
+public class TransactionalSubscriptionDigestService
+        extends AbstractTransactionalEntityService<SubscriptionDigestEntry, SubscriptionDigestEntryDao>
+        implements SubscriptionDigestService {
+    /** Prevents unlimited growth of a digest if user is subscribed to a lot of busy branches */
+    static final int MAX_ENTITIES_IN_DIGEST = 100;
+    /** Limits the time entries of the users are locked, the rest of the digests are sent by the next calls */
+    static final int USERS_PER_CALL = 50;
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalSubscriptionDigestService.class);
+
+    private final MailService mailService;
+    private final long digestIntervalMillis;
+
+    /**
+     * @param dao                  to store collected updates
+     * @param mailService          to send digests
+     * @param digestIntervalMillis how long updates are collected before they are sent to the user
+     */
+    public TransactionalSubscriptionDigestService(SubscriptionDigestEntryDao dao, MailService mailService,
+                                                  long digestIntervalMillis) {
+        super(dao);
+        this.mailService = mailService;
+        this.digestIntervalMillis = digestIntervalMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addUpdate(JCUser subscriber, SubscriptionUpdate update) {
+        if (getDao().addUpdates(subscriber, update.getKey(), update.getUpdatesCount()) > 0) {
+            return;
+        }
+        if (getDao().getEntriesCount(subscriber) < MAX_ENTITIES_IN_DIGEST) {
+            getDao().saveOrUpdate(new SubscriptionDigestEntry(subscriber, update.getKey(), update.getTitle(),
+                    update.getLink(), update.getLinkLabel(), update.getUpdatesCount()));
+        } else {
+            LOGGER.debug("Digest for user [{}] is full, update of [{}] is skipped",
+                    subscriber.getUsername(), update.getKey());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendDigests() {
+        DateTime createdBefore = new DateTime().minus(digestIntervalMillis);
+        List<Long> userIds = getDao().getUsersToSendDigests(createdBefore, USERS_PER_CALL);
+        Map<JCUser, List<SubscriptionDigestEntry>> entriesOfUsers = new LinkedHashMap<>();
+        for (SubscriptionDigestEntry entry : getDao().getEntriesToSend(userIds)) {
+            List<SubscriptionDigestEntry> entries = entriesOfUsers.get(entry.getUser());
+            if (entries == null) {
+                entries = new ArrayList<>();
+                entriesOfUsers.put(entry.getUser(), entries);
+            }
+            entries.add(entry);
+        }
+        for (Map.Entry<JCUser, List<SubscriptionDigestEntry>> entries : entriesOfUsers.entrySet()) {
+            // another instance may have sent the digest while we were waiting for the lock, only newer entries are left
+            if (entries.getValue().get(0).getCreationDate().isAfter(createdBefore)) {
+                continue;
+            }
+            mailService.sendSubscriptionDigest(entries.getKey(), mergeUpdates(entries.getValue()));
+            for (SubscriptionDigestEntry entry : entries.getValue()) {
+                getDao().delete(entry);
+            }
+        }
+    }
+
+    /**
+     * @param entries entries of one user in the order they were created
+     * @return one update per entity, concurrent requests may have created several entries about the same entity
+     */
+    private Collection<SubscriptionUpdate> mergeUpdates(List<SubscriptionDigestEntry> entries) {
+        Map<String, SubscriptionUpdate> updates = new LinkedHashMap<>();
+        for (SubscriptionDigestEntry entry : entries) {
+            SubscriptionUpdate update = new SubscriptionUpdate(entry.getEntityKey(), entry.getTitle(),
+                    entry.getLink(), entry.getLinkLabel(), entry.getUpdatesCount());
+            SubscriptionUpdate existing = updates.get(update.getKey());
+            if (existing != null) {
+                existing.merge(update);
+            } else {
+                updates.put(update.getKey(), update);
+            }
+        }
+        return updates.values();
+    }
+}
@@ -18,13 +18,22 @@ import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.dao.search.TopicSearchDao;
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.plugin.api.service.PluginTopicFetchService;
 import org.jtalks.jcommune.service.TopicFetchService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress;
+import org.jtalks.jcommune.service.nontransactional.AllowedBranchesCacheService;
+import org.jtalks.jcommune.service.nontransactional.SearchIndexRebuilder;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -40,18 +49,29 @@ import java.util.List;
 public class TransactionalTopicFetchService extends AbstractTransactionalEntityService<Topic, TopicDao>
         implements TopicFetchService, PluginTopicFetchService {
 
+    /** A few suggestions are shown under the search field, more of them would hide the page */
+    private static final int SUGGESTED_TOPICS_COUNT = 10;
+
     private UserService userService;
     private TopicSearchDao searchDao;
+    private SearchIndexRebuilder searchIndexRebuilder;
+    private AllowedBranchesCacheService allowedBranchesCacheService;
 
     /**
-     * @param dao         topic dao for database manipulations
-     * @param userService to get current user and his preferences
-     * @param searchDao   for search index access
+     * @param dao                  topic dao for database manipulations
+     * @param userService          to get current user and his preferences
+     * @param searchDao            for search index access
+     * @param searchIndexRebuilder to rebuild search index in background
+     * @param allowedBranchesCacheService to get branches the current user is allowed to search topics in
      */
-    public TransactionalTopicFetchService(TopicDao dao, UserService userService, TopicSearchDao searchDao) {
+    public TransactionalTopicFetchService(TopicDao dao, UserService userService, TopicSearchDao searchDao,
+                                          SearchIndexRebuilder searchIndexRebuilder,
+                                          AllowedBranchesCacheService allowedBranchesCacheService) {
         super(dao);
         this.userService = userService;
         this.searchDao = searchDao;
+        this.searchIndexRebuilder = searchIndexRebuilder;
+        this.allowedBranchesCacheService = allowedBranchesCacheService;
     }
 
     /**
@@ -105,10 +125,10 @@ public class TransactionalTopicFetchService extends AbstractTransactionalEntityS
      * {@inheritDoc}
      */
     @Override
-    public Page<Topic> searchByTitleAndContent(String phrase, String page) {
+    public FoundTopics searchByTitleAndContent(String phrase, String page, TopicSearchFilter filter) {
         JCUser currentUser = userService.getCurrentUser();
 
-        List<Long> allowedBranchesIds = this.getDao().getAllowedBranchesIds(currentUser);
+        List<Long> allowedBranchesIds = allowedBranchesCacheService.getAllowedBranchesIds(currentUser);
 
         if (!StringUtils.isEmpty(phrase) && !allowedBranchesIds.isEmpty()) {
             int pageSize = currentUser.getPageSize();
@@ -116,9 +136,40 @@ public class TransactionalTopicFetchService extends AbstractTransactionalEntityS
             // hibernate search refuses to process long string throwing error
             String normalizedPhrase = StringUtils.left(phrase, 50);
 
-            return searchDao.searchByTitleAndContent(normalizedPhrase, pageRequest, allowedBranchesIds);
+            return searchDao.searchByTitleAndContent(normalizedPhrase, filter, pageRequest, allowedBranchesIds);
+        }
+        return new FoundTopics(Collections.<Topic>emptyList(), TopicSearchFacets.EMPTY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Page<FoundPost> searchPostsByContent(String phrase, String page) {
+        JCUser currentUser = userService.getCurrentUser();
+
+        List<Long> allowedBranchesIds = allowedBranchesCacheService.getAllowedBranchesIds(currentUser);
+
+        if (!StringUtils.isEmpty(phrase) && !allowedBranchesIds.isEmpty()) {
+            PageRequest pageRequest = new PageRequest(page, currentUser.getPageSize());
+            return searchDao.searchPostsByContent(StringUtils.left(phrase, 50), pageRequest, allowedBranchesIds);
+        }
+        return new PageImpl<>(Collections.<FoundPost>emptyList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<TopicSuggestion> suggestTopics(String text) {
+        if (StringUtils.isBlank(text)) {
+            return Collections.emptyList();
+        }
+        List<Long> allowedBranchesIds = allowedBranchesCacheService.getAllowedBranchesIds(userService.getCurrentUser());
+        if (allowedBranchesIds.isEmpty()) {
+            return Collections.emptyList();
         }
-        return new PageImpl<>(Collections.<Topic>emptyList());
+        return searchDao.suggestTopics(StringUtils.left(text, 50), SUGGESTED_TOPICS_COUNT, allowedBranchesIds);
     }
 
     /**
@@ -126,7 +177,23 @@ public class TransactionalTopicFetchService extends AbstractTransactionalEntityS
      */
     @Override
     public void rebuildSearchIndex() {
-        searchDao.rebuildIndex();
+        searchIndexRebuilder.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchIndexRebuildProgress getSearchIndexRebuildProgress() {
+        return searchIndexRebuilder.getProgress();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IndexingQueueState getSearchIndexQueueState() {
+        return searchDao.getIndexingQueueState();
     }
     
     /**
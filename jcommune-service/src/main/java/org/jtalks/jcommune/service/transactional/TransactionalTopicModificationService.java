@@ -20,6 +20,7 @@ import org.jtalks.common.service.security.SecurityContextFacade;
 import org.jtalks.jcommune.model.dao.BranchDao;
 import org.jtalks.jcommune.model.dao.PostDao;
 import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.dao.search.TopicSearchDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.plugin.api.PluginLoader;
 import org.jtalks.jcommune.plugin.api.core.Plugin;
@@ -29,6 +30,7 @@ import org.jtalks.jcommune.plugin.api.filters.TypeFilter;
 import org.jtalks.jcommune.plugin.api.service.PluginTopicModificationService;
 import org.jtalks.jcommune.service.*;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +73,8 @@ public class TransactionalTopicModificationService implements TopicModificationS
     private LastReadPostService lastReadPostService;
     private TopicFetchService topicFetchService;
     private PluginLoader pluginLoader;
+    private BBCodeService bbCodeService;
+    private TopicSearchDao searchDao;
 
     /**
      * Create an instance of User entity based service.
@@ -87,6 +91,8 @@ public class TransactionalTopicModificationService implements TopicModificationS
      * @param branchLastPostService to refresh the last post of the branch
      * @param lastReadPostService   to work with last read post
      * @param postDao               to store newly created posts in database
+     * @param bbCodeService         to render HTML of the posts when they are saved
+     * @param searchDao             to index posts of the moved topics with their new branch
      */
     public TransactionalTopicModificationService(TopicDao dao, SecurityService securityService,
                                                  BranchDao branchDao,
@@ -100,7 +106,9 @@ public class TransactionalTopicModificationService implements TopicModificationS
                                                  LastReadPostService lastReadPostService,
                                                  PostDao postDao,
                                                  TopicFetchService topicFetchService,
-                                                 PluginLoader pluginLoader) {
+                                                 PluginLoader pluginLoader,
+                                                 BBCodeService bbCodeService,
+                                                 TopicSearchDao searchDao) {
         this.dao = dao;
         this.securityService = securityService;
         this.branchDao = branchDao;
@@ -115,6 +123,8 @@ public class TransactionalTopicModificationService implements TopicModificationS
         this.postDao = postDao;
         this.topicFetchService = topicFetchService;
         this.pluginLoader = pluginLoader;
+        this.bbCodeService = bbCodeService;
+        this.searchDao = searchDao;
     }
 
     /**
@@ -145,6 +155,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         notificationService.subscribedEntityChanged(topic);
 
         userService.notifyAndMarkNewlyMentionedUsers(answer);
+        bbCodeService.renderPostContent(answer);
 
         logger.debug("New post in topic. Topic id={}, Post id={}, Post author={}",
                 new Object[]{topicId, answer.getId(), currentUser.getUsername()});
@@ -208,6 +219,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         createPoll(topicDto.getPoll(), topic);
 
         userService.notifyAndMarkNewlyMentionedUsers(topic.getFirstPost());
+        bbCodeService.renderPostContent(topic.getFirstPost());
 
         lastReadPostService.markTopicAsRead(topic);
 
@@ -298,6 +310,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         }
         Post post = topic.getFirstPost();
         post.updateModificationDate();
+        bbCodeService.renderPostContent(post);
         if (poll != null && poll.getEndingDate() != null) {
             topic.getPoll().setEndingDate(poll.getEndingDate());
         }
@@ -394,6 +407,7 @@ public class TransactionalTopicModificationService implements TopicModificationS
         }
         targetBranch.addTopic(topic);
         branchDao.saveOrUpdate(targetBranch);
+        searchDao.indexPosts(topic);
 
         List<Post> topicPosts = topic.getPosts();
         if (topicPosts.contains(sourceBranch.getLastPost())) {
@@ -42,6 +42,8 @@ import org.jtalks.jcommune.service.nontransactional.Base64Wrapper;
 import org.jtalks.jcommune.service.nontransactional.EncryptionService;
 import org.jtalks.jcommune.service.nontransactional.MailService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService;
+import org.jtalks.jcommune.service.nontransactional.UserIdCacheService;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +53,9 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import org.jtalks.jcommune.model.dto.LoginUserDto;
 
 /**
@@ -79,6 +83,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
     private final Base64Wrapper base64Wrapper;
     //Important, use for every password creation.
     private final EncryptionService encryptionService;
+    private final RenderedPostCacheService renderedPostCacheService;
+    private final UserIdCacheService userIdCacheService;
 
     /**
      * Create an instance of User entity based service
@@ -91,6 +97,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
      * @param encryptionService encodes user password before store
      * @param postDao           for operations with posts
      * @param authenticator     for user authentication
+     * @param renderedPostCacheService to drop HTML of posts whose user tags were changed or which mention removed users
+     * @param userIdCacheService to find mentioned users without querying them and to drop ids of removed users
      */
     public TransactionalUserService(UserDao dao,
                                     GroupDao groupDao,
@@ -99,7 +107,9 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
                                     Base64Wrapper base64Wrapper,
                                     EncryptionService encryptionService,
                                     PostDao postDao,
-                                    Authenticator authenticator) {
+                                    Authenticator authenticator,
+                                    RenderedPostCacheService renderedPostCacheService,
+                                    UserIdCacheService userIdCacheService) {
         super(dao);
         this.groupDao = groupDao;
         this.securityService = securityService;
@@ -108,6 +118,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
         this.encryptionService = encryptionService;
         this.postDao = postDao;
         this.authenticator = authenticator;
+        this.renderedPostCacheService = renderedPostCacheService;
+        this.userIdCacheService = userIdCacheService;
     }
 
     /**
@@ -228,6 +240,7 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
         editedUser.setMentioningNotificationsEnabled(userNotificationsInfo.isMentioningNotificationsEnabled());
         editedUser.setSendPmNotification(userNotificationsInfo.isSendPmNotification());
         editedUser.setAutosubscribe(userNotificationsInfo.isAutosubscribe());
+        editedUser.setSubscriptionDigestEnabled(userNotificationsInfo.isSubscriptionDigestEnabled());
 
         this.getDao().saveOrUpdate(editedUser);
         LOGGER.info("Updated user notification settings. Username: {}", editedUser.getUsername());
@@ -298,6 +311,8 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
             Period period = new Period(user.getRegistrationDate(), today);
             if (period.getDays() > 0) {
                 this.getDao().delete(user);
+                userIdCacheService.invalidate(user.getUsername());
+                renderedPostCacheService.invalidateMentionsOf(user.getUsername());
             }
         }
     }
@@ -344,7 +359,15 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
     @Override
     public String processUserBbCodesInPost(String postContent) {
         MentionedUsers mentionedUsers = MentionedUsers.parse(postContent);
-        return mentionedUsers.getTextWithProcessedUserTags(getDao());
+        return mentionedUsers.getTextWithProcessedUserTags(getDao(), userIdCacheService);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getMentionedUserIds(Collection<String> postContents) {
+        return MentionedUsers.getMentionedUserIds(postContents, getDao(), userIdCacheService);
     }
 
     /**
@@ -360,6 +383,7 @@ public class TransactionalUserService extends AbstractTransactionalEntityService
         }
 
         mentionedUsers.markUsersAsAlreadyNotified(postDao);
+        renderedPostCacheService.invalidate(post);
     }
 
     /**
@@ -52,6 +52,35 @@ public class BBCodeListPreprocessorTest {
         assertEquals(result.toString(), expectedResult);
     }
     
+    @Test(dataProvider="validLists")
+    public void testProcessInPlace(String bbCode, String expectedResult) {
+        StringBuilder text = new StringBuilder(bbCode);
+        service.processInPlace(text);
+        assertEquals(text.toString(), expectedResult);
+    }
+
+    @Test(dataProvider = "nestedLists")
+    public void testProcessInPlaceNestedLists(String bbCode, String expectedResult) {
+        StringBuilder text = new StringBuilder(bbCode);
+        service.processInPlace(text);
+        assertEquals(text.toString(), expectedResult);
+    }
+
+    @Test(dataProvider = "badLists")
+    public void testProcessInPlaceBadLists(String bbCode, String expected) {
+        StringBuilder text = new StringBuilder(bbCode);
+        service.processInPlace(text);
+        assertEquals(text.toString(), expected);
+    }
+
+    @Test
+    public void processInPlaceShouldNotChangeTextWithoutLists() {
+        String bbCode = "[b]bold[/b] [quote]text with [ brackets ][/quote]";
+        StringBuilder text = new StringBuilder(bbCode);
+        service.processInPlace(text);
+        assertEquals(text.toString(), service.process(bbCode));
+    }
+
     @Test(dataProvider = "nestedLists")
     public void testProcessNestedLists(String bbCode, String expectedResult) {
         CharSequence result = service.process(new StringBuilder(bbCode));
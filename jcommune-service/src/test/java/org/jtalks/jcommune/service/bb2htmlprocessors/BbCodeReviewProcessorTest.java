@@ -58,6 +58,22 @@ public class BbCodeReviewProcessorTest {
         assertEquals(service.process(charSequence).toString(), expectedResult);
     }
     
+    @Test(dataProvider="preProcessingPosts")
+    public void preprocessorShouldSubstituteClosingCodeTagsInPlace(String bbCode, String expectedResult) {
+        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
+        StringBuilder text = new StringBuilder(bbCode);
+        service.processInPlace(text);
+        assertEquals(text.toString(), expectedResult);
+    }
+
+    @Test
+    public void preprocessorShouldRememberWhichTagsWereSubstituted() {
+        when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
+        service.process("[code=java][/code][-code][/code][/code]");
+        verify(request).setAttribute(BbCodeReviewProcessor.REPLACE_HISTORY_LIST_ATTRIBUTE,
+                Lists.newArrayList(true, false, true));
+    }
+
     @Test
     public void postprocessorShouldСorrectlyReturnUserCloseTag() {
         when(request.getAttribute("isCodeReviewPost")).thenReturn("true");
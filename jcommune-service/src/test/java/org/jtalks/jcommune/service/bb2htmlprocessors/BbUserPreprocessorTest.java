@@ -16,9 +16,21 @@ package org.jtalks.jcommune.service.bb2htmlprocessors;
 
 import org.jtalks.jcommune.service.UserService;
 import org.mockito.Mock;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.assertEquals;
@@ -41,6 +53,11 @@ public class BbUserPreprocessorTest {
         initMocks(this);
         userPreprocessor = new BbUserPreprocessor(userService);
     }
+
+    @AfterMethod
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
     
 
     @Test
@@ -51,4 +68,50 @@ public class BbUserPreprocessorTest {
 
         assertEquals(actualResult, "my string");
     }
+
+    @Test
+    public void processInPlaceShouldReplaceUserCodesWithProfileLinks() {
+        String source = "[user]admin[/user]";
+        when(userService.processUserBbCodesInPost(source)).thenReturn("[user=/users/1]admin[/user]");
+        StringBuilder text = new StringBuilder(source);
+
+        userPreprocessor.processInPlace(text);
+
+        assertEquals(text.toString(), "[user=/users/1]admin[/user]");
+    }
+
+    @Test
+    public void processInPlaceShouldNotProcessTextWithoutUserCodes() {
+        StringBuilder text = new StringBuilder("[b]source[/b]");
+
+        userPreprocessor.processInPlace(text);
+
+        assertEquals(text.toString(), "[b]source[/b]");
+        verify(userService, never()).processUserBbCodesInPost(anyString());
+    }
+
+    @Test
+    public void preloadShouldLoadIdsOfUsersMentionedInAllTexts() {
+        List<String> texts = Arrays.asList("[user]admin[/user]", "[user]moderator[/user]");
+        Map<String, Long> userIds = Collections.singletonMap("admin", 1L);
+        when(userService.getMentionedUserIds(texts)).thenReturn(userIds);
+
+        Map<String, Object> attributes = userPreprocessor.preload(texts);
+
+        assertEquals(attributes, Collections.singletonMap(BbUserPreprocessor.MENTIONED_USER_IDS_ATTRIBUTE, userIds));
+    }
+
+    @Test
+    public void processInPlaceShouldUsePreloadedUserIdsWithoutUserService() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContextPath("/forum");
+        request.setAttribute(BbUserPreprocessor.MENTIONED_USER_IDS_ATTRIBUTE, Collections.singletonMap("admin", 1L));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        StringBuilder text = new StringBuilder("[user]admin[/user]");
+
+        userPreprocessor.processInPlace(text);
+
+        assertEquals(text.toString(), "[user=/forum/users/1]admin[/user]");
+        verify(userService, never()).processUserBbCodesInPost(anyString());
+    }
 }
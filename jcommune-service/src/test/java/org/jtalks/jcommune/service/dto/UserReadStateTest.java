@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.dto;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dto.TopicActivity;
+import org.jtalks.jcommune.model.entity.Branch;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class UserReadStateTest {
+    private final JCUser user = new JCUser("username", "email@mail.com", "password");
+
+    @Test
+    public void topicModifiedBeforeForumWasMarkedAsReadShouldBeReadUpToLastPost() {
+        Topic topic = createTopic(1L, 1L);
+        UserReadState readState = new UserReadState(new DateTime().plusMinutes(1));
+
+        assertTrue(readState.isMarkedAsRead(topic));
+        assertEquals(readState.getLastReadPostDate(topic), topic.getLastPost().getCreationDate());
+    }
+
+    @Test
+    public void laterOfBranchAndForumMarksShouldBeUsed() {
+        Topic topic = createTopic(1L, 1L);
+        UserReadState readState = new UserReadState(new DateTime().minusDays(1));
+        readState.markBranchAsRead(1L, new DateTime().plusMinutes(1));
+        readState.markBranchAsRead(2L, new DateTime().minusDays(2));
+
+        assertTrue(readState.isMarkedAsRead(topic));
+        assertFalse(readState.isMarkedAsRead(createTopic(2L, 2L)));
+    }
+
+    @Test
+    public void lastReadPostShouldBeTakenForTopicModifiedAfterMarks() {
+        Topic topic = createTopic(1L, 1L);
+        DateTime lastReadPostDate = new DateTime().minusHours(1);
+        UserReadState readState = new UserReadState(null);
+        readState.readTopic(1L, lastReadPostDate);
+        readState.readTopic(1L, lastReadPostDate.minusHours(1));
+
+        assertFalse(readState.isMarkedAsRead(topic));
+        assertEquals(readState.getLastReadPostDate(topic), lastReadPostDate);
+        assertNull(readState.getLastReadPostDate(createTopic(2L, 1L)));
+    }
+
+    @Test
+    public void lastReadPostsMadeBeforeForumWasMarkedAsReadShouldBeIgnored() {
+        Topic topic = createTopic(1L, 1L);
+        DateTime forumMarkTime = topic.getModificationDate().minusHours(1);
+        UserReadState readState = new UserReadState(forumMarkTime);
+        readState.readTopic(1L, forumMarkTime.minusHours(1));
+
+        assertNull(readState.getLastReadPostDate(topic));
+    }
+
+    @Test
+    public void manyTopicsShouldBeKept() {
+        UserReadState readState = new UserReadState(null);
+        DateTime date = new DateTime();
+        for (long topicId = 0; topicId < 1000; topicId++) {
+            readState.readTopic(topicId * 1024, date.plusMillis((int) topicId));
+        }
+
+        for (long topicId = 0; topicId < 1000; topicId++) {
+            assertEquals(readState.getLastReadPostDate(createTopic(topicId * 1024, 1L)),
+                    date.plusMillis((int) topicId));
+        }
+        assertNull(readState.getLastReadPostDate(createTopic(1L, 1L)));
+    }
+
+    @Test
+    public void topicWithPostsAfterMarksShouldBeUnreadUntilLastPostIsRead() {
+        long lastPostTime = new DateTime().getMillis();
+        UserReadState readState = new UserReadState(new DateTime(lastPostTime - 2));
+        readState.markBranchAsRead(1L, new DateTime(lastPostTime - 1));
+
+        assertEquals(readState.getMarkTime(1L), lastPostTime - 1);
+        assertFalse(readState.isRead(new TopicActivity(1L, 1L, lastPostTime)));
+        readState.readTopic(1L, new DateTime(lastPostTime));
+        assertTrue(readState.isRead(new TopicActivity(1L, 1L, lastPostTime)));
+    }
+
+    @Test
+    public void topicWithPostsBeforeMarkShouldBeRead() {
+        long lastPostTime = new DateTime().getMillis();
+        UserReadState readState = new UserReadState(null);
+        readState.markBranchAsRead(1L, new DateTime(lastPostTime + 1));
+
+        assertTrue(readState.isRead(new TopicActivity(1L, 1L, lastPostTime)));
+        assertFalse(readState.isRead(new TopicActivity(2L, 2L, lastPostTime)));
+        assertEquals(readState.getMarkTime(2L), Long.MIN_VALUE);
+    }
+
+    private Topic createTopic(long topicId, long branchId) {
+        Branch branch = new Branch("branch", "description");
+        branch.setId(branchId);
+        Topic topic = new Topic(user, "title");
+        topic.setId(topicId);
+        topic.setBranch(branch);
+        topic.addPost(new Post(user, "content"));
+        return topic;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.jtalks.common.model.entity.Group;
+import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.entity.AnonymousUser;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AllowedBranchesCacheServiceTest {
+    private Ehcache cache;
+    private TopicDao topicDao;
+    private AllowedBranchesCacheService allowedBranchesCacheService;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = mock(Ehcache.class);
+        topicDao = mock(TopicDao.class);
+        allowedBranchesCacheService = new AllowedBranchesCacheService(cache, topicDao);
+    }
+
+    @Test
+    public void notCachedBranchIdsShouldBeLoadedAndCachedAsPrimitiveArray() {
+        JCUser user = userOfGroups(2L, 1L);
+        when(topicDao.getAllowedBranchesIds(user)).thenReturn(Arrays.asList(5L, 7L));
+
+        List<Long> branchIds = allowedBranchesCacheService.getAllowedBranchesIds(user);
+
+        assertEquals(branchIds, Arrays.asList(5L, 7L));
+        ArgumentCaptor<Element> element = ArgumentCaptor.forClass(Element.class);
+        verify(cache).put(element.capture());
+        assertEquals(element.getValue().getObjectKey(), "1,2");
+        assertTrue(Arrays.equals((long[]) element.getValue().getObjectValue(), new long[]{5L, 7L}));
+    }
+
+    @Test
+    public void cachedBranchIdsShouldBeReturnedWithoutQueryingDatabase() {
+        when(cache.get("1,2")).thenReturn(new Element("1,2", new long[]{5L, 7L}));
+
+        List<Long> branchIds = allowedBranchesCacheService.getAllowedBranchesIds(userOfGroups(1L, 2L));
+
+        assertEquals(branchIds, Arrays.asList(5L, 7L));
+        verify(topicDao, never()).getAllowedBranchesIds(any(JCUser.class));
+        verify(cache, never()).put(any(Element.class));
+    }
+
+    @Test
+    public void usersOfSameGroupsShouldHaveSameKey() {
+        assertEquals(AllowedBranchesCacheService.key(userOfGroups(3L, 1L, 2L)),
+                AllowedBranchesCacheService.key(userOfGroups(2L, 3L, 1L)));
+    }
+
+    @Test
+    public void anonymousUserShouldHaveItsOwnKey() {
+        assertEquals(AllowedBranchesCacheService.key(new AnonymousUser()), AllowedBranchesCacheService.ANONYMOUS_KEY);
+        assertEquals(AllowedBranchesCacheService.key(userOfGroups()), "");
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void returnedBranchIdsShouldNotBeModifiable() {
+        when(cache.get("1")).thenReturn(new Element("1", new long[]{5L}));
+
+        allowedBranchesCacheService.getAllowedBranchesIds(userOfGroups(1L)).add(6L);
+    }
+
+    @Test
+    public void invalidationShouldRemoveBranchIdsOfAllGroups() {
+        allowedBranchesCacheService.invalidate();
+
+        verify(cache).removeAll();
+    }
+
+    @Test
+    public void invalidationWithinTransactionShouldRemoveBranchIdsOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            allowedBranchesCacheService.invalidate();
+
+            verify(cache, never()).removeAll();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            verify(cache).removeAll();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private JCUser userOfGroups(long... groupIds) {
+        JCUser user = new JCUser("username", "email@jtalks.org", "password");
+        for (long groupId : groupIds) {
+            Group group = new Group();
+            group.setId(groupId);
+            user.addGroup(group);
+        }
+        return user;
+    }
+}
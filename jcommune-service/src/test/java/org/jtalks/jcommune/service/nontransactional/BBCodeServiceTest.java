@@ -15,17 +15,44 @@
 package org.jtalks.jcommune.service.nontransactional;
 
 import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.jtalks.jcommune.model.entity.Topic;
+import org.jtalks.jcommune.model.entity.TopicTypeName;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BbCodeReviewProcessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.PreloadingTextProcessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BBCodeListPreprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.BBForeignLinksPostprocessor;
+import org.jtalks.jcommune.service.bb2htmlprocessors.TextPostProcessor;
+import org.kefirsf.bb.TextProcessor;
+import org.kefirsf.bb.TextProcessorAdapter;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 
 /**
  * @author Evgeniy Naumenko
  */
 public class BBCodeServiceTest {
     private BBCodeService service;
+    private RenderedPostCacheService renderedPostCacheService;
 
     private static final String SOURCE = "source";
     private static final JCUser USER = new JCUser("name", "mail", "pass");
@@ -33,6 +60,211 @@ public class BBCodeServiceTest {
     @BeforeMethod
     public void setUp() {
         service = new BBCodeService();
+        renderedPostCacheService = mock(RenderedPostCacheService.class);
+        service.setRenderedPostCacheService(renderedPostCacheService);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void convertPostToHtmlShouldUseStoredHtmlIfItIsUpToDate() {
+        Post post = new Post(USER, "[b]Bold text[/b]");
+        post.setRenderedContent("stored", service.getRenderingVersion());
+
+        assertEquals(service.convertPostToHtml(post), "stored");
+        verify(renderedPostCacheService, never()).getRenderedContent(post);
+    }
+
+    @Test
+    public void convertPostToHtmlShouldUseCachedHtmlIfStoredHtmlIsOutdated() {
+        Post post = new Post(USER, "[b]Bold text[/b]");
+        post.setRenderedContent("stored", "outdated version");
+        when(renderedPostCacheService.getRenderedContent(post)).thenReturn("cached");
+
+        assertEquals(service.convertPostToHtml(post), "cached");
+        verify(renderedPostCacheService, never()).putRenderedContent(post, "cached");
+        verify(renderedPostCacheService, never()).markForStoring(post);
+    }
+
+    @Test
+    public void convertPostToHtmlShouldRenderAndCacheIfNotCached() {
+        Post post = new Post(USER, "[b]Bold text[/b]");
+        String expected = "<span style=\"font-weight:bold;\">Bold text</span>";
+
+        assertEquals(service.convertPostToHtml(post), expected);
+        verify(renderedPostCacheService).putRenderedContent(post, expected);
+        verify(renderedPostCacheService).markForStoring(post);
+    }
+
+    @Test
+    public void convertPostsToHtmlShouldRenderPostsInParallelAndCacheThem() {
+        service.setRenderingPool(new ForkJoinPool(2));
+        Post first = post(1L, "[b]first[/b]");
+        Post second = post(2L, "[i]second[/i]");
+
+        Map<Long, String> result = service.convertPostsToHtml(new PageImpl<>(Arrays.asList(first, second)));
+
+        assertEquals(result.keySet(), Arrays.asList(1L, 2L));
+        assertEquals(result.get(1L), "<span style=\"font-weight:bold;\">first</span>");
+        assertEquals(result.get(2L), "<span style=\"font-style:italic;\">second</span>");
+        verify(renderedPostCacheService).putRenderedContent(first, result.get(1L));
+        verify(renderedPostCacheService).putRenderedContent(second, result.get(2L));
+        verify(renderedPostCacheService).markForStoring(first);
+        verify(renderedPostCacheService).markForStoring(second);
+    }
+
+    @Test
+    public void convertPostsToHtmlShouldNotRenderAlreadyRenderedPosts() {
+        service.setRenderingPool(new ForkJoinPool(2));
+        Post stored = post(1L, "[b]stored[/b]");
+        stored.setRenderedContent("stored", service.getRenderingVersion());
+        Post cached = post(2L, "[b]cached[/b]");
+        when(renderedPostCacheService.peekRenderedContent(cached)).thenReturn("cached");
+
+        Map<Long, String> result = service.convertPostsToHtml(new PageImpl<>(Arrays.asList(stored, cached)));
+
+        assertEquals(result.get(1L), "stored");
+        assertEquals(result.get(2L), "cached");
+        verify(renderedPostCacheService, never()).putRenderedContent(stored, "stored");
+        verify(renderedPostCacheService, never()).putRenderedContent(cached, "cached");
+        verify(renderedPostCacheService, never()).getRenderedContent(cached);
+    }
+
+    @Test
+    public void convertPostsToHtmlShouldRenderEachPostInItsOwnRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName("jtalks.org");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        service.setRenderingPool(new ForkJoinPool(2));
+        service.setPreprocessors(Arrays.<TextProcessor>asList(new TextProcessorAdapter() {
+            @Override
+            public CharSequence process(CharSequence source) {
+                String serverName = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                        .getRequest().getServerName();
+                RequestContextHolder.currentRequestAttributes().setAttribute("attribute", source.toString(),
+                        ServletRequestAttributes.SCOPE_REQUEST);
+                return source + " from " + serverName;
+            }
+        }));
+
+        Map<Long, String> result = service.convertPostsToHtml(
+                new PageImpl<>(Arrays.asList(post(1L, "first"), post(2L, "second"))));
+
+        assertEquals(result.get(1L), "first from jtalks.org");
+        assertEquals(result.get(2L), "second from jtalks.org");
+        assertEquals(request.getAttribute("attribute"), null);
+    }
+
+    @Test
+    public void convertPostsToHtmlShouldPreloadDataOfAllPostsInRequestThread() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        service.setRenderingPool(new ForkJoinPool(2));
+        final Thread requestThread = Thread.currentThread();
+        service.setPreprocessors(Arrays.<TextProcessor>asList(new PreloadingPreprocessor() {
+            @Override
+            public Map<String, Object> preload(Collection<String> bbEncodedTexts) {
+                assertEquals(Thread.currentThread(), requestThread);
+                return Collections.<String, Object>singletonMap("preloaded", bbEncodedTexts.size() + " posts");
+            }
+
+            @Override
+            public CharSequence process(CharSequence source) {
+                return source + " of " + RequestContextHolder.currentRequestAttributes().getAttribute("preloaded",
+                        ServletRequestAttributes.SCOPE_REQUEST);
+            }
+        }));
+
+        Map<Long, String> result = service.convertPostsToHtml(
+                new PageImpl<>(Arrays.asList(post(1L, "first"), post(2L, "second"))));
+
+        assertEquals(result.get(1L), "first of 2 posts");
+        assertEquals(result.get(2L), "second of 2 posts");
+    }
+
+    @Test
+    public void convertPostsToHtmlShouldRenderFirstPostOfCodeReviewAsCodeReview() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        service.setRenderingPool(new ForkJoinPool(2));
+        service.setPreprocessors(Arrays.<TextProcessor>asList(new CodeReviewMarkingPreprocessor()));
+        Topic codeReview = new Topic(USER, "code review");
+        codeReview.setType(TopicTypeName.CODE_REVIEW.getName());
+        Post first = post(1L, "first");
+        codeReview.addPost(first);
+        Post answer = post(2L, "answer");
+        codeReview.addPost(answer);
+
+        Map<Long, String> result = service.convertPostsToHtml(new PageImpl<>(Arrays.asList(first, answer)));
+
+        assertEquals(result.get(1L), "first of code review");
+        assertEquals(result.get(2L), "answer");
+    }
+
+    @Test
+    public void renderPostContentShouldStoreHtmlInPost() {
+        Post post = new Post(USER, "[b]Bold text[/b]");
+
+        service.renderPostContent(post);
+
+        assertEquals(post.getRenderedContent(), "<span style=\"font-weight:bold;\">Bold text</span>");
+        assertEquals(post.getRenderedContentVersion(), service.getRenderingVersion());
+    }
+
+    @Test
+    public void renderPostContentShouldRenderFirstPostOfCodeReviewAsCodeReview() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        service.setPreprocessors(Arrays.<TextProcessor>asList(new CodeReviewMarkingPreprocessor()));
+        Topic codeReview = new Topic(USER, "code review");
+        codeReview.setType(TopicTypeName.CODE_REVIEW.getName());
+        Post first = post(1L, "first");
+        codeReview.addPost(first);
+        Post answer = post(2L, "answer");
+        codeReview.addPost(answer);
+
+        service.renderPostContent(first);
+        service.renderPostContent(answer);
+
+        assertEquals(first.getRenderedContent(), "first of code review");
+        assertEquals(answer.getRenderedContent(), "answer");
+    }
+
+    @Test
+    public void renderingVersionShouldChangeWhenProcessorsAreChanged() {
+        String initialVersion = service.getRenderingVersion();
+
+        service.setPostprocessors(Arrays.<TextPostProcessor>asList(new BBForeignLinksPostprocessor()));
+
+        assertFalse(service.getRenderingVersion().equals(initialVersion));
+    }
+
+    @Test
+    public void requestDependentPostprocessorsShouldNotChangeRenderingVersion() {
+        String initialVersion = service.getRenderingVersion();
+
+        service.setRequestDependentPostprocessors(Arrays.<TextPostProcessor>asList(new RequestMarkingPostprocessor()));
+
+        assertEquals(service.getRenderingVersion(), initialVersion);
+    }
+
+    @Test
+    public void requestDependentPostprocessorsShouldBeAppliedToShownHtmlOnly() {
+        service.setRequestDependentPostprocessors(Arrays.<TextPostProcessor>asList(new RequestMarkingPostprocessor()));
+        Post stored = post(1L, "[b]stored[/b]");
+        stored.setRenderedContent("stored", service.getRenderingVersion());
+        Post rendered = post(2L, "[i]rendered[/i]");
+        String renderedHtml = "<span style=\"font-style:italic;\">rendered</span>";
+
+        Map<Long, String> result = service.convertPostsToHtml(new PageImpl<>(Arrays.asList(stored, rendered)));
+        service.renderPostContent(rendered);
+
+        assertEquals(result.get(1L), "stored in request");
+        assertEquals(result.get(2L), renderedHtml + " in request");
+        assertEquals(service.convertPostToHtml(stored), "stored in request");
+        assertEquals(service.convertBbToHtml("[i]rendered[/i]"), renderedHtml + " in request");
+        verify(renderedPostCacheService).putRenderedContent(rendered, renderedHtml);
+        assertEquals(rendered.getRenderedContent(), renderedHtml);
     }
 
     @Test
@@ -46,6 +278,26 @@ public class BBCodeServiceTest {
         assertEquals(service.convertBbToHtml(bbCode), expectedResult);
     }
 
+    @Test(dataProvider = "validBBCodes")
+    public void fusedPreprocessingShouldGiveTheSameResult(String bbCode, String expectedResult) {
+        service.setPreprocessors(Arrays.<TextProcessor>asList(new BBCodeListPreprocessor()));
+        BBCodeService fusedService = new BBCodeService();
+        fusedService.setFusedPreprocessing(true);
+        fusedService.setPreprocessors(Arrays.<TextProcessor>asList(new BBCodeListPreprocessor()));
+
+        assertEquals(fusedService.convertBbToHtml(bbCode), service.convertBbToHtml(bbCode));
+    }
+
+    @Test
+    public void fusedPreprocessingShouldPassTextToProcessorsNotWorkingWithBuffer() {
+        TextProcessor preprocessor = mock(TextProcessor.class);
+        when(preprocessor.process("[*]item")).thenReturn("[b]bold[/b]");
+        service.setFusedPreprocessing(true);
+        service.setPreprocessors(Arrays.asList(new BBCodeListPreprocessor(), preprocessor));
+
+        assertEquals(service.convertBbToHtml("[*]item"), "<span style=\"font-weight:bold;\">bold</span>");
+    }
+
     @Test(dataProvider = "bbCodesToStrip") 
     public void testBBCodesStripping(String bbCode, String expected, String message) {
         assertEquals(service.stripBBCodes(bbCode), expected, message);
@@ -119,4 +371,32 @@ public class BBCodeServiceTest {
                 {"[offtop]Some text[/offtop]", "<div class=\"offtop\"><p>Some text</p></div>"}
         };
     }
+
+    private Post post(long id, String content) {
+        Post post = new Post(USER, content);
+        post.setId(id);
+        return post;
+    }
+
+    /** Marks posts converted as code reviews, see {@link BbCodeReviewProcessor} */
+    private static class CodeReviewMarkingPreprocessor extends TextProcessorAdapter {
+        @Override
+        public CharSequence process(CharSequence source) {
+            Object codeReviewPost = RequestContextHolder.currentRequestAttributes().getAttribute(
+                    BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE, ServletRequestAttributes.SCOPE_REQUEST);
+            return source + (codeReviewPost == null ? "" : " of code review");
+        }
+    }
+
+    /** Marks HTML post-processed for the current request */
+    private static class RequestMarkingPostprocessor implements TextPostProcessor {
+        @Override
+        public String postProcess(String html) {
+            return html + " in request";
+        }
+    }
+
+    private abstract static class PreloadingPreprocessor extends TextProcessorAdapter
+            implements PreloadingTextProcessor {
+    }
 }
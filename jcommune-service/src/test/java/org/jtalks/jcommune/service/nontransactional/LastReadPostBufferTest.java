@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import com.google.common.collect.Table;
+import org.joda.time.DateTime;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LastReadPostBufferTest {
+    private static final DateTime EARLIER = new DateTime(1000L);
+    private static final DateTime LATER = new DateTime(2000L);
+    private static final int MAX_COUNT = 10;
+
+    private LastReadPostBuffer buffer;
+
+    @BeforeMethod
+    public void setUp() {
+        buffer = new LastReadPostBuffer();
+    }
+
+    @Test
+    public void onlyLatestDateShouldBeKeptForUserAndTopic() {
+        buffer.put(1L, 2L, LATER);
+        buffer.put(1L, 2L, EARLIER);
+
+        assertEquals(buffer.getDates(1L).get(2L), LATER);
+        assertEquals(buffer.size(), 1);
+    }
+
+    @Test
+    public void datesOfOtherUsersShouldNotBeReturned() {
+        buffer.put(1L, 2L, EARLIER);
+        buffer.put(3L, 2L, LATER);
+
+        Map<Long, DateTime> dates = buffer.getDates(1L);
+
+        assertEquals(dates.size(), 1);
+        assertEquals(dates.get(2L), EARLIER);
+    }
+
+    @Test
+    public void datesShouldBeReturnedWhileTheyAreWritten() {
+        buffer.put(1L, 2L, EARLIER);
+        buffer.put(1L, 3L, LATER);
+        buffer.takeForWriting(MAX_COUNT);
+        buffer.put(1L, 2L, LATER);
+
+        Map<Long, DateTime> dates = buffer.getDates(1L);
+
+        assertEquals(dates.get(2L), LATER);
+        assertEquals(dates.get(3L), LATER);
+    }
+
+    @Test
+    public void writtenDatesShouldBeForgotten() {
+        buffer.put(1L, 2L, EARLIER);
+
+        Table<Long, Long, DateTime> dates = buffer.takeForWriting(MAX_COUNT);
+        buffer.written();
+
+        assertEquals(dates.get(1L, 2L), EARLIER);
+        assertTrue(buffer.getDates(1L).isEmpty());
+        assertEquals(buffer.size(), 0);
+    }
+
+    @Test
+    public void datesShouldNotBeTakenTwiceWhileTheyAreWritten() {
+        buffer.put(1L, 2L, EARLIER);
+        buffer.takeForWriting(MAX_COUNT);
+        buffer.put(1L, 3L, EARLIER);
+
+        assertTrue(buffer.takeForWriting(MAX_COUNT).isEmpty());
+    }
+
+    @Test
+    public void notWrittenDatesShouldBeTakenNextTime() {
+        buffer.put(1L, 2L, EARLIER);
+        buffer.put(1L, 3L, LATER);
+        buffer.takeForWriting(MAX_COUNT);
+        buffer.put(1L, 2L, LATER);
+
+        buffer.notWritten();
+        Table<Long, Long, DateTime> dates = buffer.takeForWriting(MAX_COUNT);
+
+        assertEquals(dates.size(), 2);
+        assertEquals(dates.get(1L, 2L), LATER);
+        assertEquals(dates.get(1L, 3L), LATER);
+    }
+
+    @Test
+    public void removedDatesOfUserShouldNotBeWritten() {
+        buffer.put(1L, 2L, EARLIER);
+        buffer.put(3L, 2L, EARLIER);
+
+        buffer.remove(1L);
+
+        assertTrue(buffer.getDates(1L).isEmpty());
+        assertEquals(buffer.takeForWriting(MAX_COUNT).rowKeySet().iterator().next(), Long.valueOf(3L));
+    }
+
+    @Test
+    public void restOfDatesShouldBeLeftForNextWrite() {
+        buffer.put(1L, 2L, EARLIER);
+        buffer.put(1L, 3L, EARLIER);
+        buffer.put(4L, 2L, LATER);
+        buffer.put(4L, 3L, LATER);
+        buffer.put(4L, 5L, LATER);
+
+        Table<Long, Long, DateTime> firstDates = buffer.takeForWriting(2);
+        buffer.written();
+        Table<Long, Long, DateTime> secondDates = buffer.takeForWriting(2);
+
+        assertEquals(firstDates.size(), 2);
+        assertEquals(firstDates.rowKeySet().size(), 1, "Dates of one user should be taken together");
+        assertEquals(secondDates.size(), 2);
+        assertEquals(buffer.size(), 3);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.model.entity.QueuedMail;
+import org.jtalks.jcommune.service.MailQueueService;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.jtalks.jcommune.service.nontransactional.MailQueueSender.BATCH_SIZE;
+import static org.jtalks.jcommune.service.nontransactional.MailQueueSender.SESSION_SIZE;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MailQueueSenderTest {
+    private static final String TO = "to@jtalks.org";
+    private static final List<QueuedMail> NO_MAILS = Collections.emptyList();
+
+    @Mock
+    private MailQueueService mailQueueService;
+    @Mock
+    private JavaMailSender mailSender;
+    private ExecutorService sendingPool;
+    private MailQueueSender sender;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        sendingPool = Executors.newFixedThreadPool(2);
+        sender = new MailQueueSender(mailQueueService, mailSender, sendingPool);
+        when(mailSender.createMimeMessage(any(InputStream.class))).thenAnswer(new Answer<MimeMessage>() {
+            @Override
+            public MimeMessage answer(InvocationOnMock invocation) throws Throwable {
+                return new MimeMessage(Session.getInstance(new Properties()),
+                        (InputStream) invocation.getArguments()[0]);
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        sendingPool.shutdownNow();
+    }
+
+    @Test
+    public void sentMailsShouldBeReportedToQueue() {
+        QueuedMail mail = queuedMail(1);
+        when(mailQueueService.takeMailsToSend(BATCH_SIZE)).thenReturn(Arrays.asList(mail));
+
+        sender.sendQueuedMails();
+
+        verify(mailSender).send(any(MimeMessage[].class));
+        verify(mailQueueService).sendingFinished(Arrays.asList(mail), NO_MAILS);
+    }
+
+    @Test
+    public void mailsShouldBeSentOverOneConnectionAndReportedOncePerSession() {
+        List<QueuedMail> mails = new ArrayList<>();
+        for (int i = 0; i < SESSION_SIZE * 2 + 1; i++) {
+            mails.add(queuedMail(i));
+        }
+        when(mailQueueService.takeMailsToSend(BATCH_SIZE)).thenReturn(mails);
+
+        sender.sendQueuedMails();
+
+        verify(mailSender, times(3)).send(any(MimeMessage[].class));
+        verify(mailQueueService).sendingFinished(mails.subList(0, SESSION_SIZE), NO_MAILS);
+        verify(mailQueueService).sendingFinished(mails.subList(SESSION_SIZE, SESSION_SIZE * 2), NO_MAILS);
+        verify(mailQueueService).sendingFinished(mails.subList(SESSION_SIZE * 2, mails.size()), NO_MAILS);
+    }
+
+    @Test
+    public void nothingShouldBeSentIfQueueIsEmpty() {
+        when(mailQueueService.takeMailsToSend(BATCH_SIZE)).thenReturn(new ArrayList<QueuedMail>());
+
+        sender.sendQueuedMails();
+
+        verify(mailSender, never()).send(any(MimeMessage[].class));
+        verify(mailQueueService, never()).sendingFinished(
+                anyCollectionOf(QueuedMail.class), anyCollectionOf(QueuedMail.class));
+    }
+
+    @Test
+    public void mailsShouldBeReportedAsFailedIfServerIsNotAvailable() {
+        QueuedMail mail = queuedMail(1);
+        when(mailQueueService.takeMailsToSend(BATCH_SIZE)).thenReturn(Arrays.asList(mail));
+        doThrow(new MailSendException("Mail server connection failed")).when(mailSender)
+                .send(any(MimeMessage[].class));
+
+        sender.sendQueuedMails();
+
+        verify(mailQueueService).sendingFinished(NO_MAILS, Arrays.asList(mail));
+    }
+
+    @Test
+    public void onlyMailsRejectedByServerShouldBeReportedAsFailed() {
+        QueuedMail rejected = queuedMail(1);
+        QueuedMail accepted = queuedMail(2);
+        when(mailQueueService.takeMailsToSend(BATCH_SIZE)).thenReturn(Arrays.asList(rejected, accepted));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                MimeMessage[] messages = (MimeMessage[]) invocation.getArguments()[0];
+                Map<Object, Exception> failedMessages = new HashMap<>();
+                failedMessages.put(messages[0], new Exception("Mailbox is full"));
+                throw new MailSendException(failedMessages);
+            }
+        }).when(mailSender).send(any(MimeMessage[].class));
+
+        sender.sendQueuedMails();
+
+        verify(mailQueueService).sendingFinished(Arrays.asList(accepted), Arrays.asList(rejected));
+    }
+
+    @Test
+    public void sessionsShouldBeReportedEvenIfAnotherSessionFailedUnexpectedly() {
+        List<QueuedMail> mails = new ArrayList<>();
+        for (int i = 0; i < SESSION_SIZE * 2; i++) {
+            mails.add(queuedMail(i));
+        }
+        when(mailQueueService.takeMailsToSend(BATCH_SIZE)).thenReturn(mails);
+        doThrow(new IllegalStateException("Unexpected")).doNothing().when(mailSender).send(any(MimeMessage[].class));
+
+        sender.sendQueuedMails();
+
+        verify(mailQueueService, times(1)).sendingFinished(
+                anyCollectionOf(QueuedMail.class), anyCollectionOf(QueuedMail.class));
+    }
+
+    private QueuedMail queuedMail(int number) {
+        QueuedMail mail = new QueuedMail(TO, "To: " + TO + "\r\nSubject: subject" + number + "\r\n\r\ntext");
+        mail.setId(number);
+        return mail;
+    }
+}
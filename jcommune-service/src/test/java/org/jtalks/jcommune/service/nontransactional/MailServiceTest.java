@@ -15,20 +15,21 @@
 package org.jtalks.jcommune.service.nontransactional;
 
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
 import org.apache.velocity.tools.generic.EscapeTool;
 import org.jtalks.common.model.entity.Property;
 import org.jtalks.jcommune.model.dao.PropertyDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.plugin.api.web.dto.TopicDto;
+import org.jtalks.jcommune.service.MailQueueService;
 import org.jtalks.jcommune.service.dto.EntityToDtoConverter;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
 import org.jtalks.jcommune.service.exceptions.MailingFailedException;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
-import org.springframework.mail.MailSendException;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletWebRequest;
@@ -42,6 +43,8 @@ import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 
 import static org.jtalks.jcommune.model.entity.JCommuneProperty.SENDING_NOTIFICATIONS_ENABLED;
 import static org.mockito.Mockito.*;
@@ -68,9 +71,12 @@ public class MailServiceTest {
     private MailSender sender;
     @Mock
     private EntityToDtoConverter converter;
+    @Mock
+    private MailQueueService mailQueueService;
     private JCommuneProperty notificationsEnabledProperty = SENDING_NOTIFICATIONS_ENABLED;
     //
     private MailService service;
+    private VelocityEngine velocityEngine;
 
     private JCUser user = new JCUser(USERNAME, TO, PASSWORD);
     private Topic topic = new Topic(user, "title Topic");
@@ -88,7 +94,7 @@ public class MailServiceTest {
         notificationsEnabledProperty.setPropertyDao(propertyDao);
         notificationsEnabledProperty.setName(PROPERTY_NAME);
         //
-        VelocityEngine velocityEngine = new VelocityEngine();
+        velocityEngine = new VelocityEngine();
         velocityEngine.setProperty("resource.loader", "class");
         velocityEngine.setProperty("class.resource.loader.class",
                 "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
@@ -96,7 +102,7 @@ public class MailServiceTest {
         messageSource = new ReloadableResourceBundleMessageSource();
         messageSource.setBasename("classpath:/org/jtalks/jcommune/service/bundle/TemplatesMessages");
         service = new MailService(sender, FROM, velocityEngine, messageSource, notificationsEnabledProperty,
-                new EscapeTool(), converter);
+                new EscapeTool(), converter, mailQueueService);
         MimeMessage message = new MimeMessage((Session) null);
         when(sender.createMimeMessage()).thenReturn(message);
         topicDto.setTopicUrl("/topics/" + topicId);
@@ -133,7 +139,7 @@ public class MailServiceTest {
     public void passwordRecoveryMailShouldNotBeSentIfNotificationsAreDisabled() throws Exception {
         disableEmailNotifications();
         service.sendPasswordRecoveryMail(user, PASSWORD);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
@@ -149,6 +155,51 @@ public class MailServiceTest {
         assertTrue(this.getMimeMailBody().contains("http://coolsite.com:1234/forum/posts/1"));
     }
 
+    @Test
+    public void subscriptionUpdateShouldHoldLinksBuiltFromRequest() {
+        Post post = new Post(user, "content");
+        post.setId(1);
+        topic.addPost(post);
+
+        SubscriptionUpdate update = service.createSubscriptionUpdate(topic);
+
+        assertEquals(update.getKey(), "topic" + topicId);
+        assertEquals(update.getTitle(), "title Topic");
+        assertEquals(update.getLink(), "http://coolsite.com:1234/forum/posts/1");
+        assertEquals(update.getLinkLabel(), "http://coolsite.com/forum/posts/1");
+        assertEquals(update.getUpdatesCount(), 1);
+    }
+
+    @Test
+    public void subscriptionDigestShouldListAllUpdatesWithoutRequest() throws Exception {
+        enableEmailNotifications();
+        Post post = new Post(user, "content");
+        post.setId(1);
+        topic.addPost(post);
+        SubscriptionUpdate topicUpdate = service.createSubscriptionUpdate(topic);
+        SubscriptionUpdate branchUpdate = service.createSubscriptionUpdate(branch);
+        RequestContextHolder.resetRequestAttributes();
+
+        service.sendSubscriptionDigest(user, Arrays.asList(topicUpdate, branchUpdate));
+
+        this.checkMailCredentials();
+        String body = this.getMimeMailBody();
+        assertTrue(body.contains("http://coolsite.com:1234/forum/posts/1"));
+        assertTrue(body.contains("http://coolsite.com:1234/forum/branches/" + branchId));
+        assertTrue(body.contains("title Topic"));
+        assertTrue(body.contains("title Branch"));
+    }
+
+    @Test
+    public void subscriptionDigestShouldNotBeSentIfNotificationsAreDisabled() throws Exception {
+        disableEmailNotifications();
+        SubscriptionUpdate update = service.createSubscriptionUpdate(branch);
+
+        service.sendSubscriptionDigest(user, Arrays.asList(update));
+
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
+    }
+
     @Test
     public void topicUpdatesEmailShouldNotBeSentIfNotificationsAreDisabled() throws Exception {
         disableEmailNotifications();
@@ -157,7 +208,7 @@ public class MailServiceTest {
         topic.addPost(post);
 
         service.sendUpdatesOnSubscription(user, topic);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
@@ -186,7 +237,7 @@ public class MailServiceTest {
     public void branchUpdateEmailShouldNotBeSentIfNotificationsAreDisabled() throws Exception {
         disableEmailNotifications();
         service.sendUpdatesOnSubscription(user, branch);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
@@ -217,7 +268,7 @@ public class MailServiceTest {
         message.setId(1);
 
         service.sendReceivedPrivateMessageNotification(user, message);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
@@ -234,14 +285,14 @@ public class MailServiceTest {
         disableEmailNotifications();
         JCUser user = new JCUser(USERNAME, TO, PASSWORD);
         service.sendAccountActivationMail(user);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
-    public void testSendActivationMailFail() {
+    public void testSendActivationMailFail() throws Exception {
         enableEmailNotifications();
-        Exception fail = new MailSendException("");
-        doThrow(fail).when(sender).send(Matchers.<SimpleMailMessage>any());
+        Exception fail = new MailingFailedException(new MessagingException());
+        doThrow(fail).when(mailQueueService).enqueue(Matchers.<MimeMessage>any());
 
         service.sendAccountActivationMail(new JCUser(USERNAME, TO, PASSWORD));
     }
@@ -249,8 +300,8 @@ public class MailServiceTest {
     @Test(expectedExceptions = MailingFailedException.class)
     public void testRestorePasswordFail() throws NotFoundException, MailingFailedException {
         enableEmailNotifications();
-        Exception fail = new MailSendException("");
-        doThrow(fail).when(sender).send(Matchers.<MimeMessage>any());
+        Exception fail = new MailingFailedException(new MessagingException());
+        doThrow(fail).when(mailQueueService).enqueue(Matchers.<MimeMessage>any());
 
         service.sendPasswordRecoveryMail(user, PASSWORD);
     }
@@ -258,8 +309,8 @@ public class MailServiceTest {
     @Test
     public void testTopicUpdateNotificationFail() throws NotFoundException {
         enableEmailNotifications();
-        Exception fail = new MailSendException("");
-        doThrow(fail).when(sender).send(Matchers.<SimpleMailMessage>any());
+        Exception fail = new MailingFailedException(new MessagingException());
+        doThrow(fail).when(mailQueueService).enqueue(Matchers.<MimeMessage>any());
 
         service.sendUpdatesOnSubscription(user, topic);
     }
@@ -267,17 +318,17 @@ public class MailServiceTest {
     @Test
     public void testBranchUpdateNotificationFail() throws NotFoundException {
         enableEmailNotifications();
-        Exception fail = new MailSendException("");
-        doThrow(fail).when(sender).send(Matchers.<SimpleMailMessage>any());
+        Exception fail = new MailingFailedException(new MessagingException());
+        doThrow(fail).when(mailQueueService).enqueue(Matchers.<MimeMessage>any());
 
         service.sendUpdatesOnSubscription(user, branch);
     }
 
     @Test
-    public void testSendReceivedPrivateMessageNotificationFail() {
+    public void testSendReceivedPrivateMessageNotificationFail() throws Exception {
         enableEmailNotifications();
-        Exception fail = new MailSendException("");
-        doThrow(fail).when(sender).send(Matchers.<SimpleMailMessage>any());
+        Exception fail = new MailingFailedException(new MessagingException());
+        doThrow(fail).when(mailQueueService).enqueue(Matchers.<MimeMessage>any());
 
         service.sendReceivedPrivateMessageNotification(user, new PrivateMessage(null, null, null, null));
     }
@@ -298,14 +349,14 @@ public class MailServiceTest {
     public void topicMovedMailShouldNotBeSentIfNotificationsAreDisabled() throws Exception {
         disableEmailNotifications();
         service.sendTopicMovedMail(user, topic);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
     public void testSendTopicMovedMailFailed() throws Exception {
         enableEmailNotifications();
-        Exception fail = new MailSendException("");
-        doThrow(fail).when(sender).send(Matchers.<SimpleMailMessage>any());
+        Exception fail = new MailingFailedException(new MessagingException());
+        doThrow(fail).when(mailQueueService).enqueue(Matchers.<MimeMessage>any());
 
         service.sendTopicMovedMail(user, topic);
         
@@ -335,13 +386,24 @@ public class MailServiceTest {
         
         service.sendUserMentionedNotification(user, postId);
         
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     private String getMimeMailBody() throws IOException, MessagingException {
-        return ((MimeMultipart) ((MimeMultipart) ((MimeMultipart) captor.getValue().getContent()).getBodyPart(0).
-                getDataHandler().getContent()).getBodyPart(0).getDataHandler().getContent()).getBodyPart(0).
-                getDataHandler().getContent().toString();//sorry
+        return getMimeMailBody(captor.getValue());
+    }
+
+    private String getMimeMailBody(MimeMessage message) throws IOException, MessagingException {
+        return getMimeMailAlternative(message).getBodyPart(0).getDataHandler().getContent().toString();
+    }
+
+    private String getMimeMailHtml(MimeMessage message) throws IOException, MessagingException {
+        return getMimeMailAlternative(message).getBodyPart(1).getDataHandler().getContent().toString();
+    }
+
+    private MimeMultipart getMimeMailAlternative(MimeMessage message) throws IOException, MessagingException {
+        return (MimeMultipart) ((MimeMultipart) ((MimeMultipart) message.getContent()).getBodyPart(0).
+                getDataHandler().getContent()).getBodyPart(0).getDataHandler().getContent();//sorry
     }
 
     private String getMimeMailSubject() throws IOException, MessagingException {
@@ -349,7 +411,7 @@ public class MailServiceTest {
     }
 
     private void checkMailCredentials() throws MessagingException {
-        verify(sender).send(captor.capture());
+        verify(mailQueueService).enqueue(captor.capture());
         assertEquals(captor.getValue().getRecipients(Message.RecipientType.TO).length, 1);
         InternetAddress actualTo = (InternetAddress) captor.getValue().getRecipients(Message.RecipientType.TO)[0];
         assertEquals(actualTo.getAddress(), TO);
@@ -409,7 +471,7 @@ public class MailServiceTest {
 
         service.sendRemovingTopicMail(user, topic);
 
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
@@ -419,7 +481,7 @@ public class MailServiceTest {
 
         service.sendRemovingTopicMail(user, topic, "admin");
 
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 
     @Test
@@ -478,11 +540,58 @@ public class MailServiceTest {
                 + "/unsubscribe"));
     }
 
+    @Test
+    public void mailAboutTheSameUpdateShouldBeRenderedOnceForAllRecipients() throws Exception {
+        enableEmailNotifications();
+        VelocityEngine engine = spy(velocityEngine);
+        service = new MailService(sender, FROM, engine, messageSource, notificationsEnabledProperty,
+                new EscapeTool(), converter, mailQueueService);
+        when(sender.createMimeMessage()).thenReturn(new MimeMessage((Session) null), new MimeMessage((Session) null));
+        JCUser first = new JCUser("<first>", TO, PASSWORD);
+        JCUser second = new JCUser("second & co", TO, PASSWORD);
+
+        service.sendTopicMovedMail(first, topic, "admin");
+        service.sendTopicMovedMail(second, topic, "admin");
+
+        verify(engine, times(2)).mergeTemplate(anyString(), anyString(), any(Context.class), any(Writer.class));
+        verify(mailQueueService, times(2)).enqueue(captor.capture());
+        assertTrue(getMimeMailBody(captor.getAllValues().get(0)).contains("<first>!"));
+        assertTrue(getMimeMailHtml(captor.getAllValues().get(0)).contains("&lt;first&gt;!"));
+        assertTrue(getMimeMailBody(captor.getAllValues().get(1)).contains("second & co!"));
+        assertTrue(getMimeMailHtml(captor.getAllValues().get(1)).contains("second &amp; co!"));
+        assertTrue(getMimeMailBody(captor.getAllValues().get(1)).contains("admin"));
+    }
+
+    @Test
+    public void mailAboutDifferentUpdatesShouldBeRenderedSeparately() throws Exception {
+        enableEmailNotifications();
+        when(sender.createMimeMessage()).thenReturn(new MimeMessage((Session) null), new MimeMessage((Session) null));
+        Topic another = new Topic(user, "another Topic");
+
+        service.sendRemovingTopicMail(user, topic, "admin");
+        service.sendRemovingTopicMail(user, another, "admin");
+
+        verify(mailQueueService, times(2)).enqueue(captor.capture());
+        assertTrue(getMimeMailBody(captor.getAllValues().get(0)).contains("title Topic"));
+        assertTrue(getMimeMailBody(captor.getAllValues().get(1)).contains("another Topic"));
+    }
+
+    @Test
+    public void allTemplatesShouldBeCompiledOnStartup() throws Exception {
+        VelocityEngine engine = spy(velocityEngine);
+        service = new MailService(sender, FROM, engine, messageSource, notificationsEnabledProperty,
+                new EscapeTool(), converter, mailQueueService);
+
+        service.init();
+
+        verify(engine, times(20)).getTemplate(anyString(), eq("UTF-8"));
+    }
+
     @Test
     public void topicCreationMailShouldNotSentWhenForumNotificationsAreDisabled() throws Exception {
         disableEmailNotifications();
         branch.addTopic(topic);
         service.sendTopicCreationMail(user, topic);
-        verify(sender, never()).send(any(MimeMessage.class));
+        verify(mailQueueService, never()).enqueue(any(MimeMessage.class));
     }
 }
@@ -271,9 +271,9 @@ public class MentionedUsersTest {
         String cyrillicCharsUserNameWithSpaces = "П е т р о в";
 
         JCUser cyrillicCharsUser = getUser(cyrillicCharsUserName, 100L);
-        when(userDao.getByUsername(cyrillicCharsUserName)).thenReturn(cyrillicCharsUser);
         JCUser notifiedMentionedUser = getUser(cyrillicCharsUserNameWithSpaces, 101L);
-        when(userDao.getByUsername(cyrillicCharsUserNameWithSpaces)).thenReturn(notifiedMentionedUser);
+        when(userDao.getByUsernames(asSet(cyrillicCharsUserName, cyrillicCharsUserNameWithSpaces)))
+                .thenReturn(asList(cyrillicCharsUser, notifiedMentionedUser));
         //
         String cyrillicCharsUserProfile = "/forum/users/" + cyrillicCharsUser.getId();
         String cyrillicCharsUserWithSpaceProfile = "/forum/users/" + notifiedMentionedUser.getId();
@@ -298,9 +298,9 @@ public class MentionedUsersTest {
         String userNameWithCloseBracket = "yak";
 
         JCUser userWithOpenBracketInName = getUser(userNameWithOpenBracket, 100L);
-        when(userDao.getByUsername(userNameWithOpenBracket)).thenReturn(userWithOpenBracketInName);
         JCUser userWithCloseBracketInName = getUser(userNameWithCloseBracket, 101L);
-        when(userDao.getByUsername(userNameWithCloseBracket)).thenReturn(userWithCloseBracketInName);
+        when(userDao.getByUsernames(asSet(userNameWithOpenBracket, userNameWithCloseBracket)))
+                .thenReturn(asList(userWithOpenBracketInName, userWithCloseBracketInName));
         //
         String withOpenBracketUserProfile = "/forum/users/" + userWithOpenBracketInName.getId();
         String withCloseBracketUserProfile = "/forum/users/" + userWithCloseBracketInName.getId();
@@ -325,9 +325,9 @@ public class MentionedUsersTest {
         String userNameWithBackSlash = "\\yak";
 
         JCUser userWithSlashInName = getUser(userNameWithSlash, 100L);
-        when(userDao.getByUsername(userNameWithSlash)).thenReturn(userWithSlashInName);
         JCUser userWithBackSlashInName = getUser(userNameWithBackSlash, 101L);
-        when(userDao.getByUsername(userNameWithBackSlash)).thenReturn(userWithBackSlashInName);
+        when(userDao.getByUsernames(asSet(userNameWithSlash, userNameWithBackSlash)))
+                .thenReturn(asList(userWithSlashInName, userWithBackSlashInName));
         //
         String withSlashUserProfile = "/forum/users/" + userWithSlashInName.getId();
         String withBackSlashUserProfile = "/forum/users/" + userWithBackSlashInName.getId();
@@ -352,9 +352,9 @@ public class MentionedUsersTest {
         String userNameWithGreater = ">yak";
 
         JCUser userWithLowerInName = getUser(userNameWithLower, 100L);
-        when(userDao.getByUsername(userNameWithLower)).thenReturn(userWithLowerInName);
         JCUser userWithGreaterInName = getUser(userNameWithGreater, 101L);
-        when(userDao.getByUsername(userNameWithGreater)).thenReturn(userWithGreaterInName);
+        when(userDao.getByUsernames(asSet(userNameWithLower, userNameWithGreater)))
+                .thenReturn(asList(userWithLowerInName, userWithGreaterInName));
         //
         String withLowerUserProfile = "/forum/users/" + userWithLowerInName.getId();
         String withGreaterUserProfile = "/forum/users/" + userWithGreaterInName.getId();
@@ -379,9 +379,9 @@ public class MentionedUsersTest {
         String userNameWithPipeSymbol = "|yak";
 
         JCUser userWithPercentsInName = getUser(userNameWithPercents, 100L);
-        when(userDao.getByUsername(userNameWithPercents)).thenReturn(userWithPercentsInName);
         JCUser userWithPipeSymbolInName = getUser(userNameWithPipeSymbol, 101L);
-        when(userDao.getByUsername(userNameWithPipeSymbol)).thenReturn(userWithPipeSymbolInName);
+        when(userDao.getByUsernames(asSet(userNameWithPercents, userNameWithPipeSymbol)))
+                .thenReturn(asList(userWithPercentsInName, userWithPipeSymbolInName));
         //
         String withPercentsUserProfile = "/forum/users/" + userWithPercentsInName.getId();
         String withPipeSymbolUserProfile = "/forum/users/" + userWithPipeSymbolInName.getId();
@@ -406,9 +406,9 @@ public class MentionedUsersTest {
         String cyrillicCharsUserNameWithSpaces = "%D0%9F %D0%B5 %D1%82 %D1%80 %D0%BE %D0%B2";
 
         JCUser cyrillicCharsUser = getUser("Иванов", 100L);
-        when(userDao.getByUsername(cyrillicCharsUser.getUsername())).thenReturn(cyrillicCharsUser);
         JCUser cyrillicCharsWithSpacesUser = getUser("П е т р о в", 101L);
-        when(userDao.getByUsername(cyrillicCharsWithSpacesUser.getUsername())).thenReturn(cyrillicCharsWithSpacesUser);
+        when(userDao.getByUsernames(asSet(cyrillicCharsUser.getUsername(), cyrillicCharsWithSpacesUser.getUsername())))
+                .thenReturn(asList(cyrillicCharsUser, cyrillicCharsWithSpacesUser));
         //
         String cyrillicCharsUserProfile = "/forum/users/" + cyrillicCharsUser.getId();
         String cyrillicCharsUserWithSpaceProfile = "/forum/users/" + cyrillicCharsWithSpacesUser.getId();
@@ -433,9 +433,9 @@ public class MentionedUsersTest {
         String userNameWithCloseBracket = "@w0956756wo@yak";
 
         JCUser userWithOpenBracketInName = getUser("[yak", 100L);
-        when(userDao.getByUsername("[yak")).thenReturn(userWithOpenBracketInName);
         JCUser userWithCloseBracketInName = getUser("]yak", 101L);
-        when(userDao.getByUsername("]yak")).thenReturn(userWithCloseBracketInName);
+        when(userDao.getByUsernames(asSet("[yak", "]yak")))
+                .thenReturn(asList(userWithOpenBracketInName, userWithCloseBracketInName));
         //
         String withOpenBracketUserProfile = "/forum/users/" + userWithOpenBracketInName.getId();
         String withCloseBracketUserProfile = "/forum/users/" + userWithCloseBracketInName.getId();
@@ -460,9 +460,9 @@ public class MentionedUsersTest {
         String userNameWithGreater = ">yak";
 
         JCUser userWithLowerInName = getUser("<yak", 100L);
-        when(userDao.getByUsername("<yak")).thenReturn(userWithLowerInName);
         JCUser userWithGreaterInName = getUser(">yak", 101L);
-        when(userDao.getByUsername(">yak")).thenReturn(userWithGreaterInName);
+        when(userDao.getByUsernames(asSet("<yak", ">yak")))
+                .thenReturn(asList(userWithLowerInName, userWithGreaterInName));
         //
         String withLowerUserProfile = "/forum/users/" + userWithLowerInName.getId();
         String withGreaterUserProfile = "/forum/users/" + userWithGreaterInName.getId();
@@ -487,9 +487,9 @@ public class MentionedUsersTest {
         String userNameWithBackSlash = "14@123435vggv4fyak";
 
         JCUser userWithSlashInName = getUser(userNameWithSlash, 100L);
-        when(userDao.getByUsername(userNameWithSlash)).thenReturn(userWithSlashInName);
         JCUser userWithBackSlashInName = getUser("\\yak", 101L);
-        when(userDao.getByUsername("\\yak")).thenReturn(userWithBackSlashInName);
+        when(userDao.getByUsernames(asSet(userNameWithSlash, "\\yak")))
+                .thenReturn(asList(userWithSlashInName, userWithBackSlashInName));
         //
         String withSlashUserProfile = "/forum/users/" + userWithSlashInName.getId();
         String withBackSlashUserProfile = "/forum/users/" + userWithBackSlashInName.getId();
@@ -505,4 +505,93 @@ public class MentionedUsersTest {
 
         assertEquals(actualAfterProcess, expectedAfterProcess);
     }
+
+    @Test
+    public void processShouldFindAllMentionedUsersWithOneQuery() {
+        setupRequestAttributes();
+        JCUser first = getUser("first", 1L);
+        JCUser second = getUser("second", 2L);
+        when(userDao.getByUsernames(asSet("first", "second", "third"))).thenReturn(asList(first, second));
+
+        String actualAfterProcess = MentionedUsers.parse(
+                "[user]first[/user], [user notified=true]second[/user], [user]third[/user], [user]first[/user]")
+                .getTextWithProcessedUserTags(userDao);
+
+        assertEquals(actualAfterProcess,
+                "[user=/forum/users/1]first[/user], [user=/forum/users/2]second[/user], third, "
+                        + "[user=/forum/users/1]first[/user]");
+        verify(userDao).getByUsernames(asSet("first", "second", "third"));
+        verify(userDao, never()).getByUsername(anyString());
+    }
+
+    @Test
+    public void processShouldNotAttachProfileLinkToUsersWithNameInDifferentCase() {
+        when(userDao.getByUsernames(asSet("Shogun"))).thenReturn(asList(getUser("shogun", 1L)));
+
+        String actualAfterProcess = MentionedUsers.parse("[user]Shogun[/user]").getTextWithProcessedUserTags(userDao);
+
+        assertEquals(actualAfterProcess, "Shogun");
+    }
+
+    @Test
+    public void processShouldNotQueryUsersIfNobodyIsMentioned() {
+        String text = "[b]text[/b] without [user=/forum/users/1]mentioning[/user]";
+
+        assertEquals(MentionedUsers.parse(text).getTextWithProcessedUserTags(userDao), text);
+        verifyZeroInteractions(userDao);
+    }
+
+    @Test
+    public void mentionedUserIdsShouldBeFoundInAllPostsWithOneQuery() {
+        when(userDao.getByUsernames(asSet("first", "second", "third")))
+                .thenReturn(asList(getUser("first", 1L), getUser("second", 2L)));
+
+        Map<String, Long> userIds = MentionedUsers.getMentionedUserIds(
+                asList("[user]first[/user], [user]third[/user]", "[user notified=true]second[/user]"), userDao, null);
+
+        assertEquals(userIds.size(), 2);
+        assertEquals(userIds.get("first"), Long.valueOf(1L));
+        assertEquals(userIds.get("second"), Long.valueOf(2L));
+        verify(userDao).getByUsernames(asSet("first", "second", "third"));
+    }
+
+    @Test
+    public void processShouldUseAlreadyLoadedUserIds() {
+        setupRequestAttributes();
+        Map<String, Long> userIds = Collections.singletonMap("first", 1L);
+
+        String actualAfterProcess = MentionedUsers.parse("[user]first[/user] and [user]second[/user]")
+                .getTextWithProcessedUserTags(userIds);
+
+        assertEquals(actualAfterProcess, "[user=/forum/users/1]first[/user] and second");
+        verifyZeroInteractions(userDao);
+    }
+
+    @Test
+    public void extractMentionedUserShouldNotRecognizeTagsBrokenWithLineBreak() {
+        String text = "[user]broken\n[/user] [user]not closed [user notified=true]whole[/user]";
+
+        Set<String> extractedUserNames = MentionedUsers.parse(text).extractAllMentionedUsers(text);
+
+        assertEquals(extractedUserNames, asSet("not closed whole"));
+    }
+
+    @Test
+    public void namesInTagsShouldIncludeNameEncodedByEditor() {
+        assertEquals(MentionedUsers.getNamesInTags("user"), asSet("user"));
+        assertEquals(MentionedUsers.getNamesInTags("[yak"), asSet("[yak", "@ywdffgg434y@yak"));
+        assertEquals(MentionedUsers.getNamesInTags("П е т р о в"),
+                asSet("П е т р о в", "%D0%9F %D0%B5 %D1%82 %D1%80 %D0%BE %D0%B2"));
+    }
+
+    @Test
+    public void notifyNewlyMentionedUsersShouldMarkAllUsersWithOneUpdate() {
+        Post mentioningPost = getPost(1L, "[user]first[/user] [user notified=true]second[/user] [user]third[/user]");
+
+        MentionedUsers.parse(mentioningPost).markUsersAsAlreadyNotified(postDao);
+
+        assertEquals(mentioningPost.getPostContent(),
+                "[user notified=true]first[/user] [user notified=true]second[/user] [user notified=true]third[/user]");
+        verify(postDao).saveOrUpdate(mentioningPost);
+    }
 }
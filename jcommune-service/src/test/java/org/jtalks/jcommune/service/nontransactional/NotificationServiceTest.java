@@ -19,8 +19,10 @@ import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.plugin.api.PluginLoader;
+import org.jtalks.jcommune.service.SubscriptionDigestService;
 import org.jtalks.jcommune.service.SubscriptionService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
 import org.jtalks.jcommune.service.exceptions.MailingFailedException;
 import org.mockito.Mock;
 import org.testng.annotations.BeforeMethod;
@@ -45,6 +47,8 @@ public class NotificationServiceTest {
     private SubscriptionService subscriptionService;
     @Mock
     private PluginLoader pluginLoader;
+    @Mock
+    private SubscriptionDigestService subscriptionDigestService;
     private NotificationService service;
     private final long TOPIC_ID = 1;
 
@@ -63,7 +67,8 @@ public class NotificationServiceTest {
                 userService,
                 mailService,
                 subscriptionService,
-                pluginLoader);
+                pluginLoader,
+                subscriptionDigestService);
         topic = new Topic(user1, "title");
         topic.setId(TOPIC_ID);
         branch = new Branch("name", "description");
@@ -222,4 +227,40 @@ public class NotificationServiceTest {
         verify(mailService, times(1)).sendTopicCreationMail(user1, topic);
         verifyNoMoreInteractions(mailService);
     }
+
+    @Test
+    public void updateShouldBeAddedToDigestIfSubscriberPrefersDigests() {
+        user1.setSubscriptionDigestEnabled(true);
+        topic.getSubscribers().add(user1);
+        topic.getSubscribers().add(user2);
+        when(subscriptionService.getAllowedSubscribers(topic)).thenReturn(topic.getSubscribers());
+        SubscriptionUpdate update =
+                new SubscriptionUpdate("topic1", "title", "http://jtalks.org/posts/1", "jtalks.org/posts/1");
+        when(mailService.createSubscriptionUpdate(topic)).thenReturn(update);
+
+        service.subscribedEntityChanged(topic);
+
+        verify(subscriptionDigestService).addUpdate(user1, update);
+        verify(mailService, never()).sendUpdatesOnSubscription(user1, topic);
+        verify(mailService).sendUpdatesOnSubscription(user2, topic);
+    }
+
+    @Test
+    public void updateShouldBeCreatedOnceForAllSubscribersPreferringDigests() {
+        user1.setSubscriptionDigestEnabled(true);
+        user2.setSubscriptionDigestEnabled(true);
+        branch.getSubscribers().add(user1);
+        branch.getSubscribers().add(user2);
+        when(subscriptionService.getAllowedSubscribers(branch)).thenReturn(branch.getSubscribers());
+        SubscriptionUpdate update =
+                new SubscriptionUpdate("branch1", "name", "http://jtalks.org/branches/1", "jtalks.org/branches/1");
+        when(mailService.createSubscriptionUpdate(branch)).thenReturn(update);
+
+        service.subscribedEntityChanged(branch);
+
+        verify(mailService, times(1)).createSubscriptionUpdate(branch);
+        verify(subscriptionDigestService).addUpdate(user1, update);
+        verify(subscriptionDigestService).addUpdate(user2, update);
+        verify(mailService, never()).sendUpdatesOnSubscription(any(JCUser.class), eq(branch));
+    }
 }
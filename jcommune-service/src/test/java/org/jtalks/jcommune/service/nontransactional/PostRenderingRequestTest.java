@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.service.bb2htmlprocessors.BbCodeReviewProcessor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+public class PostRenderingRequestTest {
+    private static final Map<String, Object> NO_PRELOADED_ATTRIBUTES = Collections.emptyMap();
+
+    private MockHttpServletRequest request;
+
+    @BeforeMethod
+    public void setUp() {
+        request = new MockHttpServletRequest();
+    }
+
+    @Test
+    public void attributesShouldBeReadFromOriginalRequest() {
+        request.setAttribute("attribute", "value");
+
+        assertEquals(new PostRenderingRequest(request, false, NO_PRELOADED_ATTRIBUTES).getAttribute("attribute"),
+                "value");
+    }
+
+    @Test
+    public void changedAttributesShouldNotBeVisibleInOriginalRequest() {
+        request.setAttribute("removed", "value");
+        PostRenderingRequest renderingRequest = new PostRenderingRequest(request, false, NO_PRELOADED_ATTRIBUTES);
+
+        renderingRequest.setAttribute("added", "value");
+        renderingRequest.removeAttribute("removed");
+
+        assertEquals(renderingRequest.getAttribute("added"), "value");
+        assertNull(renderingRequest.getAttribute("removed"));
+        assertEquals(Collections.list(renderingRequest.getAttributeNames()), Collections.singletonList("added"));
+        assertNull(request.getAttribute("added"));
+        assertEquals(request.getAttribute("removed"), "value");
+    }
+
+    @Test
+    public void preloadedAttributesShouldBeVisibleOnlyInRenderingRequest() {
+        Map<String, Object> preloadedAttributes = Collections.<String, Object>singletonMap("preloaded", "value");
+
+        PostRenderingRequest renderingRequest = new PostRenderingRequest(request, false, preloadedAttributes);
+
+        assertEquals(renderingRequest.getAttribute("preloaded"), "value");
+        assertNull(request.getAttribute("preloaded"));
+    }
+
+    @Test
+    public void codeReviewPostShouldBeRenderedAsCodeReview() {
+        PostRenderingRequest renderingRequest = new PostRenderingRequest(request, true, NO_PRELOADED_ATTRIBUTES);
+
+        assertEquals(renderingRequest.getAttribute(BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE), "true");
+    }
+
+    @Test
+    public void otherPostsShouldNotBeRenderedAsCodeReviewEvenIfPreviousPostWas() {
+        request.setAttribute(BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE, "true");
+
+        PostRenderingRequest renderingRequest = new PostRenderingRequest(request, false, NO_PRELOADED_ATTRIBUTES);
+
+        assertNull(renderingRequest.getAttribute(BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE));
+        assertFalse(Collections.list(renderingRequest.getAttributeNames())
+                .contains(BbCodeReviewProcessor.CODE_REVIEW_POST_ATTRIBUTE));
+    }
+}
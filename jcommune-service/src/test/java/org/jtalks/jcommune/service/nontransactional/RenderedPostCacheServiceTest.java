@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.joda.time.DateTimeUtils;
+import org.jtalks.jcommune.model.dao.PostDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class RenderedPostCacheServiceTest {
+    private static final String HTML = "<b>html</b>";
+
+    private CacheManager cacheManager;
+    private RenderedPostCacheService cacheService;
+    private PostDao postDao;
+    private Post post;
+
+    @BeforeMethod
+    public void setUp() {
+        cacheManager = CacheManager.create();
+        Cache cache = new Cache(new CacheConfiguration("renderedPostsCacheTest", 2).statistics(true));
+        cacheManager.addCache(cache);
+        postDao = mock(PostDao.class);
+        cacheService = new RenderedPostCacheService(cache, postDao);
+        post = post(1L);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+        cacheManager.removeCache("renderedPostsCacheTest");
+    }
+
+    @Test
+    public void renderedContentShouldBeReturnedForTheSameVersionOfPost() {
+        cacheService.putRenderedContent(post, HTML);
+
+        assertEquals(cacheService.getRenderedContent(post), HTML);
+        assertEquals(cacheService.getHitCount(), 1);
+        assertEquals(cacheService.getMissCount(), 0);
+    }
+
+    @Test
+    public void renderedContentShouldNotBeReturnedIfPostWasModified() {
+        cacheService.putRenderedContent(post, HTML);
+        DateTimeUtils.setCurrentMillisFixed(post.getCreationDate().plusMinutes(1).getMillis());
+        post.updateModificationDate();
+
+        assertNull(cacheService.getRenderedContent(post));
+        assertEquals(cacheService.getMissCount(), 1);
+    }
+
+    @Test
+    public void renderedContentShouldNotBeReturnedIfPostWasNotRendered() {
+        assertNull(cacheService.getRenderedContent(post));
+        assertEquals(cacheService.getMissCount(), 1);
+    }
+
+    @Test
+    public void invalidatedContentShouldNotBeReturned() {
+        cacheService.putRenderedContent(post, HTML);
+
+        cacheService.invalidate(post);
+
+        assertNull(cacheService.getRenderedContent(post));
+        assertEquals(cacheService.getInvalidationCount(), 1);
+        assertEquals(cacheService.getSize(), 0);
+    }
+
+    @Test
+    public void invalidationOfNotCachedPostShouldNotBeCounted() {
+        cacheService.invalidate(post);
+
+        assertEquals(cacheService.getInvalidationCount(), 0);
+    }
+
+    @Test
+    public void evictionsShouldBeCountedWhenCacheIsFull() {
+        cacheService.putRenderedContent(post(1L), HTML);
+        cacheService.putRenderedContent(post(2L), HTML);
+        cacheService.putRenderedContent(post(3L), HTML);
+
+        assertEquals(cacheService.getSize(), 2);
+        assertEquals(cacheService.getEvictionCount(), 1);
+    }
+
+    @Test
+    public void htmlOfPostsMentioningUserShouldBeDroppedFromDatabaseAndCache() {
+        Post mentioning = post(2L);
+        cacheService.putRenderedContent(post, HTML);
+        cacheService.putRenderedContent(mentioning, HTML);
+        cacheService.markForStoring(mentioning);
+        when(postDao.getIdsOfPostsMentioning(MentionedUsers.getNamesInTags("name"))).thenReturn(Arrays.asList(2L));
+
+        cacheService.invalidateMentionsOf("name");
+
+        verify(postDao).dropRenderedContent(Arrays.asList(2L));
+        assertEquals(cacheService.getRenderedContent(post), HTML);
+        assertNull(cacheService.getRenderedContent(mentioning));
+        assertEquals(cacheService.takePostsToStore(10), Collections.emptyList());
+        assertEquals(cacheService.getInvalidationCount(), 1);
+    }
+
+    @Test
+    public void nothingShouldBeDroppedIfNoPostsMentionUser() {
+        when(postDao.getIdsOfPostsMentioning(MentionedUsers.getNamesInTags("name")))
+                .thenReturn(Collections.<Long>emptyList());
+
+        cacheService.invalidateMentionsOf("name");
+
+        verify(postDao, never()).dropRenderedContent(anyCollectionOf(Long.class));
+    }
+
+    private Post post(long id) {
+        Post post = new Post(new JCUser("name", "mail", "pass"), "[b]html[/b]");
+        post.setId(id);
+        return post;
+    }
+}
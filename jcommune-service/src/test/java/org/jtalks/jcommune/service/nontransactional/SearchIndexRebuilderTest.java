@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import org.jtalks.jcommune.service.SearchIndexService;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress.State;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class SearchIndexRebuilderTest {
+    private static final List<Long> TOPIC_IDS = Arrays.asList(1L, 2L, 3L, 4L, 5L);
+
+    @Mock
+    private SearchIndexService indexService;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        when(indexService.getTopicIdsToIndex(anyLong(), anyInt())).thenAnswer(new Answer<List<Long>>() {
+            @Override
+            public List<Long> answer(InvocationOnMock invocation) {
+                long lastIndexedTopicId = (Long) invocation.getArguments()[0];
+                int count = (Integer) invocation.getArguments()[1];
+                List<Long> ids = new ArrayList<>();
+                for (Long id : TOPIC_IDS) {
+                    if (id > lastIndexedTopicId && ids.size() < count) {
+                        ids.add(id);
+                    }
+                }
+                return ids;
+            }
+        });
+        when(indexService.countTopicsToIndex(0)).thenReturn((long) TOPIC_IDS.size());
+    }
+
+    @Test
+    public void allTopicsShouldBeIndexedInBatches() throws Exception {
+        SearchIndexRebuilder rebuilder = new SearchIndexRebuilder(indexService, 2, 2, 0);
+
+        assertTrue(rebuilder.start());
+        rebuilder.awaitCompletion();
+
+        verify(indexService).indexTopics(Arrays.asList(1L, 2L));
+        verify(indexService).indexTopics(Arrays.asList(3L, 4L));
+        verify(indexService).indexTopics(Arrays.asList(5L));
+        verify(indexService).removeStaleDocuments(0, 2);
+        verify(indexService).removeStaleDocuments(2, 4);
+        verify(indexService).removeStaleDocuments(4, 5);
+        verify(indexService).removeStaleDocuments(5, Long.MAX_VALUE);
+        SearchIndexRebuildProgress progress = rebuilder.getProgress();
+        assertEquals(progress.getState(), State.FINISHED);
+        assertEquals(progress.getLastIndexedTopicId(), 5);
+        assertEquals(progress.getIndexedTopicCount(), 5);
+        assertEquals(progress.getTotalTopicCount(), 5);
+        assertEquals(progress.getPercentDone(), 100);
+        assertEquals(progress.getEstimatedSecondsLeft(), -1);
+    }
+
+    @Test
+    public void failedRebuildingShouldBeContinuedAfterLastIndexedTopic() throws Exception {
+        doThrow(new RuntimeException()).doNothing().when(indexService).indexTopics(Arrays.asList(3L, 4L));
+        when(indexService.countTopicsToIndex(2)).thenReturn(3L);
+        SearchIndexRebuilder rebuilder = new SearchIndexRebuilder(indexService, 2, 1, 0);
+
+        rebuilder.start();
+        rebuilder.awaitCompletion();
+
+        assertEquals(rebuilder.getProgress().getState(), State.FAILED);
+        assertEquals(rebuilder.getLastIndexedTopicId(), 2);
+        assertEquals(rebuilder.getIndexedTopicCount(), 2);
+
+        rebuilder.start();
+        rebuilder.awaitCompletion();
+
+        verify(indexService, times(1)).indexTopics(Arrays.asList(1L, 2L));
+        verify(indexService, times(2)).indexTopics(Arrays.asList(3L, 4L));
+        verify(indexService).indexTopics(Arrays.asList(5L));
+        verify(indexService, times(1)).removeStaleDocuments(0, 2);
+        verify(indexService, times(1)).removeStaleDocuments(2, 4);
+        verify(indexService, times(1)).removeStaleDocuments(5, Long.MAX_VALUE);
+        assertEquals(rebuilder.getProgress().getState(), State.FINISHED);
+        assertEquals(rebuilder.getIndexedTopicCount(), 5);
+        assertEquals(rebuilder.getTotalTopicCount(), 5);
+    }
+
+    @Test
+    public void finishedRebuildingShouldBeStartedFromTheBeginning() throws Exception {
+        SearchIndexRebuilder rebuilder = new SearchIndexRebuilder(indexService, 5, 1, 0);
+
+        rebuilder.start();
+        rebuilder.awaitCompletion();
+        rebuilder.start();
+        rebuilder.awaitCompletion();
+
+        verify(indexService, times(2)).removeStaleDocuments(0, 5);
+        verify(indexService, times(2)).removeStaleDocuments(5, Long.MAX_VALUE);
+        verify(indexService, times(2)).indexTopics(TOPIC_IDS);
+        assertEquals(rebuilder.getIndexedTopicCount(), 5);
+    }
+
+    @Test
+    public void stoppedRebuildingShouldNotIndexNextBatches() throws Exception {
+        final CountDownLatch indexingStarted = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                indexingStarted.countDown();
+                stopped.await();
+                return null;
+            }
+        }).when(indexService).indexTopics(Arrays.asList(1L));
+        SearchIndexRebuilder rebuilder = new SearchIndexRebuilder(indexService, 1, 1, 0);
+
+        rebuilder.start();
+        indexingStarted.await();
+        assertFalse(rebuilder.start());
+        rebuilder.stop();
+        assertEquals(rebuilder.getProgress().getState(), State.STOPPING);
+        stopped.countDown();
+        rebuilder.awaitCompletion();
+
+        verify(indexService).indexTopics(anyListOf(Long.class));
+        verify(indexService, never()).removeStaleDocuments(anyLong(), eq(Long.MAX_VALUE));
+        assertEquals(rebuilder.getProgress().getState(), State.STOPPED);
+        assertEquals(rebuilder.getLastIndexedTopicId(), 1);
+    }
+
+    @Test
+    public void readingOfTopicsShouldBeThrottled() throws Exception {
+        SearchIndexRebuilder rebuilder = new SearchIndexRebuilder(indexService, 1, 1, 10);
+        long start = System.currentTimeMillis();
+
+        rebuilder.start();
+        rebuilder.awaitCompletion();
+
+        assertTrue(System.currentTimeMillis() - start >= TOPIC_IDS.size() * 100 - 50);
+        assertEquals(rebuilder.getIndexedTopicCount(), 5);
+    }
+
+    @Test
+    public void rebuildingShouldNotBeStoppedIfNotStarted() {
+        SearchIndexRebuilder rebuilder = new SearchIndexRebuilder(indexService, 1, 1, 0);
+
+        rebuilder.stop();
+
+        assertEquals(rebuilder.getState(), State.NOT_STARTED.name());
+        verifyZeroInteractions(indexService);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.nontransactional;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class UserIdCacheServiceTest {
+    private static final String USERNAME = "usernaME";
+
+    private Ehcache cache;
+    private UserIdCacheService userIdCacheService;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = mock(Ehcache.class);
+        userIdCacheService = new UserIdCacheService(cache);
+    }
+
+    @Test
+    public void cachedUserIdShouldBeReturned() {
+        when(cache.get(USERNAME)).thenReturn(new Element(USERNAME, 42L));
+
+        assertEquals(userIdCacheService.getUserId(USERNAME), Long.valueOf(42L));
+    }
+
+    @Test
+    public void nullShouldBeReturnedForNotCachedUser() {
+        when(cache.get(USERNAME)).thenReturn(null);
+
+        assertNull(userIdCacheService.getUserId(USERNAME));
+    }
+
+    @Test
+    public void userIdShouldBePutByUsername() {
+        userIdCacheService.putUserId(USERNAME, 42L);
+
+        verify(cache).put(new Element(USERNAME, 42L));
+    }
+
+    @Test
+    public void invalidationShouldRemoveUserId() {
+        userIdCacheService.invalidate(USERNAME);
+
+        verify(cache).remove(USERNAME);
+    }
+}
@@ -34,6 +34,7 @@ import org.jtalks.jcommune.service.PluginService;
 import org.jtalks.jcommune.service.nontransactional.EncryptionService;
 import org.jtalks.jcommune.service.nontransactional.ImageService;
 import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService;
 import org.jtalks.jcommune.plugin.api.PluginLoader;
 import org.jtalks.jcommune.plugin.api.filters.TypeFilter;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
@@ -103,6 +104,8 @@ public class TransactionalAuthenticatorTest {
     PluginService pluginService;
     @Mock
     private Validator validator;
+    @Mock
+    private RenderedPostCacheService renderedPostCacheService;
 
     private Authenticator authenticator;
 
@@ -111,7 +114,8 @@ public class TransactionalAuthenticatorTest {
         initMocks(this);
         authenticator = new TransactionalAuthenticator(pluginLoader, userDao, groupDao,
                 encryptionService, mailService, avatarService, pluginService,
-                securityFacade, rememberMeServices, sessionStrategy, validator, authenticationManager);
+                securityFacade, rememberMeServices, sessionStrategy, validator, authenticationManager,
+                renderedPostCacheService);
     }
 
     private JCUser prepareOldUser(String username) {
@@ -176,6 +180,7 @@ public class TransactionalAuthenticatorTest {
         boolean result = authenticator.authenticate(loginUserDto, httpRequest, httpResponse);
 
         assertTrue(result, "Authentication not existing user with correct credentials should be successful.");
+        verify(renderedPostCacheService).invalidateMentionsOf(user.getUsername());
     }
 
     @Test
@@ -391,7 +396,8 @@ public class TransactionalAuthenticatorTest {
         EncryptionService realEncryptionService = new EncryptionService(new Md5PasswordEncoder());
         TransactionalAuthenticator authenticatorSpy = spy(new TransactionalAuthenticator(pluginLoader, userDao, groupDao,
                 realEncryptionService, mailService, avatarService, pluginService,
-                securityFacade, rememberMeServices, sessionStrategy, validator, authenticationManager));
+                securityFacade, rememberMeServices, sessionStrategy, validator, authenticationManager,
+                renderedPostCacheService));
 
         authenticatorSpy.register(registerUserDto);
         UserDto expected = new UserDto();
@@ -403,6 +409,15 @@ public class TransactionalAuthenticatorTest {
         verify(authenticatorSpy).storeRegisteredUser(refEq(expected));
     }
 
+    @Test
+    public void storedRegisteredUserShouldDropHtmlOfPostsMentioningIt() {
+        UserDto userDto = createRegisterUserDto("username", "password", "email@email.em", null).getUserDto();
+
+        ((TransactionalAuthenticator) authenticator).storeRegisteredUser(userDto);
+
+        verify(renderedPostCacheService).invalidateMentionsOf("username");
+    }
+
     private RegisterUserDto createRegisterUserDto(String username, String password, String email, String honeypotCaptcha) {
         RegisterUserDto registerUserDto = new RegisterUserDto();
         UserDto userDto = new UserDto();
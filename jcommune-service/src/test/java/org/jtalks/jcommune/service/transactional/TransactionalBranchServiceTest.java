@@ -28,6 +28,7 @@ import org.jtalks.jcommune.service.BranchLastPostService;
 import org.jtalks.jcommune.service.BranchService;
 import org.jtalks.jcommune.service.TopicModificationService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.nontransactional.AllowedBranchesCacheService;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
 import org.jtalks.jcommune.service.security.PermissionService;
 import org.mockito.Mock;
@@ -74,6 +75,8 @@ public class TransactionalBranchServiceTest {
     private PermissionService permissionService;
     @Mock
     private BranchLastPostService lastPostService;
+    @Mock
+    private AllowedBranchesCacheService allowedBranchesCacheService;
 
     private Topic topic;
     private Section section;
@@ -88,7 +91,8 @@ public class TransactionalBranchServiceTest {
                 groupDao,
                 topicService,
                 permissionService,
-                lastPostService);
+                lastPostService,
+                allowedBranchesCacheService);
         topic = null;
         section = null;
     }
@@ -172,7 +176,6 @@ public class TransactionalBranchServiceTest {
     public void testFillStatisticInfoToRegisteredUser() {
         int expectedPostsCount = 10;
         int expectedTopicsCount = 20;
-        boolean expectedUnreadPostsCount = true;
         JCUser user = new JCUser("username", "email", "password");
         Branch branch = new Branch(BRANCH_NAME, BRANCH_DESCRIPTION);
         org.jtalks.common.model.entity.Branch commonBranch = branch;
@@ -180,8 +183,6 @@ public class TransactionalBranchServiceTest {
         when(branchDao.getCountPostsInBranch(branch)).thenReturn(expectedPostsCount);
         when(topicDao.countTopics(branch)).thenReturn(expectedTopicsCount);
         when(userService.getCurrentUser()).thenReturn(user);
-        //TODO Was removed till milestone 2 due to performance issues
-//        when(branchDao.isUnreadPostsInBranch(branch, user)).thenReturn(expectedUnreadPostsCount);
 
         branchService.fillStatisticInfo(Arrays.asList(commonBranch));
 
@@ -189,15 +190,12 @@ public class TransactionalBranchServiceTest {
                 "Incorrect count of topics");
         assertEquals(branch.getPostCount(), expectedPostsCount,
                 "Incorrect count of posts");
-//        assertEquals(branch.isUnreadPosts(), expectedUnreadPostsCount,
-//                "Incorrect unread posts state");
     }
 
     @Test
     public void testFillStatisticInfoToAnnonumous() {
         int expectedPostsCount = 10;
         int expectedTopicsCount = 20;
-        boolean expectedUnreadPostsCount = true;
         JCUser user = new AnonymousUser();
         Branch branch = new Branch(BRANCH_NAME, BRANCH_DESCRIPTION);
         org.jtalks.common.model.entity.Branch commonBranch = branch;
@@ -205,8 +203,6 @@ public class TransactionalBranchServiceTest {
         when(branchDao.getCountPostsInBranch(branch)).thenReturn(expectedPostsCount);
         when(topicDao.countTopics(branch)).thenReturn(expectedTopicsCount);
         when(userService.getCurrentUser()).thenReturn(user);
-        //TODO fWas removed till milestone 2 due to performance issues
-//        when(branchDao.isUnreadPostsInBranch(branch, user)).thenReturn(expectedUnreadPostsCount);
 
         branchService.fillStatisticInfo(Arrays.asList(commonBranch));
 
@@ -214,7 +210,6 @@ public class TransactionalBranchServiceTest {
                 "Incorrect count of topics");
         assertEquals(branch.getPostCount(), expectedPostsCount,
                 "Incorrect count of posts");
-//        verify(branchDao, times(0)).isUnreadPostsInBranch(branch, user);
     }
 
     @Test
@@ -356,6 +351,7 @@ public class TransactionalBranchServiceTest {
 
         branchService.changeBranchPermissions(0, branchId, true, changes);
         verify(permissionService).changeGrants(expectedBranch, changes);
+        verify(allowedBranchesCacheService).invalidate();
     }
 
     @Test
@@ -369,6 +365,7 @@ public class TransactionalBranchServiceTest {
 
         branchService.changeBranchPermissions(0, branchId, false, changes);
         verify(permissionService).changeRestrictions(expectedBranch, changes);
+        verify(allowedBranchesCacheService).invalidate();
     }
 
     @Test(expectedExceptions = NotFoundException.class)
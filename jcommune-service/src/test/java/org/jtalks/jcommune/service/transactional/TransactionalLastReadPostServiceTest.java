@@ -14,23 +14,33 @@
  */
 package org.jtalks.jcommune.service.transactional;
 
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.activity.TopicActivityIndex;
 import org.jtalks.jcommune.model.dao.LastReadPostDao;
 import org.jtalks.jcommune.model.dao.BranchReadedMarkerDao;
+import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.dao.UserDao;
+import org.jtalks.jcommune.model.dto.TopicActivity;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.UserService;
-import org.mockito.ArgumentMatcher;
+import org.jtalks.jcommune.service.nontransactional.LastReadPostBuffer;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
-import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.*;
@@ -50,7 +60,11 @@ public class TransactionalLastReadPostServiceTest {
     private UserDao userDao;
     @Mock
     private BranchReadedMarkerDao branchReadedMarkerDao;
+    @Mock
+    private TopicDao topicDao;
     //
+    private LastReadPostBuffer lastReadPostBuffer;
+    private TopicActivityIndex topicActivityIndex;
     private TransactionalLastReadPostService lastReadPostService;
 
 
@@ -58,11 +72,16 @@ public class TransactionalLastReadPostServiceTest {
     public void setUp() throws Exception {
         initMocks(this);
         user = new JCUser("username", "email@mail.com", "password");
+        lastReadPostBuffer = new LastReadPostBuffer();
+        topicActivityIndex = new TopicActivityIndex();
         lastReadPostService = new TransactionalLastReadPostService(
                 userService,
                 lastReadPostDao,
                 userDao,
-                branchReadedMarkerDao);
+                branchReadedMarkerDao,
+                lastReadPostBuffer,
+                topicActivityIndex,
+                topicDao);
     }
 
     @Test
@@ -126,6 +145,34 @@ public class TransactionalLastReadPostServiceTest {
         assertTrue(result.get(0).isHasUpdates());
     }
 
+    @Test
+    public void readStateOfTopicsOfSeveralBranchesShouldBeLoadedWithTwoQueries() {
+        List<Topic> topics = ObjectsFactory.topics(user, 3);
+        for (int i = 0; i < topics.size(); i++) {
+            topics.get(i).setId(i + 1);
+            topics.get(i).getBranch().setId(i + 1);
+        }
+        BranchReadedMarker marker = new BranchReadedMarker(user, topics.get(0).getBranch());
+        marker.setMarkTime(new DateTime().plusMinutes(1));
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(branchReadedMarkerDao.getMarkersFor(eq(user), Matchers.<Collection<Branch>>any()))
+                .thenReturn(Collections.singletonList(marker));
+        List<Topic> modifiedTopics = topics.subList(1, 3);
+        LastReadPost lastReadPost = new LastReadPost(user, topics.get(1),
+                topics.get(1).getLastPost().getCreationDate());
+        when(lastReadPostDao.getLastReadPosts(user, modifiedTopics))
+                .thenReturn(Collections.singletonList(lastReadPost));
+
+        lastReadPostService.fillLastReadPostForTopics(topics);
+
+        assertFalse(topics.get(0).isHasUpdates());
+        assertFalse(topics.get(1).isHasUpdates());
+        assertTrue(topics.get(2).isHasUpdates());
+        verify(branchReadedMarkerDao).getMarkersFor(eq(user), Matchers.<Collection<Branch>>any());
+        verify(branchReadedMarkerDao, never()).getMarkerFor(Matchers.<JCUser>any(), Matchers.<Branch>any());
+        verify(lastReadPostDao).getLastReadPosts(user, modifiedTopics);
+    }
+
     @Test
     public void anonymousUserShouldNotMarkTopicPageAsRead() {
         when(userService.getCurrentUser()).thenReturn(new AnonymousUser());
@@ -134,45 +181,42 @@ public class TransactionalLastReadPostServiceTest {
 
         lastReadPostService.markTopicPageAsRead(topic, 1);
         verifyZeroInteractions(lastReadPostDao);
+        assertEquals(lastReadPostBuffer.size(), 0);
     }
 
     @Test
     public void updateLastReadPostToAuthUserWhenAllForumMarkedBefore() {
         Topic topic = this.createTestTopic();
         user.setAllForumMarkedAsReadTime(topic.getModificationDate().minusMinutes(2));
-        LastReadPost post = new LastReadPost(user, topic, topic.getLastPost().getCreationDate().minusMinutes(1));
         when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
 
         lastReadPostService.markTopicPageAsRead(topic, 1);
 
-        verify(lastReadPostDao).saveOrUpdate(post);
+        assertEquals(lastReadPostBuffer.getDates(user.getId()).get(topic.getId()),
+                topic.getLastPost().getCreationDate());
     }
 
     @Test
     public void updateLastReadPostToAuthUserWhenAllForumMarkedNull() {
         Topic topic = this.createTestTopic();
         user.setAllForumMarkedAsReadTime(null);
-        LastReadPost post = new LastReadPost(user, topic, topic.getLastPost().getCreationDate().minusMinutes(1));
         when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
 
         lastReadPostService.markTopicPageAsRead(topic, 1);
 
-        verify(lastReadPostDao).saveOrUpdate(post);
+        assertEquals(lastReadPostBuffer.getDates(user.getId()).get(topic.getId()),
+                topic.getLastPost().getCreationDate());
     }
 
     @Test
     public void notUpdateLastReadPostToAuthUserWhenAllForumAfter() {
         Topic topic = this.createTestTopic();
         user.setAllForumMarkedAsReadTime(topic.getModificationDate().plusSeconds(1));
-        LastReadPost post = new LastReadPost(user, topic, new DateTime());
         when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
 
         lastReadPostService.markTopicPageAsRead(topic, 1);
 
-        verify(lastReadPostDao, never()).saveOrUpdate(post);
+        assertEquals(lastReadPostBuffer.size(), 0);
     }
 
     @Test
@@ -183,34 +227,110 @@ public class TransactionalLastReadPostServiceTest {
 
         lastReadPostService.markTopicPageAsRead(topic, 2);
 
-        verify(lastReadPostDao).saveOrUpdate(argThat(
-                new LastReadPostMatcher(topic, topic.getPosts().get(5).getCreationDate())));
+        assertEquals(lastReadPostBuffer.getDates(user.getId()).get(topic.getId()),
+                topic.getPosts().get(5).getCreationDate());
     }
 
     @Test
-    public void markTopicPageAsReadShouldReupdateLastReadPostInRepositoryWhenLastPostOnPageDateIsNewer() {
+    public void markTopicPageAsReadShouldNotAccessDatabase() {
         Topic topic = this.createTestTopic();
-        LastReadPost post = new LastReadPost(user, topic, topic.getLastPost().getCreationDate().minusMinutes(1));
         when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
 
         lastReadPostService.markTopicPageAsRead(topic, 1);
 
-        verify(lastReadPostDao).saveOrUpdate(argThat(
-                new LastReadPostMatcher(topic, topic.getLastPost().getCreationDate())));
+        verifyZeroInteractions(lastReadPostDao);
     }
 
     @Test
-    public void markTopicPageAsReadShouldNotReupdateLastReadPostInRepositoryLastPostOnPageDateIsNotNewer() {
-        Topic topic = this.createTestTopic();
-        LastReadPost post = new LastReadPost(user, topic, topic.getLastPost().getCreationDate());
+    public void bufferedLastReadPostsShouldBeSeenBeforeTheyAreWritten() {
+        Topic topic = ObjectsFactory.topics(user, 1).get(0);
+        DateTime readPostDate = topic.getFirstPost().getCreationDate();
+        lastReadPostBuffer.put(user.getId(), topic.getId(), readPostDate);
         when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
 
-        lastReadPostService.markTopicPageAsRead(topic, 1);
+        lastReadPostService.fillLastReadPostForTopics(Collections.singletonList(topic));
+
+        assertEquals(topic.getLastReadPostDate(), readPostDate);
+    }
+
+    @Test
+    public void bufferedLastReadPostsShouldBeWrittenAtOnce() {
+        lastReadPostBuffer.put(1L, 2L, new DateTime(1000L));
+        lastReadPostBuffer.put(3L, 4L, new DateTime(2000L));
+
+        lastReadPostService.writeBufferedLastReadPosts();
+
+        Table<Long, Long, DateTime> expected = HashBasedTable.create();
+        expected.put(1L, 2L, new DateTime(1000L));
+        expected.put(3L, 4L, new DateTime(2000L));
+        verify(lastReadPostDao).saveLastReadPostDates(expected);
+        assertEquals(lastReadPostBuffer.size(), 0);
+    }
+
+    @Test
+    public void bufferedLastReadPostsShouldBeWrittenInLimitedBatches() {
+        for (long topicId = 0; topicId <= TransactionalLastReadPostService.WRITE_BATCH_SIZE; topicId++) {
+            lastReadPostBuffer.put(1L, topicId, new DateTime(1000L));
+        }
+
+        lastReadPostService.writeBufferedLastReadPosts();
+
+        ArgumentCaptor<Table> written = ArgumentCaptor.forClass(Table.class);
+        verify(lastReadPostDao).saveLastReadPostDates(written.capture());
+        assertEquals(written.getValue().size(), TransactionalLastReadPostService.WRITE_BATCH_SIZE);
+        assertEquals(lastReadPostBuffer.size(), 1);
+    }
+
+    @Test
+    public void nothingShouldBeWrittenIfBufferIsEmpty() {
+        lastReadPostService.writeBufferedLastReadPosts();
+
+        verifyZeroInteractions(lastReadPostDao);
+    }
+
+    @Test
+    public void bufferedLastReadPostsShouldBeKeptIfWritingFailed() {
+        lastReadPostBuffer.put(1L, 2L, new DateTime(1000L));
+        doThrow(new RuntimeException()).when(lastReadPostDao)
+                .saveLastReadPostDates(Matchers.<Table<Long, Long, DateTime>>any());
+
+        try {
+            lastReadPostService.writeBufferedLastReadPosts();
+            fail("Exception should be thrown for the transaction to be rolled back");
+        } catch (RuntimeException e) {
+            assertEquals(lastReadPostBuffer.getDates(1L).get(2L), new DateTime(1000L));
+            assertEquals(lastReadPostBuffer.takeForWriting(1).size(), 1);
+        }
+    }
+
+    @Test
+    public void bufferedLastReadPostsShouldBeReleasedOnlyAfterCommit() {
+        lastReadPostBuffer.put(1L, 2L, new DateTime(1000L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            lastReadPostService.writeBufferedLastReadPosts();
+
+            assertEquals(lastReadPostBuffer.size(), 1);
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+            assertEquals(lastReadPostBuffer.size(), 0);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
 
-        verify(lastReadPostDao, never()).saveOrUpdate(argThat(
-                new LastReadPostMatcher(topic, topic.getLastPost().getCreationDate())));
+    @Test
+    public void bufferedLastReadPostsShouldBeKeptIfTransactionIsRolledBack() {
+        lastReadPostBuffer.put(1L, 2L, new DateTime(1000L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            lastReadPostService.writeBufferedLastReadPosts();
+
+            completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+            assertEquals(lastReadPostBuffer.getDates(1L).get(2L), new DateTime(1000L));
+            assertEquals(lastReadPostBuffer.takeForWriting(1).size(), 1);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
 
     @Test
@@ -239,7 +359,10 @@ public class TransactionalLastReadPostServiceTest {
         when(userService.getCurrentUser()).thenReturn(user);
 
         lastReadPostService.markTopicAsRead(topic);
-        verify(lastReadPostDao).saveOrUpdate(argThat(new LastReadPostMatcher(topic, topic.getLastPost().getCreationDate())));
+
+        assertEquals(lastReadPostBuffer.getDates(user.getId()).get(topic.getId()),
+                topic.getLastPost().getCreationDate());
+        verifyZeroInteractions(lastReadPostDao);
     }
 
     @Test
@@ -250,72 +373,229 @@ public class TransactionalLastReadPostServiceTest {
 
         lastReadPostService.markTopicAsRead(topic);
         verifyZeroInteractions(lastReadPostDao);
+        assertEquals(lastReadPostBuffer.size(), 0);
     }
 
     @Test
-    public void markTopicAsReadShouldReupdateLastReadPostInRepositoryIfLastReadDateIsNewer() {
-        Topic topic = this.createTestTopic();
-        LastReadPost post = new LastReadPost(user, topic, new DateTime(1L));
+    public void markAllForumAsReadShouldRememberMarkDateAndLeaveLastReadPostsToPurge() {
+        JCUser user = new JCUser("user", "use@gmail.com", "gangam-style-password");
         when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
 
-        lastReadPostService.markTopicAsRead(topic);
+        lastReadPostService.markAllForumAsReadForCurrentUser();
 
-        verify(lastReadPostDao).saveOrUpdate(argThat(
-                new LastReadPostMatcher(topic, topic.getLastPost().getCreationDate())));
+        assertNotNull(user.getAllForumMarkedAsReadTime(), "Mark date should be remembered for user.");
+        verify(userDao).saveOrUpdate(user);
+        verifyZeroInteractions(lastReadPostDao);
     }
 
     @Test
-    public void markTopicAsReadShouldNotReupdateLastReadPostInRepositoryIfLastReadDateIsNotNew() {
-        Topic topic = this.createTestTopic();
-        LastReadPost post = new LastReadPost(user, topic, topic.getLastPost().getCreationDate());
-        when(userService.getCurrentUser()).thenReturn(user);
-        when(lastReadPostDao.getLastReadPost(user, topic)).thenReturn(post);
+    public void staleLastReadPostsShouldBePurgedInBatches() {
+        when(userDao.getIdsOfUsersMarkedForumAsReadAfter(any(DateTime.class))).thenReturn(Arrays.asList(1L, 2L));
+        when(lastReadPostDao.deleteStaleLastReadPosts(1L, 1000)).thenReturn(1000, 10);
+        when(lastReadPostDao.deleteStaleLastReadPosts(2L, 990)).thenReturn(5);
 
-        lastReadPostService.markTopicAsRead(topic);
+        lastReadPostService.purgeStaleLastReadPosts();
+        lastReadPostService.purgeStaleLastReadPosts();
 
-        verify(lastReadPostDao, never()).saveOrUpdate(argThat(
-                new LastReadPostMatcher(topic, topic.getLastPost().getCreationDate())));
+        verify(userDao).getIdsOfUsersMarkedForumAsReadAfter(new DateTime(0));
+        verify(lastReadPostDao, times(2)).deleteStaleLastReadPosts(1L, 1000);
+        verify(lastReadPostDao).deleteStaleLastReadPosts(2L, 990);
     }
 
     @Test
-    public void markAllForumAsReadShouldRememberMarkDateAndClearLastReadPostsForUser() {
-        JCUser user = new JCUser("user", "use@gmail.com", "gangam-style-password");
+    public void usersMarkedForumAsReadSincePreviousLookupShouldBeLookedUpWhenEverybodyIsPurged() {
+        when(userDao.getIdsOfUsersMarkedForumAsReadAfter(any(DateTime.class))).thenReturn(Arrays.asList(1L));
+        DateTime start = new DateTime();
+
+        lastReadPostService.purgeStaleLastReadPosts();
+        lastReadPostService.purgeStaleLastReadPosts();
+
+        ArgumentCaptor<DateTime> lookupTimes = ArgumentCaptor.forClass(DateTime.class);
+        verify(userDao, times(2)).getIdsOfUsersMarkedForumAsReadAfter(lookupTimes.capture());
+        assertEquals(lookupTimes.getAllValues().get(0), new DateTime(0));
+        assertTrue(lookupTimes.getAllValues().get(1).isBefore(start));
+        assertTrue(lookupTimes.getAllValues().get(1).isAfter(start.minusMinutes(2)));
+        verify(lastReadPostDao, times(2)).deleteStaleLastReadPosts(1L, 1000);
+    }
+
+    @Test
+    public void markAllForumAsReadShouldForgetBufferedLastReadPostsOfUser() {
+        lastReadPostBuffer.put(user.getId(), 1L, new DateTime());
+        lastReadPostBuffer.put(user.getId() + 1, 1L, new DateTime());
         when(userService.getCurrentUser()).thenReturn(user);
 
         lastReadPostService.markAllForumAsReadForCurrentUser();
 
-        assertNotNull(user.getAllForumMarkedAsReadTime(), "Mark date should be remembered for user.");
-        verify(userDao).saveOrUpdate(user);
-        verify(lastReadPostDao).deleteLastReadPostsFor(user);
+        assertTrue(lastReadPostBuffer.getDates(user.getId()).isEmpty());
+        assertEquals(lastReadPostBuffer.size(), 1);
+    }
+
+    @Test
+    public void branchesShouldNotBeCheckedForAnonymousUser() {
+        Branch branch = createBranch(1L);
+        when(userService.getCurrentUser()).thenReturn(new AnonymousUser());
+
+        lastReadPostService.fillUnreadPostsInBranches(Arrays.asList(branch));
 
+        assertFalse(branch.isUnreadPosts());
+        verifyZeroInteractions(topicDao, lastReadPostDao, branchReadedMarkerDao);
     }
 
-    private Topic createTestTopic() {
-        Topic topic = new Topic(user, "title");
-        for (int i = 0; i < 10; i++) {
-            topic.addPost(new Post(user, "content"));
+    @Test
+    public void branchShouldBeUnreadIfTopicGotPostsAfterLastReadPost() {
+        Branch branch = createBranch(1L);
+        long lastPostTime = new DateTime().getMillis();
+        when(topicDao.getTopicActivities()).thenReturn(Arrays.asList(new TopicActivity(1L, 1L, lastPostTime)));
+        when(lastReadPostDao.getLastReadPostDatesInBranches(user, Collections.singleton(1L), new DateTime(0)))
+                .thenReturn(Collections.singletonMap(1L, new DateTime(lastPostTime - 1)));
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        lastReadPostService.fillUnreadPostsInBranches(Arrays.asList(branch));
+
+        assertTrue(branch.isUnreadPosts());
+    }
+
+    @Test
+    public void branchShouldBeReadIfAllTopicsAreRead() {
+        Branch branch = createBranch(1L);
+        long lastPostTime = new DateTime().getMillis();
+        when(topicDao.getTopicActivities()).thenReturn(Arrays.asList(
+                new TopicActivity(1L, 1L, lastPostTime), new TopicActivity(2L, 1L, lastPostTime - 1)));
+        lastReadPostBuffer.put(user.getId(), 1L, new DateTime(lastPostTime));
+        when(lastReadPostDao.getLastReadPostDatesInBranches(eq(user), anyCollectionOf(Long.class),
+                any(DateTime.class))).thenReturn(Collections.singletonMap(2L, new DateTime(lastPostTime - 1)));
+        when(userService.getCurrentUser()).thenReturn(user);
+        branch.setUnreadPosts(true);
+
+        lastReadPostService.fillUnreadPostsInBranches(Arrays.asList(branch));
+
+        assertFalse(branch.isUnreadPosts());
+    }
+
+    @Test
+    public void topicsWithPostsBeforeBranchWasMarkedAsReadShouldNotBeChecked() {
+        Branch markedBranch = createBranch(1L);
+        Branch emptyBranch = createBranch(2L);
+        long lastPostTime = new DateTime().getMillis();
+        when(topicDao.getTopicActivities()).thenReturn(Arrays.asList(new TopicActivity(1L, 1L, lastPostTime)));
+        BranchReadedMarker marker = new BranchReadedMarker(user, markedBranch);
+        marker.setMarkTime(new DateTime(lastPostTime + 1));
+        List<Branch> branches = Arrays.asList(markedBranch, emptyBranch);
+        when(branchReadedMarkerDao.getMarkersFor(user, branches)).thenReturn(Arrays.asList(marker));
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        lastReadPostService.fillUnreadPostsInBranches(branches);
+
+        assertFalse(markedBranch.isUnreadPosts());
+        assertFalse(emptyBranch.isUnreadPosts());
+        verify(lastReadPostDao, never()).getLastReadPostDatesInBranches(any(JCUser.class),
+                anyCollectionOf(Long.class), any(DateTime.class));
+    }
+
+    @Test
+    public void topicActivityIndexShouldBeLoadedOnlyOnce() {
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        lastReadPostService.fillUnreadPostsInBranches(Arrays.asList(createBranch(1L)));
+        lastReadPostService.fillUnreadPostsInBranches(Arrays.asList(createBranch(1L)));
+
+        verify(topicDao, times(1)).getTopicActivities();
+        assertTrue(topicActivityIndex.isLoaded());
+    }
+
+    @Test
+    public void branchWithOldUnreadTopicBehindManyReadOnesShouldBeUnreadAfterOneQuery() {
+        Branch branch = createBranch(1L);
+        long lastPostTime = new DateTime().getMillis();
+        List<TopicActivity> activities = new ArrayList<>();
+        for (long topicId = 1; topicId <= 1000; topicId++) {
+            activities.add(new TopicActivity(topicId, 1L, lastPostTime));
+            lastReadPostBuffer.put(user.getId(), topicId, new DateTime(lastPostTime));
         }
-        return topic;
+        activities.add(new TopicActivity(1001L, 1L, lastPostTime - 1000));
+        when(topicDao.getTopicActivities()).thenReturn(activities);
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        lastReadPostService.fillUnreadPostsInBranches(Arrays.asList(branch));
+
+        assertTrue(branch.isUnreadPosts());
+        verify(lastReadPostDao, times(1)).getLastReadPostDatesInBranches(eq(user), anyCollectionOf(Long.class),
+                any(DateTime.class));
     }
 
-    private class LastReadPostMatcher extends ArgumentMatcher<LastReadPost> {
+    @Test
+    public void lastReadPostsShouldBeQueriedSinceEarliestMarkOfBranchesWithNewPosts() {
+        Branch firstBranch = createBranch(1L);
+        Branch secondBranch = createBranch(2L);
+        long lastPostTime = new DateTime().getMillis();
+        when(topicDao.getTopicActivities()).thenReturn(Arrays.asList(
+                new TopicActivity(1L, 1L, lastPostTime), new TopicActivity(2L, 2L, lastPostTime)));
+        BranchReadedMarker firstMarker = new BranchReadedMarker(user, firstBranch);
+        firstMarker.setMarkTime(new DateTime(lastPostTime - 2000));
+        BranchReadedMarker secondMarker = new BranchReadedMarker(user, secondBranch);
+        secondMarker.setMarkTime(new DateTime(lastPostTime - 1000));
+        List<Branch> branches = Arrays.asList(firstBranch, secondBranch);
+        when(branchReadedMarkerDao.getMarkersFor(user, branches)).thenReturn(Arrays.asList(firstMarker, secondMarker));
+        when(userService.getCurrentUser()).thenReturn(user);
+
+        lastReadPostService.fillUnreadPostsInBranches(branches);
 
-        private Topic topic;
-        private DateTime dateTime;
+        assertTrue(firstBranch.isUnreadPosts());
+        assertTrue(secondBranch.isUnreadPosts());
+        verify(lastReadPostDao).getLastReadPostDatesInBranches(user, new HashSet<>(Arrays.asList(1L, 2L)),
+                new DateTime(lastPostTime - 2000));
+    }
 
-        private LastReadPostMatcher(Topic topic, DateTime dateTime) {
-            this.topic = topic;
-            this.dateTime = dateTime;
+    @Test
+    public void syncShouldApplyTopicsModifiedByOtherInstances() {
+        long lastPostTime = new DateTime().getMillis();
+        when(topicDao.getTopicActivitiesModifiedSince(any(DateTime.class)))
+                .thenReturn(Arrays.asList(new TopicActivity(1L, 1L, lastPostTime)));
+        lastReadPostService.reloadTopicActivityIndex();
+
+        lastReadPostService.syncTopicActivityIndex();
+
+        assertEquals(topicActivityIndex.size(), 1);
+        assertTrue(topicActivityIndex.getTopicsWithPostsSince(1L, lastPostTime).iterator().hasNext());
+    }
+
+    @Test
+    public void syncShouldBeSkippedUntilIndexIsLoaded() {
+        lastReadPostService.syncTopicActivityIndex();
+
+        verify(topicDao, never()).getTopicActivitiesModifiedSince(any(DateTime.class));
+    }
+
+    @Test
+    public void reloadShouldRemoveTopicsRemovedByOtherInstances() {
+        long lastPostTime = new DateTime().getMillis();
+        when(topicDao.getTopicActivities()).thenReturn(
+                Arrays.asList(new TopicActivity(1L, 1L, lastPostTime), new TopicActivity(2L, 1L, lastPostTime)),
+                Arrays.asList(new TopicActivity(1L, 1L, lastPostTime)));
+
+        lastReadPostService.reloadTopicActivityIndex();
+        lastReadPostService.reloadTopicActivityIndex();
+
+        assertEquals(topicActivityIndex.size(), 1);
+    }
+
+    private void completeTransaction(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
         }
+    }
 
-        @Override
-        public boolean matches(Object argument) {
-            LastReadPost post = (LastReadPost) argument;
-            boolean result = post.getTopic().equals(topic);
-            result &= post.getUser().equals(user);
-            result &= (post.getPostCreationDate() == dateTime);
-            return result;
+    private Branch createBranch(long id) {
+        Branch branch = new Branch("branch", "description");
+        branch.setId(id);
+        return branch;
+    }
+
+    private Topic createTestTopic() {
+        Topic topic = new Topic(user, "title");
+        for (int i = 0; i < 10; i++) {
+            topic.addPost(new Post(user, "content"));
         }
+        return topic;
     }
 }
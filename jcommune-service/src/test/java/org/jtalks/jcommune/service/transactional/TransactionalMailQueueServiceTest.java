@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.QueuedMailDao;
+import org.jtalks.jcommune.model.entity.QueuedMail;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.jtalks.jcommune.service.transactional.TransactionalMailQueueService.MAX_ATTEMPTS;
+import static org.jtalks.jcommune.service.transactional.TransactionalMailQueueService.SENDING_TIMEOUT_MINUTES;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TransactionalMailQueueServiceTest {
+    private static final String TO = "to@jtalks.org";
+    private static final String SUBJECT = "subject";
+    private static final List<QueuedMail> NO_MAILS = Collections.emptyList();
+
+    @Mock
+    private QueuedMailDao dao;
+    private TransactionalMailQueueService service;
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        service = new TransactionalMailQueueService(dao);
+    }
+
+    @Test
+    public void enqueueShouldStoreWholeMessage() throws Exception {
+        MimeMessage message = new MimeMessage(session());
+        message.setRecipients(Message.RecipientType.TO, TO);
+        message.setSubject(SUBJECT);
+        message.setText("Text with non-ASCII characters: Привет", "UTF-8");
+
+        service.enqueue(message);
+
+        ArgumentCaptor<QueuedMail> captor = ArgumentCaptor.forClass(QueuedMail.class);
+        verify(dao).saveOrUpdate(captor.capture());
+        assertEquals(captor.getValue().getRecipient(), TO);
+        assertEquals(captor.getValue().getAttempts(), 0);
+        MimeMessage stored = parse(captor.getValue());
+        assertEquals(stored.getSubject(), SUBJECT);
+        assertEquals(stored.getContent(), "Text with non-ASCII characters: Привет");
+    }
+
+    @Test
+    public void takenMailsShouldNotBeTakenAgainTillSendingTimeout() {
+        QueuedMail mail = queuedMail(1);
+        when(dao.getMailsToSend(10)).thenReturn(Arrays.asList(mail));
+
+        List<QueuedMail> taken = service.takeMailsToSend(10);
+
+        assertEquals(taken, Arrays.asList(mail));
+        verify(dao).saveOrUpdate(mail);
+        assertTrue(mail.getNextAttemptDate().isAfter(new DateTime().plusMinutes(SENDING_TIMEOUT_MINUTES - 1)));
+        assertEquals(mail.getAttempts(), 0);
+    }
+
+    @Test
+    public void sentMailsShouldBeRemovedFromQueue() {
+        QueuedMail mail = queuedMail(1);
+
+        service.sendingFinished(Arrays.asList(mail), NO_MAILS);
+
+        verify(dao).delete(mail);
+        assertEquals(service.getSentCount(), 1);
+        assertEquals(service.getFailedAttemptCount(), 0);
+    }
+
+    @Test
+    public void failedMailsShouldBeSentLater() {
+        QueuedMail mail = queuedMail(1);
+
+        service.sendingFinished(NO_MAILS, Arrays.asList(mail));
+
+        verify(dao, never()).delete(mail);
+        verify(dao).saveOrUpdate(mail);
+        assertEquals(mail.getAttempts(), 1);
+        assertTrue(mail.getNextAttemptDate().isAfterNow());
+        assertEquals(service.getFailedAttemptCount(), 1);
+        assertEquals(service.getSentCount(), 0);
+    }
+
+    @Test
+    public void delayBeforeNextAttemptShouldGrow() {
+        QueuedMail mail = queuedMail(1);
+        mail.setAttempts(3);
+
+        service.sendingFinished(NO_MAILS, Arrays.asList(mail));
+
+        assertTrue(mail.getNextAttemptDate().isAfter(new DateTime().plusMinutes(7)));
+    }
+
+    @Test
+    public void mailShouldBeDroppedAfterLastFailedAttempt() {
+        QueuedMail mail = queuedMail(1);
+        mail.setAttempts(MAX_ATTEMPTS - 1);
+
+        service.sendingFinished(NO_MAILS, Arrays.asList(mail));
+
+        verify(dao).delete(mail);
+        assertEquals(service.getDroppedCount(), 1);
+        assertEquals(service.getSentCount(), 0);
+    }
+
+    @Test
+    public void queueSizeShouldBeTakenFromDatabase() {
+        when(dao.getQueueSize()).thenReturn(42L);
+
+        assertEquals(service.getQueueSize(), 42L);
+    }
+
+    private QueuedMail queuedMail(int number) {
+        QueuedMail mail = new QueuedMail(TO, "To: " + TO + "\r\nSubject: " + SUBJECT + number + "\r\n\r\ntext");
+        mail.setId(number);
+        return mail;
+    }
+
+    private MimeMessage parse(QueuedMail mail) throws Exception {
+        return new MimeMessage(session(), new ByteArrayInputStream(mail.getMessage().getBytes("ISO-8859-1")));
+    }
+
+    private Session session() {
+        return Session.getInstance(new Properties());
+    }
+}
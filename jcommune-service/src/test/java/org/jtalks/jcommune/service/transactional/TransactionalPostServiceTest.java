@@ -30,8 +30,11 @@ import org.jtalks.jcommune.service.BranchLastPostService;
 import org.jtalks.jcommune.service.PostService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.AllowedBranchesCacheService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
+import org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService;
 import org.jtalks.jcommune.service.security.AclClassName;
 import org.jtalks.jcommune.service.security.PermissionService;
 import org.mockito.Matchers;
@@ -76,6 +79,10 @@ public class TransactionalPostServiceTest {
     @Mock
     private PostDao postDao;
     @Mock
+    private RenderedPostCacheService renderedPostCacheService;
+    @Mock
+    private BBCodeService bbCodeService;
+    @Mock
     private SecurityService securityService;
     @Mock
     private TopicDao topicDao;
@@ -93,6 +100,8 @@ public class TransactionalPostServiceTest {
     private PluginLoader pluginLoader;
     @Mock
     private TopicPlugin topicPlugin;
+    @Mock
+    private AllowedBranchesCacheService allowedBranchesCacheService;
 
     private PostService postService;
 
@@ -116,7 +125,10 @@ public class TransactionalPostServiceTest {
                 userService,
                 branchLastPostService,
                 permissionService,
-                pluginLoader);
+                pluginLoader,
+                renderedPostCacheService,
+                bbCodeService,
+                allowedBranchesCacheService);
     }
 
     @Test
@@ -156,8 +168,47 @@ public class TransactionalPostServiceTest {
         assertEquals(post.getPostContent(), newBody);
 
         verify(postDao).saveOrUpdate(post);
+        verify(renderedPostCacheService).invalidate(post);
 
         verify(userService).notifyAndMarkNewlyMentionedUsers(post);
+        verify(bbCodeService).renderPostContent(post);
+    }
+
+    @Test
+    public void storeRenderedContentByTimerShouldStoreHtmlOfShownPosts() {
+        Post post = new Post(user, "[b]content[/b]");
+        post.setId(POST_ID);
+        when(renderedPostCacheService.takePostsToStore(anyInt())).thenReturn(Arrays.asList(POST_ID));
+        when(postDao.get(POST_ID)).thenReturn(post);
+        when(renderedPostCacheService.peekRenderedContent(post)).thenReturn("<b>content</b>");
+        when(bbCodeService.getRenderingVersion()).thenReturn("version");
+
+        postService.storeRenderedContentByTimer();
+
+        assertEquals(post.getRenderedContent(), "<b>content</b>");
+        assertEquals(post.getRenderedContentVersion(), "version");
+        verify(postDao).saveOrUpdate(post);
+    }
+
+    @Test
+    public void storeRenderedContentByTimerShouldSkipPostsEvictedFromCache() {
+        Post post = new Post(user, "[b]content[/b]");
+        post.setId(POST_ID);
+        when(renderedPostCacheService.takePostsToStore(anyInt())).thenReturn(Arrays.asList(POST_ID));
+        when(postDao.get(POST_ID)).thenReturn(post);
+
+        postService.storeRenderedContentByTimer();
+
+        verify(postDao, never()).saveOrUpdate(post);
+    }
+
+    @Test
+    public void storeRenderedContentByTimerShouldSkipRemovedPosts() {
+        when(renderedPostCacheService.takePostsToStore(anyInt())).thenReturn(Arrays.asList(POST_ID));
+
+        postService.storeRenderedContentByTimer();
+
+        verify(postDao, never()).saveOrUpdate(any(Post.class));
     }
 
     @Test
@@ -206,6 +257,7 @@ public class TransactionalPostServiceTest {
         assertEquals(topic.getModificationDate(), topic.getFirstPost().getCreationDate());
         verify(topicDao).saveOrUpdate(topic);
         verify(securityService).deleteFromAcl(postForDelete);
+        verify(renderedPostCacheService).invalidate(postForDelete);
         verify(notificationService).subscribedEntityChanged(topic);
     }
 
@@ -296,7 +348,7 @@ public class TransactionalPostServiceTest {
         Page<Post> expectedPostsPage = getPageWithPost();
         when(postDao.getUserPosts(Matchers.<JCUser>any(), Matchers.<PageRequest>any(), Matchers.anyList()))
                 .thenReturn(expectedPostsPage);
-        when(topicDao.getAllowedBranchesIds(Matchers.<JCUser>any())).thenReturn(Arrays.asList(1L));
+        when(allowedBranchesCacheService.getAllowedBranchesIds(Matchers.<JCUser>any())).thenReturn(Arrays.asList(1L));
 
         currentUser.setPageSize(50);
 
@@ -309,7 +361,8 @@ public class TransactionalPostServiceTest {
     public void getPostsOfUserShouldReturnEmptyPageInNoBranchesAllowed() {
         when(postDao.getUserPosts(Matchers.<JCUser>any(), Matchers.<PageRequest>any(), Matchers.anyList()))
                 .thenReturn(getPageWithPost());
-        when(topicDao.getAllowedBranchesIds(Matchers.<JCUser>any())).thenReturn(Collections.EMPTY_LIST);
+        when(allowedBranchesCacheService.getAllowedBranchesIds(Matchers.<JCUser>any()))
+                .thenReturn(Collections.EMPTY_LIST);
 
         currentUser.setPageSize(50);
 
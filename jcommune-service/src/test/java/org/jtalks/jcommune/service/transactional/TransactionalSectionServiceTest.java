@@ -21,6 +21,7 @@ import org.jtalks.jcommune.model.dao.SectionDao;
 import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.BranchService;
+import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.SectionService;
 import org.jtalks.jcommune.service.UserService;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
@@ -61,6 +62,8 @@ public class TransactionalSectionServiceTest {
 
     @Mock
     private PostDao postDao;
+    @Mock
+    private LastReadPostService lastReadPostService;
 
     @BeforeMethod
     public void setUp() throws Exception {
@@ -70,7 +73,8 @@ public class TransactionalSectionServiceTest {
         userService = mock(UserService.class);
         topicDao = mock(TopicDao.class);
 
-        sectionService = new TransactionalSectionService(sectionDao, branchService, userService, topicDao, postDao);
+        sectionService = new TransactionalSectionService(sectionDao, branchService, userService, topicDao, postDao,
+                lastReadPostService);
     }
 
     @Test
@@ -140,6 +144,21 @@ public class TransactionalSectionServiceTest {
         verify(branchService, Mockito.times(sectionSize))
             .fillStatisticInfo(Mockito.anyListOf(Branch.class));
     }
+
+    @Test
+    public void unreadPostsOfBranchesOfAllSectionsShouldBeFilledAtOnce() {
+        Section first = new Section(SECTION_NAME);
+        first.addOrUpdateBranch(new org.jtalks.jcommune.model.entity.Branch("first", "description"));
+        Section second = new Section(SECTION_NAME);
+        second.addOrUpdateBranch(new org.jtalks.jcommune.model.entity.Branch("second", "description"));
+
+        sectionService.prepareSectionsForView(Arrays.asList(first, second));
+
+        List<org.jtalks.jcommune.model.entity.Branch> branches = new ArrayList<>();
+        branches.add((org.jtalks.jcommune.model.entity.Branch) first.getBranches().get(0));
+        branches.add((org.jtalks.jcommune.model.entity.Branch) second.getBranches().get(0));
+        verify(lastReadPostService).fillUnreadPostsInBranches(branches);
+    }
     
     @Test
     public void testDeleteAllBranches() throws NotFoundException {
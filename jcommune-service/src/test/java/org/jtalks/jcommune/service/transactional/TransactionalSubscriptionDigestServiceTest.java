@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2011  JTalks.org Team
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.jtalks.jcommune.service.transactional;
+
+import org.joda.time.DateTime;
+import org.jtalks.jcommune.model.dao.SubscriptionDigestEntryDao;
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.SubscriptionDigestEntry;
+import org.jtalks.jcommune.service.dto.SubscriptionUpdate;
+import org.jtalks.jcommune.service.nontransactional.MailService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.jtalks.jcommune.service.transactional.TransactionalSubscriptionDigestService.MAX_ENTITIES_IN_DIGEST;
+import static org.jtalks.jcommune.service.transactional.TransactionalSubscriptionDigestService.USERS_PER_CALL;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TransactionalSubscriptionDigestServiceTest {
+    private static final long DIGEST_INTERVAL = 3600000;
+
+    @Mock
+    private SubscriptionDigestEntryDao dao;
+    @Mock
+    private MailService mailService;
+    private TransactionalSubscriptionDigestService service;
+    private JCUser user1 = user(1);
+    private JCUser user2 = user(2);
+
+    @BeforeMethod
+    public void setUp() {
+        initMocks(this);
+        service = new TransactionalSubscriptionDigestService(dao, mailService, DIGEST_INTERVAL);
+    }
+
+    @Test
+    public void firstUpdateOfEntityShouldBeStored() {
+        service.addUpdate(user1, update("topic1", "/posts/1"));
+
+        ArgumentCaptor<SubscriptionDigestEntry> captor = ArgumentCaptor.forClass(SubscriptionDigestEntry.class);
+        verify(dao).saveOrUpdate(captor.capture());
+        SubscriptionDigestEntry entry = captor.getValue();
+        assertEquals(entry.getUser(), user1);
+        assertEquals(entry.getEntityKey(), "topic1");
+        assertEquals(entry.getTitle(), "title of topic1");
+        assertEquals(entry.getLink(), "http://jtalks.org/posts/1");
+        assertEquals(entry.getLinkLabel(), "jtalks.org/posts/1");
+        assertEquals(entry.getUpdatesCount(), 1);
+    }
+
+    @Test
+    public void repeatedUpdateOfEntityShouldBeCountedInStoredEntry() {
+        when(dao.addUpdates(user1, "topic1", 1)).thenReturn(1);
+
+        service.addUpdate(user1, update("topic1", "/posts/2"));
+
+        verify(dao, never()).saveOrUpdate(any(SubscriptionDigestEntry.class));
+    }
+
+    @Test
+    public void digestShouldNotGrowOverLimit() {
+        when(dao.getEntriesCount(user1)).thenReturn((long) MAX_ENTITIES_IN_DIGEST);
+
+        service.addUpdate(user1, update("topic1", "/posts/1"));
+
+        verify(dao, never()).saveOrUpdate(any(SubscriptionDigestEntry.class));
+    }
+
+    @Test
+    public void digestsShouldBeSentToUsersWaitingLongerThanInterval() {
+        DateTime old = new DateTime().minus(DIGEST_INTERVAL + 1000);
+        SubscriptionDigestEntry entry1 = entry(user1, "topic1", "/posts/1", 2, old);
+        SubscriptionDigestEntry entry2 = entry(user1, "branch1", "/branches/1", 1, new DateTime());
+        SubscriptionDigestEntry entry3 = entry(user2, "topic1", "/posts/3", 1, old);
+        when(dao.getUsersToSendDigests(any(DateTime.class), eq(USERS_PER_CALL))).thenReturn(Arrays.asList(1L, 2L));
+        when(dao.getEntriesToSend(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(entry1, entry2, entry3));
+
+        DateTime before = new DateTime().minus(DIGEST_INTERVAL);
+        service.sendDigests();
+        DateTime after = new DateTime().minus(DIGEST_INTERVAL);
+
+        ArgumentCaptor<DateTime> createdBefore = ArgumentCaptor.forClass(DateTime.class);
+        verify(dao).getUsersToSendDigests(createdBefore.capture(), eq(USERS_PER_CALL));
+        assertTrue(!createdBefore.getValue().isBefore(before) && !createdBefore.getValue().isAfter(after));
+        List<SubscriptionUpdate> updates = sentUpdates(user1);
+        assertEquals(updates.size(), 2);
+        assertEquals(updates.get(0).getLink(), "http://jtalks.org/posts/1");
+        assertEquals(updates.get(0).getUpdatesCount(), 2);
+        assertEquals(updates.get(1).getLink(), "http://jtalks.org/branches/1");
+        assertEquals(updates.get(1).getUpdatesCount(), 1);
+        assertEquals(sentUpdates(user2).get(0).getLink(), "http://jtalks.org/posts/3");
+        verify(dao).delete(entry1);
+        verify(dao).delete(entry2);
+        verify(dao).delete(entry3);
+    }
+
+    @Test
+    public void entriesOfTheSameEntityShouldBeMerged() {
+        DateTime old = new DateTime().minus(DIGEST_INTERVAL + 1000);
+        List<Long> userIds = Arrays.asList(1L);
+        when(dao.getUsersToSendDigests(any(DateTime.class), eq(USERS_PER_CALL))).thenReturn(userIds);
+        when(dao.getEntriesToSend(userIds)).thenReturn(Arrays.asList(
+                entry(user1, "topic1", "/posts/1", 2, old), entry(user1, "topic1", "/posts/2", 1, old)));
+
+        service.sendDigests();
+
+        List<SubscriptionUpdate> updates = sentUpdates(user1);
+        assertEquals(updates.size(), 1);
+        assertEquals(updates.get(0).getLink(), "http://jtalks.org/posts/1");
+        assertEquals(updates.get(0).getUpdatesCount(), 3);
+    }
+
+    @Test
+    public void digestSentByAnotherInstanceWhileWaitingForLockShouldNotBeSentAgain() {
+        List<Long> userIds = Arrays.asList(1L);
+        SubscriptionDigestEntry newer = entry(user1, "topic1", "/posts/2", 1, new DateTime());
+        when(dao.getUsersToSendDigests(any(DateTime.class), eq(USERS_PER_CALL))).thenReturn(userIds);
+        when(dao.getEntriesToSend(userIds)).thenReturn(Arrays.asList(newer));
+
+        service.sendDigests();
+
+        verifyZeroInteractions(mailService);
+        verify(dao, never()).delete(newer);
+    }
+
+    @Test
+    public void nothingShouldBeSentIfThereAreNoUpdates() {
+        when(dao.getUsersToSendDigests(any(DateTime.class), eq(USERS_PER_CALL)))
+                .thenReturn(Collections.<Long>emptyList());
+        when(dao.getEntriesToSend(anyListOf(Long.class)))
+                .thenReturn(Collections.<SubscriptionDigestEntry>emptyList());
+
+        service.sendDigests();
+
+        verifyZeroInteractions(mailService);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SubscriptionUpdate> sentUpdates(JCUser recipient) {
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mailService).sendSubscriptionDigest(eq(recipient), captor.capture());
+        return new ArrayList<SubscriptionUpdate>(captor.getValue());
+    }
+
+    private SubscriptionUpdate update(String key, String link) {
+        return new SubscriptionUpdate(key, "title of " + key, "http://jtalks.org" + link, "jtalks.org" + link);
+    }
+
+    private SubscriptionDigestEntry entry(JCUser user, String key, String link, int updatesCount,
+                                          DateTime creationDate) {
+        SubscriptionDigestEntry entry = new SubscriptionDigestEntry(user, key, "title of " + key,
+                "http://jtalks.org" + link, "jtalks.org" + link, updatesCount);
+        entry.setCreationDate(creationDate);
+        return entry;
+    }
+
+    private static JCUser user(long id) {
+        JCUser user = new JCUser("user" + id, "user" + id + "@jtalks.org", "password");
+        user.setId(id);
+        return user;
+    }
+}
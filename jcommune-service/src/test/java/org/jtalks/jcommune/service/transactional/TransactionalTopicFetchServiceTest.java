@@ -18,13 +18,23 @@ import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.dao.TopicDao;
 import org.jtalks.jcommune.model.dao.search.TopicSearchDao;
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
 import org.jtalks.jcommune.model.dto.PageRequest;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
 import org.jtalks.jcommune.model.entity.Branch;
 import org.jtalks.jcommune.model.entity.JCUser;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.service.TopicFetchService;
 import org.jtalks.jcommune.service.UserService;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress;
+import org.jtalks.jcommune.service.nontransactional.AllowedBranchesCacheService;
+import org.jtalks.jcommune.service.nontransactional.SearchIndexRebuilder;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -55,6 +65,10 @@ public class TransactionalTopicFetchServiceTest {
     private UserService userService;
     @Mock
     private TopicSearchDao searchDao;
+    @Mock
+    private SearchIndexRebuilder searchIndexRebuilder;
+    @Mock
+    private AllowedBranchesCacheService allowedBranchesCacheService;
 
     private TopicFetchService topicFetchService;
 
@@ -63,7 +77,8 @@ public class TransactionalTopicFetchServiceTest {
     @BeforeMethod
     public void init(){
         initMocks(this);
-        topicFetchService = new TransactionalTopicFetchService(topicDao, userService, searchDao);
+        topicFetchService = new TransactionalTopicFetchService(topicDao, userService, searchDao, searchIndexRebuilder,
+                allowedBranchesCacheService);
         user = new JCUser("username", "email@mail.com", "password");
         when(userService.getCurrentUser()).thenReturn(user);
     }
@@ -156,7 +171,8 @@ public class TransactionalTopicFetchServiceTest {
 
     @Test(dataProvider = "parameterSearchPostsWithEmptySearchPhrase")
     public void testSearchPostsWithEmptySearchPhrase(String phrase) {
-        Page<Topic> searchResultPage = topicFetchService.searchByTitleAndContent(phrase, "50");
+        Page<Topic> searchResultPage = topicFetchService.searchByTitleAndContent(phrase, "50",
+                TopicSearchFilter.NONE);
 
         Assert.assertTrue(!searchResultPage.hasContent(), "The search result must be empty.");
     }
@@ -169,11 +185,99 @@ public class TransactionalTopicFetchServiceTest {
         };
     }
 
+    @Test
+    public void topicsShouldBeSearchedWithFilterOfUser() {
+        List<Long> allowedBranchesIds = Collections.singletonList(1L);
+        user.setPageSize(25);
+        when(allowedBranchesCacheService.getAllowedBranchesIds(user)).thenReturn(allowedBranchesIds);
+        TopicSearchFilter filter = new TopicSearchFilter(1L, 2L, TopicSearchFilter.Period.WEEK);
+        FoundTopics expectedPage = new FoundTopics(Collections.singletonList(new Topic(user, "title")),
+                TopicSearchFacets.EMPTY);
+        when(searchDao.searchByTitleAndContent(eq("text"), eq(filter), any(PageRequest.class),
+                eq(allowedBranchesIds))).thenReturn(expectedPage);
+
+        FoundTopics actualPage = topicFetchService.searchByTitleAndContent("text", "2", filter);
+
+        assertEquals(actualPage, expectedPage);
+        ArgumentCaptor<PageRequest> pageRequest = ArgumentCaptor.forClass(PageRequest.class);
+        verify(searchDao).searchByTitleAndContent(eq("text"), eq(filter), pageRequest.capture(),
+                eq(allowedBranchesIds));
+        assertEquals(pageRequest.getValue().getPageNumber(), 2);
+        assertEquals(pageRequest.getValue().getPageSize(), 25);
+    }
+
+    @Test
+    public void postsShouldBeSearchedInAllowedBranchesWithPageSizeOfUser() {
+        List<Long> allowedBranchesIds = Collections.singletonList(1L);
+        user.setPageSize(25);
+        when(allowedBranchesCacheService.getAllowedBranchesIds(user)).thenReturn(allowedBranchesIds);
+        Page<FoundPost> expectedPage = new PageImpl<>(Collections.singletonList(
+                new FoundPost(2L, 3L, Collections.singletonList("<b>text</b>"))));
+        when(searchDao.searchPostsByContent(eq("text"), any(PageRequest.class), eq(allowedBranchesIds)))
+                .thenReturn(expectedPage);
+
+        Page<FoundPost> actualPage = topicFetchService.searchPostsByContent("text", "2");
+
+        assertEquals(actualPage, expectedPage);
+        ArgumentCaptor<PageRequest> pageRequest = ArgumentCaptor.forClass(PageRequest.class);
+        verify(searchDao).searchPostsByContent(eq("text"), pageRequest.capture(), eq(allowedBranchesIds));
+        assertEquals(pageRequest.getValue().getPageNumber(), 2);
+        assertEquals(pageRequest.getValue().getPageSize(), 25);
+    }
+
+    @Test
+    public void postsShouldNotBeSearchedIfNoBranchesAreAllowed() {
+        when(allowedBranchesCacheService.getAllowedBranchesIds(user)).thenReturn(Collections.<Long>emptyList());
+
+        Page<FoundPost> searchResultPage = topicFetchService.searchPostsByContent("text", "1");
+
+        Assert.assertFalse(searchResultPage.hasContent());
+        verify(searchDao, never()).searchPostsByContent(
+                Matchers.anyString(), any(PageRequest.class), Matchers.<List<Long>>any());
+    }
+
+    @Test
+    public void topicsShouldBeSuggestedFromAllowedBranches() {
+        List<Long> allowedBranchesIds = Collections.singletonList(1L);
+        when(allowedBranchesCacheService.getAllowedBranchesIds(user)).thenReturn(allowedBranchesIds);
+        List<TopicSuggestion> expectedSuggestions = Collections.singletonList(new TopicSuggestion(1L, "title"));
+        when(searchDao.suggestTopics("tit", 10, allowedBranchesIds)).thenReturn(expectedSuggestions);
+
+        assertEquals(topicFetchService.suggestTopics("tit"), expectedSuggestions);
+    }
+
+    @Test
+    public void topicsShouldNotBeSuggestedForBlankTextOrIfNoBranchesAreAllowed() {
+        when(allowedBranchesCacheService.getAllowedBranchesIds(user)).thenReturn(Collections.<Long>emptyList());
+
+        assertEquals(topicFetchService.suggestTopics(" ").size(), 0);
+        assertEquals(topicFetchService.suggestTopics("title").size(), 0);
+        verify(searchDao, never()).suggestTopics(
+                Matchers.anyString(), Matchers.anyInt(), Matchers.<List<Long>>any());
+    }
+
     @Test
     public void testRebuildIndex() {
         topicFetchService.rebuildSearchIndex();
 
-        Mockito.verify(searchDao).rebuildIndex();
+        Mockito.verify(searchIndexRebuilder).start();
+    }
+
+    @Test
+    public void progressOfIndexRebuildingShouldBeTakenFromRebuilder() {
+        SearchIndexRebuildProgress progress =
+                new SearchIndexRebuildProgress(SearchIndexRebuildProgress.State.RUNNING, 10, 5, 20, 3);
+        when(searchIndexRebuilder.getProgress()).thenReturn(progress);
+
+        assertEquals(topicFetchService.getSearchIndexRebuildProgress(), progress);
+    }
+
+    @Test
+    public void stateOfIndexQueueShouldBeTakenFromSearchDao() {
+        IndexingQueueState state = new IndexingQueueState(true, 3, 1000, 250, 10, 40, 0);
+        when(searchDao.getIndexingQueueState()).thenReturn(state);
+
+        assertEquals(topicFetchService.getSearchIndexQueueState(), state);
     }
 
     @Test
@@ -23,10 +23,12 @@ import org.jtalks.common.service.security.SecurityContextFacade;
 import org.jtalks.jcommune.model.dao.BranchDao;
 import org.jtalks.jcommune.model.dao.PostDao;
 import org.jtalks.jcommune.model.dao.TopicDao;
+import org.jtalks.jcommune.model.dao.search.TopicSearchDao;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.plugin.api.PluginLoader;
 import org.jtalks.jcommune.service.*;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
 import org.jtalks.jcommune.service.nontransactional.NotificationService;
 import org.mockito.Matchers;
@@ -100,6 +102,10 @@ public class TransactionalTopicModificationServiceTest {
     private PostDao postDao;
     @Mock
     private PluginLoader pluginLoader;
+    @Mock
+    private BBCodeService bbCodeService;
+    @Mock
+    private TopicSearchDao searchDao;
 
     private CompoundAclBuilder<User> aclBuilder;
 
@@ -121,7 +127,9 @@ public class TransactionalTopicModificationServiceTest {
                 lastReadPostService,
                 postDao,
                 topicFetchService,
-                pluginLoader);
+                pluginLoader,
+                bbCodeService,
+                searchDao);
 
         user = new JCUser("username", "email@mail.com", "password");
         when(securityContextFacade.getContext()).thenReturn(securityContext);
@@ -187,6 +195,18 @@ public class TransactionalTopicModificationServiceTest {
         verify(userService).notifyAndMarkNewlyMentionedUsers(answerPost);
     }
 
+    @Test
+    public void replyTopicShouldRenderContentOfReply() throws NotFoundException {
+        Topic answeredTopic = ObjectsFactory.topics(user, 1).get(0);
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(topicFetchService.getTopicSilently(TOPIC_ID)).thenReturn(answeredTopic);
+        when(securityService.<User>createAclBuilder()).thenReturn(aclBuilder);
+
+        Post answerPost = topicService.replyToTopic(TOPIC_ID, ANSWER_BODY, BRANCH_ID);
+
+        verify(bbCodeService).renderPostContent(answerPost);
+    }
+
     @Test(expectedExceptions = AccessDeniedException.class)
     public void testReplyToClosedTopic() throws NotFoundException {
         Topic answeredTopic = new Topic(user, "title");
@@ -268,6 +288,7 @@ public class TransactionalTopicModificationServiceTest {
         Topic createdTopic = topicService.createTopic(topicWithUserNotification, answerBodyWithUserMentioning);
 
         verify(userService).notifyAndMarkNewlyMentionedUsers(createdTopic.getFirstPost());
+        verify(bbCodeService).renderPostContent(createdTopic.getFirstPost());
     }
 
     @Test
@@ -429,6 +450,7 @@ public class TransactionalTopicModificationServiceTest {
         topicService.updateTopic(topic, null);
 
         verify(subscriptionService).toggleTopicSubscription(topic);
+        verify(bbCodeService).renderPostContent(topic.getFirstPost());
     }
 
     @Test
@@ -611,6 +633,7 @@ public class TransactionalTopicModificationServiceTest {
 
         assertEquals(targetBranch.getTopicCount(), 1);
         verify(branchDao).saveOrUpdate(targetBranch);
+        verify(searchDao).indexPosts(topic);
         verify(notificationService).sendNotificationAboutTopicMoved(topic);
     }
 
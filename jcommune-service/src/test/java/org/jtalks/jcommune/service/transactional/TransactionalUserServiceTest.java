@@ -39,6 +39,8 @@ import org.jtalks.jcommune.service.nontransactional.Base64Wrapper;
 import org.jtalks.jcommune.service.nontransactional.EncryptionService;
 import org.jtalks.jcommune.service.nontransactional.MailService;
 import org.jtalks.jcommune.service.nontransactional.MentionedUsers;
+import org.jtalks.jcommune.service.nontransactional.RenderedPostCacheService;
+import org.jtalks.jcommune.service.nontransactional.UserIdCacheService;
 import org.jtalks.jcommune.service.security.AdministrationGroup;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
@@ -52,8 +54,10 @@ import org.testng.annotations.Test;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -114,6 +118,10 @@ public class TransactionalUserServiceTest {
     private PostDao postDao;
     @Mock
     private Authenticator authenticator;
+    @Mock
+    private RenderedPostCacheService renderedPostCacheService;
+    @Mock
+    private UserIdCacheService userIdCacheService;
 
 
     @BeforeMethod
@@ -130,7 +138,7 @@ public class TransactionalUserServiceTest {
                 mailService,
                 base64Wrapper,
                 encryptionService,
-                postDao, authenticator);
+                postDao, authenticator, renderedPostCacheService, userIdCacheService);
     }
 
     @Test
@@ -280,7 +288,7 @@ public class TransactionalUserServiceTest {
         when(userDao.get(USER_ID)).thenReturn(user);
 
         JCUser editedUser = userService.saveEditedUserNotifications(USER_ID,
-                new UserNotificationsContainer(true, false, false));
+                new UserNotificationsContainer(true, false, false, true));
 
         verify(userDao).saveOrUpdate(user);
 
@@ -288,6 +296,7 @@ public class TransactionalUserServiceTest {
         assertEquals(editedUser.isSendPmNotification(), false, "Send pm notification was not changed");
         assertEquals(editedUser.isMentioningNotificationsEnabled(), false,
                 "User mentioning notifications was not changed");
+        assertEquals(editedUser.isSubscriptionDigestEnabled(), true, "Subscription digest was not changed");
     }
 
     @Test
@@ -298,7 +307,7 @@ public class TransactionalUserServiceTest {
         when(userDao.get(USER_ID)).thenReturn(user);
 
         JCUser editedUser = userService.saveEditedUserNotifications(USER_ID,
-                new UserNotificationsContainer(true, false, false));
+                new UserNotificationsContainer(true, false, false, true));
 
         verify(userDao).saveOrUpdate(user);
 
@@ -459,6 +468,8 @@ public class TransactionalUserServiceTest {
         verify(userDao).delete(user2);
         verify(userDao).delete(user3);
         verify(userDao, never()).delete(user1);
+        verify(userIdCacheService, times(2)).invalidate(USERNAME);
+        verify(renderedPostCacheService, times(2)).invalidateMentionsOf(USERNAME);
     }
 
     @Test
@@ -520,14 +531,15 @@ public class TransactionalUserServiceTest {
         userService.notifyAndMarkNewlyMentionedUsers(post);
 
         verify(mailService).sendUserMentionedNotification(toBeNotified, post.getId());
+        verify(renderedPostCacheService).invalidate(post);
     }
 
     @Test
     public void processShouldNotAttachProfileLinkToNotExistUsers() throws NotFoundException {
         String firstMentionedUserName = "Shogun";
         String secondMentionedUserName = "jk1";
-        when(userDao.getByUsername(firstMentionedUserName)).thenReturn(null);
-        when(userDao.getByUsername(secondMentionedUserName)).thenReturn(null);
+        when(userDao.getByUsernames(asSet(firstMentionedUserName, secondMentionedUserName)))
+                .thenReturn(new ArrayList<JCUser>());
         String notProcessedSource = format(MENTIONING_TEMPLATE, firstMentionedUserName, secondMentionedUserName);
 
         MentionedUsers mentionedUsers = mock(MentionedUsers.class);
@@ -542,6 +554,36 @@ public class TransactionalUserServiceTest {
         assertEquals(actualAfterProcess, msgWithNotFoundUsers);
     }
 
+    @Test
+    public void processShouldTakeIdsOfMentionedUsersFromCache() {
+        boundMockHttpRequestToThread("/forum");
+        when(userIdCacheService.getUserId("cached")).thenReturn(1L);
+        JCUser notCached = user("not-cached");
+        notCached.setId(2L);
+        when(userDao.getByUsernames(asSet("not-cached"))).thenReturn(asList(notCached));
+
+        String actualAfterProcess = userService.processUserBbCodesInPost(
+                "[user]cached[/user] and [user]not-cached[/user]");
+
+        assertEquals(actualAfterProcess,
+                "[user=/forum/users/1]cached[/user] and [user=/forum/users/2]not-cached[/user]");
+        verify(userIdCacheService).putUserId("not-cached", 2L);
+    }
+
+    @Test
+    public void mentionedUserIdsShouldBeTakenFromCacheAndQueriedForAllPostsAtOnce() {
+        when(userIdCacheService.getUserId("cached")).thenReturn(1L);
+        JCUser notCached = user("not-cached");
+        notCached.setId(2L);
+        when(userDao.getByUsernames(asSet("not-cached"))).thenReturn(asList(notCached));
+
+        Map<String, Long> userIds = userService.getMentionedUserIds(
+                asList("[user]cached[/user]", "[user]not-cached[/user]"));
+
+        assertEquals(userIds.get("cached"), Long.valueOf(1L));
+        assertEquals(userIds.get("not-cached"), Long.valueOf(2L));
+    }
+
     @Test
     public void testGetUsernames() {
         String usernamePattern = "Us";
@@ -97,7 +97,7 @@ public class PostController {
      * @param breadcrumbBuilder        the object which provides actions on {@link BreadcrumbBuilder} entity
      * @param topicFetchService        to retrieve topics from a database
      * @param topicModificationService to update topics with new posts
-     * @param bbCodeService            to create valid quotes
+     * @param bbCodeService            to create valid quotes and to convert posts to HTML before the page is rendered
      * @param lastReadPostService      not to track user posts as updates for himself
      * @param userService              to get the current user information
      * @param converter                instance of {@link EntityToDtoConverter} needed to
@@ -237,6 +237,7 @@ public class PostController {
             Topic topic = topicFetchService.get(topicId);
             postDto.setTopicId(topicId);
             Page<Post> postsPage = postService.getPosts(topic, page);
+            bbCodeService.convertPostsToHtml(postsPage);
 
             return new ModelAndView("topic/postList")
                     .addObject("viewList", locationService.getUsersViewing(topic))
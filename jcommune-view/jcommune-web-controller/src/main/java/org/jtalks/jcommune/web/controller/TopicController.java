@@ -17,6 +17,7 @@ package org.jtalks.jcommune.web.controller;
 import org.joda.time.DateTime;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.LocationService;
 import org.jtalks.jcommune.service.dto.EntityToDtoConverter;
 import org.jtalks.jcommune.plugin.api.web.dto.PostDto;
@@ -79,6 +80,7 @@ public class TopicController {
     private LocationService locationService;
     private SessionRegistry sessionRegistry;
     private EntityToDtoConverter converter;
+    private BBCodeService bbCodeService;
 
     /**
      * This method turns the trim binder on. Trim binder
@@ -107,6 +109,7 @@ public class TopicController {
      * @param locationService          to track user location on forum (what page he is viewing now)
      * @param sessionRegistry          to obtain list of users currently online
      * @param topicFetchService        to load topics from a database
+     * @param bbCodeService            to convert posts of the page to HTML before the page is rendered
      */
     @Autowired
     public TopicController(TopicModificationService topicModificationService,
@@ -118,7 +121,8 @@ public class TopicController {
                            LocationService locationService,
                            SessionRegistry sessionRegistry,
                            TopicFetchService topicFetchService,
-                           EntityToDtoConverter converter) {
+                           EntityToDtoConverter converter,
+                           BBCodeService bbCodeService) {
         this.topicModificationService = topicModificationService;
         this.postService = postService;
         this.branchService = branchService;
@@ -129,6 +133,7 @@ public class TopicController {
         this.sessionRegistry = sessionRegistry;
         this.topicFetchService = topicFetchService;
         this.converter = converter;
+        this.bbCodeService = bbCodeService;
     }
 
     /**
@@ -237,6 +242,7 @@ public class TopicController {
         }
 
         lastReadPostService.markTopicPageAsRead(topic, postsPage.getNumber());
+        bbCodeService.convertPostsToHtml(postsPage);
         return new ModelAndView("topic/postList")
                 .addObject("viewList", locationService.getUsersViewing(topic))
                 .addObject("usersOnline", sessionRegistry.getAllPrincipals())
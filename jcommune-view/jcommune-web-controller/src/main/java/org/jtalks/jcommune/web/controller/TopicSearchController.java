@@ -14,7 +14,10 @@
  */
 package org.jtalks.jcommune.web.controller;
 
-import org.jtalks.jcommune.model.entity.Topic;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.plugin.api.web.dto.json.JsonResponse;
+import org.jtalks.jcommune.plugin.api.web.dto.json.JsonResponseStatus;
 import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.TopicFetchService;
 import org.jtalks.jcommune.service.dto.EntityToDtoConverter;
@@ -47,6 +50,14 @@ public class TopicSearchController {
      * The name attribute for the search text.
      */
     public static final String SEARCH_TEXT_ATTRIBUTE_NAME = "searchText";
+    /**
+     * The name attribute for the numbers of found topics per branch, author and period.
+     */
+    public static final String SEARCH_FACETS_ATTRIBUTE_NAME = "searchFacets";
+    /**
+     * The name attribute for the restrictions the found topics are narrowed down with.
+     */
+    public static final String SEARCH_FILTER_ATTRIBUTE_NAME = "searchFilter";
 
     private static final String SEARCH_RESULT_VIEW_NAME = "topic/searchResult";
 
@@ -80,21 +91,98 @@ public class TopicSearchController {
     }
 
     /**
-     * Full-text search for topics. It needed to start the search.
+     * Shows how many topics are indexed since {@link #rebuildIndexes()} was called and how long it will take to index
+     * the rest of them.
+     *
+     * @return progress of the index rebuilding
+     */
+    @RequestMapping(value = "/search/index/rebuild/progress", method = RequestMethod.GET)
+    @ResponseBody
+    public JsonResponse getRebuildIndexesProgress() {
+        return new JsonResponse(JsonResponseStatus.SUCCESS, topicSearchService.getSearchIndexRebuildProgress());
+    }
+
+    /**
+     * Shows how many saved changes are waiting to be written to the search index and how long the oldest of them has
+     * been waiting, so that monitoring can check whether new topics and posts are found in time.
+     *
+     * @return state of the search index queue
+     */
+    @RequestMapping(value = "/search/index/queue", method = RequestMethod.GET)
+    @ResponseBody
+    public JsonResponse getIndexQueueState() {
+        return new JsonResponse(JsonResponseStatus.SUCCESS, topicSearchService.getSearchIndexQueueState());
+    }
+
+    /**
+     * Full-text search for topics. It needed to start the search. Found topics can be narrowed down to a branch, an
+     * author and to the recently updated ones, the numbers of found topics for each of them are shown along with the
+     * results, so that user doesn't have to search again with other words.
      *
      * @param searchText search text
+     * @param page       requested page of the results
+     * @param branchId   id of the branch to leave topics of, null for all the branches
+     * @param authorId   id of the user to leave topics started by, null for all the users
+     * @param period     period to leave topics updated during, null for topics updated any time
      * @return redirect to the answer page
      */
     @RequestMapping(value = "/search", method = RequestMethod.GET)
     public ModelAndView initSearch(@RequestParam(value = "text", defaultValue = "", required = false) String searchText,
-                                   @RequestParam(value = "page", defaultValue = "1", required = false) String page) {
-        Page<Topic> searchResultPage = topicSearchService.searchByTitleAndContent(searchText, page);
+                                   @RequestParam(value = "page", defaultValue = "1", required = false) String page,
+                                   @RequestParam(value = "branch", required = false) Long branchId,
+                                   @RequestParam(value = "author", required = false) Long authorId,
+                                   @RequestParam(value = "period", required = false)
+                                   TopicSearchFilter.Period period) {
+        TopicSearchFilter filter = new TopicSearchFilter(branchId, authorId, period);
+        FoundTopics searchResultPage = topicSearchService.searchByTitleAndContent(searchText, page, filter);
         lastReadPostService.fillLastReadPostForTopics(searchResultPage.getContent());
         HashMap<String, Object> urlParams = new HashMap<>();
         urlParams.put("text", searchText);
+        if (branchId != null) {
+            urlParams.put("branch", branchId);
+        }
+        if (authorId != null) {
+            urlParams.put("author", authorId);
+        }
+        if (period != null) {
+            urlParams.put("period", period);
+        }
         return new ModelAndView(SEARCH_RESULT_VIEW_NAME).
                 addObject(SEARCH_RESULT_ATTRIBUTE_NAME, converter.convertTopicPageToTopicDtoPage(searchResultPage)).
                 addObject(SEARCH_TEXT_ATTRIBUTE_NAME, searchText).
+                addObject(SEARCH_FACETS_ATTRIBUTE_NAME, searchResultPage.getFacets()).
+                addObject(SEARCH_FILTER_ATTRIBUTE_NAME, filter).
                 addObject("urlParams", urlParams);
     }
+
+    /**
+     * Full-text search for posts. Unlike {@link #initSearch} found posts are returned rather than their
+     * topics, each with the pieces of its content where the search text was found, so that user can go straight to
+     * the post.
+     *
+     * @param searchText search text
+     * @param page       requested page of the results
+     * @return page of the found posts
+     */
+    @RequestMapping(value = "/search/posts", method = RequestMethod.GET)
+    @ResponseBody
+    public JsonResponse searchPosts(
+            @RequestParam(value = "text", defaultValue = "", required = false) String searchText,
+            @RequestParam(value = "page", defaultValue = "1", required = false) String page) {
+        return new JsonResponse(JsonResponseStatus.SUCCESS, topicSearchService.searchPostsByContent(searchText, page));
+    }
+
+    /**
+     * Suggests topics while user is typing into the search field, so that the topic can be opened without the full
+     * search. Much cheaper than {@link #initSearch}, thus can be called on each key press.
+     *
+     * @param searchText text being typed
+     * @return topics whose title words start with the typed words
+     */
+    @RequestMapping(value = "/search/suggest", method = RequestMethod.GET)
+    @ResponseBody
+    public JsonResponse suggestTopics(
+            @RequestParam(value = "text", defaultValue = "", required = false) String searchText) {
+        return new JsonResponse(JsonResponseStatus.SUCCESS, topicSearchService.suggestTopics(searchText));
+    }
 }
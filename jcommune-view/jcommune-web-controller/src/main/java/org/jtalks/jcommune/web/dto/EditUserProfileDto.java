@@ -154,7 +154,8 @@ public class EditUserProfileDto {
     public UserNotificationsContainer getUserNotificationsContainer() {
         UserNotificationsDto dto = this.getUserNotificationsDto();
         return new UserNotificationsContainer(dto.isAutosubscribe(),
-                dto.isMentioningNotificationsEnabled(), dto.isSendPmNotification());
+                dto.isMentioningNotificationsEnabled(), dto.isSendPmNotification(),
+                dto.isSubscriptionDigestEnabled());
     }
 
     /**
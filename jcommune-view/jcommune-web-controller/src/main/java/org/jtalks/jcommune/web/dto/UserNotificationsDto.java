@@ -30,6 +30,7 @@ public class UserNotificationsDto {
     private boolean mentioningNotificationsEnabled;
     private boolean sendPmNotification;
     private boolean autosubscribe;
+    private boolean subscriptionDigestEnabled;
 
     /**
      * Form info population only, please do not call it explicitly
@@ -47,6 +48,7 @@ public class UserNotificationsDto {
         this.autosubscribe = user.isAutosubscribe();
         this.mentioningNotificationsEnabled = user.isMentioningNotificationsEnabled();
         this.sendPmNotification = user.isSendPmNotification();
+        this.subscriptionDigestEnabled = user.isSubscriptionDigestEnabled();
     }
 
     /**
@@ -113,4 +115,18 @@ public class UserNotificationsDto {
     public void setAutosubscribe(boolean autosubscribe) {
         this.autosubscribe = autosubscribe;
     }
+
+    /**
+     * @see org.jtalks.jcommune.model.entity.JCUser#isSubscriptionDigestEnabled()
+     */
+    public boolean isSubscriptionDigestEnabled() {
+        return subscriptionDigestEnabled;
+    }
+
+    /**
+     * @see org.jtalks.jcommune.model.entity.JCUser#setSubscriptionDigestEnabled(boolean)
+     */
+    public void setSubscriptionDigestEnabled(boolean subscriptionDigestEnabled) {
+        this.subscriptionDigestEnabled = subscriptionDigestEnabled;
+    }
 }
@@ -18,6 +18,7 @@ import org.jtalks.jcommune.model.dto.PageRequest;
 import org.jtalks.jcommune.model.entity.*;
 import org.jtalks.jcommune.service.*;
 import org.jtalks.jcommune.plugin.api.exceptions.NotFoundException;
+import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.jtalks.jcommune.service.nontransactional.LocationService;
 import org.jtalks.jcommune.plugin.api.web.dto.Breadcrumb;
 import org.jtalks.jcommune.plugin.api.web.dto.TopicDto;
@@ -84,6 +85,8 @@ public class TopicControllerTest {
     private LastReadPostService lastReadPostService;
     @Mock
     private EntityToDtoConverter converter;
+    @Mock
+    private BBCodeService bbCodeService;
 
     private TopicController controller;
 
@@ -100,7 +103,8 @@ public class TopicControllerTest {
                 locationService,
                 registry,
                 topicFetchService,
-                converter);
+                converter,
+                bbCodeService);
     }
 
     @BeforeMethod
@@ -144,7 +148,8 @@ public class TopicControllerTest {
         verify(lastReadPostService).markTopicPageAsRead(topic, Integer.valueOf(page));
         //
         assertViewName(mav, "topic/postList");
-        assertAndReturnModelAttributeOfType(mav, "postsPage", Page.class);
+        Page postsPage = assertAndReturnModelAttributeOfType(mav, "postsPage", Page.class);
+        verify(bbCodeService).convertPostsToHtml(postsPage);
         //
         Topic actualTopic = assertAndReturnModelAttributeOfType(mav, "topic", Topic.class);
         assertEquals(actualTopic, topic);
@@ -163,6 +168,7 @@ public class TopicControllerTest {
         ModelAndView mav = controller.showTopicPage(request, TOPIC_ID, page);
 
         assertNull(mav);
+        verify(bbCodeService, never()).convertPostsToHtml(any(Page.class));
     }
 
     @Test
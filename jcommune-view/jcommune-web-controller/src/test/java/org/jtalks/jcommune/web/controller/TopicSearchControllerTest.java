@@ -14,11 +14,20 @@
  */
 package org.jtalks.jcommune.web.controller;
 
+import org.jtalks.jcommune.model.dto.FoundPost;
+import org.jtalks.jcommune.model.dto.FoundTopics;
+import org.jtalks.jcommune.model.dto.IndexingQueueState;
+import org.jtalks.jcommune.model.dto.TopicSearchFacets;
+import org.jtalks.jcommune.model.dto.TopicSearchFilter;
+import org.jtalks.jcommune.model.dto.TopicSuggestion;
 import org.jtalks.jcommune.model.entity.Topic;
 import org.jtalks.jcommune.plugin.api.web.dto.TopicDto;
+import org.jtalks.jcommune.plugin.api.web.dto.json.JsonResponse;
+import org.jtalks.jcommune.plugin.api.web.dto.json.JsonResponseStatus;
 import org.jtalks.jcommune.service.LastReadPostService;
 import org.jtalks.jcommune.service.TopicFetchService;
 import org.jtalks.jcommune.service.dto.EntityToDtoConverter;
+import org.jtalks.jcommune.service.dto.SearchIndexRebuildProgress;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
@@ -29,6 +38,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.mockito.Mockito.verify;
@@ -62,41 +72,106 @@ public class TopicSearchControllerTest {
 		
 		verify(topicFetchService).rebuildSearchIndex();
 	}
+
+    @Test
+    public void progressOfIndexRebuildingShouldBeReturned() {
+        SearchIndexRebuildProgress progress =
+                new SearchIndexRebuildProgress(SearchIndexRebuildProgress.State.RUNNING, 10, 5, 20, 3);
+        when(topicFetchService.getSearchIndexRebuildProgress()).thenReturn(progress);
+
+        JsonResponse response = topicSearchController.getRebuildIndexesProgress();
+
+        Assert.assertEquals(response.getStatus(), JsonResponseStatus.SUCCESS);
+        Assert.assertEquals(response.getResult(), progress);
+    }
+
+    @Test
+    public void stateOfIndexQueueShouldBeReturned() {
+        IndexingQueueState state = new IndexingQueueState(true, 3, 1000, 250, 10, 40, 0);
+        when(topicFetchService.getSearchIndexQueueState()).thenReturn(state);
+
+        JsonResponse response = topicSearchController.getIndexQueueState();
+
+        Assert.assertEquals(response.getStatus(), JsonResponseStatus.SUCCESS);
+        Assert.assertEquals(response.getResult(), state);
+    }
+
+    @Test
+    public void suggestedTopicsShouldBeReturned() {
+        List<TopicSuggestion> suggestions = Collections.singletonList(new TopicSuggestion(1L, "title"));
+        when(topicFetchService.suggestTopics("tit")).thenReturn(suggestions);
+
+        JsonResponse response = topicSearchController.suggestTopics("tit");
+
+        Assert.assertEquals(response.getStatus(), JsonResponseStatus.SUCCESS);
+        Assert.assertEquals(response.getResult(), suggestions);
+    }
 	
+    @Test
+    public void foundPostsShouldBeReturned() {
+        Page<FoundPost> foundPosts = new PageImpl<>(Collections.singletonList(
+                new FoundPost(1L, 2L, Collections.singletonList("<b>text</b>"))));
+        when(topicFetchService.searchPostsByContent(DEFAULT_SEARCH_TEXT, START_PAGE)).thenReturn(foundPosts);
+
+        JsonResponse response = topicSearchController.searchPosts(DEFAULT_SEARCH_TEXT, START_PAGE);
+
+        Assert.assertEquals(response.getStatus(), JsonResponseStatus.SUCCESS);
+        Assert.assertEquals(response.getResult(), foundPosts);
+    }
+
 	@Test
 	public void testInitSearch() {
-		Page<Topic> searchResultPage = new PageImpl<>(Collections.<Topic> emptyList());
+		FoundTopics searchResultPage = new FoundTopics(Collections.<Topic> emptyList(), TopicSearchFacets.EMPTY);
         Page<TopicDto> searchDtoResultPage = new PageImpl<>(Collections.<TopicDto> emptyList());
 
-        when(topicFetchService.searchByTitleAndContent(DEFAULT_SEARCH_TEXT, START_PAGE))
+        when(topicFetchService.searchByTitleAndContent(DEFAULT_SEARCH_TEXT, START_PAGE, TopicSearchFilter.NONE))
 				.thenReturn(searchResultPage);
         when(converter.convertTopicPageToTopicDtoPage(searchResultPage)).thenReturn(searchDtoResultPage);
 
-		ModelAndView modelAndView = topicSearchController.initSearch(DEFAULT_SEARCH_TEXT, "1");
+		ModelAndView modelAndView = topicSearchController.initSearch(DEFAULT_SEARCH_TEXT, "1", null, null, null);
 		Map<String, Object> model = modelAndView.getModel();
 		
 		Assert.assertEquals(searchDtoResultPage, model.get(TopicSearchController.SEARCH_RESULT_ATTRIBUTE_NAME),
 				"The controller must return the result of TopicFullSearchService.");
-		verify(topicFetchService).searchByTitleAndContent(DEFAULT_SEARCH_TEXT, START_PAGE);
+		verify(topicFetchService).searchByTitleAndContent(DEFAULT_SEARCH_TEXT, START_PAGE, TopicSearchFilter.NONE);
 		verify(lastReadPostService).fillLastReadPostForTopics(searchResultPage.getContent());
 	}
 
     @Test
 	public void testContinueSearch() {
-        Page<Topic> searchResultPage = new PageImpl<>(Collections.<Topic> emptyList());
+        FoundTopics searchResultPage = new FoundTopics(Collections.<Topic> emptyList(), TopicSearchFacets.EMPTY);
         Page<TopicDto> searchDtoResultPage = new PageImpl<>(Collections.<TopicDto> emptyList());
 		String page = "2";
 
-        when(topicFetchService.searchByTitleAndContent(DEFAULT_SEARCH_TEXT, page))
+        when(topicFetchService.searchByTitleAndContent(DEFAULT_SEARCH_TEXT, page, TopicSearchFilter.NONE))
 				.thenReturn(searchResultPage);
         when(converter.convertTopicPageToTopicDtoPage(searchResultPage)).thenReturn(searchDtoResultPage);
 
-		ModelAndView modelAndView = topicSearchController.initSearch(DEFAULT_SEARCH_TEXT, page);
+		ModelAndView modelAndView = topicSearchController.initSearch(DEFAULT_SEARCH_TEXT, page, null, null, null);
 		Map<String, Object> model = modelAndView.getModel();
 		
 		Assert.assertEquals(searchDtoResultPage, model.get(TopicSearchController.SEARCH_RESULT_ATTRIBUTE_NAME),
 				"The controller must return the result of TopicFullSearchService.");
-		verify(topicFetchService).searchByTitleAndContent(DEFAULT_SEARCH_TEXT, page);
+		verify(topicFetchService).searchByTitleAndContent(DEFAULT_SEARCH_TEXT, page, TopicSearchFilter.NONE);
 		verify(lastReadPostService).fillLastReadPostForTopics(searchResultPage.getContent());
 	}
+
+    @Test
+    public void filteredSearchShouldKeepFilterForOtherPagesAndShowFacets() {
+        TopicSearchFilter filter = new TopicSearchFilter(1L, 2L, TopicSearchFilter.Period.MONTH);
+        FoundTopics searchResultPage = new FoundTopics(Collections.<Topic> emptyList(), TopicSearchFacets.EMPTY);
+        when(topicFetchService.searchByTitleAndContent(DEFAULT_SEARCH_TEXT, START_PAGE, filter))
+                .thenReturn(searchResultPage);
+
+        ModelAndView modelAndView = topicSearchController.initSearch(DEFAULT_SEARCH_TEXT, START_PAGE, 1L, 2L,
+                TopicSearchFilter.Period.MONTH);
+        Map<String, Object> model = modelAndView.getModel();
+
+        Assert.assertEquals(model.get(TopicSearchController.SEARCH_FACETS_ATTRIBUTE_NAME), TopicSearchFacets.EMPTY);
+        Assert.assertEquals(model.get(TopicSearchController.SEARCH_FILTER_ATTRIBUTE_NAME), filter);
+        Map<?, ?> urlParams = (Map<?, ?>) model.get("urlParams");
+        Assert.assertEquals(urlParams.get("branch"), 1L);
+        Assert.assertEquals(urlParams.get("author"), 2L);
+        Assert.assertEquals(urlParams.get("period"), TopicSearchFilter.Period.MONTH);
+    }
 }
@@ -15,6 +15,7 @@
 
 package org.jtalks.jcommune.web.tags;
 
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
@@ -34,6 +35,8 @@ import java.io.IOException;
  */
 public class ConverterBB2HTML extends TagSupport {
     private String bbCode;
+    /** If set, {@link #bbCode} is its content and rendered HTML can be taken from the cache. */
+    private Post post;
     /** We get this from Spring App Context in {@link #setPageContext(PageContext)}. */
     private BBCodeService service;
 
@@ -42,7 +45,7 @@ public class ConverterBB2HTML extends TagSupport {
     @Override
     public int doStartTag() throws JspException {
         try {
-            String html = service.convertBbToHtml(bbCode);
+            String html = (post == null) ? service.convertBbToHtml(bbCode) : service.convertPostToHtml(post);
             pageContext.getOut().print(html);
             return SKIP_BODY;
         } catch (IOException e) {
@@ -59,6 +62,16 @@ public class ConverterBB2HTML extends TagSupport {
         this.bbCode = bbCode;
     }
 
+    /**
+     * Feeds the post whose content is converted, this allows to reuse HTML rendered for the same version of the post
+     * before. Optional, if it's not set the text from {@link #setBbCode(String)} is always converted.
+     *
+     * @param post post whose content is shown by the tag
+     */
+    public void setPost(Post post) {
+        this.post = post;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void setPageContext(PageContext pageContext) {
@@ -58,5 +58,16 @@
       </div>
     </div>
 
+    <div class="control-group notification-control">
+      <label class="control-label"><spring:message code="label.subscription.digest.enabled"/></label>
+      <div class="controls padding-top-profile">
+        <spring:message var="subscriptionDigestTooltip" code="label.tips.subscriptionDigest"/>
+        <form:checkbox path="userNotificationsDto.subscriptionDigestEnabled"
+                       value="${editedUser.userNotificationsDto.subscriptionDigestEnabled}"
+                       class="form-check-radio-box script-has-tooltip" data-placement="top"
+                       data-original-title='${subscriptionDigestTooltip}' tabindex="37"/>
+      </div>
+    </div>
+
   </fieldset>
 </div>
\ No newline at end of file
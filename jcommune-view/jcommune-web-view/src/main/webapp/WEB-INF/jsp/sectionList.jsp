@@ -66,6 +66,9 @@
   <table id="topics-table" class="table table-row table-with-titles">
     <tbody>
     <c:set var="colspanOfSectionName" value="3"/>
+    <sec:authorize access="isAuthenticated()">
+      <c:set var="colspanOfSectionName" value="4"/>
+    </sec:authorize>
     <c:if test="${sessionScope.adminMode == true}">
       <c:set var="colspanOfSectionName" value="1"/>
     </c:if>
@@ -89,23 +92,24 @@
           </c:if>
           <c:if test="${isBranchVisible}">
             <tr>
-                <%--TODO: fix in milstone 2--%>
-                <%--<sec:authorize access="isAuthenticated()">--%>
-                <%--<td class="status-col">--%>
-                <%--<c:choose>--%>
-                <%--<c:when test="${branch.unreadPosts}">--%>
-                <%--<img class="status-img"--%>
-                <%--src="${pageContext.request.contextPath}/resources/images/new-posts.png"--%>
-                <%--title="<spring:message code="label.topic.new_posts"/>"/>--%>
-                <%--</c:when>--%>
-                <%--<c:otherwise>--%>
-                <%--<img class="status-img"--%>
-                <%--src="${pageContext.request.contextPath}/resources/images/no-new-posts.png"--%>
-                <%--title="<spring:message code="label.topic.no_new_posts"/>"/>--%>
-                <%--</c:otherwise>--%>
-                <%--</c:choose>--%>
-                <%--</td>--%>
-                <%--</sec:authorize>--%>
+              <c:if test="${sessionScope.adminMode != true}">
+                <sec:authorize access="isAuthenticated()">
+                  <td class="status-col">
+                    <c:choose>
+                      <c:when test="${branch.unreadPosts}">
+                        <img class="status-img"
+                             src="${pageContext.request.contextPath}/resources/images/new-posts.png"
+                             title="<spring:message code="label.topic.new_posts"/>"/>
+                      </c:when>
+                      <c:otherwise>
+                        <img class="status-img"
+                             src="${pageContext.request.contextPath}/resources/images/no-new-posts.png"
+                             title="<spring:message code="label.topic.no_new_posts"/>"/>
+                      </c:otherwise>
+                    </c:choose>
+                  </td>
+                </sec:authorize>
+              </c:if>
               <td class="title-col">
                 <div class="pull-left">
                   <h3 class="h-nostyle">
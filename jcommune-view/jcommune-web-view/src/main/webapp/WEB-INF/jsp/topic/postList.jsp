@@ -314,7 +314,7 @@
       </div>
     </td>
     <td class='post-content-td'>
-      <jtalks:postContent text="${post.postContent}"
+      <jtalks:postContent text="${post.postContent}" post="${post}"
                           signature="${post.userCreated.signature}"/>
     </td>
   </tr>
@@ -47,6 +47,82 @@
     </div>
   </div>
 
+  <%--facets narrow the found topics down, each link keeps the restrictions of the other facets--%>
+  <c:if test="${searchFacets.topicCount > 0}">
+    <div class="row-fluid search-facets">
+      <div class="span4">
+        <strong><spring:message code="label.search.header.branch"/></strong>
+        <ul class="unstyled">
+          <c:url var="facetUrl" value="/search">
+            <c:param name="text" value="${searchText}"/>
+            <c:if test="${searchFilter.authorId != null}"><c:param name="author" value="${searchFilter.authorId}"/></c:if>
+            <c:if test="${searchFilter.period != null}"><c:param name="period" value="${searchFilter.period}"/></c:if>
+          </c:url>
+          <li><a href="${facetUrl}"><spring:message code="label.search.facets.any"/></a></li>
+          <c:forEach var="facet" items="${searchFacets.branches}">
+            <c:url var="facetUrl" value="/search">
+              <c:param name="text" value="${searchText}"/>
+              <c:param name="branch" value="${facet.id}"/>
+              <c:if test="${searchFilter.authorId != null}"><c:param name="author" value="${searchFilter.authorId}"/></c:if>
+              <c:if test="${searchFilter.period != null}"><c:param name="period" value="${searchFilter.period}"/></c:if>
+            </c:url>
+            <li>
+              <a href="${facetUrl}" class="${facet.id == searchFilter.branchId ? 'active' : ''}"><c:out value="${facet.name}"/></a>
+              (<c:out value="${facet.count}"/>)
+            </li>
+          </c:forEach>
+        </ul>
+      </div>
+      <div class="span4">
+        <strong><spring:message code="label.search.header.author"/></strong>
+        <ul class="unstyled">
+          <c:url var="facetUrl" value="/search">
+            <c:param name="text" value="${searchText}"/>
+            <c:if test="${searchFilter.branchId != null}"><c:param name="branch" value="${searchFilter.branchId}"/></c:if>
+            <c:if test="${searchFilter.period != null}"><c:param name="period" value="${searchFilter.period}"/></c:if>
+          </c:url>
+          <li><a href="${facetUrl}"><spring:message code="label.search.facets.any"/></a></li>
+          <c:forEach var="facet" items="${searchFacets.authors}">
+            <c:url var="facetUrl" value="/search">
+              <c:param name="text" value="${searchText}"/>
+              <c:param name="author" value="${facet.id}"/>
+              <c:if test="${searchFilter.branchId != null}"><c:param name="branch" value="${searchFilter.branchId}"/></c:if>
+              <c:if test="${searchFilter.period != null}"><c:param name="period" value="${searchFilter.period}"/></c:if>
+            </c:url>
+            <li>
+              <a href="${facetUrl}" class="${facet.id == searchFilter.authorId ? 'active' : ''}"><c:out value="${facet.name}"/></a>
+              (<c:out value="${facet.count}"/>)
+            </li>
+          </c:forEach>
+        </ul>
+      </div>
+      <div class="span4">
+        <strong><spring:message code="label.search.header.date"/></strong>
+        <ul class="unstyled">
+          <c:url var="facetUrl" value="/search">
+            <c:param name="text" value="${searchText}"/>
+            <c:if test="${searchFilter.branchId != null}"><c:param name="branch" value="${searchFilter.branchId}"/></c:if>
+            <c:if test="${searchFilter.authorId != null}"><c:param name="author" value="${searchFilter.authorId}"/></c:if>
+          </c:url>
+          <li><a href="${facetUrl}"><spring:message code="label.search.facets.any"/></a></li>
+          <c:forEach var="facet" items="${searchFacets.periods}">
+            <c:url var="facetUrl" value="/search">
+              <c:param name="text" value="${searchText}"/>
+              <c:param name="period" value="${facet.key}"/>
+              <c:if test="${searchFilter.branchId != null}"><c:param name="branch" value="${searchFilter.branchId}"/></c:if>
+              <c:if test="${searchFilter.authorId != null}"><c:param name="author" value="${searchFilter.authorId}"/></c:if>
+            </c:url>
+            <li>
+              <a href="${facetUrl}" class="${facet.key == searchFilter.period ? 'active' : ''}"><spring:message
+                  code="label.search.facets.period.${facet.key}"/></a>
+              (<c:out value="${facet.value}"/>)
+            </li>
+          </c:forEach>
+        </ul>
+      </div>
+    </div>
+  </c:if>
+
   <%--you cannot use <spring> tag inside of an attribute, thus defining it as a separate var--%>
   <spring:message code="label.search.empty" var="messageToShowIfNoTopics"/>
   <jtalks:topicList topics="${searchResultPage.content}" messageToShowIfNoTopics='${messageToShowIfNoTopics}'
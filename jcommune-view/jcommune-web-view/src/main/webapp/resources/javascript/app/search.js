@@ -20,6 +20,8 @@ var Search = {};
 /** Selectors for elements used in scripts */
 Search.searchInputSelector = '#searchText';
 Search.searchClearSelector = '#searchClear';
+/** Suggestions are requested only when user stops typing for this number of milliseconds */
+Search.suggestionDelay = 200;
 
 /**
 	Checks content of search input and toggle visibility
@@ -39,6 +41,24 @@ $().ready(function() {
 	});
 	
 	
+	$(Search.searchInputSelector).autocomplete({
+		delay: Search.suggestionDelay,
+		minLength: 2,
+		source: function(request, response) {
+			$.getJSON($root + '/search/suggest', {text: request.term}, function(data) {
+				response($.map(data.result || [], function(topic) {
+					return {label: topic.title, value: request.term, topicId: topic.topicId};
+				}));
+			}).error(function() {
+				response([]);
+			});
+		},
+		select: function(e, ui) {
+			document.location = $root + '/topics/' + ui.item.topicId;
+			return false;
+		}
+	}).autocomplete("widget").addClass("suggestion-list");
+
 	$(Search.searchClearSelector).click(function() {
 		$(Search.searchInputSelector).val('');
 		$(Search.searchClearSelector).hide();
@@ -14,6 +14,8 @@
  */
 package org.jtalks.jcommune.web.tags;
 
+import org.jtalks.jcommune.model.entity.JCUser;
+import org.jtalks.jcommune.model.entity.Post;
 import org.jtalks.jcommune.service.nontransactional.BBCodeService;
 import org.junit.Before;
 import org.junit.Test;
@@ -68,6 +70,20 @@ public class ConverterBB2HTMLTest {
         assertEquals(output, expected);
     }
 
+    @Test
+    public void converterTagShouldUseCachedHtmlIfPostIsSet() throws JspException, UnsupportedEncodingException {
+        String expected = "result";
+        String source = "source";
+        Post post = new Post(new JCUser("name", "mail", "pass"), source);
+        when(bbCodeService.convertPostToHtml(post)).thenReturn(expected);
+
+        tag.setPageContext(pageContext);
+        tag.setBbCode(source);
+        tag.setPost(post);
 
+        tag.doStartTag();
 
+        String output = ((MockHttpServletResponse) pageContext.getResponse()).getContentAsString();
+        assertEquals(output, expected);
+    }
 }